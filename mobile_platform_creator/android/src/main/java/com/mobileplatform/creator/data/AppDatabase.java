@@ -12,6 +12,9 @@ import androidx.sqlite.db.SupportSQLiteDatabase;
 import com.mobileplatform.creator.model.AppCategory;
 import com.mobileplatform.creator.model.Category;
 import com.mobileplatform.creator.model.LogEntry;
+import com.mobileplatform.creator.model.PermissionAuditEvent;
+import com.mobileplatform.creator.model.PermissionCheckStats;
+import com.mobileplatform.creator.model.PermissionGrant;
 import com.mobileplatform.creator.util.Converters;
 
 // TODO: 添加其他实体类到 entities 数组中，例如 AppInfo.class, Category.class
@@ -21,7 +24,8 @@ import com.mobileplatform.creator.util.Converters;
  * 应用的 Room 数据库主类。
  * 定义了数据库包含的表以及提供了 DAO 的访问方法。
  */
-@Database(entities = {Category.class, LogEntry.class, AppCategory.class}, version = 2, exportSchema = false)
+@Database(entities = {Category.class, LogEntry.class, AppCategory.class,
+        PermissionAuditEvent.class, PermissionCheckStats.class, PermissionGrant.class}, version = 4, exportSchema = false)
 @TypeConverters({Converters.class})
 public abstract class AppDatabase extends RoomDatabase {
 
@@ -30,6 +34,8 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract CategoryDao categoryDao();
     public abstract LogEntryDao logEntryDao();
     public abstract AppCategoryDao appCategoryDao();
+    public abstract PermissionAuditDao permissionAuditDao();
+    public abstract PermissionGrantDao permissionGrantDao();
     // TODO: 添加其他 DAO 的抽象方法，例如 appInfoDao(), categoryDao()
 
     public static AppDatabase getDatabase(final Context context) {
@@ -38,7 +44,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                             AppDatabase.class, "app_database")
-                            .addMigrations(MIGRATION_1_2)
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4)
                             .fallbackToDestructiveMigration() // 临时：如果迁移失败，销毁并重建数据库（会丢失数据！）
                             .build();
                 }
@@ -70,4 +76,56 @@ public abstract class AppDatabase extends RoomDatabase {
             database.execSQL("CREATE INDEX IF NOT EXISTS `index_app_categories_category_id` ON `app_categories` (`category_id`)");
         }
     };
+
+    /**
+     * 数据库从版本2迁移到版本3的迁移规则
+     * 添加 MPK 权限审计事件表和检查次数汇总表
+     */
+    static final androidx.room.migration.Migration MIGRATION_2_3 = new androidx.room.migration.Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL(
+                "CREATE TABLE IF NOT EXISTS `permission_audit_events` (" +
+                "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                "`app_id` TEXT NOT NULL, " +
+                "`permission` TEXT NOT NULL, " +
+                "`granted` INTEGER NOT NULL, " +
+                "`weight` INTEGER NOT NULL, " +
+                "`timestamp` INTEGER NOT NULL" +
+                ")"
+            );
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_permission_audit_events_app_id` ON `permission_audit_events` (`app_id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_permission_audit_events_timestamp` ON `permission_audit_events` (`timestamp`)");
+
+            database.execSQL(
+                "CREATE TABLE IF NOT EXISTS `permission_check_stats` (" +
+                "`app_id` TEXT NOT NULL, " +
+                "`permission` TEXT NOT NULL, " +
+                "`granted_count` INTEGER NOT NULL, " +
+                "`denied_count` INTEGER NOT NULL, " +
+                "`last_check` INTEGER NOT NULL, " +
+                "PRIMARY KEY(`app_id`, `permission`)" +
+                ")"
+            );
+        }
+    };
+
+    /**
+     * 数据库从版本3迁移到版本4的迁移规则
+     * 添加 MPK 权限状态表
+     */
+    static final androidx.room.migration.Migration MIGRATION_3_4 = new androidx.room.migration.Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL(
+                "CREATE TABLE IF NOT EXISTS `permission_grants` (" +
+                "`app_id` TEXT NOT NULL, " +
+                "`permission` INTEGER NOT NULL, " +
+                "`state` INTEGER NOT NULL, " +
+                "`updated_at` INTEGER NOT NULL, " +
+                "PRIMARY KEY(`app_id`, `permission`)" +
+                ")"
+            );
+        }
+    };
 } 
\ No newline at end of file
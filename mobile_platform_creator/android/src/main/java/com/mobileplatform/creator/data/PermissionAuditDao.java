@@ -0,0 +1,88 @@
+package com.mobileplatform.creator.data;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.mobileplatform.creator.model.PermissionAuditEvent;
+import com.mobileplatform.creator.model.PermissionCheckStats;
+
+import java.util.List;
+
+/**
+ * MPK 权限审计的数据访问对象
+ */
+@Dao
+public interface PermissionAuditDao {
+
+    /**
+     * 应用的拒绝次数汇总
+     */
+    class AppDeniedCount {
+        @ColumnInfo(name = "app_id")
+        public String appId;
+
+        @ColumnInfo(name = "denied_count")
+        public long deniedCount;
+
+        @ColumnInfo(name = "granted_count")
+        public long grantedCount;
+    }
+
+    /**
+     * 批量写入审计事件
+     */
+    @Insert
+    void insertEvents(List<PermissionAuditEvent> events);
+
+    /**
+     * 创建不存在的汇总行，已存在的保持不变
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertStats(List<PermissionCheckStats> stats);
+
+    /**
+     * 累加汇总行的检查次数
+     */
+    @Query("UPDATE permission_check_stats SET granted_count = granted_count + :granted, "
+        + "denied_count = denied_count + :denied, last_check = :lastCheck "
+        + "WHERE app_id = :appId AND permission = :permission")
+    void addCounts(String appId, String permission, long granted, long denied, long lastCheck);
+
+    /**
+     * 按拒绝次数获取排名靠前的应用
+     */
+    @Query("SELECT app_id, SUM(denied_count) AS denied_count, SUM(granted_count) AS granted_count "
+        + "FROM permission_check_stats GROUP BY app_id HAVING SUM(denied_count) > 0 "
+        + "ORDER BY denied_count DESC LIMIT :limit")
+    List<AppDeniedCount> getTopDeniedApps(int limit);
+
+    /**
+     * 获取应用每个权限的汇总
+     */
+    @Query("SELECT * FROM permission_check_stats WHERE app_id = :appId ORDER BY denied_count DESC")
+    List<PermissionCheckStats> getStatsForApp(String appId);
+
+    /**
+     * 获取应用最近的审计事件
+     */
+    @Query("SELECT * FROM permission_audit_events WHERE app_id = :appId ORDER BY timestamp DESC LIMIT :limit")
+    List<PermissionAuditEvent> getRecentEvents(String appId, int limit);
+
+    /**
+     * 删除过期的审计事件
+     */
+    @Query("DELETE FROM permission_audit_events WHERE timestamp < :before")
+    int deleteEventsBefore(long before);
+
+    /**
+     * 删除应用的全部审计数据
+     */
+    @Query("DELETE FROM permission_audit_events WHERE app_id = :appId")
+    void deleteEventsForApp(String appId);
+
+    @Query("DELETE FROM permission_check_stats WHERE app_id = :appId")
+    void deleteStatsForApp(String appId);
+}
@@ -0,0 +1,35 @@
+package com.mobileplatform.creator.data;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.mobileplatform.creator.model.PermissionGrant;
+
+import java.util.List;
+
+/**
+ * MPK 权限状态的数据访问对象
+ */
+@Dao
+public interface PermissionGrantDao {
+
+    /**
+     * 获取所有应用的权限状态，启动时一次性加载
+     */
+    @Query("SELECT * FROM permission_grants")
+    List<PermissionGrant> getAll();
+
+    /**
+     * 批量写入权限状态，已存在的行被替换
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(List<PermissionGrant> grants);
+
+    /**
+     * 删除应用的全部权限状态
+     */
+    @Query("DELETE FROM permission_grants WHERE app_id = :appId")
+    void deleteForApp(String appId);
+}
@@ -0,0 +1,104 @@
+package com.mobileplatform.creator.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * MPK 应用权限检查的审计事件
+ * 拒绝的检查逐条记录，授予的检查按采样记录，weight 为一条记录代表的检查次数
+ */
+@Entity(
+    tableName = "permission_audit_events",
+    indices = {
+        @Index("app_id"),
+        @Index("timestamp")
+    }
+)
+public class PermissionAuditEvent {
+
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "id")
+    private long id;
+
+    @NonNull
+    @ColumnInfo(name = "app_id")
+    private String appId;        // 应用 ID
+
+    @NonNull
+    @ColumnInfo(name = "permission")
+    private String permission;   // 权限名称
+
+    @ColumnInfo(name = "granted")
+    private boolean granted;     // 是否授予
+
+    @ColumnInfo(name = "weight")
+    private int weight;          // 代表的检查次数
+
+    @ColumnInfo(name = "timestamp")
+    private long timestamp;      // 检查时间
+
+    /**
+     * 构造函数
+     */
+    public PermissionAuditEvent(@NonNull String appId, @NonNull String permission, boolean granted,
+                                int weight, long timestamp) {
+        this.appId = appId;
+        this.permission = permission;
+        this.granted = granted;
+        this.weight = weight;
+        this.timestamp = timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    @NonNull
+    public String getAppId() {
+        return appId;
+    }
+
+    public void setAppId(@NonNull String appId) {
+        this.appId = appId;
+    }
+
+    @NonNull
+    public String getPermission() {
+        return permission;
+    }
+
+    public void setPermission(@NonNull String permission) {
+        this.permission = permission;
+    }
+
+    public boolean isGranted() {
+        return granted;
+    }
+
+    public void setGranted(boolean granted) {
+        this.granted = granted;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
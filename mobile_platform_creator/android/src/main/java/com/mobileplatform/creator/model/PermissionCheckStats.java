@@ -0,0 +1,86 @@
+package com.mobileplatform.creator.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * MPK 应用每个权限的检查次数汇总
+ */
+@Entity(
+    tableName = "permission_check_stats",
+    primaryKeys = {"app_id", "permission"}
+)
+public class PermissionCheckStats {
+
+    @NonNull
+    @ColumnInfo(name = "app_id")
+    private String appId;          // 应用 ID
+
+    @NonNull
+    @ColumnInfo(name = "permission")
+    private String permission;     // 权限名称
+
+    @ColumnInfo(name = "granted_count")
+    private long grantedCount;     // 授予次数
+
+    @ColumnInfo(name = "denied_count")
+    private long deniedCount;      // 拒绝次数
+
+    @ColumnInfo(name = "last_check")
+    private long lastCheck;        // 最近一次写入的时间
+
+    /**
+     * 构造函数
+     */
+    public PermissionCheckStats(@NonNull String appId, @NonNull String permission,
+                                long grantedCount, long deniedCount, long lastCheck) {
+        this.appId = appId;
+        this.permission = permission;
+        this.grantedCount = grantedCount;
+        this.deniedCount = deniedCount;
+        this.lastCheck = lastCheck;
+    }
+
+    @NonNull
+    public String getAppId() {
+        return appId;
+    }
+
+    public void setAppId(@NonNull String appId) {
+        this.appId = appId;
+    }
+
+    @NonNull
+    public String getPermission() {
+        return permission;
+    }
+
+    public void setPermission(@NonNull String permission) {
+        this.permission = permission;
+    }
+
+    public long getGrantedCount() {
+        return grantedCount;
+    }
+
+    public void setGrantedCount(long grantedCount) {
+        this.grantedCount = grantedCount;
+    }
+
+    public long getDeniedCount() {
+        return deniedCount;
+    }
+
+    public void setDeniedCount(long deniedCount) {
+        this.deniedCount = deniedCount;
+    }
+
+    public long getLastCheck() {
+        return lastCheck;
+    }
+
+    public void setLastCheck(long lastCheck) {
+        this.lastCheck = lastCheck;
+    }
+}
@@ -0,0 +1,78 @@
+package com.mobileplatform.creator.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * MPK 应用权限的持久化状态
+ * 每个应用每个权限一行，权限按 PermissionType 的序号存储
+ */
+@Entity(
+    tableName = "permission_grants",
+    primaryKeys = {"app_id", "permission"}
+)
+public class PermissionGrant {
+
+    // 已授予
+    public static final int STATE_GRANTED = 1;
+
+    // 已撤销
+    public static final int STATE_REVOKED = 2;
+
+    @NonNull
+    @ColumnInfo(name = "app_id")
+    private String appId;        // 应用 ID
+
+    @ColumnInfo(name = "permission")
+    private int permission;      // 权限类型序号
+
+    @ColumnInfo(name = "state")
+    private int state;           // 授予状态
+
+    @ColumnInfo(name = "updated_at")
+    private long updatedAt;      // 状态变更时间
+
+    /**
+     * 构造函数
+     */
+    public PermissionGrant(@NonNull String appId, int permission, int state, long updatedAt) {
+        this.appId = appId;
+        this.permission = permission;
+        this.state = state;
+        this.updatedAt = updatedAt;
+    }
+
+    @NonNull
+    public String getAppId() {
+        return appId;
+    }
+
+    public void setAppId(@NonNull String appId) {
+        this.appId = appId;
+    }
+
+    public int getPermission() {
+        return permission;
+    }
+
+    public void setPermission(int permission) {
+        this.permission = permission;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public void setState(int state) {
+        this.state = state;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
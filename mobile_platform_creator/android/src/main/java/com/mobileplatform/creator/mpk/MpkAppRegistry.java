@@ -0,0 +1,283 @@
+package com.mobileplatform.creator.mpk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * MPK 应用注册表
+ * 为每个应用维护一个生命周期状态机，状态转换通过 CAS 完成，
+ * 不同应用的生命周期操作互不阻塞，读取方也不会阻塞写入方
+ */
+public class MpkAppRegistry {
+
+    /**
+     * 应用生命周期状态
+     */
+    public enum AppState {
+        LOADING,    // 正在加载
+        LOADED,     // 已加载，未运行
+        STARTING,   // 正在启动
+        RUNNING,    // 运行中
+        STOPPING,   // 正在停止
+        UNLOADING   // 正在卸载
+    }
+
+    /**
+     * 应用记录
+     * 不可变对象，状态、MPK 文件和 JavaScript 运行时总是一起原子替换
+     */
+    public static final class AppRecord {
+        private final String appId;
+        private final AppState state;
+        private final MpkFile mpk;
+        private final MpkJavaScriptRuntime jsRuntime;
+
+        AppRecord(String appId, AppState state, MpkFile mpk, MpkJavaScriptRuntime jsRuntime) {
+            this.appId = appId;
+            this.state = state;
+            this.mpk = mpk;
+            this.jsRuntime = jsRuntime;
+        }
+
+        public String getAppId() {
+            return appId;
+        }
+
+        public AppState getState() {
+            return state;
+        }
+
+        public MpkFile getMpk() {
+            return mpk;
+        }
+
+        public MpkJavaScriptRuntime getJsRuntime() {
+            return jsRuntime;
+        }
+
+        /**
+         * 应用是否已完成加载且未在卸载
+         * @return 是否可用
+         */
+        public boolean isLoaded() {
+            return state != AppState.LOADING && state != AppState.UNLOADING;
+        }
+
+        public boolean isRunning() {
+            return state == AppState.RUNNING;
+        }
+
+        AppRecord withState(AppState newState) {
+            return new AppRecord(appId, newState, mpk, jsRuntime);
+        }
+
+        AppRecord withJsRuntime(MpkJavaScriptRuntime runtime) {
+            return new AppRecord(appId, state, mpk, runtime);
+        }
+    }
+
+    /**
+     * 应用条目
+     */
+    private static final class AppEntry {
+        private final AtomicReference<AppRecord> record;
+        // 资源警告计数器，创建后不再修改结构
+        private final Map<MpkSandbox.ResourceExceededEvent.Type, AtomicInteger> warningCounters;
+
+        AppEntry(String appId) {
+            this.record = new AtomicReference<>(new AppRecord(appId, AppState.LOADING, null, null));
+            this.warningCounters = new EnumMap<>(MpkSandbox.ResourceExceededEvent.Type.class);
+            for (MpkSandbox.ResourceExceededEvent.Type type : MpkSandbox.ResourceExceededEvent.Type.values()) {
+                warningCounters.put(type, new AtomicInteger(0));
+            }
+        }
+    }
+
+    // 应用条目映射表
+    private final Map<String, AppEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 开始加载应用
+     * @param appId 应用 ID
+     * @return 是否成功占用该应用 ID，已存在时返回 false
+     */
+    public boolean beginLoad(String appId) {
+        return entries.putIfAbsent(appId, new AppEntry(appId)) == null;
+    }
+
+    /**
+     * 完成加载
+     * @param appId 应用 ID
+     * @param mpk MPK 文件
+     * @return 是否从 LOADING 转换为 LOADED
+     */
+    public boolean completeLoad(String appId, MpkFile mpk) {
+        AppEntry entry = entries.get(appId);
+        if (entry == null) {
+            return false;
+        }
+
+        AppRecord current = entry.record.get();
+        if (current.state != AppState.LOADING) {
+            return false;
+        }
+        return entry.record.compareAndSet(current,
+            new AppRecord(appId, AppState.LOADED, mpk, null));
+    }
+
+    /**
+     * 状态转换
+     * @param appId 应用 ID
+     * @param from 期望的当前状态
+     * @param to 目标状态
+     * @return 是否转换成功
+     */
+    public boolean transition(String appId, AppState from, AppState to) {
+        AppEntry entry = entries.get(appId);
+        if (entry == null) {
+            return false;
+        }
+
+        while (true) {
+            AppRecord current = entry.record.get();
+            if (current.state != from) {
+                return false;
+            }
+            if (entry.record.compareAndSet(current, current.withState(to))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 设置 JavaScript 运行时
+     * @param appId 应用 ID
+     * @param runtime JavaScript 运行时，null 表示清除
+     * @return 被替换的运行时
+     */
+    public MpkJavaScriptRuntime setJsRuntime(String appId, MpkJavaScriptRuntime runtime) {
+        AppEntry entry = entries.get(appId);
+        if (entry == null) {
+            return null;
+        }
+
+        while (true) {
+            AppRecord current = entry.record.get();
+            if (entry.record.compareAndSet(current, current.withJsRuntime(runtime))) {
+                return current.jsRuntime;
+            }
+        }
+    }
+
+    /**
+     * 获取应用记录
+     * @param appId 应用 ID
+     * @return 应用记录，不存在时返回 null
+     */
+    public AppRecord get(String appId) {
+        AppEntry entry = entries.get(appId);
+        return entry != null ? entry.record.get() : null;
+    }
+
+    /**
+     * 获取应用状态
+     * @param appId 应用 ID
+     * @return 应用状态，不存在时返回 null
+     */
+    public AppState getState(String appId) {
+        AppRecord record = get(appId);
+        return record != null ? record.state : null;
+    }
+
+    /**
+     * 应用是否已加载
+     * @param appId 应用 ID
+     * @return 是否已加载
+     */
+    public boolean isLoaded(String appId) {
+        AppRecord record = get(appId);
+        return record != null && record.isLoaded();
+    }
+
+    /**
+     * 应用是否在运行
+     * @param appId 应用 ID
+     * @return 是否在运行
+     */
+    public boolean isRunning(String appId) {
+        AppRecord record = get(appId);
+        return record != null && record.isRunning();
+    }
+
+    /**
+     * 获取资源警告计数器
+     * @param appId 应用 ID
+     * @return 警告计数器，不存在时返回 null
+     */
+    public Map<MpkSandbox.ResourceExceededEvent.Type, AtomicInteger> getWarningCounters(String appId) {
+        AppEntry entry = entries.get(appId);
+        return entry != null ? entry.warningCounters : null;
+    }
+
+    /**
+     * 重置资源警告计数器
+     * @param appId 应用 ID
+     */
+    public void resetWarningCounters(String appId) {
+        AppEntry entry = entries.get(appId);
+        if (entry != null) {
+            for (AtomicInteger counter : entry.warningCounters.values()) {
+                counter.set(0);
+            }
+        }
+    }
+
+    /**
+     * 移除应用
+     * @param appId 应用 ID
+     */
+    public void remove(String appId) {
+        entries.remove(appId);
+    }
+
+    /**
+     * 获取已加载的应用 ID
+     * @return 应用 ID 列表
+     */
+    public List<String> getLoadedAppIds() {
+        List<String> appIds = new ArrayList<>();
+        for (AppEntry entry : entries.values()) {
+            AppRecord record = entry.record.get();
+            if (record.isLoaded()) {
+                appIds.add(record.appId);
+            }
+        }
+        return appIds;
+    }
+
+    /**
+     * 获取所有应用记录的快照
+     * 每条记录都是一次原子读取的结果，读取过程不加锁，不会阻塞状态转换
+     * @return 应用记录列表
+     */
+    public List<AppRecord> snapshot() {
+        List<AppRecord> records = new ArrayList<>(entries.size());
+        for (AppEntry entry : entries.values()) {
+            records.add(entry.record.get());
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * 清空注册表
+     */
+    public void clear() {
+        entries.clear();
+    }
+}
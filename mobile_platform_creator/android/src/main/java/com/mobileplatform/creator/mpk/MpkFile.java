@@ -291,6 +291,24 @@ public class MpkFile {
         }
     }
 
+    /**
+     * 获取包内文件解压后的大小。
+     *
+     * @param relativePath 文件在 ZIP 中的相对路径 (使用 '/')
+     * @return 文件大小（字节），如果文件不存在或大小未知则返回 -1
+     */
+    public long getFileSize(String relativePath) {
+        if (zipFile == null) {
+            return -1;
+        }
+        String normalizedPath = relativePath.replace('\\', '/').replaceAll("^/+", "");
+        ZipEntry entry = zipFile.getEntry(normalizedPath);
+        if (entry == null || entry.isDirectory()) {
+            return -1;
+        }
+        return entry.getSize();
+    }
+
 
     /**
      * 关闭底层的 ZipFile。在完成 MPK 文件操作后应调用此方法。
@@ -0,0 +1,211 @@
+package com.mobileplatform.creator.mpk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * MPK 历史记录环形缓冲区
+ * 固定容量，任意线程追加，不加锁；容量已满时覆盖最早的记录，追加的开销与容量无关；
+ * 通过游标按顺序读取，读取时不复制缓冲区，读取期间被覆盖的记录会被跳过
+ *
+ * @param <T> 记录类型
+ */
+public class MpkHistoryBuffer<T> {
+
+    /**
+     * 淘汰监听器，在追加记录的线程中调用，不应执行耗时操作
+     *
+     * @param <T> 记录类型
+     */
+    public interface EvictionListener<T> {
+        void onEvicted(T item);
+    }
+
+    // 记录槽位
+    private final AtomicReferenceArray<T> items;
+
+    // 每个槽位中记录的序号，写入期间为 -1
+    private final AtomicLongArray sequences;
+
+    // 容量
+    private final int capacity;
+
+    // 下一条记录的序号
+    private final AtomicLong head = new AtomicLong();
+
+    // 清理后最早的有效序号
+    private volatile long floor;
+
+    // 淘汰监听器
+    private volatile EvictionListener<T> evictionListener;
+
+    /**
+     * 创建环形缓冲区
+     * @param capacity 容量
+     */
+    public MpkHistoryBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("历史记录容量必须大于 0: " + capacity);
+        }
+        this.capacity = capacity;
+        this.items = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, -1);
+        }
+    }
+
+    /**
+     * 设置淘汰监听器，记录被覆盖时回调
+     * @param listener 监听器，为 null 时不回调
+     */
+    public void setEvictionListener(EvictionListener<T> listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * 追加记录，可以在任意线程中调用
+     * @param item 记录
+     */
+    public void add(T item) {
+        long sequence = head.getAndIncrement();
+        int slot = (int) (sequence % capacity);
+
+        // 取出将被覆盖的记录，已清理的记录不再回调
+        long previous = sequences.get(slot);
+        T evicted = previous >= floor ? items.get(slot) : null;
+
+        sequences.set(slot, -1);
+        items.set(slot, item);
+        sequences.set(slot, sequence);
+
+        EvictionListener<T> listener = evictionListener;
+        if (evicted != null && listener != null) {
+            listener.onEvicted(evicted);
+        }
+    }
+
+    /**
+     * 打开游标，从当前最早的记录开始读取
+     * @return 游标
+     */
+    public Cursor cursor() {
+        return new Cursor(oldestSequence());
+    }
+
+    /**
+     * 从指定序号打开游标，可用于继续读取上次之后的新记录
+     * @param sequence 序号，早于最早记录时从最早记录开始
+     * @return 游标
+     */
+    public Cursor cursor(long sequence) {
+        return new Cursor(Math.max(sequence, oldestSequence()));
+    }
+
+    /**
+     * 复制当前的记录
+     * @return 记录列表，按追加顺序排列
+     */
+    public List<T> toList() {
+        List<T> result = new ArrayList<>(size());
+        Cursor cursor = cursor();
+        T item;
+        while ((item = cursor.next()) != null) {
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * 获取记录数量
+     * @return 记录数量
+     */
+    public int size() {
+        return (int) (head.get() - oldestSequence());
+    }
+
+    /**
+     * 获取容量
+     * @return 容量
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 获取下一条记录的序号
+     * @return 序号
+     */
+    public long getHeadSequence() {
+        return head.get();
+    }
+
+    /**
+     * 清理记录，之后打开的游标不再读取已有的记录
+     */
+    public void clear() {
+        floor = head.get();
+    }
+
+    /**
+     * 获取最早的有效序号
+     */
+    private long oldestSequence() {
+        return Math.max(floor, head.get() - capacity);
+    }
+
+    /**
+     * 历史记录游标，不是线程安全的，同一个游标只应在一个线程中使用
+     */
+    public final class Cursor {
+        // 下一条要读取的序号
+        private long position;
+
+        Cursor(long position) {
+            this.position = position;
+        }
+
+        /**
+         * 读取下一条记录
+         * @return 记录，没有更多记录或下一条记录仍在写入时返回 null
+         */
+        public T next() {
+            while (position < head.get()) {
+                // 落后超过容量时跳到最早的有效记录
+                long oldest = oldestSequence();
+                if (position < oldest) {
+                    position = oldest;
+                    continue;
+                }
+
+                int slot = (int) (position % capacity);
+                long sequence = sequences.get(slot);
+                if (sequence < position) {
+                    // 已占用序号但尚未写入
+                    return null;
+                }
+                if (sequence == position) {
+                    T item = items.get(slot);
+                    if (sequences.get(slot) == position) {
+                        position++;
+                        return item;
+                    }
+                }
+                // 读取期间被覆盖
+                position++;
+            }
+            return null;
+        }
+
+        /**
+         * 获取下一条要读取的序号
+         * @return 序号
+         */
+        public long getPosition() {
+            return position;
+        }
+    }
+}
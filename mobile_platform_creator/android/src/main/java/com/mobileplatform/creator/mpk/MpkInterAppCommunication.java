@@ -3,24 +3,47 @@ package com.mobileplatform.creator.mpk;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
+import android.util.LongSparseArray;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * MPK 应用间通信
- * 用于应用之间的消息传递和事件通知
+ * 用于应用之间的消息传递和事件通知；每个应用有一个有界的无锁邮箱，
+ * 任意线程发送的消息和事件经邮箱在接收应用自己的投递执行器中串行回调，不经过主线程
  */
 public class MpkInterAppCommunication {
     private static final String TAG = "MpkInterAppComm";
@@ -47,6 +70,14 @@ public class MpkInterAppCommunication {
         void onDisconnected(String appId);
     }
     
+    /**
+     * 请求回调接口，在请求方的投递执行器中回调
+     */
+    public interface ResponseCallback {
+        void onResponse(Message response);
+        void onError(Exception error);
+    }
+    
     /**
      * 消息类
      */
@@ -56,11 +87,13 @@ public class MpkInterAppCommunication {
         private String to;              // 接收者 ID
         private String type;            // 消息类型
         private JSONObject data;        // 消息数据
+        private MpkSharedPayload payload; // 二进制负载
         private long timestamp;         // 消息时间戳
         private boolean received;       // 是否已接收
         private long receivedTime;      // 接收时间
         private boolean needsResponse;  // 是否需要回复
         private String responseId;      // 回复 ID
+        private long correlationId;     // 请求关联 ID，不是请求或回复时为 0
         private Message response;       // 回复消息
         
         /**
@@ -163,6 +196,25 @@ public class MpkInterAppCommunication {
             this.data = data;
         }
         
+        /**
+         * 获取二进制负载
+         * 
+         * @return 二进制负载，没有时返回 null
+         */
+        public MpkSharedPayload getPayload() {
+            return payload;
+        }
+        
+        /**
+         * 设置二进制负载
+         * 不转移引用，消息总线在投递期间自行持有引用
+         * 
+         * @param payload 二进制负载
+         */
+        public void setPayload(MpkSharedPayload payload) {
+            this.payload = payload;
+        }
+        
         /**
          * 获取时间戳
          * 
@@ -238,6 +290,33 @@ public class MpkInterAppCommunication {
             this.responseId = responseId;
         }
         
+        /**
+         * 获取请求关联 ID
+         * 
+         * @return 请求关联 ID，不是请求或回复时为 0
+         */
+        public long getCorrelationId() {
+            return correlationId;
+        }
+        
+        /**
+         * 设置请求关联 ID
+         * 
+         * @param correlationId 请求关联 ID
+         */
+        public void setCorrelationId(long correlationId) {
+            this.correlationId = correlationId;
+        }
+        
+        /**
+         * 是否为请求的回复
+         * 
+         * @return 是否为回复
+         */
+        public boolean isResponse() {
+            return correlationId != 0 && responseId != null;
+        }
+        
         /**
          * 获取回复消息
          * 
@@ -267,6 +346,7 @@ public class MpkInterAppCommunication {
             response.setTo(this.from);
             response.setType(this.type + "_response");
             response.setResponseId(this.id);
+            response.setCorrelationId(this.correlationId);
             
             return response;
         }
@@ -289,10 +369,19 @@ public class MpkInterAppCommunication {
             json.put("receivedTime", receivedTime);
             json.put("needsResponse", needsResponse);
             
+            // 二进制负载不序列化，只记录大小
+            if (payload != null) {
+                json.put("payloadSize", payload.size());
+            }
+            
             if (responseId != null) {
                 json.put("responseId", responseId);
             }
             
+            if (correlationId != 0) {
+                json.put("correlationId", correlationId);
+            }
+            
             return json;
         }
         
@@ -346,6 +435,10 @@ public class MpkInterAppCommunication {
                 message.setResponseId(json.getString("responseId"));
             }
             
+            if (json.has("correlationId")) {
+                message.setCorrelationId(json.getLong("correlationId"));
+            }
+            
             return message;
         }
         
@@ -369,6 +462,7 @@ public class MpkInterAppCommunication {
         private String name;           // 事件名
         private String source;         // 事件源
         private JSONObject data;       // 事件数据
+        private MpkSharedPayload payload; // 二进制负载
         private long timestamp;        // 事件时间戳
         private String topic;          // 事件主题
         private Set<String> tags;      // 事件标签
@@ -462,6 +556,25 @@ public class MpkInterAppCommunication {
             this.data = data;
         }
         
+        /**
+         * 获取二进制负载
+         * 
+         * @return 二进制负载，没有时返回 null
+         */
+        public MpkSharedPayload getPayload() {
+            return payload;
+        }
+        
+        /**
+         * 设置二进制负载
+         * 不转移引用，消息总线在投递期间自行持有引用
+         * 
+         * @param payload 二进制负载
+         */
+        public void setPayload(MpkSharedPayload payload) {
+            this.payload = payload;
+        }
+        
         /**
          * 获取事件时间戳
          * 
@@ -538,6 +651,10 @@ public class MpkInterAppCommunication {
                 json.put("tags", new org.json.JSONArray(tags));
             }
             
+            if (payload != null) {
+                json.put("payloadSize", payload.size());
+            }
+            
             return json;
         }
         
@@ -593,49 +710,315 @@ public class MpkInterAppCommunication {
         }
     }
     
-    // 已注册的应用
-    private Set<String> registeredApps;
+    // 每个应用邮箱的容量，邮箱已满时发送失败，由发送方决定重试或丢弃
+    public static final int MAILBOX_CAPACITY = 1024;
     
-    // 消息回调
-    private Map<String, List<MessageCallback>> messageCallbacks;
+    // 默认请求超时时间（毫秒）
+    public static final long DEFAULT_CALL_TIMEOUT_MS = 5000;
     
-    // 事件回调
-    private Map<String, List<EventCallback>> eventCallbacks;
+    // 默认每对应用之间未完成请求数量上限，超过后新请求被拒绝
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
     
-    // 主题订阅
-    private Map<String, Set<String>> topicSubscriptions;
+    // 默认每个应用保留的历史记录数量
+    public static final int DEFAULT_HISTORY_CAPACITY = 100;
     
-    // 连接回调
-    private List<ConnectionCallback> connectionCallbacks;
+    // 溢出日志单个文件大小上限，超过后轮转为 .1 文件
+    private static final long SPILL_FILE_LIMIT = 1024 * 1024;
+    
+    // 溢出日志待写入记录数量上限，超过后丢弃
+    private static final int SPILL_QUEUE_LIMIT = 4096;
+    
+    // 默认投递线程数量，未设置投递执行器的应用共用
+    private static final int DELIVERY_THREADS = 2;
+    
+    // 默认投递线程编号
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(1);
+    
+    // 默认投递线程池，首次使用时创建
+    private static volatile ExecutorService defaultExecutor;
+    
+    // 共用的请求超时定时器，首次使用时创建
+    private static volatile ScheduledThreadPoolExecutor callTimer;
+    
+    /**
+     * 应用端点
+     * 保存应用的回调、历史记录和邮箱，消息和事件经邮箱在应用的投递执行器中串行回调
+     */
+    private final class Endpoint {
+        final String appId;
+        final List<MessageCallback> messageCallbacks = new CopyOnWriteArrayList<>();
+        final List<EventCallback> eventCallbacks = new CopyOnWriteArrayList<>();
+        final MpkMailbox<Object> mailbox;
+        // 历史记录，修改容量时整体替换
+        volatile MpkHistoryBuffer<Message> messageHistory;
+        volatile MpkHistoryBuffer<Event> eventHistory;
+        
+        Endpoint(String appId, Executor executor, int historyCapacity, HistorySpill spill) {
+            this.appId = appId;
+            this.mailbox = new MpkMailbox<>(MAILBOX_CAPACITY, executor, this::deliver, this::discard);
+            this.messageHistory = new MpkHistoryBuffer<>(historyCapacity);
+            this.eventHistory = new MpkHistoryBuffer<>(historyCapacity);
+            attachSpill(spill);
+        }
+        
+        /**
+         * 设置溢出日志，被覆盖的历史记录写入日志
+         * @param spill 溢出日志，为 null 时不写入
+         */
+        void attachSpill(HistorySpill spill) {
+            if (spill != null) {
+                messageHistory.setEvictionListener(message -> spill.append(appId, "messages", message));
+                eventHistory.setEvictionListener(event -> spill.append(appId, "events", event));
+            } else {
+                messageHistory.setEvictionListener(null);
+                eventHistory.setEvictionListener(null);
+            }
+        }
+        
+        /**
+         * 回调消息或事件，在投递执行器中执行
+         */
+        private void deliver(Object item) {
+            if (item instanceof Runnable) {
+                // 在投递执行器中执行的任务，例如请求超时回调
+                try {
+                    ((Runnable) item).run();
+                } catch (Exception e) {
+                    Log.e(TAG, "投递任务异常: " + appId, e);
+                }
+            } else if (item instanceof Message && ((Message) item).isResponse() && completeCall((Message) item)) {
+                Message message = (Message) item;
+                message.setReceived(true);
+                releasePayload(message.getPayload());
+            } else if (item instanceof Message) {
+                // 普通消息，以及不对应本进程请求的回复，例如发给外部进程应用的回复
+                Message message = (Message) item;
+                message.setReceived(true);
+                try {
+                    for (MessageCallback callback : messageCallbacks) {
+                        try {
+                            callback.onMessage(message);
+                        } catch (Exception e) {
+                            Log.e(TAG, "消息回调异常", e);
+                        }
+                    }
+                } finally {
+                    // 释放投递时持有的负载引用
+                    releasePayload(message.getPayload());
+                }
+            } else if (item instanceof List) {
+                // 批量发布的事件
+                for (Object event : (List<?>) item) {
+                    dispatchEvent((Event) event);
+                }
+            } else {
+                dispatchEvent((Event) item);
+            }
+        }
+        
+        /**
+         * 释放注销应用时邮箱中未投递的消息和事件持有的负载引用
+         */
+        private void discard(Object item) {
+            if (item instanceof Message) {
+                releasePayload(((Message) item).getPayload());
+            } else if (item instanceof List) {
+                for (Object event : (List<?>) item) {
+                    releasePayload(((Event) event).getPayload());
+                }
+            } else if (item instanceof Event) {
+                releasePayload(((Event) item).getPayload());
+            }
+        }
+        
+        /**
+         * 回调事件
+         */
+        private void dispatchEvent(Event event) {
+            try {
+                for (EventCallback callback : eventCallbacks) {
+                    try {
+                        callback.onEvent(event);
+                    } catch (Exception e) {
+                        Log.e(TAG, "事件回调异常: " + appId, e);
+                    }
+                }
+            } finally {
+                releasePayload(event.getPayload());
+            }
+        }
+    }
+    
+    /**
+     * 历史记录溢出日志
+     * 被环形缓冲区覆盖的记录在单独的线程中按应用追加到 JSON 行日志，用于调试
+     */
+    private static final class HistorySpill {
+        private final File directory;
+        private final ThreadPoolExecutor writer;
+        // 打开的日志文件，只在写入线程中访问
+        private final Map<String, SpillFile> files = new HashMap<>();
+        private final AtomicLong dropped = new AtomicLong();
+        
+        HistorySpill(File directory) {
+            this.directory = directory;
+            this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(SPILL_QUEUE_LIMIT), runnable -> {
+                    Thread thread = new Thread(runnable, "MpkHistorySpill");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+        
+        /**
+         * 追加记录，可以在任意线程中调用，队列已满时丢弃
+         */
+        void append(String appId, String kind, Object item) {
+            try {
+                writer.execute(() -> write(appId + "." + kind + ".log", item));
+            } catch (RejectedExecutionException e) {
+                dropped.incrementAndGet();
+            }
+        }
+        
+        private void write(String name, Object item) {
+            try {
+                JSONObject json = item instanceof Message ? ((Message) item).toJson() : ((Event) item).toJson();
+                byte[] line = (json.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+                
+                SpillFile file = files.get(name);
+                if (file != null && file.size + line.length > SPILL_FILE_LIMIT) {
+                    file.output.close();
+                    files.remove(name);
+                    File current = new File(directory, name);
+                    File rotated = new File(directory, name + ".1");
+                    if (rotated.exists() && !rotated.delete()) {
+                        Log.w(TAG, "删除旧的溢出日志失败: " + rotated);
+                    }
+                    if (!current.renameTo(rotated)) {
+                        Log.w(TAG, "轮转溢出日志失败: " + current);
+                    }
+                    file = null;
+                }
+                if (file == null) {
+                    file = new SpillFile(new File(directory, name));
+                    files.put(name, file);
+                }
+                
+                file.output.write(line);
+                file.size += line.length;
+                
+                // 队列中没有待写入的记录时刷新
+                if (writer.getQueue().isEmpty()) {
+                    for (SpillFile open : files.values()) {
+                        open.output.flush();
+                    }
+                }
+            } catch (JSONException | IOException e) {
+                Log.e(TAG, "写入历史记录溢出日志失败: " + name, e);
+            }
+        }
+        
+        /**
+         * 写完队列中的记录后关闭日志文件
+         */
+        void close() {
+            try {
+                writer.execute(() -> {
+                    for (SpillFile file : files.values()) {
+                        try {
+                            file.output.close();
+                        } catch (IOException e) {
+                            Log.w(TAG, "关闭溢出日志失败", e);
+                        }
+                    }
+                    files.clear();
+                });
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "溢出日志队列已满，未写入的记录被丢弃");
+            }
+            writer.shutdown();
+            
+            if (dropped.get() > 0) {
+                Log.w(TAG, "溢出日志丢弃的记录: " + dropped.get());
+            }
+        }
+    }
+    
+    /**
+     * 打开的溢出日志文件
+     */
+    private static final class SpillFile {
+        final OutputStream output;
+        long size;
+        
+        SpillFile(File file) throws IOException {
+            this.size = file.length();
+            this.output = new BufferedOutputStream(new FileOutputStream(file, true));
+        }
+    }
+    
+    /**
+     * 未完成的请求
+     */
+    private static final class PendingCall {
+        final long id;
+        final String from;
+        final String to;
+        final ResponseCallback callback;
+        volatile ScheduledFuture<?> timeout;
+        
+        PendingCall(long id, String from, String to, ResponseCallback callback) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.callback = callback;
+        }
+    }
+    
+    // 已注册应用的端点
+    private final Map<String, Endpoint> endpoints;
+    
+    // 未完成的请求，以关联 ID 为键，以自身为锁；关联 ID 递增，新请求总是追加到末尾
+    private final LongSparseArray<PendingCall> pendingCalls = new LongSparseArray<>();
     
-    // 消息历史
-    private Map<String, List<Message>> messageHistory;
+    // 下一个请求关联 ID
+    private final AtomicLong nextCallId = new AtomicLong(1);
     
-    // 事件历史
-    private Map<String, List<Event>> eventHistory;
+    // 每对应用之间未完成的请求数量，数量减到 0 时移除
+    private final Map<String, AtomicInteger> inFlightCalls = new ConcurrentHashMap<>();
     
-    // 历史记录大小限制
-    private static final int HISTORY_SIZE_LIMIT = 100;
+    // 每对应用之间未完成请求数量上限
+    private volatile int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
     
-    // 主线程处理器
+    // 新注册应用保留的历史记录数量
+    private volatile int historyCapacity = DEFAULT_HISTORY_CAPACITY;
+    
+    // 历史记录溢出日志，未启用时为 null
+    private volatile HistorySpill historySpill;
+    
+    // 主题订阅
+    private final MpkTopicTrie topicSubscriptions;
+    
+    // 连接回调
+    private final List<ConnectionCallback> connectionCallbacks;
+    
+    // 主线程处理器，仅用于连接回调
     private Handler mainHandler;
     
     /**
      * 构造函数
      */
     public MpkInterAppCommunication() {
-        this.registeredApps = new HashSet<>();
-        this.messageCallbacks = new HashMap<>();
-        this.eventCallbacks = new HashMap<>();
-        this.topicSubscriptions = new HashMap<>();
-        this.connectionCallbacks = new ArrayList<>();
-        this.messageHistory = new HashMap<>();
-        this.eventHistory = new HashMap<>();
+        this.endpoints = new ConcurrentHashMap<>();
+        this.topicSubscriptions = new MpkTopicTrie();
+        this.connectionCallbacks = new CopyOnWriteArrayList<>();
         this.mainHandler = new Handler(Looper.getMainLooper());
     }
     
     /**
      * 注册应用
+     * 消息和事件在共用的投递线程中回调，可以通过 {@link #setDeliveryExecutor} 改为应用自己的线程
      * 
      * @param appId 应用 ID
      * @return 是否成功注册
@@ -646,16 +1029,11 @@ public class MpkInterAppCommunication {
             return false;
         }
         
-        if (registeredApps.contains(appId)) {
+        if (endpoints.putIfAbsent(appId, new Endpoint(appId, getDefaultExecutor(), historyCapacity, historySpill)) != null) {
             Log.w(TAG, "应用已注册: " + appId);
             return true;
         }
         
-        registeredApps.add(appId);
-        messageCallbacks.put(appId, new CopyOnWriteArrayList<>());
-        messageHistory.put(appId, new ArrayList<>());
-        eventHistory.put(appId, new ArrayList<>());
-        
         // 通知连接回调
         for (ConnectionCallback callback : connectionCallbacks) {
             mainHandler.post(() -> callback.onConnected(appId));
@@ -665,6 +1043,43 @@ public class MpkInterAppCommunication {
         return true;
     }
     
+    /**
+     * 批量注册应用
+     * 所有应用注册完成后只向主线程投递一次连接通知
+     * 
+     * @param appIds 应用 ID 集合
+     * @return 新注册的应用数量
+     */
+    public int registerApps(Collection<String> appIds) {
+        List<String> registered = new ArrayList<>();
+        Executor executor = getDefaultExecutor();
+        
+        for (String appId : appIds) {
+            if (appId == null || appId.isEmpty()) {
+                Log.e(TAG, "应用 ID 不能为空");
+                continue;
+            }
+            
+            if (endpoints.putIfAbsent(appId, new Endpoint(appId, executor, historyCapacity, historySpill)) == null) {
+                registered.add(appId);
+            }
+        }
+        
+        // 通知连接回调
+        if (!registered.isEmpty() && !connectionCallbacks.isEmpty()) {
+            mainHandler.post(() -> {
+                for (ConnectionCallback callback : connectionCallbacks) {
+                    for (String appId : registered) {
+                        callback.onConnected(appId);
+                    }
+                }
+            });
+        }
+        
+        Log.i(TAG, "批量注册应用: " + registered.size() + "/" + appIds.size());
+        return registered.size();
+    }
+    
     /**
      * 注销应用
      * 
@@ -677,21 +1092,20 @@ public class MpkInterAppCommunication {
             return false;
         }
         
-        if (!registeredApps.contains(appId)) {
+        Endpoint endpoint = endpoints.remove(appId);
+        if (endpoint == null) {
             Log.w(TAG, "应用未注册: " + appId);
             return true;
         }
         
-        registeredApps.remove(appId);
-        messageCallbacks.remove(appId);
+        // 未投递的消息和事件直接丢弃
+        endpoint.mailbox.close();
         
-        // 移除主题订阅
-        for (Map.Entry<String, Set<String>> entry : topicSubscriptions.entrySet()) {
-            entry.getValue().remove(appId);
-        }
+        // 应用发出和收到的未完成请求以错误结束
+        failPendingCalls(appId);
         
-        // 清理空主题
-        topicSubscriptions.entrySet().removeIf(entry -> entry.getValue().isEmpty());
+        // 移除主题订阅
+        topicSubscriptions.removeSubscriber(appId);
         
         // 通知连接回调
         for (ConnectionCallback callback : connectionCallbacks) {
@@ -709,7 +1123,7 @@ public class MpkInterAppCommunication {
      * @return 是否已注册
      */
     public boolean isAppRegistered(String appId) {
-        return registeredApps.contains(appId);
+        return appId != null && endpoints.containsKey(appId);
     }
     
     /**
@@ -718,7 +1132,36 @@ public class MpkInterAppCommunication {
      * @return 已注册的应用
      */
     public Set<String> getRegisteredApps() {
-        return Collections.unmodifiableSet(registeredApps);
+        return Collections.unmodifiableSet(endpoints.keySet());
+    }
+    
+    /**
+     * 设置应用的投递执行器
+     * 发给该应用的消息和事件在执行器中串行回调，例如 JavaScript 运行时的事件循环
+     * 
+     * @param appId 应用 ID
+     * @param executor 投递执行器，为 null 时使用共用的投递线程
+     * @return 是否成功设置
+     */
+    public boolean setDeliveryExecutor(String appId, Executor executor) {
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
+            return false;
+        }
+        
+        endpoint.mailbox.setExecutor(executor != null ? executor : getDefaultExecutor());
+        return true;
+    }
+    
+    /**
+     * 获取应用尚未投递的消息和事件数量
+     * 
+     * @param appId 应用 ID
+     * @return 数量，应用未注册时返回 0
+     */
+    public int getPendingCount(String appId) {
+        Endpoint endpoint = appId != null ? endpoints.get(appId) : null;
+        return endpoint != null ? endpoint.mailbox.size() : 0;
     }
     
     /**
@@ -729,13 +1172,12 @@ public class MpkInterAppCommunication {
      * @return 是否成功添加
      */
     public boolean addMessageCallback(String appId, MessageCallback callback) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
             return false;
         }
         
-        List<MessageCallback> callbacks = messageCallbacks.get(appId);
-        callbacks.add(callback);
+        endpoint.messageCallbacks.add(callback);
         
         Log.d(TAG, "添加消息回调: " + appId);
         return true;
@@ -749,13 +1191,12 @@ public class MpkInterAppCommunication {
      * @return 是否成功移除
      */
     public boolean removeMessageCallback(String appId, MessageCallback callback) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
             return false;
         }
         
-        List<MessageCallback> callbacks = messageCallbacks.get(appId);
-        boolean result = callbacks.remove(callback);
+        boolean result = endpoint.messageCallbacks.remove(callback);
         
         if (result) {
             Log.d(TAG, "移除消息回调: " + appId);
@@ -772,13 +1213,12 @@ public class MpkInterAppCommunication {
      * @return 是否成功添加
      */
     public boolean addEventListener(String appId, EventCallback callback) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
             return false;
         }
         
-        List<EventCallback> callbacks = eventCallbacks.computeIfAbsent(appId, k -> new CopyOnWriteArrayList<>());
-        callbacks.add(callback);
+        endpoint.eventCallbacks.add(callback);
         
         Log.d(TAG, "添加事件回调: " + appId);
         return true;
@@ -792,24 +1232,15 @@ public class MpkInterAppCommunication {
      * @return 是否成功移除
      */
     public boolean removeEventListener(String appId, EventCallback callback) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
-            return false;
-        }
-        
-        List<EventCallback> callbacks = eventCallbacks.get(appId);
-        if (callbacks == null) {
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
             return false;
         }
         
-        boolean result = callbacks.remove(callback);
+        boolean result = endpoint.eventCallbacks.remove(callback);
         
         if (result) {
             Log.d(TAG, "移除事件回调: " + appId);
-            
-            if (callbacks.isEmpty()) {
-                eventCallbacks.remove(appId);
-            }
         }
         
         return result;
@@ -817,19 +1248,31 @@ public class MpkInterAppCommunication {
     
     /**
      * 订阅主题
+     * 主题按 "/" 分级，可以使用单级通配符 "+"（如 sensor/+/temperature）
+     * 和位于最后一级的多级通配符 "#"（如 app/#）
      * 
      * @param appId 应用 ID
-     * @param topic 主题
+     * @param topic 主题或订阅过滤器
      * @return 是否成功订阅
      */
     public boolean subscribeTopic(String appId, String topic) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
+            return false;
+        }
+        
+        if (!MpkTopicTrie.isValidFilter(topic)) {
+            Log.e(TAG, "无效的主题过滤器: " + topic);
             return false;
         }
         
-        Set<String> subscribers = topicSubscriptions.computeIfAbsent(topic, k -> new HashSet<>());
-        subscribers.add(appId);
+        topicSubscriptions.subscribe(topic, appId);
+        
+        // 订阅期间应用被注销时撤销订阅
+        if (endpoints.get(appId) != endpoint) {
+            topicSubscriptions.unsubscribe(topic, appId);
+            return false;
+        }
         
         Log.d(TAG, "订阅主题: " + appId + " -> " + topic);
         return true;
@@ -843,38 +1286,44 @@ public class MpkInterAppCommunication {
      * @return 是否成功取消订阅
      */
     public boolean unsubscribeTopic(String appId, String topic) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
-            return false;
-        }
-        
-        Set<String> subscribers = topicSubscriptions.get(topic);
-        if (subscribers == null) {
+        if (getEndpoint(appId) == null) {
             return false;
         }
         
-        boolean result = subscribers.remove(appId);
+        boolean removed = topicSubscriptions.unsubscribe(topic, appId);
         
-        if (result) {
+        if (removed) {
             Log.d(TAG, "取消订阅主题: " + appId + " -> " + topic);
-            
-            if (subscribers.isEmpty()) {
-                topicSubscriptions.remove(topic);
-            }
         }
         
-        return result;
+        return removed;
     }
     
     /**
      * 获取主题订阅者
+     * 按字面比较订阅过滤器，不展开通配符
      * 
-     * @param topic 主题
+     * @param topic 主题或订阅过滤器
      * @return 订阅者
      */
     public Set<String> getTopicSubscribers(String topic) {
-        Set<String> subscribers = topicSubscriptions.get(topic);
-        return subscribers != null ? Collections.unmodifiableSet(subscribers) : Collections.emptySet();
+        if (topic == null) {
+            return Collections.emptySet();
+        }
+        return topicSubscriptions.getSubscribers(topic);
+    }
+    
+    /**
+     * 获取会收到主题事件的订阅者，包括通配符订阅
+     * 
+     * @param topic 主题
+     * @return 订阅者
+     */
+    public Set<String> getMatchingSubscribers(String topic) {
+        if (!MpkTopicTrie.isValidTopic(topic)) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(topicSubscriptions.match(topic))));
     }
     
     /**
@@ -898,54 +1347,43 @@ public class MpkInterAppCommunication {
     
     /**
      * 发送消息
+     * 可以在任意线程中调用，消息在接收者的投递执行器中回调
      * 
      * @param message 消息
-     * @return 是否成功发送
+     * @return 是否成功发送，接收者邮箱已满时返回 false
      */
     public boolean sendMessage(Message message) {
         String from = message.getFrom();
         String to = message.getTo();
         
-        if (!registeredApps.contains(from)) {
+        Endpoint sender = from != null ? endpoints.get(from) : null;
+        if (sender == null) {
             Log.e(TAG, "发送者未注册: " + from);
             return false;
         }
         
-        if (!registeredApps.contains(to)) {
+        Endpoint receiver = to != null ? endpoints.get(to) : null;
+        if (receiver == null) {
             Log.e(TAG, "接收者未注册: " + to);
             return false;
         }
         
-        // 更新消息历史
-        List<Message> fromHistory = messageHistory.get(from);
-        if (fromHistory.size() >= HISTORY_SIZE_LIMIT) {
-            fromHistory.remove(0);
-        }
-        fromHistory.add(message);
-        
-        List<Message> toHistory = messageHistory.get(to);
-        if (toHistory.size() >= HISTORY_SIZE_LIMIT) {
-            toHistory.remove(0);
+        // 通知接收者，投递期间持有负载引用；回复总是投递，由请求方的投递执行器完成请求
+        if (!receiver.messageCallbacks.isEmpty() || message.isResponse()) {
+            if (!retainPayload(message.getPayload())) {
+                Log.e(TAG, "消息负载已释放: " + message.getId());
+                return false;
+            }
+            if (!receiver.mailbox.offer(message)) {
+                releasePayload(message.getPayload());
+                Log.w(TAG, "接收者邮箱已满: " + to + " (" + receiver.mailbox.capacity() + ")");
+                return false;
+            }
         }
-        toHistory.add(message);
         
-        // 通知接收者
-        List<MessageCallback> callbacks = messageCallbacks.get(to);
-        if (callbacks != null && !callbacks.isEmpty()) {
-            // 标记消息为已接收
-            message.setReceived(true);
-            
-            // 在主线程中回调
-            mainHandler.post(() -> {
-                for (MessageCallback callback : callbacks) {
-                    try {
-                        callback.onMessage(message);
-                    } catch (Exception e) {
-                        Log.e(TAG, "消息回调异常", e);
-                    }
-                }
-            });
-        }
+        // 更新消息历史
+        sender.messageHistory.add(message);
+        receiver.messageHistory.add(message);
         
         Log.d(TAG, "发送消息: " + from + " -> " + to + ", type=" + message.getType());
         return true;
@@ -970,8 +1408,29 @@ public class MpkInterAppCommunication {
         return sendMessage(message);
     }
     
+    /**
+     * 发送二进制负载
+     * 接收者读取负载的只读视图，不复制；调用者仍持有自己的引用，用完后调用 release
+     * 
+     * @param from 发送者 ID
+     * @param to 接收者 ID
+     * @param type 消息类型
+     * @param payload 二进制负载
+     * @return 是否发送成功
+     */
+    public boolean sendPayload(String from, String to, String type, MpkSharedPayload payload) {
+        Message message = new Message();
+        message.setFrom(from);
+        message.setTo(to);
+        message.setType(type);
+        message.setPayload(payload);
+        
+        return sendMessage(message);
+    }
+    
     /**
      * 广播消息
+     * 所有接收者共享同一份消息数据，接收者不应修改
      * 
      * @param from 发送者 ID
      * @param type 消息类型
@@ -979,32 +1438,367 @@ public class MpkInterAppCommunication {
      * @return 发送的消息数量
      */
     public int broadcastMessage(String from, String type, JSONObject data) {
-        if (!registeredApps.contains(from)) {
-            Log.e(TAG, "发送者未注册: " + from);
-            return 0;
-        }
-        
-        int count = 0;
-        for (String appId : registeredApps) {
-            if (!appId.equals(from)) {
-                Message message = new Message();
-                message.setFrom(from);
-                message.setTo(appId);
-                message.setType(type);
-                message.setData(data);
-                
-                if (sendMessage(message)) {
-                    count++;
-                }
-            }
-        }
-        
-        Log.d(TAG, "广播消息: " + from + ", type=" + type + ", count=" + count);
-        return count;
+        return broadcast(from, type, data, null);
     }
     
     /**
-     * 发布事件
+     * 广播二进制负载
+     * 所有接收者共享同一份负载，调用者仍持有自己的引用
+     * 
+     * @param from 发送者 ID
+     * @param type 消息类型
+     * @param payload 二进制负载
+     * @return 发送的消息数量
+     */
+    public int broadcastPayload(String from, String type, MpkSharedPayload payload) {
+        return broadcast(from, type, null, payload);
+    }
+    
+    /**
+     * 广播消息到除发送者之外的所有应用，邮箱已满的接收者收不到该消息
+     */
+    private int broadcast(String from, String type, JSONObject data, MpkSharedPayload payload) {
+        Endpoint sender = from != null ? endpoints.get(from) : null;
+        if (sender == null) {
+            Log.e(TAG, "发送者未注册: " + from);
+            return 0;
+        }
+        
+        if (payload != null && payload.isReleased()) {
+            Log.e(TAG, "广播负载已释放: " + type);
+            return 0;
+        }
+        
+        int count = 0;
+        for (Endpoint receiver : endpoints.values()) {
+            if (receiver == sender) {
+                continue;
+            }
+            
+            // 每个接收者一个消息对象，用于记录接收状态，数据和负载共享
+            Message message = new Message();
+            message.setFrom(from);
+            message.setTo(receiver.appId);
+            message.setType(type);
+            message.setData(data);
+            message.setPayload(payload);
+            
+            if (!receiver.messageCallbacks.isEmpty()) {
+                if (!retainPayload(payload)) {
+                    break;
+                }
+                if (!receiver.mailbox.offer(message)) {
+                    releasePayload(payload);
+                    Log.w(TAG, "接收者邮箱已满: " + receiver.appId);
+                    continue;
+                }
+            }
+            
+            sender.messageHistory.add(message);
+            receiver.messageHistory.add(message);
+            count++;
+        }
+        
+        Log.d(TAG, "广播消息: " + from + ", type=" + type + ", count=" + count);
+        return count;
+    }
+    
+    /**
+     * 发送请求
+     * 接收者在消息回调中调用 {@link #respond} 回复；回复或超时在请求方的投递执行器中回调。
+     * 每对应用之间未完成的请求数量达到上限时立即拒绝，请求方应稍后重试
+     * 
+     * @param from 请求方 ID
+     * @param to 接收者 ID
+     * @param type 消息类型
+     * @param data 消息数据
+     * @param timeoutMs 超时时间（毫秒），0 表示不超时
+     * @param callback 回调
+     * @return 请求关联 ID，发送失败或达到未完成请求上限时返回 -1，此时不回调
+     */
+    public long call(String from, String to, String type, JSONObject data, long timeoutMs, ResponseCallback callback) {
+        if (getEndpoint(from) == null) {
+            return -1;
+        }
+        
+        // 背压：限制每对应用之间未完成的请求数量
+        if (!acquireInFlight(from, to)) {
+            Log.w(TAG, "未完成请求过多: " + from + " -> " + to + " (" + maxInFlight + ")");
+            return -1;
+        }
+        
+        long id = nextCallId.getAndIncrement();
+        PendingCall pending = new PendingCall(id, from, to, callback);
+        synchronized (pendingCalls) {
+            pendingCalls.append(id, pending);
+        }
+        
+        if (timeoutMs > 0) {
+            pending.timeout = getCallTimer().schedule(() -> expireCall(id), timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        
+        Message request = new Message();
+        request.setFrom(from);
+        request.setTo(to);
+        request.setType(type);
+        request.setData(data);
+        request.setNeedsResponse(true);
+        request.setCorrelationId(id);
+        
+        if (!sendMessage(request)) {
+            // 接收者在发送前注销时请求已以错误结束并回调，此时仍返回关联 ID
+            return takePendingCall(id) != null ? -1 : id;
+        }
+        return id;
+    }
+    
+    /**
+     * 以默认超时时间发送请求
+     * 
+     * @param from 请求方 ID
+     * @param to 接收者 ID
+     * @param type 消息类型
+     * @param data 消息数据
+     * @param callback 回调
+     * @return 请求关联 ID，发送失败或达到未完成请求上限时返回 -1
+     */
+    public long call(String from, String to, String type, JSONObject data, ResponseCallback callback) {
+        return call(from, to, type, data, DEFAULT_CALL_TIMEOUT_MS, callback);
+    }
+    
+    /**
+     * 回复请求
+     * 
+     * @param request 请求消息
+     * @param data 回复数据
+     * @return 是否发送成功
+     */
+    public boolean respond(Message request, JSONObject data) {
+        return respond(request, data, null);
+    }
+    
+    /**
+     * 回复请求，附带二进制负载
+     * 
+     * @param request 请求消息
+     * @param data 回复数据
+     * @param payload 二进制负载，可以为 null
+     * @return 是否发送成功
+     */
+    public boolean respond(Message request, JSONObject data, MpkSharedPayload payload) {
+        if (!request.isNeedsResponse() || request.getCorrelationId() == 0) {
+            Log.e(TAG, "消息不需要回复: " + request.getId());
+            return false;
+        }
+        
+        Message response = request.createResponse();
+        response.setData(data);
+        response.setPayload(payload);
+        return sendMessage(response);
+    }
+    
+    /**
+     * 取消未完成的请求，不再回调
+     * 
+     * @param callId 请求关联 ID
+     * @return 是否取消了未完成的请求
+     */
+    public boolean cancelCall(long callId) {
+        return takePendingCall(callId) != null;
+    }
+    
+    /**
+     * 设置每对应用之间未完成请求数量上限
+     * 
+     * @param maxInFlight 上限
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("未完成请求上限必须大于 0: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+    
+    /**
+     * 获取两个应用之间未完成的请求数量
+     * 
+     * @param from 请求方 ID
+     * @param to 接收者 ID
+     * @return 未完成的请求数量
+     */
+    public int getInFlightCount(String from, String to) {
+        AtomicInteger inFlight = inFlightCalls.get(from + '\n' + to);
+        return inFlight != null ? inFlight.get() : 0;
+    }
+    
+    /**
+     * 完成请求，在请求方的投递执行器中执行
+     * 
+     * @param response 回复消息
+     * @return 是否对应未完成的请求
+     */
+    private boolean completeCall(Message response) {
+        long id = response.getCorrelationId();
+        PendingCall pending;
+        synchronized (pendingCalls) {
+            pending = pendingCalls.get(id);
+            // 只接受请求接收者发给请求方的回复
+            if (pending == null || !pending.to.equals(response.getFrom()) || !pending.from.equals(response.getTo())) {
+                pending = null;
+            } else {
+                pendingCalls.remove(id);
+            }
+        }
+        
+        if (pending == null) {
+            return false;
+        }
+        finishCall(pending);
+        
+        try {
+            pending.callback.onResponse(response);
+        } catch (Exception e) {
+            Log.e(TAG, "请求回调异常: " + id, e);
+        }
+        return true;
+    }
+    
+    /**
+     * 请求超时，在定时器线程中执行，回调转到请求方的投递执行器
+     * 
+     * @param id 请求关联 ID
+     */
+    private void expireCall(long id) {
+        PendingCall pending = takePendingCall(id);
+        if (pending != null) {
+            failCall(pending, new TimeoutException("请求超时: " + pending.from + " -> " + pending.to + ", id=" + id));
+        }
+    }
+    
+    /**
+     * 以错误结束应用发出和收到的所有未完成请求，在注销应用时调用
+     * 
+     * @param appId 应用 ID
+     */
+    private void failPendingCalls(String appId) {
+        List<PendingCall> failed = new ArrayList<>();
+        synchronized (pendingCalls) {
+            for (int i = pendingCalls.size() - 1; i >= 0; i--) {
+                PendingCall pending = pendingCalls.valueAt(i);
+                if (pending.from.equals(appId) || pending.to.equals(appId)) {
+                    failed.add(pending);
+                    pendingCalls.removeAt(i);
+                }
+            }
+        }
+        
+        for (PendingCall pending : failed) {
+            finishCall(pending);
+        }
+        for (int i = failed.size() - 1; i >= 0; i--) {
+            PendingCall pending = failed.get(i);
+            failCall(pending, new IllegalStateException("应用已注销: " + appId
+                + " (" + pending.from + " -> " + pending.to + ", id=" + pending.id + ")"));
+        }
+        
+        if (!failed.isEmpty()) {
+            Log.i(TAG, "注销应用，结束未完成的请求: " + appId + ", " + failed.size() + " 个");
+        }
+    }
+    
+    /**
+     * 以错误回调已移除的请求，回调转到请求方的投递执行器；
+     * 请求方已注销或邮箱已满时在当前线程中回调
+     * 
+     * @param pending 请求
+     * @param error 错误
+     */
+    private void failCall(PendingCall pending, Exception error) {
+        Runnable task = () -> pending.callback.onError(error);
+        Endpoint caller = endpoints.get(pending.from);
+        if (caller != null && caller.mailbox.offer(task)) {
+            return;
+        }
+        
+        if (caller != null) {
+            Log.w(TAG, "请求方邮箱已满，在当前线程中回调错误: " + pending.from);
+        }
+        try {
+            task.run();
+        } catch (Exception e) {
+            Log.e(TAG, "请求回调异常: " + pending.id, e);
+        }
+    }
+    
+    /**
+     * 移除未完成的请求
+     * 
+     * @param id 请求关联 ID
+     * @return 请求，已完成时返回 null
+     */
+    private PendingCall takePendingCall(long id) {
+        PendingCall pending;
+        synchronized (pendingCalls) {
+            pending = pendingCalls.get(id);
+            if (pending != null) {
+                pendingCalls.remove(id);
+            }
+        }
+        
+        if (pending != null) {
+            finishCall(pending);
+        }
+        return pending;
+    }
+    
+    /**
+     * 取消超时并减少未完成请求数量
+     */
+    private void finishCall(PendingCall pending) {
+        ScheduledFuture<?> timeout = pending.timeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        releaseInFlight(pending.from, pending.to);
+    }
+    
+    /**
+     * 占用一个未完成请求名额，计数的创建和检查在同一次原子更新中完成
+     * 
+     * @param from 请求方 ID
+     * @param to 接收者 ID
+     * @return 是否未达到上限
+     */
+    private boolean acquireInFlight(String from, String to) {
+        int limit = maxInFlight;
+        boolean[] acquired = new boolean[1];
+        inFlightCalls.compute(from + '\n' + to, (key, count) -> {
+            if (count == null) {
+                count = new AtomicInteger();
+            }
+            if (count.get() < limit) {
+                count.incrementAndGet();
+                acquired[0] = true;
+            }
+            return count.get() > 0 ? count : null;
+        });
+        return acquired[0];
+    }
+    
+    /**
+     * 归还一个未完成请求名额，数量减到 0 时移除计数
+     * 
+     * @param from 请求方 ID
+     * @param to 接收者 ID
+     */
+    private void releaseInFlight(String from, String to) {
+        inFlightCalls.computeIfPresent(from + '\n' + to,
+            (key, count) -> count.decrementAndGet() > 0 ? count : null);
+    }
+    
+    /**
+     * 发布事件
+     * 可以在任意线程中调用，事件在每个订阅者的投递执行器中回调，邮箱已满的订阅者收不到该事件
      * 
      * @param event 事件
      * @return 是否成功发布
@@ -1013,48 +1807,46 @@ public class MpkInterAppCommunication {
         String source = event.getSource();
         String topic = event.getTopic();
         
-        if (!registeredApps.contains(source)) {
+        Endpoint sourceEndpoint = source != null ? endpoints.get(source) : null;
+        if (sourceEndpoint == null) {
             Log.e(TAG, "事件源未注册: " + source);
             return false;
         }
         
-        // 更新事件历史
-        List<Event> sourceHistory = eventHistory.get(source);
-        if (sourceHistory.size() >= HISTORY_SIZE_LIMIT) {
-            sourceHistory.remove(0);
+        boolean hasTopic = topic != null && !topic.isEmpty();
+        if (hasTopic && !MpkTopicTrie.isValidTopic(topic)) {
+            Log.e(TAG, "发布的主题不能包含通配符: " + topic);
+            return false;
         }
-        sourceHistory.add(event);
+        
+        if (event.getPayload() != null && event.getPayload().isReleased()) {
+            Log.e(TAG, "事件负载已释放: " + event.getName());
+            return false;
+        }
+        
+        // 更新事件历史
+        sourceEndpoint.eventHistory.add(event);
         
         // 如果有主题，通知订阅者
-        if (topic != null && !topic.isEmpty()) {
-            Set<String> subscribers = topicSubscriptions.get(topic);
-            if (subscribers != null && !subscribers.isEmpty()) {
-                for (String appId : subscribers) {
-                    if (!appId.equals(source)) {
-                        // 更新事件历史
-                        List<Event> subscriberHistory = eventHistory.get(appId);
-                        if (subscriberHistory != null) {
-                            if (subscriberHistory.size() >= HISTORY_SIZE_LIMIT) {
-                                subscriberHistory.remove(0);
-                            }
-                            subscriberHistory.add(event);
-                        }
-                        
-                        // 通知订阅者
-                        List<EventCallback> callbacks = eventCallbacks.get(appId);
-                        if (callbacks != null && !callbacks.isEmpty()) {
-                            final String finalAppId = appId;
-                            mainHandler.post(() -> {
-                                for (EventCallback callback : callbacks) {
-                                    try {
-                                        callback.onEvent(event);
-                                    } catch (Exception e) {
-                                        Log.e(TAG, "事件回调异常: " + finalAppId, e);
-                                    }
-                                }
-                            });
-                        }
-                    }
+        if (hasTopic) {
+            for (String appId : topicSubscriptions.match(topic)) {
+                if (appId.equals(source)) {
+                    continue;
+                }
+                
+                Endpoint endpoint = endpoints.get(appId);
+                if (endpoint == null) {
+                    continue;
+                }
+                
+                // 更新事件历史
+                endpoint.eventHistory.add(event);
+                
+                // 通知订阅者，投递期间持有负载引用
+                if (!endpoint.eventCallbacks.isEmpty() && retainPayload(event.getPayload())
+                    && !endpoint.mailbox.offer(event)) {
+                    releasePayload(event.getPayload());
+                    Log.w(TAG, "订阅者邮箱已满，丢弃事件: " + appId + ", name=" + event.getName());
                 }
             }
         }
@@ -1063,6 +1855,80 @@ public class MpkInterAppCommunication {
         return true;
     }
     
+    /**
+     * 批量发布同一事件源的主题事件
+     * 每个订阅者只入队一次，收到的事件在一次投递中按发布顺序回调
+     * 
+     * @param source 事件源
+     * @param events 事件，事件源会被设置为 source
+     * @return 成功发布的事件数量
+     */
+    public int publishEvents(String source, List<Event> events) {
+        Endpoint sourceEndpoint = source != null ? endpoints.get(source) : null;
+        if (sourceEndpoint == null) {
+            Log.e(TAG, "事件源未注册: " + source);
+            return 0;
+        }
+        
+        // 按订阅者分组
+        Map<String, List<Event>> batches = new HashMap<>();
+        int published = 0;
+        for (Event event : events) {
+            String topic = event.getTopic();
+            if (topic != null && !topic.isEmpty() && !MpkTopicTrie.isValidTopic(topic)) {
+                Log.e(TAG, "发布的主题不能包含通配符: " + topic);
+                continue;
+            }
+            
+            event.setSource(source);
+            sourceEndpoint.eventHistory.add(event);
+            published++;
+            
+            if (topic == null || topic.isEmpty()) {
+                continue;
+            }
+            for (String appId : topicSubscriptions.match(topic)) {
+                if (!appId.equals(source)) {
+                    batches.computeIfAbsent(appId, key -> new ArrayList<>()).add(event);
+                }
+            }
+        }
+        
+        // 通知订阅者
+        for (Map.Entry<String, List<Event>> entry : batches.entrySet()) {
+            Endpoint endpoint = endpoints.get(entry.getKey());
+            if (endpoint == null) {
+                continue;
+            }
+            
+            List<Event> batch = entry.getValue();
+            for (Event event : batch) {
+                endpoint.eventHistory.add(event);
+            }
+            
+            if (endpoint.eventCallbacks.isEmpty()) {
+                continue;
+            }
+            
+            // 投递期间持有负载引用，已释放负载的事件不投递
+            List<Event> deliverable = new ArrayList<>(batch.size());
+            for (Event event : batch) {
+                if (retainPayload(event.getPayload())) {
+                    deliverable.add(event);
+                }
+            }
+            if (!deliverable.isEmpty() && !endpoint.mailbox.offer(deliverable)) {
+                for (Event event : deliverable) {
+                    releasePayload(event.getPayload());
+                }
+                Log.w(TAG, "订阅者邮箱已满，丢弃事件: " + entry.getKey() + ", count=" + deliverable.size());
+            }
+        }
+        
+        Log.d(TAG, "批量发布事件: " + source + ", count=" + published + ", subscribers=" + batches.size());
+        return published;
+    }
+    
     /**
      * 发布事件
      * 
@@ -1100,36 +1966,126 @@ public class MpkInterAppCommunication {
         }
     }
     
+    /**
+     * 设置新注册应用保留的历史记录数量，已注册的应用不受影响
+     * 
+     * @param capacity 历史记录数量
+     */
+    public void setHistoryCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("历史记录容量必须大于 0: " + capacity);
+        }
+        this.historyCapacity = capacity;
+    }
+    
+    /**
+     * 设置应用保留的历史记录数量，保留最近的记录
+     * 
+     * @param appId 应用 ID
+     * @param capacity 历史记录数量
+     * @return 是否成功设置
+     */
+    public boolean setHistoryCapacity(String appId, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("历史记录容量必须大于 0: " + capacity);
+        }
+        
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
+            return false;
+        }
+        
+        // 替换期间追加到旧缓冲区的记录可能丢失，仅用于调试的历史记录可以接受
+        endpoint.messageHistory = resize(endpoint.messageHistory, capacity);
+        endpoint.eventHistory = resize(endpoint.eventHistory, capacity);
+        endpoint.attachSpill(historySpill);
+        
+        Log.d(TAG, "设置历史记录容量: " + appId + " -> " + capacity);
+        return true;
+    }
+    
+    /**
+     * 设置历史记录溢出日志目录
+     * 启用后被覆盖的历史记录以 JSON 行追加到 &lt;appId&gt;.messages.log 和 &lt;appId&gt;.events.log
+     * 
+     * @param directory 日志目录，为 null 时停止写入
+     * @return 是否成功设置
+     */
+    public boolean setHistorySpillDirectory(File directory) {
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "创建历史记录溢出日志目录失败: " + directory);
+            return false;
+        }
+        
+        HistorySpill spill = directory != null ? new HistorySpill(directory) : null;
+        HistorySpill previous = historySpill;
+        historySpill = spill;
+        
+        for (Endpoint endpoint : endpoints.values()) {
+            endpoint.attachSpill(spill);
+        }
+        
+        if (previous != null) {
+            previous.close();
+        }
+        
+        Log.i(TAG, "历史记录溢出日志: " + directory);
+        return true;
+    }
+    
+    /**
+     * 打开应用的消息历史游标
+     * 按发送顺序读取，不复制历史记录；容量已满后最早的记录被覆盖，游标会跳过读取前已被覆盖的记录
+     * 
+     * @param appId 应用 ID
+     * @return 游标，应用未注册时返回 null
+     */
+    public MpkHistoryBuffer<Message>.Cursor openMessageHistory(String appId) {
+        Endpoint endpoint = getEndpoint(appId);
+        return endpoint != null ? endpoint.messageHistory.cursor() : null;
+    }
+    
+    /**
+     * 打开应用的事件历史游标
+     * 
+     * @param appId 应用 ID
+     * @return 游标，应用未注册时返回 null
+     */
+    public MpkHistoryBuffer<Event>.Cursor openEventHistory(String appId) {
+        Endpoint endpoint = getEndpoint(appId);
+        return endpoint != null ? endpoint.eventHistory.cursor() : null;
+    }
+    
     /**
      * 获取应用的消息历史
+     * 复制当前的历史记录，频繁读取时使用 {@link #openMessageHistory}
      * 
      * @param appId 应用 ID
-     * @return 消息历史
+     * @return 消息历史快照
      */
     public List<Message> getMessageHistory(String appId) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
             return Collections.emptyList();
         }
         
-        List<Message> history = messageHistory.get(appId);
-        return Collections.unmodifiableList(history);
+        return Collections.unmodifiableList(endpoint.messageHistory.toList());
     }
     
     /**
      * 获取应用的事件历史
+     * 复制当前的历史记录，频繁读取时使用 {@link #openEventHistory}
      * 
      * @param appId 应用 ID
-     * @return 事件历史
+     * @return 事件历史快照
      */
     public List<Event> getEventHistory(String appId) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
             return Collections.emptyList();
         }
         
-        List<Event> history = eventHistory.get(appId);
-        return Collections.unmodifiableList(history);
+        return Collections.unmodifiableList(endpoint.eventHistory.toList());
     }
     
     /**
@@ -1139,13 +2095,12 @@ public class MpkInterAppCommunication {
      * @return 是否成功清理
      */
     public boolean clearMessageHistory(String appId) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
             return false;
         }
         
-        List<Message> history = messageHistory.get(appId);
-        history.clear();
+        endpoint.messageHistory.clear();
         
         Log.d(TAG, "清理消息历史: " + appId);
         return true;
@@ -1158,13 +2113,12 @@ public class MpkInterAppCommunication {
      * @return 是否成功清理
      */
     public boolean clearEventHistory(String appId) {
-        if (!registeredApps.contains(appId)) {
-            Log.e(TAG, "应用未注册: " + appId);
+        Endpoint endpoint = getEndpoint(appId);
+        if (endpoint == null) {
             return false;
         }
         
-        List<Event> history = eventHistory.get(appId);
-        history.clear();
+        endpoint.eventHistory.clear();
         
         Log.d(TAG, "清理事件历史: " + appId);
         return true;
@@ -1174,14 +2128,121 @@ public class MpkInterAppCommunication {
      * 关闭应用间通信
      */
     public void shutdown() {
-        registeredApps.clear();
-        messageCallbacks.clear();
-        eventCallbacks.clear();
+        for (Endpoint endpoint : endpoints.values()) {
+            endpoint.mailbox.close();
+        }
+        endpoints.clear();
+        
+        // 丢弃未完成的请求
+        synchronized (pendingCalls) {
+            for (int i = 0; i < pendingCalls.size(); i++) {
+                ScheduledFuture<?> timeout = pendingCalls.valueAt(i).timeout;
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+            }
+            pendingCalls.clear();
+        }
+        inFlightCalls.clear();
         topicSubscriptions.clear();
         connectionCallbacks.clear();
-        messageHistory.clear();
-        eventHistory.clear();
+        
+        HistorySpill spill = historySpill;
+        historySpill = null;
+        if (spill != null) {
+            spill.close();
+        }
         
         Log.i(TAG, "应用间通信已关闭");
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 获取已注册应用的端点
+     * 
+     * @param appId 应用 ID
+     * @return 端点，应用未注册时返回 null
+     */
+    private Endpoint getEndpoint(String appId) {
+        Endpoint endpoint = appId != null ? endpoints.get(appId) : null;
+        if (endpoint == null) {
+            Log.e(TAG, "应用未注册: " + appId);
+        }
+        return endpoint;
+    }
+    
+    /**
+     * 投递前增加负载引用
+     * @return 是否成功，没有负载时返回 true，负载已释放时返回 false
+     */
+    private static boolean retainPayload(MpkSharedPayload payload) {
+        return payload == null || payload.tryRetain();
+    }
+    
+    /**
+     * 投递后释放负载引用
+     */
+    private static void releasePayload(MpkSharedPayload payload) {
+        if (payload != null) {
+            payload.release();
+        }
+    }
+    
+    /**
+     * 创建新容量的历史记录缓冲区，复制最近的记录
+     */
+    private static <T> MpkHistoryBuffer<T> resize(MpkHistoryBuffer<T> history, int capacity) {
+        MpkHistoryBuffer<T> resized = new MpkHistoryBuffer<>(capacity);
+        MpkHistoryBuffer<T>.Cursor cursor = history.cursor(history.getHeadSequence() - capacity);
+        T item;
+        while ((item = cursor.next()) != null) {
+            resized.add(item);
+        }
+        return resized;
+    }
+    
+    /**
+     * 获取共用的请求超时定时器
+     * @return 定时器
+     */
+    private static ScheduledThreadPoolExecutor getCallTimer() {
+        ScheduledThreadPoolExecutor timer = callTimer;
+        if (timer == null) {
+            synchronized (MpkInterAppCommunication.class) {
+                timer = callTimer;
+                if (timer == null) {
+                    timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                        Thread thread = new Thread(runnable, "MpkRpcTimer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    // 请求完成时取消的超时任务立即移出队列
+                    timer.setRemoveOnCancelPolicy(true);
+                    callTimer = timer;
+                }
+            }
+        }
+        return timer;
+    }
+    
+    /**
+     * 获取共用的投递线程池
+     * @return 投递线程池
+     */
+    private static ExecutorService getDefaultExecutor() {
+        ExecutorService executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (MpkInterAppCommunication.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(DELIVERY_THREADS, runnable -> {
+                        Thread thread = new Thread(runnable, "MpkMessageBus-" + THREAD_COUNT.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,301 @@
+package com.mobileplatform.creator.mpk;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MPK 跨进程消息总线基准测试
+ * 主机进程启动跨进程传输和一个回显应用，再启动一个客户端进程以外部应用身份接入，测量：
+ * 往返延迟（客户端发消息给回显应用并等待回复，取中位数）和吞吐量（客户端连续发送消息，
+ * 最后发送一条标记并等待其回复，标记在所有消息之后投递，因此收到回复时所有消息都已投递）。
+ * 无法启动客户端进程时，在主机进程内通过同一个套接字运行客户端，结果中标明不是跨进程
+ */
+public class MpkIpcBenchmark {
+    private static final String TAG = "MpkIpcBenchmark";
+
+    // 默认吞吐量测试的消息数量
+    public static final int DEFAULT_MESSAGES = 100_000;
+
+    // 默认往返延迟测试的次数
+    public static final int DEFAULT_ROUND_TRIPS = 1_000;
+
+    // 等待回复的超时时间（秒）
+    private static final long REPLY_TIMEOUT_SECONDS = 30;
+
+    // 客户端进程输出结果行的前缀
+    private static final String RESULT_PREFIX = "MPK_IPC_RESULT ";
+
+    // 主机上的回显应用
+    private static final String HOST_APP = "benchmark.host";
+
+    // 客户端进程的应用
+    private static final String REMOTE_APP = "benchmark.remote";
+
+    // 回显应用原样发回的消息类型
+    private static final String TYPE_ECHO = "echo";
+    private static final String TYPE_FLUSH = "flush";
+    private static final String TYPE_DATA = "data";
+
+    /**
+     * 基准测试结果
+     */
+    public static class Result {
+        // 是否在独立的客户端进程中测量
+        public final boolean crossProcess;
+
+        // 往返延迟中位数（微秒）
+        public final double roundTripMicros;
+
+        // 客户端到主机应用每秒投递的消息数量
+        public final double messagesPerSecond;
+
+        // 客户端平均每次刷新写出的帧数量
+        public final double framesPerFlush;
+
+        Result(boolean crossProcess, double roundTripMicros, double messagesPerSecond, double framesPerFlush) {
+            this.crossProcess = crossProcess;
+            this.roundTripMicros = roundTripMicros;
+            this.messagesPerSecond = messagesPerSecond;
+            this.framesPerFlush = framesPerFlush;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "往返延迟: %.1f 微秒, 吞吐量: %.0f 条/秒, 每次写入 %.1f 帧%s",
+                roundTripMicros, messagesPerSecond, framesPerFlush, crossProcess ? "" : " (进程内)");
+        }
+    }
+
+    /**
+     * 以应用自身的 APK 通过 app_process 启动客户端进程运行基准测试
+     * @param context 上下文
+     * @param messages 吞吐量测试的消息数量
+     * @param roundTrips 往返延迟测试的次数
+     * @return 测试结果
+     */
+    public static Result run(Context context, int messages, int roundTrips) throws Exception {
+        List<String> command = Arrays.asList(
+            "/system/bin/app_process",
+            "-Djava.class.path=" + context.getPackageCodePath(),
+            "/system/bin",
+            MpkIpcBenchmark.class.getName());
+        return run(command, messages, roundTrips);
+    }
+
+    /**
+     * 以默认参数运行基准测试
+     * @param context 上下文
+     * @return 测试结果
+     */
+    public static Result run(Context context) throws Exception {
+        return run(context, DEFAULT_MESSAGES, DEFAULT_ROUND_TRIPS);
+    }
+
+    /**
+     * 以指定命令启动客户端进程运行基准测试，命令之后追加消息数量和往返次数两个参数，
+     * 客户端进程应执行 {@link #main(String[])}
+     * @param clientCommand 客户端进程命令
+     * @param messages 吞吐量测试的消息数量
+     * @param roundTrips 往返延迟测试的次数
+     * @return 测试结果
+     */
+    public static Result run(List<String> clientCommand, int messages, int roundTrips) throws Exception {
+        MpkInterAppCommunication bus = new MpkInterAppCommunication();
+        MpkIpcTransport transport = new MpkIpcTransport(bus,
+            "mpk.benchmark." + Process.myPid() + "." + System.nanoTime());
+        try {
+            bus.registerApp(HOST_APP);
+            bus.registerApp(REMOTE_APP);
+            bus.addMessageCallback(HOST_APP, message -> {
+                if (!TYPE_DATA.equals(message.getType())) {
+                    bus.sendMessage(HOST_APP, message.getFrom(), message.getType(), message.getData());
+                }
+            });
+            transport.start();
+
+            Result result = runClientProcess(clientCommand, transport.getEnvironment(REMOTE_APP), messages, roundTrips);
+            if (result == null) {
+                MpkIpcClient client = MpkIpcClient.connect(transport.getSocketName(), transport.authorize(REMOTE_APP));
+                try {
+                    result = runClient(client, messages, roundTrips, false);
+                } finally {
+                    client.close();
+                }
+            }
+
+            Log.i(TAG, "跨进程消息总线基准测试 (" + messages + " 条, " + roundTrips + " 次往返): " + result);
+            return result;
+        } finally {
+            transport.stop();
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * 客户端进程入口，按环境变量连接主机，测试完成后在标准输出打印结果行
+     * @param args 吞吐量测试的消息数量、往返延迟测试的次数
+     */
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MESSAGES;
+        int roundTrips = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUND_TRIPS;
+
+        MpkIpcClient client = MpkIpcClient.fromEnvironment();
+        try {
+            Result result = runClient(client, messages, roundTrips, true);
+            System.out.println(String.format(Locale.ROOT, RESULT_PREFIX + "%f %f %f",
+                result.roundTripMicros, result.messagesPerSecond, result.framesPerFlush));
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * 启动客户端进程并读取结果
+     * @return 测试结果，进程无法启动或没有输出结果时返回 null
+     */
+    private static Result runClientProcess(List<String> clientCommand, Map<String, String> env,
+                                           int messages, int roundTrips) throws InterruptedException {
+        List<String> command = new ArrayList<>(clientCommand);
+        command.add(String.valueOf(messages));
+        command.add(String.valueOf(roundTrips));
+
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        builder.environment().putAll(env);
+
+        java.lang.Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            Log.w(TAG, "无法启动客户端进程，改为进程内测试: " + e.getMessage());
+            return null;
+        }
+
+        Result result = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    String[] fields = line.substring(RESULT_PREFIX.length()).trim().split(" ");
+                    result = new Result(true, Double.parseDouble(fields[0]),
+                        Double.parseDouble(fields[1]), Double.parseDouble(fields[2]));
+                } else {
+                    Log.d(TAG, "客户端进程: " + line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "读取客户端进程输出失败", e);
+        } finally {
+            process.destroy();
+        }
+
+        int exitCode = process.waitFor();
+        if (result == null) {
+            Log.w(TAG, "客户端进程没有输出结果 (exitCode=" + exitCode + ")，改为进程内测试");
+        }
+        return result;
+    }
+
+    /**
+     * 在客户端中测量往返延迟和吞吐量
+     */
+    private static Result runClient(MpkIpcClient client, int messages, int roundTrips, boolean crossProcess)
+            throws Exception {
+        BlockingQueue<MpkInterAppCommunication.Message> replies = new LinkedBlockingQueue<>();
+        client.start(new MpkIpcClient.Listener() {
+            @Override
+            public void onMessage(MpkInterAppCommunication.Message message) {
+                replies.offer(message);
+            }
+
+            @Override
+            public void onEvent(MpkInterAppCommunication.Event event) {
+            }
+
+            @Override
+            public void onPong(long value) {
+            }
+
+            @Override
+            public void onClosed() {
+            }
+        });
+
+        JSONObject data = new JSONObject();
+        data.put("value", 1);
+
+        // 预热
+        for (int i = 0; i < Math.min(roundTrips, 100); i++) {
+            send(client, TYPE_ECHO, data);
+            awaitReply(replies, TYPE_ECHO);
+        }
+
+        long[] samples = new long[Math.max(1, roundTrips)];
+        for (int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            send(client, TYPE_ECHO, data);
+            awaitReply(replies, TYPE_ECHO);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+
+        long framesBefore = client.getFramesWritten();
+        long flushesBefore = client.getFlushes();
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            send(client, TYPE_DATA, data);
+        }
+        send(client, TYPE_FLUSH, data);
+        awaitReply(replies, TYPE_FLUSH);
+        long elapsed = System.nanoTime() - start;
+
+        long frames = client.getFramesWritten() - framesBefore;
+        long flushes = client.getFlushes() - flushesBefore;
+        return new Result(crossProcess,
+            samples[samples.length / 2] / 1000.0,
+            messages * 1_000_000_000.0 / Math.max(1, elapsed),
+            frames / (double) Math.max(1, flushes));
+    }
+
+    /**
+     * 发送消息，写入队列已满时让出线程后重试
+     */
+    private static void send(MpkIpcClient client, String type, JSONObject data) {
+        while (!client.sendMessage(HOST_APP, type, data)) {
+            if (client.isClosed()) {
+                throw new IllegalStateException("连接已关闭");
+            }
+            Thread.yield();
+        }
+    }
+
+    private static void awaitReply(BlockingQueue<MpkInterAppCommunication.Message> replies, String type)
+            throws InterruptedException {
+        MpkInterAppCommunication.Message reply = replies.poll(REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (reply == null) {
+            throw new IllegalStateException("等待回复超时: " + type);
+        }
+        if (!type.equals(reply.getType())) {
+            throw new IllegalStateException("意外的回复: " + reply.getType());
+        }
+    }
+
+    private MpkIpcBenchmark() {
+    }
+}
@@ -0,0 +1,309 @@
+package com.mobileplatform.creator.mpk;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * MPK 跨进程消息总线客户端
+ * 运行在外部进程中的 Java 应用通过它接入主机的应用间消息总线，其他语言的应用按 {@link MpkIpcProtocol} 自行实现；
+ * 发送在调用线程中编码后交给写入线程合并写出，收到的消息和事件在读取线程中回调
+ */
+public class MpkIpcClient implements Closeable {
+    private static final String TAG = "MpkIpcClient";
+
+    /**
+     * 客户端监听器，在读取线程中回调，不应执行耗时操作
+     */
+    public interface Listener {
+        /**
+         * 收到消息，发送者为主机上的应用或其他外部应用
+         * @param message 消息
+         */
+        void onMessage(MpkInterAppCommunication.Message message);
+
+        /**
+         * 收到事件
+         * @param event 事件
+         */
+        void onEvent(MpkInterAppCommunication.Event event);
+
+        /**
+         * 收到 PING 的回复
+         * @param value PING 携带的值
+         */
+        void onPong(long value);
+
+        /**
+         * 连接已关闭
+         */
+        void onClosed();
+    }
+
+    private final LocalSocket socket;
+    private final DataInputStream in;
+    private final MpkIpcProtocol.FrameWriter writer;
+    private final String appId;
+
+    private volatile Listener listener;
+    private volatile boolean closed;
+
+    private MpkIpcClient(LocalSocket socket, DataInputStream in, MpkIpcProtocol.FrameWriter writer, String appId) {
+        this.socket = socket;
+        this.in = in;
+        this.writer = writer;
+        this.appId = appId;
+    }
+
+    /**
+     * 连接主机并完成握手
+     * @param socketName 抽象命名空间中的套接字名称
+     * @param token 主机为应用签发的令牌
+     * @return 客户端，调用 {@link #start(Listener)} 后开始接收
+     * @throws IOException 如果连接失败或令牌被拒绝
+     */
+    public static MpkIpcClient connect(String socketName, String token) throws IOException {
+        LocalSocket socket = new LocalSocket();
+        MpkIpcProtocol.FrameWriter writer = null;
+        try {
+            socket.connect(new LocalSocketAddress(socketName));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            writer = new MpkIpcProtocol.FrameWriter(socket.getOutputStream(), "MpkIpcClientWriter");
+            writer.send(MpkIpcProtocol.encodeString(MpkIpcProtocol.HELLO, token));
+
+            MpkIpcProtocol.Frame reply = MpkIpcProtocol.readFrame(in);
+            if (reply.kind == MpkIpcProtocol.ERROR) {
+                throw new IOException("主机拒绝连接: " + reply.readString());
+            }
+            if (reply.kind != MpkIpcProtocol.WELCOME) {
+                throw new IOException("无效的握手回复: " + reply.kind);
+            }
+
+            String appId = reply.readString();
+            Log.i(TAG, "已连接消息总线: " + appId);
+            return new MpkIpcClient(socket, in, writer, appId);
+        } catch (IOException | RuntimeException e) {
+            if (writer != null) {
+                writer.close();
+            }
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 按主机启动进程时设置的环境变量连接
+     * @return 客户端
+     * @throws IOException 如果环境变量缺失或连接失败
+     */
+    public static MpkIpcClient fromEnvironment() throws IOException {
+        String socketName = System.getenv(MpkIpcProtocol.ENV_SOCKET);
+        String token = System.getenv(MpkIpcProtocol.ENV_TOKEN);
+        if (socketName == null || token == null) {
+            throw new IOException("未设置消息总线环境变量: " + MpkIpcProtocol.ENV_SOCKET);
+        }
+        return connect(socketName, token);
+    }
+
+    /**
+     * 设置监听器并启动读取线程
+     * @param listener 监听器
+     */
+    public void start(Listener listener) {
+        this.listener = listener;
+        Thread reader = new Thread(this::readLoop, "MpkIpcClientReader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 获取主机分配的应用 ID
+     * @return 应用 ID
+     */
+    public String getAppId() {
+        return appId;
+    }
+
+    /**
+     * 发送消息
+     * @param to 接收者应用 ID
+     * @param type 消息类型
+     * @param data 消息数据
+     * @return 是否已提交，写入队列已满或连接已关闭时返回 false
+     */
+    public boolean sendMessage(String to, String type, JSONObject data) {
+        return sendMessage(to, type, data, null);
+    }
+
+    /**
+     * 发送带二进制负载的消息，负载在调用时复制到帧中，调用后可以释放
+     * @param to 接收者应用 ID
+     * @param type 消息类型
+     * @param data 消息数据
+     * @param payload 二进制负载
+     * @return 是否已提交
+     */
+    public boolean sendMessage(String to, String type, JSONObject data, MpkSharedPayload payload) {
+        MpkInterAppCommunication.Message message = new MpkInterAppCommunication.Message();
+        message.setFrom(appId);
+        message.setTo(to);
+        message.setType(type);
+        message.setData(data);
+        message.setPayload(payload);
+        return send(message);
+    }
+
+    /**
+     * 发送消息，可用于发起需要回复的请求
+     * @param message 消息，接收者为 message.getTo()
+     * @return 是否已提交
+     */
+    public boolean send(MpkInterAppCommunication.Message message) {
+        return !closed && writer.send(MpkIpcProtocol.encodeMessage(message, message.getTo()));
+    }
+
+    /**
+     * 回复请求
+     * @param request 收到的请求
+     * @param data 回复数据
+     * @return 是否已提交
+     */
+    public boolean respond(MpkInterAppCommunication.Message request, JSONObject data) {
+        MpkInterAppCommunication.Message response = request.createResponse();
+        response.setData(data);
+        return send(response);
+    }
+
+    /**
+     * 发布事件，事件源由主机设为当前应用
+     * @param name 事件名称
+     * @param topic 主题，为 null 时广播给所有应用
+     * @param data 事件数据
+     * @return 是否已提交
+     */
+    public boolean publishEvent(String name, String topic, JSONObject data) {
+        MpkInterAppCommunication.Event event = new MpkInterAppCommunication.Event(name, appId, topic, data);
+        return !closed && writer.send(MpkIpcProtocol.encodeEvent(event));
+    }
+
+    /**
+     * 订阅主题
+     * @param filter 订阅过滤器，支持通配符
+     * @return 是否已提交
+     */
+    public boolean subscribe(String filter) {
+        return !closed && writer.send(MpkIpcProtocol.encodeString(MpkIpcProtocol.SUBSCRIBE, filter));
+    }
+
+    /**
+     * 取消订阅主题
+     * @param filter 订阅过滤器
+     * @return 是否已提交
+     */
+    public boolean unsubscribe(String filter) {
+        return !closed && writer.send(MpkIpcProtocol.encodeString(MpkIpcProtocol.UNSUBSCRIBE, filter));
+    }
+
+    /**
+     * 发送 PING，主机回复后回调 {@link Listener#onPong(long)}
+     * @param value 回复中携带的值
+     * @return 是否已提交
+     */
+    public boolean ping(long value) {
+        return !closed && writer.send(MpkIpcProtocol.encodeLong(MpkIpcProtocol.PING, value));
+    }
+
+    /**
+     * 获取已写出的帧数量
+     * @return 帧数量
+     */
+    public long getFramesWritten() {
+        return writer.getFramesWritten();
+    }
+
+    /**
+     * 获取写出时的刷新次数，与帧数量之比反映合并写入的效果
+     * @return 刷新次数
+     */
+    public long getFlushes() {
+        return writer.getFlushes();
+    }
+
+    /**
+     * 是否已关闭
+     * @return 是否已关闭
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 写完已提交的帧后关闭连接
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writer.close();
+        writer.awaitTermination(1000);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Log.w(TAG, "关闭连接失败", e);
+        }
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                dispatch(MpkIpcProtocol.readFrame(in));
+            }
+        } catch (EOFException e) {
+            Log.d(TAG, "主机关闭了连接");
+        } catch (IOException | JSONException | RuntimeException e) {
+            if (!closed) {
+                Log.e(TAG, "读取主机消息失败", e);
+            }
+        } finally {
+            close();
+            Listener current = listener;
+            if (current != null) {
+                current.onClosed();
+            }
+        }
+    }
+
+    private void dispatch(MpkIpcProtocol.Frame frame) throws JSONException {
+        Listener current = listener;
+        switch (frame.kind) {
+            case MpkIpcProtocol.MESSAGE:
+                MpkInterAppCommunication.Message message = MpkIpcProtocol.decodeMessage(frame, null, appId);
+                message.setReceived(true);
+                current.onMessage(message);
+                break;
+            case MpkIpcProtocol.EVENT:
+                current.onEvent(MpkIpcProtocol.decodeEvent(frame, null));
+                break;
+            case MpkIpcProtocol.PONG:
+                current.onPong(frame.readLong());
+                break;
+            case MpkIpcProtocol.ERROR:
+                Log.w(TAG, "主机错误: " + frame.readString());
+                break;
+            default:
+                Log.w(TAG, "未知的帧类型: " + frame.kind);
+                break;
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MPK 跨进程消息总线协议
+ * 外部进程（原生和 Python 应用）通过 Unix 域套接字接入应用间消息总线，连接上传输长度前缀的二进制帧：
+ * <pre>
+ * frame   := u32 长度（不含自身） | u8 类型 | 内容
+ * str     := u16 字节数 | UTF-8，字节数为 0xFFFF 表示 null
+ * bytes   := i32 字节数 | 数据，字节数为 -1 表示 null
+ *
+ * HELLO       0x01  str 令牌                       客户端连接后发送的第一帧
+ * WELCOME     0x02  str 应用 ID                     握手成功
+ * ERROR       0x03  str 原因                        握手失败，随后关闭连接
+ * MESSAGE     0x10  str 对端 | str 类型 | str 消息 ID | i64 关联 ID | u8 标志 | str 回复 ID
+ *                   | bytes 数据 JSON | bytes 二进制负载
+ *                   对端：客户端发送时为接收者，主机发送时为发送者；标志 bit0 表示需要回复
+ * EVENT       0x11  str 事件名 | str 事件源 | str 主题 | bytes 数据 JSON | bytes 二进制负载
+ *                   事件源只在主机发送时有效
+ * SUBSCRIBE   0x20  str 订阅过滤器
+ * UNSUBSCRIBE 0x21  str 订阅过滤器
+ * PING        0x30  i64 值                          主机以相同的值回复 PONG
+ * PONG        0x31  i64 值
+ * </pre>
+ * 整数均为大端序。发送方把多个小帧合并为一次写入，接收方按帧读取，不需要额外的批量帧
+ */
+public final class MpkIpcProtocol {
+    private static final String TAG = "MpkIpcProtocol";
+
+    // 协议环境变量：套接字名称和令牌
+    public static final String ENV_SOCKET = "MPK_BUS_SOCKET";
+    public static final String ENV_TOKEN = "MPK_BUS_TOKEN";
+
+    // 帧类型
+    public static final int HELLO = 0x01;
+    public static final int WELCOME = 0x02;
+    public static final int ERROR = 0x03;
+    public static final int MESSAGE = 0x10;
+    public static final int EVENT = 0x11;
+    public static final int SUBSCRIBE = 0x20;
+    public static final int UNSUBSCRIBE = 0x21;
+    public static final int PING = 0x30;
+    public static final int PONG = 0x31;
+
+    // 消息标志：需要回复
+    public static final int FLAG_NEEDS_RESPONSE = 0x01;
+
+    // 单帧大小上限
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    // 握手帧大小上限，握手完成前只接受小帧
+    public static final int MAX_HANDSHAKE_FRAME_SIZE = 1024;
+
+    // 表示 null 的字符串长度
+    private static final int NULL_STRING = 0xFFFF;
+
+    /**
+     * 读取的帧
+     */
+    public static final class Frame {
+        public final int kind;
+        private final ByteBuffer body;
+
+        Frame(int kind, ByteBuffer body) {
+            this.kind = kind;
+            this.body = body;
+        }
+
+        public long readLong() {
+            return body.getLong();
+        }
+
+        public int readByte() {
+            return body.get() & 0xFF;
+        }
+
+        public String readString() {
+            int length = body.getShort() & 0xFFFF;
+            if (length == NULL_STRING) {
+                return null;
+            }
+            String value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+            body.position(body.position() + length);
+            return value;
+        }
+
+        public byte[] readBytes() {
+            int length = body.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] value = new byte[length];
+            body.get(value);
+            return value;
+        }
+
+        public JSONObject readJson() throws JSONException {
+            byte[] data = readBytes();
+            return data != null ? new JSONObject(new String(data, StandardCharsets.UTF_8)) : null;
+        }
+
+        public MpkSharedPayload readPayload() {
+            byte[] data = readBytes();
+            return data != null ? MpkSharedPayload.wrap(data) : null;
+        }
+    }
+
+    /**
+     * 帧编码器，写入完成后调用 {@link #toFrame()} 得到带长度前缀的帧
+     */
+    public static final class FrameBuilder {
+        private byte[] data = new byte[64];
+        private int position;
+
+        public FrameBuilder(int kind) {
+            position = 4;
+            writeByte(kind);
+        }
+
+        public FrameBuilder writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                data[position++] = (byte) (value >>> shift);
+            }
+            return this;
+        }
+
+        public FrameBuilder writeByte(int value) {
+            ensureCapacity(1);
+            data[position++] = (byte) value;
+            return this;
+        }
+
+        public FrameBuilder writeString(String value) {
+            if (value == null) {
+                writeShort(NULL_STRING);
+                return this;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length >= NULL_STRING) {
+                throw new IllegalArgumentException("字符串过长: " + bytes.length);
+            }
+            writeShort(bytes.length);
+            writeRaw(bytes, 0, bytes.length);
+            return this;
+        }
+
+        public FrameBuilder writeBytes(ByteBuffer value) {
+            if (value == null) {
+                writeInt(-1);
+                return this;
+            }
+            int length = value.remaining();
+            writeInt(length);
+            ensureCapacity(length);
+            value.duplicate().get(data, position, length);
+            position += length;
+            return this;
+        }
+
+        public FrameBuilder writeJson(JSONObject value) {
+            if (value == null) {
+                writeInt(-1);
+                return this;
+            }
+            byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            writeRaw(bytes, 0, bytes.length);
+            return this;
+        }
+
+        public FrameBuilder writePayload(MpkSharedPayload payload) {
+            return writeBytes(payload != null ? payload.asBuffer() : null);
+        }
+
+        public byte[] toFrame() {
+            int length = position - 4;
+            if (length > MAX_FRAME_SIZE) {
+                throw new IllegalArgumentException("帧过大: " + length);
+            }
+            data[0] = (byte) (length >>> 24);
+            data[1] = (byte) (length >>> 16);
+            data[2] = (byte) (length >>> 8);
+            data[3] = (byte) length;
+            return Arrays.copyOf(data, position);
+        }
+
+        private void writeShort(int value) {
+            ensureCapacity(2);
+            data[position++] = (byte) (value >>> 8);
+            data[position++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            ensureCapacity(4);
+            data[position++] = (byte) (value >>> 24);
+            data[position++] = (byte) (value >>> 16);
+            data[position++] = (byte) (value >>> 8);
+            data[position++] = (byte) value;
+        }
+
+        private void writeRaw(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, data, position, length);
+            position += length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, position + extra));
+            }
+        }
+    }
+
+    /**
+     * 读取一帧
+     * @param in 输入流
+     * @return 帧
+     * @throws EOFException 如果连接已关闭
+     * @throws IOException 如果读取失败或帧无效
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, MAX_FRAME_SIZE);
+    }
+
+    /**
+     * 读取一帧，限制帧大小
+     * @param in 输入流
+     * @param maxSize 帧大小上限
+     * @return 帧
+     * @throws EOFException 如果连接已关闭
+     * @throws IOException 如果读取失败或帧无效
+     */
+    public static Frame readFrame(DataInputStream in, int maxSize) throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > maxSize) {
+            throw new IOException("无效的帧长度: " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new Frame(data[0] & 0xFF, ByteBuffer.wrap(data, 1, length - 1).slice());
+    }
+
+    /**
+     * 编码消息帧
+     * @param message 消息
+     * @param peer 对端应用 ID
+     * @return 帧
+     */
+    public static byte[] encodeMessage(MpkInterAppCommunication.Message message, String peer) {
+        return new FrameBuilder(MESSAGE)
+            .writeString(peer)
+            .writeString(message.getType())
+            .writeString(message.getId())
+            .writeLong(message.getCorrelationId())
+            .writeByte(message.isNeedsResponse() ? FLAG_NEEDS_RESPONSE : 0)
+            .writeString(message.getResponseId())
+            .writeJson(message.getData())
+            .writePayload(message.getPayload())
+            .toFrame();
+    }
+
+    /**
+     * 解码消息帧，对端写入 from 或 to 由调用者决定
+     * @param frame 消息帧
+     * @param from 发送者 ID
+     * @param to 接收者 ID，为 null 时使用帧中的对端
+     * @return 消息
+     */
+    public static MpkInterAppCommunication.Message decodeMessage(Frame frame, String from, String to)
+            throws JSONException {
+        String peer = frame.readString();
+        MpkInterAppCommunication.Message message = new MpkInterAppCommunication.Message();
+        message.setFrom(from != null ? from : peer);
+        message.setTo(to != null ? to : peer);
+        message.setType(frame.readString());
+        String id = frame.readString();
+        if (id != null) {
+            message.setId(id);
+        }
+        message.setCorrelationId(frame.readLong());
+        message.setNeedsResponse((frame.readByte() & FLAG_NEEDS_RESPONSE) != 0);
+        message.setResponseId(frame.readString());
+        message.setData(frame.readJson());
+        message.setPayload(frame.readPayload());
+        return message;
+    }
+
+    /**
+     * 编码事件帧
+     * @param event 事件
+     * @return 帧
+     */
+    public static byte[] encodeEvent(MpkInterAppCommunication.Event event) {
+        return new FrameBuilder(EVENT)
+            .writeString(event.getName())
+            .writeString(event.getSource())
+            .writeString(event.getTopic())
+            .writeJson(event.getData())
+            .writePayload(event.getPayload())
+            .toFrame();
+    }
+
+    /**
+     * 解码事件帧
+     * @param frame 事件帧
+     * @param source 事件源，为 null 时使用帧中的事件源
+     * @return 事件
+     */
+    public static MpkInterAppCommunication.Event decodeEvent(Frame frame, String source) throws JSONException {
+        String name = frame.readString();
+        String frameSource = frame.readString();
+        String topic = frame.readString();
+        MpkInterAppCommunication.Event event = new MpkInterAppCommunication.Event(
+            name, source != null ? source : frameSource, topic, frame.readJson());
+        event.setPayload(frame.readPayload());
+        return event;
+    }
+
+    /**
+     * 编码只有一个字符串的帧
+     */
+    public static byte[] encodeString(int kind, String value) {
+        return new FrameBuilder(kind).writeString(value).toFrame();
+    }
+
+    /**
+     * 编码只有一个整数的帧
+     */
+    public static byte[] encodeLong(int kind, long value) {
+        return new FrameBuilder(kind).writeLong(value).toFrame();
+    }
+
+    /**
+     * 帧写入器
+     * 任意线程提交帧，写入线程一次取出队列中的所有帧写入缓冲流后只刷新一次，
+     * 连续的小消息因此合并为少量系统调用；队列已满时提交失败
+     */
+    public static final class FrameWriter implements Closeable {
+        // 待写入帧数量上限
+        public static final int QUEUE_LIMIT = 4096;
+
+        // 单次合并写入的帧数量上限
+        private static final int BATCH_LIMIT = 256;
+
+        // 关闭写入线程的标记
+        private static final byte[] CLOSE = new byte[0];
+
+        private final OutputStream output;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_LIMIT);
+        private final Thread thread;
+        private final AtomicLong framesWritten = new AtomicLong();
+        private final AtomicLong flushes = new AtomicLong();
+        private volatile boolean closed;
+
+        /**
+         * 创建并启动写入线程
+         * @param output 输出流，由写入器负责缓冲
+         * @param name 线程名
+         */
+        public FrameWriter(OutputStream output, String name) {
+            this.output = output;
+            this.thread = new Thread(this::writeLoop, name);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        /**
+         * 提交帧
+         * @param frame 帧
+         * @return 是否提交成功，队列已满或已关闭时返回 false
+         */
+        public boolean send(byte[] frame) {
+            return !closed && queue.offer(frame);
+        }
+
+        /**
+         * 获取已写入的帧数量
+         */
+        public long getFramesWritten() {
+            return framesWritten.get();
+        }
+
+        /**
+         * 获取刷新次数，与已写入帧数量之比反映合并效果
+         */
+        public long getFlushes() {
+            return flushes.get();
+        }
+
+        /**
+         * 写完已提交的帧后关闭输出流，之后的提交失败
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            while (!queue.offer(CLOSE)) {
+                // 队列已满时丢弃最早的帧
+                queue.poll();
+            }
+        }
+
+        /**
+         * 等待写入线程结束
+         * @param timeoutMs 超时时间（毫秒）
+         */
+        public void awaitTermination(long timeoutMs) {
+            try {
+                thread.join(timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void writeLoop() {
+            List<byte[]> batch = new ArrayList<>(BATCH_LIMIT);
+            try (OutputStream out = new BufferedOutputStream(output, 64 * 1024)) {
+                while (true) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, BATCH_LIMIT - 1);
+                    for (byte[] frame : batch) {
+                        if (frame == CLOSE) {
+                            return;
+                        }
+                        out.write(frame);
+                    }
+                    out.flush();
+                    framesWritten.addAndGet(batch.size());
+                    flushes.incrementAndGet();
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                if (!closed) {
+                    Log.w(TAG, "写入帧失败: " + e.getMessage());
+                }
+            } finally {
+                closed = true;
+                queue.clear();
+            }
+        }
+    }
+
+    private MpkIpcProtocol() {
+    }
+}
@@ -0,0 +1,400 @@
+package com.mobileplatform.creator.mpk;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MPK 跨进程消息总线传输
+ * 在 Unix 域套接字（抽象命名空间）上监听，外部进程按 {@link MpkIpcProtocol} 接入应用间消息总线；
+ * 启动外部进程前为应用签发令牌，通过环境变量传给进程，连接以令牌握手，之后只能以该应用的身份收发消息。
+ * 每个连接一个读取线程和一个写入线程，发给外部应用的消息在写入线程中合并写入
+ */
+public class MpkIpcTransport {
+    private static final String TAG = "MpkIpcTransport";
+
+    // 令牌字节数
+    private static final int TOKEN_BYTES = 16;
+
+    // 握手超时时间（毫秒）
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+
+    // 同时等待握手的连接数量上限，超过时直接关闭新连接
+    private static final int MAX_PENDING_HANDSHAKES = 8;
+
+    // 关闭连接时等待写完已提交帧的最长时间（毫秒）
+    private static final long CLOSE_TIMEOUT_MS = 200;
+
+    // 接收者邮箱已满时读取线程等待的最长时间（毫秒），等待期间不再读取，背压传导到发送进程
+    private static final long BACKPRESSURE_TIMEOUT_MS = 5000;
+
+    // 消息总线
+    private final MpkInterAppCommunication bus;
+
+    // 套接字名称
+    private final String socketName;
+
+    // 令牌到应用 ID
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+
+    // 已建立的连接
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    // 等待握手的连接数量
+    private final AtomicInteger pendingHandshakes = new AtomicInteger();
+
+    private final SecureRandom random = new SecureRandom();
+
+    private volatile LocalServerSocket serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * 创建传输
+     * @param bus 消息总线
+     * @param socketName 抽象命名空间中的套接字名称
+     */
+    public MpkIpcTransport(MpkInterAppCommunication bus, String socketName) {
+        this.bus = bus;
+        this.socketName = socketName;
+    }
+
+    /**
+     * 开始监听，已在监听时直接返回
+     * @throws IOException 如果创建套接字失败
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+        closed = false;
+        serverSocket = new LocalServerSocket(socketName);
+
+        Thread acceptThread = new Thread(this::acceptLoop, "MpkIpcAccept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        Log.i(TAG, "跨进程消息总线已启动: " + socketName);
+    }
+
+    /**
+     * 是否在监听
+     * @return 是否在监听
+     */
+    public boolean isStarted() {
+        return serverSocket != null;
+    }
+
+    /**
+     * 获取套接字名称
+     * @return 套接字名称
+     */
+    public String getSocketName() {
+        return socketName;
+    }
+
+    /**
+     * 为应用签发令牌
+     * @param appId 应用 ID
+     * @return 令牌
+     */
+    public String authorize(String appId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        tokens.put(token.toString(), appId);
+        return token.toString();
+    }
+
+    /**
+     * 为应用签发令牌并生成外部进程的环境变量
+     * @param appId 应用 ID
+     * @return 环境变量
+     */
+    public Map<String, String> getEnvironment(String appId) {
+        Map<String, String> env = new HashMap<>();
+        env.put(MpkIpcProtocol.ENV_SOCKET, socketName);
+        env.put(MpkIpcProtocol.ENV_TOKEN, authorize(appId));
+        return env;
+    }
+
+    /**
+     * 撤销应用的令牌并关闭其连接
+     * @param appId 应用 ID
+     */
+    public void revoke(String appId) {
+        tokens.values().removeIf(appId::equals);
+        for (Connection connection : connections) {
+            if (appId.equals(connection.appId)) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * 撤销单个令牌并关闭以该令牌建立的连接，应用的其他令牌不受影响
+     * @param token 令牌
+     */
+    public void revokeToken(String token) {
+        if (token == null) {
+            return;
+        }
+        tokens.remove(token);
+        for (Connection connection : connections) {
+            if (token.equals(connection.token)) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * 获取应用的连接数量
+     * @param appId 应用 ID
+     * @return 连接数量
+     */
+    public int getConnectionCount(String appId) {
+        int count = 0;
+        for (Connection connection : connections) {
+            if (appId.equals(connection.appId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 停止监听并关闭所有连接
+     */
+    public synchronized void stop() {
+        LocalServerSocket server = serverSocket;
+        if (server == null) {
+            return;
+        }
+        closed = true;
+        serverSocket = null;
+
+        // 关闭 LocalServerSocket 不会唤醒阻塞的 accept，连接一次使其返回
+        try (LocalSocket wakeUp = new LocalSocket()) {
+            wakeUp.connect(new LocalSocketAddress(socketName));
+        } catch (IOException e) {
+            Log.d(TAG, "唤醒监听线程失败: " + e.getMessage());
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            Log.w(TAG, "关闭监听套接字失败", e);
+        }
+
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        tokens.clear();
+
+        Log.i(TAG, "跨进程消息总线已停止: " + socketName);
+    }
+
+    private void acceptLoop() {
+        LocalServerSocket server = serverSocket;
+        while (!closed && server != null) {
+            try {
+                LocalSocket socket = server.accept();
+                if (closed) {
+                    socket.close();
+                    break;
+                }
+                if (pendingHandshakes.incrementAndGet() > MAX_PENDING_HANDSHAKES) {
+                    pendingHandshakes.decrementAndGet();
+                    Log.w(TAG, "等待握手的连接过多，关闭新连接");
+                    socket.close();
+                    continue;
+                }
+                Connection connection = new Connection(socket);
+                Thread reader = new Thread(connection::readLoop, "MpkIpcConnection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    Log.e(TAG, "接受连接失败", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 外部进程的连接
+     */
+    private final class Connection {
+        private final LocalSocket socket;
+        private volatile String appId;
+        private volatile String token;
+        private volatile MpkIpcProtocol.FrameWriter writer;
+        private volatile boolean connectionClosed;
+
+        // 发给外部应用的消息和事件转为帧写出
+        private final MpkInterAppCommunication.MessageCallback messageCallback = message -> {
+            MpkIpcProtocol.FrameWriter out = writer;
+            if (out != null && !out.send(MpkIpcProtocol.encodeMessage(message, message.getFrom()))) {
+                Log.w(TAG, "外部应用写入队列已满，丢弃消息: " + appId + ", type=" + message.getType());
+            }
+        };
+
+        private final MpkInterAppCommunication.EventCallback eventCallback = event -> {
+            MpkIpcProtocol.FrameWriter out = writer;
+            if (out != null && !out.send(MpkIpcProtocol.encodeEvent(event))) {
+                Log.w(TAG, "外部应用写入队列已满，丢弃事件: " + appId + ", name=" + event.getName());
+            }
+        };
+
+        Connection(LocalSocket socket) {
+            this.socket = socket;
+        }
+
+        void readLoop() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+                boolean accepted;
+                try {
+                    accepted = handshake(in);
+                } finally {
+                    pendingHandshakes.decrementAndGet();
+                }
+                if (!accepted) {
+                    return;
+                }
+
+                while (!connectionClosed) {
+                    handleFrame(MpkIpcProtocol.readFrame(in));
+                }
+            } catch (EOFException e) {
+                Log.d(TAG, "外部应用断开连接: " + appId);
+            } catch (IOException | JSONException | RuntimeException e) {
+                if (!connectionClosed) {
+                    Log.e(TAG, "读取外部应用消息失败: " + appId, e);
+                }
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * 校验令牌，成功后注册回调并回复应用 ID
+         */
+        private boolean handshake(DataInputStream in) throws IOException {
+            // 未认证的连接只能发送小帧，避免按对端声明的长度分配大缓冲区
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            MpkIpcProtocol.Frame hello = MpkIpcProtocol.readFrame(in, MpkIpcProtocol.MAX_HANDSHAKE_FRAME_SIZE);
+            socket.setSoTimeout(0);
+
+            String helloToken = hello.kind == MpkIpcProtocol.HELLO ? hello.readString() : null;
+            String id = helloToken != null ? tokens.get(helloToken) : null;
+            writer = new MpkIpcProtocol.FrameWriter(socket.getOutputStream(), "MpkIpcWriter");
+
+            if (id == null || !bus.isAppRegistered(id)) {
+                writer.send(MpkIpcProtocol.encodeString(MpkIpcProtocol.ERROR, id == null ? "无效的令牌" : "应用未注册"));
+                Log.w(TAG, "拒绝外部连接: " + (id == null ? "无效的令牌" : "应用未注册 " + id));
+                return false;
+            }
+
+            appId = id;
+            token = helloToken;
+            connections.add(this);
+            bus.addMessageCallback(id, messageCallback);
+            bus.addEventListener(id, eventCallback);
+            writer.send(MpkIpcProtocol.encodeString(MpkIpcProtocol.WELCOME, id));
+
+            Log.i(TAG, "外部应用已连接: " + id);
+            return true;
+        }
+
+        private void handleFrame(MpkIpcProtocol.Frame frame) throws JSONException {
+            switch (frame.kind) {
+                case MpkIpcProtocol.MESSAGE:
+                    // 发送者固定为连接的应用，不信任帧中的身份
+                    deliver(MpkIpcProtocol.decodeMessage(frame, appId, null));
+                    break;
+                case MpkIpcProtocol.EVENT:
+                    bus.publishEvent(MpkIpcProtocol.decodeEvent(frame, appId));
+                    break;
+                case MpkIpcProtocol.SUBSCRIBE:
+                    bus.subscribeTopic(appId, frame.readString());
+                    break;
+                case MpkIpcProtocol.UNSUBSCRIBE:
+                    bus.unsubscribeTopic(appId, frame.readString());
+                    break;
+                case MpkIpcProtocol.PING:
+                    writer.send(MpkIpcProtocol.encodeLong(MpkIpcProtocol.PONG, frame.readLong()));
+                    break;
+                default:
+                    Log.w(TAG, "未知的帧类型: " + frame.kind + " from " + appId);
+                    break;
+            }
+        }
+
+        /**
+         * 发送外部应用的消息，接收者邮箱已满时暂停读取直到有空间
+         */
+        private void deliver(MpkInterAppCommunication.Message message) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BACKPRESSURE_TIMEOUT_MS);
+            while (!bus.sendMessage(message)) {
+                boolean full = bus.getPendingCount(message.getTo()) >= MpkInterAppCommunication.MAILBOX_CAPACITY;
+                if (!full || connectionClosed || System.nanoTime() > deadline) {
+                    Log.w(TAG, "外部应用消息发送失败: " + appId + " -> " + message.getTo());
+                    return;
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            if (connectionClosed) {
+                return;
+            }
+            connectionClosed = true;
+            connections.remove(this);
+
+            String id = appId;
+            if (id != null) {
+                bus.removeMessageCallback(id, messageCallback);
+                bus.removeEventListener(id, eventCallback);
+            }
+
+            MpkIpcProtocol.FrameWriter out = writer;
+            if (out != null) {
+                out.close();
+                out.awaitTermination(CLOSE_TIMEOUT_MS);
+            }
+            try {
+                socket.shutdownInput();
+            } catch (IOException e) {
+                // 连接可能已断开
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.w(TAG, "关闭连接失败: " + id, e);
+            }
+        }
+    }
+}
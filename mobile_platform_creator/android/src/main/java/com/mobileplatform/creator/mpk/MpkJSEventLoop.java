@@ -0,0 +1,430 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MPK JavaScript 事件循环
+ * 每个 JavaScript 运行时拥有独立的事件循环线程，包含宏任务队列和微任务队列，
+ * 脚本执行、原生方法回调和定时器回调都在该线程中运行，不占用主线程；
+ * 定时器由所有运行时共用的 {@link MpkTimerWheel} 管理，到期后作为宏任务投递到这里
+ */
+public class MpkJSEventLoop {
+    private static final String TAG = "MpkJSEventLoop";
+
+    // 线程编号
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(1);
+
+    // 每轮最多连续执行的微任务数量，防止微任务不断追加导致宏任务和定时器饿死
+    private static final int MAX_MICROTASKS_PER_TURN = 10000;
+
+    // 停止时等待线程退出的时间（毫秒）
+    private static final long QUIT_TIMEOUT_MS = 2000;
+
+    // 默认定时器数量上限
+    public static final int DEFAULT_MAX_TIMERS = 10000;
+
+    /**
+     * 事件循环轮次监听器，在事件循环线程中回调，回调应尽量轻量
+     */
+    public interface TurnListener {
+        // 宏任务开始执行前
+        default void onTurnStart() {
+        }
+
+        // 宏任务及其微任务执行完毕后
+        void onTurnEnd();
+    }
+
+    // 队列锁
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 有新任务时唤醒事件循环
+    private final Condition wakeUp = lock.newCondition();
+
+    // 宏任务队列，受 lock 保护
+    private final ArrayDeque<Runnable> macrotasks = new ArrayDeque<>();
+
+    // 微任务队列，只在事件循环线程中访问
+    private final ArrayDeque<Runnable> microtasks = new ArrayDeque<>();
+
+    // 定时器分组
+    private final MpkTimerWheel.TimerGroup timers;
+
+    // 线程名称
+    private final String name;
+
+    // 事件循环线程
+    private volatile Thread thread;
+
+    // 是否正在运行
+    private volatile boolean running;
+
+    // 轮次监听器，用于执行时间预算和内存统计
+    private volatile TurnListener turnListener;
+
+    /**
+     * 创建事件循环
+     */
+    public MpkJSEventLoop() {
+        this.name = "MpkJSLoop-" + THREAD_COUNT.getAndIncrement();
+        this.timers = MpkTimerWheel.getInstance().newGroup(this, DEFAULT_MAX_TIMERS);
+    }
+
+    /**
+     * 启动事件循环线程
+     */
+    public void start() {
+        lock.lock();
+        try {
+            if (running || thread != null) {
+                return;
+            }
+            running = true;
+            thread = new Thread(this::loop, name);
+            thread.setDaemon(true);
+            thread.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前线程是否为事件循环线程
+     * @return 是否为事件循环线程
+     */
+    public boolean isInLoopThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * 事件循环是否在运行
+     * @return 是否在运行
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 添加宏任务
+     * @param task 任务
+     * @return 是否成功添加，事件循环已停止时返回 false
+     */
+    public boolean post(Runnable task) {
+        lock.lock();
+        try {
+            if (!running) {
+                return false;
+            }
+            macrotasks.add(task);
+            wakeUp.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 添加微任务
+     * 微任务在当前宏任务结束后、下一个宏任务开始前执行
+     * @param task 任务
+     * @return 是否成功添加
+     */
+    public boolean queueMicrotask(Runnable task) {
+        if (isInLoopThread()) {
+            microtasks.add(task);
+            return true;
+        }
+        return post(() -> microtasks.add(task));
+    }
+
+    /**
+     * 在事件循环线程中执行任务并等待结果
+     * 在事件循环线程中调用时直接执行
+     * @param task 任务
+     * @return 任务结果
+     * @throws Exception 任务抛出的异常
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        return call(task, 0);
+    }
+
+    /**
+     * 在事件循环线程中执行任务并等待结果，最多等待指定时间
+     * 超时后任务不会被取消，仍会在事件循环中继续执行或等待执行
+     * 在事件循环线程中调用时直接执行
+     * @param task 任务
+     * @param timeoutMs 最长等待时间（毫秒），0 表示一直等待
+     * @return 任务结果
+     * @throws java.util.concurrent.TimeoutException 等待超时
+     * @throws Exception 任务抛出的异常
+     */
+    public <T> T call(Callable<T> task, long timeoutMs) throws Exception {
+        if (isInLoopThread()) {
+            return task.call();
+        }
+
+        FutureTask<T> future = new FutureTask<>(task);
+        if (!post(future)) {
+            throw new IllegalStateException("事件循环已停止: " + name);
+        }
+
+        try {
+            return timeoutMs > 0 ? future.get(timeoutMs, TimeUnit.MILLISECONDS) : future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 添加一次性定时器
+     * @param callback 回调
+     * @param delayMs 延迟时间（毫秒）
+     * @return 定时器 ID，事件循环已停止或定时器数量超过上限时返回 0
+     */
+    public int setTimeout(Runnable callback, long delayMs) {
+        if (!running) {
+            return 0;
+        }
+        return timers.schedule(callback, delayMs, 0);
+    }
+
+    /**
+     * 添加周期定时器
+     * @param callback 回调
+     * @param intervalMs 间隔时间（毫秒），不足一个时间轮刻度时按一个刻度计算
+     * @return 定时器 ID，事件循环已停止或定时器数量超过上限时返回 0
+     */
+    public int setInterval(Runnable callback, long intervalMs) {
+        if (!running) {
+            return 0;
+        }
+        long interval = Math.max(MpkTimerWheel.TICK_MS, intervalMs);
+        return timers.schedule(callback, interval, interval);
+    }
+
+    /**
+     * 取消定时器
+     * @param timerId 定时器 ID
+     * @return 是否取消了尚未执行的定时器
+     */
+    public boolean clearTimer(int timerId) {
+        return timers.cancel(timerId);
+    }
+
+    /**
+     * 获取未取消的定时器数量
+     * @return 定时器数量
+     */
+    public int getPendingTimerCount() {
+        return timers.size();
+    }
+
+    /**
+     * 获取等待执行的宏任务数量，不包括正在执行的任务
+     * @return 任务数量
+     */
+    public int getPendingTaskCount() {
+        lock.lock();
+        try {
+            return macrotasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取定时器数量上限
+     * @return 定时器数量上限
+     */
+    public int getMaxTimers() {
+        return timers.getMaxTimers();
+    }
+
+    /**
+     * 设置定时器数量上限
+     * @param maxTimers 定时器数量上限
+     */
+    public void setMaxTimers(int maxTimers) {
+        timers.setMaxTimers(maxTimers);
+    }
+
+    /**
+     * 清空所有定时器和未执行的任务
+     * 等待中的 {@link #call} 调用会收到取消异常
+     */
+    public void clear() {
+        timers.cancelAll();
+
+        lock.lock();
+        try {
+            clearLocked();
+        } finally {
+            lock.unlock();
+        }
+
+        if (isInLoopThread()) {
+            microtasks.clear();
+        } else {
+            post(microtasks::clear);
+        }
+    }
+
+    /**
+     * 设置轮次监听器
+     * @param listener 监听器，null 表示取消
+     */
+    public void setTurnListener(TurnListener listener) {
+        this.turnListener = listener;
+    }
+
+    /**
+     * 停止事件循环
+     * 不在事件循环线程中调用时等待线程退出
+     */
+    public void quit() {
+        Thread loopThread;
+        lock.lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+            clearLocked();
+            wakeUp.signal();
+            loopThread = thread;
+        } finally {
+            lock.unlock();
+        }
+
+        timers.close();
+
+        if (loopThread != null && loopThread != Thread.currentThread()) {
+            try {
+                loopThread.join(QUIT_TIMEOUT_MS);
+                if (loopThread.isAlive()) {
+                    Log.w(TAG, "事件循环线程未能按时退出: " + name);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 执行定时器回调并清空微任务队列
+     * 由时间轮在事件循环线程中调用，同一批到期的定时器之间同样执行微任务
+     * @param callback 定时器回调
+     */
+    void runTimerCallback(Runnable callback) {
+        runTask(callback);
+    }
+
+    /**
+     * 清空宏任务，调用方需持有锁
+     */
+    private void clearLocked() {
+        for (Runnable task : macrotasks) {
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+        }
+        macrotasks.clear();
+    }
+
+    /**
+     * 事件循环主体
+     * 每轮执行一个宏任务，之后清空微任务队列
+     */
+    private void loop() {
+        Log.d(TAG, "事件循环已启动: " + name);
+
+        while (true) {
+            Runnable task;
+
+            lock.lock();
+            try {
+                while (running && macrotasks.isEmpty()) {
+                    wakeUp.awaitUninterruptibly();
+                }
+
+                if (!running) {
+                    break;
+                }
+                task = macrotasks.poll();
+            } finally {
+                lock.unlock();
+            }
+
+            runTask(task);
+        }
+
+        microtasks.clear();
+        Log.d(TAG, "事件循环已停止: " + name);
+    }
+
+    /**
+     * 执行宏任务并清空微任务队列
+     */
+    private void runTask(Runnable task) {
+        TurnListener listener = turnListener;
+        if (listener != null) {
+            try {
+                listener.onTurnStart();
+            } catch (Throwable t) {
+                Log.e(TAG, "执行轮次回调失败: " + name, t);
+            }
+        }
+
+        try {
+            task.run();
+        } catch (Throwable t) {
+            Log.e(TAG, "执行任务失败: " + name, t);
+        }
+        drainMicrotasks();
+
+        if (listener != null) {
+            try {
+                listener.onTurnEnd();
+            } catch (Throwable t) {
+                Log.e(TAG, "执行轮次回调失败: " + name, t);
+            }
+        }
+    }
+
+    /**
+     * 执行微任务
+     */
+    private void drainMicrotasks() {
+        int count = 0;
+        Runnable microtask;
+        while ((microtask = microtasks.poll()) != null) {
+            try {
+                microtask.run();
+            } catch (Throwable t) {
+                Log.e(TAG, "执行微任务失败: " + name, t);
+            }
+
+            if (++count >= MAX_MICROTASKS_PER_TURN) {
+                Log.w(TAG, "微任务数量超过单轮上限，剩余微任务延后执行: " + name);
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,488 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+/**
+ * MPK JavaScript 网络请求
+ * 为绑定到应用的 JavaScript 运行时提供 fetch 风格的 HTTP 请求：
+ * 所有应用共用一个连接池和调度线程，每个应用在沙箱缓存目录中有独立的 HTTP 缓存；
+ * 响应体按需分块读取，不需要完整缓冲，读取的字节数计入应用的网络流量
+ */
+public class MpkJSFetch {
+    private static final String TAG = "MpkJSFetch";
+
+    // HTTP 缓存目录名，位于沙箱缓存目录下
+    public static final String HTTP_CACHE_DIR = "http";
+
+    // HTTP 缓存占沙箱存储配额的比例（1/N）
+    public static final int HTTP_CACHE_SHARE_DIVISOR = 10;
+
+    // 每个应用同时进行的请求数量上限
+    public static final int MAX_ACTIVE_REQUESTS = 32;
+
+    // 默认分块大小
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    // 分块大小上限
+    private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+    // 完整读取响应体的大小上限
+    private static final int MAX_BUFFERED_BODY = 64 * 1024 * 1024;
+
+    // 空闲连接数量和保留时间
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    // 超时时间（秒）
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long READ_TIMEOUT_SECONDS = 30;
+
+    // 共用的 HTTP 客户端，持有连接池和调度线程
+    private static volatile OkHttpClient sharedClient;
+
+    /**
+     * 异步操作完成回调，在网络线程中调用
+     */
+    public interface Completion {
+        void onComplete(Object result, Throwable error);
+    }
+
+    /**
+     * 进行中的请求
+     */
+    private static final class ActiveRequest {
+        final Call call;
+        volatile Response response;
+        volatile BufferedSource source;
+        volatile boolean fromNetwork;
+
+        // 是否正在读取响应体，同一请求同时只能有一次读取
+        final AtomicBoolean reading = new AtomicBoolean();
+
+        ActiveRequest(Call call) {
+            this.call = call;
+        }
+    }
+
+    // 应用 ID
+    private final String appId;
+
+    // 权限管理器
+    private final MpkPermissionManager permissionManager;
+
+    // 资源使用情况，可能为 null
+    private final MpkSandbox.ResourceUsage resourceUsage;
+
+    // HTTP 缓存
+    private final Cache cache;
+
+    // 应用的 HTTP 客户端，与共用客户端共享连接池和调度线程
+    private final OkHttpClient client;
+
+    // 进行中的请求
+    private final Map<Integer, ActiveRequest> requests = new ConcurrentHashMap<>();
+
+    // 进行中的请求数量，发起请求时先占用名额再加入 requests
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    // 下一个请求 ID
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    // 是否已关闭
+    private volatile boolean closed;
+
+    /**
+     * 创建网络请求服务
+     * @param appId 应用 ID
+     * @param env 沙箱环境
+     * @param permissionManager 权限管理器
+     * @param resourceUsage 资源使用情况，可以为 null
+     */
+    public MpkJSFetch(String appId, MpkSandbox.SandboxEnvironment env,
+                      MpkPermissionManager permissionManager, MpkSandbox.ResourceUsage resourceUsage) {
+        this.appId = appId;
+        this.permissionManager = permissionManager;
+        this.resourceUsage = resourceUsage;
+
+        long cacheSize = cacheBudgetFor(env.limits);
+        this.cache = cacheSize > 0 ? new Cache(new File(env.cacheDir, HTTP_CACHE_DIR), cacheSize) : null;
+
+        OkHttpClient.Builder builder = getSharedClient().newBuilder();
+        if (cache != null) {
+            builder.cache(cache);
+        }
+        this.client = builder.build();
+    }
+
+    /**
+     * 按沙箱资源限制计算 HTTP 缓存的空间上限
+     * @param limits 资源限制
+     * @return 缓存上限（字节），小于等于 0 表示不使用缓存
+     */
+    public static long cacheBudgetFor(MpkSandbox.ResourceLimits limits) {
+        return limits.maxStorage / HTTP_CACHE_SHARE_DIVISOR;
+    }
+
+    /**
+     * 发起请求
+     * 收到响应头后回调，结果为包含 id、status、statusText、url、headers、fromCache 的对象，
+     * 之后通过 {@link #read} 或 {@link #readAll} 读取响应体
+     * @param url 地址
+     * @param method 请求方法
+     * @param headers 请求头，可以为 null
+     * @param body 请求体，可以为 null
+     * @param completion 完成回调
+     * @return 请求 ID
+     */
+    public int fetch(String url, String method, Map<String, String> headers, ByteBuffer body, Completion completion) {
+        ensureOpen();
+        if (permissionManager == null
+                || !permissionManager.checkPermissionType(appId, MpkPermissionManager.PermissionType.NETWORK)) {
+            throw new SecurityException("应用没有网络权限: " + appId);
+        }
+        Request.Builder builder = new Request.Builder().url(url);
+        String contentType = null;
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                builder.header(header.getKey(), header.getValue());
+                if ("content-type".equalsIgnoreCase(header.getKey())) {
+                    contentType = header.getValue();
+                }
+            }
+        }
+
+        long txBytes = 0;
+        RequestBody requestBody = null;
+        if (body != null) {
+            byte[] data = new byte[body.remaining()];
+            body.duplicate().get(data);
+            requestBody = RequestBody.create(data, contentType != null ? MediaType.parse(contentType) : null);
+            txBytes = data.length;
+        }
+        builder.method(method.toUpperCase(), requestBody);
+
+        int id = nextId.getAndIncrement();
+        ActiveRequest request = new ActiveRequest(client.newCall(builder.build()));
+        acquireSlot();
+        requests.put(id, request);
+        recordTraffic(0, txBytes);
+
+        request.call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                remove(id);
+                completion.onComplete(null, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                request.response = response;
+                request.fromNetwork = response.networkResponse() != null;
+                ResponseBody responseBody = response.body();
+                request.source = responseBody != null ? responseBody.source() : null;
+
+                if (closed || requests.get(id) != request) {
+                    response.close();
+                    return;
+                }
+
+                try {
+                    completion.onComplete(describe(id, response), null);
+                } catch (JSONException e) {
+                    finish(id);
+                    completion.onComplete(null, e);
+                }
+            }
+        });
+        return id;
+    }
+
+    /**
+     * 读取响应体的下一块数据，在网络线程中执行
+     * @param id 请求 ID
+     * @param maxBytes 最多读取的字节数
+     * @param completion 完成回调，结果为数据，读取完毕时为 null
+     */
+    public void read(int id, int maxBytes, Completion completion) {
+        ActiveRequest request = beginRead(id);
+        int chunkSize = Math.max(1, Math.min(maxBytes, MAX_CHUNK_SIZE));
+
+        execute(request, () -> {
+            try {
+                BufferedSource source = request.source;
+                if (source == null) {
+                    finish(id);
+                    completion.onComplete(null, null);
+                    return;
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocateDirect(chunkSize);
+                int read = source.read(buffer);
+                if (read < 0) {
+                    finish(id);
+                    completion.onComplete(null, null);
+                    return;
+                }
+
+                buffer.flip();
+                recordBody(request, read);
+                completion.onComplete(buffer, null);
+            } catch (IOException e) {
+                finish(id);
+                completion.onComplete(null, e);
+            } finally {
+                request.reading.set(false);
+            }
+        });
+    }
+
+    /**
+     * 读取完整的响应体，在网络线程中执行
+     * @param id 请求 ID
+     * @param completion 完成回调，结果为数据
+     */
+    public void readAll(int id, Completion completion) {
+        ActiveRequest request = beginRead(id);
+
+        execute(request, () -> {
+            try {
+                BufferedSource source = request.source;
+                if (source == null) {
+                    completion.onComplete(ByteBuffer.allocateDirect(0), null);
+                    return;
+                }
+
+                long length = request.response.body().contentLength();
+                if (length > MAX_BUFFERED_BODY) {
+                    throw new IOException("响应体过大: " + length);
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocateDirect(length >= 0 ? (int) length : DEFAULT_CHUNK_SIZE);
+                while (true) {
+                    if (!buffer.hasRemaining()) {
+                        // 缓冲区填满时先确认是否还有数据，长度已知或恰好达到上限的响应体不需要扩容
+                        if (source.exhausted()) {
+                            break;
+                        }
+                        if (buffer.capacity() >= MAX_BUFFERED_BODY) {
+                            throw new IOException("响应体过大: 超过 " + MAX_BUFFERED_BODY);
+                        }
+                        ByteBuffer larger = ByteBuffer.allocateDirect(
+                            (int) Math.min(Math.max(buffer.capacity() * 2L, DEFAULT_CHUNK_SIZE), MAX_BUFFERED_BODY));
+                        buffer.flip();
+                        larger.put(buffer);
+                        buffer = larger;
+                    }
+                    int read = source.read(buffer);
+                    if (read < 0) {
+                        break;
+                    }
+                    recordBody(request, read);
+                }
+
+                buffer.flip();
+                completion.onComplete(buffer, null);
+            } catch (IOException e) {
+                completion.onComplete(null, e);
+            } finally {
+                finish(id);
+                request.reading.set(false);
+            }
+        });
+    }
+
+    /**
+     * 取消请求并释放连接
+     * @param id 请求 ID
+     * @return 请求是否存在
+     */
+    public boolean abort(int id) {
+        ActiveRequest request = requests.get(id);
+        if (request == null) {
+            return false;
+        }
+        request.call.cancel();
+        finish(id);
+        return true;
+    }
+
+    /**
+     * 获取进行中的请求数量
+     * @return 请求数量
+     */
+    public int getActiveRequestCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * 取消所有请求并关闭 HTTP 缓存
+     */
+    public void close() {
+        closed = true;
+        for (Integer id : requests.keySet()) {
+            abort(id);
+        }
+
+        if (cache != null) {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                Log.w(TAG, "关闭 HTTP 缓存失败: " + appId, e);
+            }
+        }
+    }
+
+    /**
+     * 获取共用的 HTTP 客户端
+     * @return HTTP 客户端
+     */
+    private static OkHttpClient getSharedClient() {
+        OkHttpClient client = sharedClient;
+        if (client == null) {
+            synchronized (MpkJSFetch.class) {
+                client = sharedClient;
+                if (client == null) {
+                    client = new OkHttpClient.Builder()
+                        .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                        .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        .build();
+                    sharedClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 在共用的网络线程中执行读取
+     */
+    private void execute(ActiveRequest request, Runnable task) {
+        try {
+            client.dispatcher().executorService().execute(task);
+        } catch (RejectedExecutionException e) {
+            request.reading.set(false);
+            throw new IllegalStateException("网络线程池已关闭", e);
+        }
+    }
+
+    /**
+     * 开始读取响应体
+     */
+    private ActiveRequest beginRead(int id) {
+        ensureOpen();
+        ActiveRequest request = requests.get(id);
+        if (request == null || request.response == null) {
+            throw new IllegalArgumentException("无效的请求 ID: " + id);
+        }
+        if (!request.reading.compareAndSet(false, true)) {
+            throw new IllegalStateException("上一次读取尚未完成: " + id);
+        }
+        return request;
+    }
+
+    /**
+     * 结束请求，释放响应和连接
+     */
+    private void finish(int id) {
+        ActiveRequest request = remove(id);
+        if (request != null && request.response != null) {
+            request.response.close();
+        }
+    }
+
+    /**
+     * 占用一个请求名额，已满时抛出异常
+     */
+    private void acquireSlot() {
+        while (true) {
+            int current = activeCount.get();
+            if (current >= MAX_ACTIVE_REQUESTS) {
+                throw new IllegalStateException("进行中的请求过多: " + MAX_ACTIVE_REQUESTS);
+            }
+            if (activeCount.compareAndSet(current, current + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 移除请求并归还名额
+     */
+    private ActiveRequest remove(int id) {
+        ActiveRequest request = requests.remove(id);
+        if (request != null) {
+            activeCount.decrementAndGet();
+        }
+        return request;
+    }
+
+    private void recordBody(ActiveRequest request, int bytes) {
+        // 从缓存读取的响应体不产生网络流量
+        if (request.fromNetwork) {
+            recordTraffic(bytes, 0);
+        }
+    }
+
+    private void recordTraffic(long rxBytes, long txBytes) {
+        if (resourceUsage != null && (rxBytes > 0 || txBytes > 0)) {
+            resourceUsage.recordNetworkTraffic(rxBytes, txBytes);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("网络请求服务已关闭");
+        }
+    }
+
+    /**
+     * 生成响应描述
+     */
+    private static JSONObject describe(int id, Response response) throws JSONException {
+        JSONObject headers = new JSONObject();
+        Headers responseHeaders = response.headers();
+        for (int i = 0; i < responseHeaders.size(); i++) {
+            String name = responseHeaders.name(i).toLowerCase();
+            String value = responseHeaders.value(i);
+            String existing = headers.optString(name, null);
+            headers.put(name, existing != null ? existing + ", " + value : value);
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("id", id);
+        result.put("status", response.code());
+        result.put("statusText", response.message());
+        result.put("ok", response.isSuccessful());
+        result.put("url", response.request().url().toString());
+        result.put("headers", headers);
+        result.put("fromCache", response.networkResponse() == null && response.cacheResponse() != null);
+        return result;
+    }
+}
@@ -0,0 +1,648 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MPK JavaScript 文件系统
+ * 为绑定到应用的 JavaScript 运行时提供沙箱内的文件读写，基于 FileChannel 和直接缓冲区，
+ * 读取的二进制数据可以直接交给引擎作为 ArrayBuffer 使用；
+ * 所有写入都计入沙箱存储配额中扣除键值存储和 HTTP 缓存份额后的部分，
+ * 这两部分的目录不能通过文件 API 访问；异步操作在所有运行时共用的 I/O 线程池中执行
+ */
+public class MpkJSFileSystem {
+    private static final String TAG = "MpkJSFileSystem";
+
+    // I/O 线程数量
+    private static final int IO_THREADS = 4;
+
+    // 每个应用最多同时打开的文件数量
+    public static final int MAX_OPEN_FILES = 64;
+
+    // 单次读取的最大字节数
+    private static final long MAX_READ_SIZE = Integer.MAX_VALUE - 8;
+
+    // 第一个文件描述符，0-2 保留给标准输入输出
+    private static final int FIRST_FD = 3;
+
+    // I/O 线程编号
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(1);
+
+    // 共用的 I/O 线程池
+    private static volatile ExecutorService ioExecutor;
+
+    /**
+     * 异步操作完成回调，在 I/O 线程中调用
+     */
+    public interface Completion {
+        void onComplete(Object result, Throwable error);
+    }
+
+    /**
+     * 打开的文件
+     */
+    private static final class OpenFile {
+        final File file;
+        final FileChannel channel;
+        final boolean writable;
+        final boolean append;
+
+        OpenFile(File file, FileChannel channel, boolean writable, boolean append) {
+            this.file = file;
+            this.channel = channel;
+            this.writable = writable;
+            this.append = append;
+        }
+    }
+
+    // 沙箱环境
+    private final MpkSandbox.SandboxEnvironment env;
+
+    // 沙箱根目录的规范路径
+    private final String rootPath;
+
+    // 键值存储目录的规范路径
+    private final String storagePath;
+
+    // HTTP 缓存目录的规范路径
+    private final String httpCachePath;
+
+    // 文件 API 可用的存储空间，小于等于 0 表示不限制
+    private final long quota;
+
+    // 已使用的存储空间，首次写入时统计
+    private final AtomicLong storageUsage = new AtomicLong();
+
+    // 是否已统计存储空间
+    private volatile boolean usageLoaded;
+
+    // 打开的文件
+    private final Map<Integer, OpenFile> openFiles = new ConcurrentHashMap<>();
+
+    // 下一个文件描述符
+    private final AtomicInteger nextFd = new AtomicInteger(FIRST_FD);
+
+    // 是否已关闭
+    private volatile boolean closed;
+
+    /**
+     * 创建文件系统
+     * @param env 沙箱环境
+     */
+    public MpkJSFileSystem(MpkSandbox.SandboxEnvironment env) {
+        this.env = env;
+        this.rootPath = canonicalPath(env.rootDir);
+        this.storagePath = canonicalPath(new File(env.dataDir, MpkKeyValueStore.DIR_NAME));
+        this.httpCachePath = canonicalPath(new File(env.cacheDir, MpkJSFetch.HTTP_CACHE_DIR));
+        this.quota = quotaFor(env.limits);
+    }
+
+    /**
+     * 按沙箱资源限制计算文件 API 可用的存储空间
+     * 键值存储和 HTTP 缓存各自限制空间，这里从沙箱配额中扣除它们的份额，使总占用不超过配额
+     * @param limits 资源限制
+     * @return 可用空间（字节），小于等于 0 表示不限制
+     */
+    public static long quotaFor(MpkSandbox.ResourceLimits limits) {
+        if (limits.maxStorage <= 0) {
+            return limits.maxStorage;
+        }
+        long reserved = MpkKeyValueStore.diskBudgetFor(limits) + Math.max(MpkJSFetch.cacheBudgetFor(limits), 0);
+        // 至少保留 1 字节，避免扣完后变成不限制
+        return Math.max(limits.maxStorage - reserved, 1);
+    }
+
+    /**
+     * 解析文件路径
+     * 相对路径基于应用数据目录；解析 ".." 和符号链接后必须位于沙箱目录内，
+     * 且不能是键值存储或 HTTP 缓存目录
+     * @param path 相对路径或绝对路径
+     * @return 规范化后的文件
+     * @throws IOException 如果解析路径失败
+     */
+    public File resolve(String path) throws IOException {
+        File file = path.startsWith("/") ? new File(path) : new File(env.dataDir, path);
+        File canonical = file.getCanonicalFile();
+        String canonicalPath = canonical.getPath();
+
+        if (!canonicalPath.equals(rootPath) && !canonicalPath.startsWith(rootPath + File.separator)) {
+            throw new SecurityException("访问沙箱外的文件: " + path);
+        }
+        if (isWithin(canonicalPath, storagePath) || isWithin(canonicalPath, httpCachePath)) {
+            throw new SecurityException("访问受保护的目录: " + path);
+        }
+        return canonical;
+    }
+
+    /**
+     * 读取整个文件到直接缓冲区
+     * @param file 文件
+     * @return 数据，position 为 0，limit 为读取的字节数
+     * @throws IOException 如果读取失败
+     */
+    public ByteBuffer readFile(File file) throws IOException {
+        ensureOpen();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > MAX_READ_SIZE) {
+                throw new IOException("文件过大: " + file.getName() + " (" + size + " 字节)");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读取直到缓冲区填满或到达文件末尾
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * 写入文件，覆盖原有内容
+     * @param file 文件
+     * @param data 数据
+     * @throws IOException 如果写入失败或超出存储配额
+     */
+    public void writeFile(File file, ByteBuffer data) throws IOException {
+        ensureOpen();
+        long oldSize = file.length();
+        long newSize = data.remaining();
+        reserve(newSize - oldSize);
+
+        try (FileOutputStream out = new FileOutputStream(file, false)) {
+            writeFully(out.getChannel(), data, -1);
+        } finally {
+            settle(file, newSize);
+        }
+    }
+
+    /**
+     * 追加写入文件
+     * @param file 文件
+     * @param data 数据
+     * @throws IOException 如果写入失败或超出存储配额
+     */
+    public void appendFile(File file, ByteBuffer data) throws IOException {
+        ensureOpen();
+        long oldSize = file.length();
+        long length = data.remaining();
+        reserve(length);
+
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            writeFully(out.getChannel(), data, -1);
+        } finally {
+            settle(file, oldSize + length);
+        }
+    }
+
+    /**
+     * 获取文件信息
+     * @param file 文件
+     * @return 文件信息
+     * @throws IOException 如果文件不存在
+     */
+    public JSONObject stat(File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException("文件不存在: " + file.getName());
+        }
+
+        try {
+            JSONObject stat = new JSONObject();
+            stat.put("size", file.length());
+            stat.put("mtime", file.lastModified());
+            stat.put("isFile", file.isFile());
+            stat.put("isDirectory", file.isDirectory());
+            return stat;
+        } catch (JSONException e) {
+            throw new IOException("获取文件信息失败: " + file.getName(), e);
+        }
+    }
+
+    /**
+     * 列出目录
+     * @param dir 目录
+     * @return 文件名
+     * @throws IOException 如果不是目录
+     */
+    public String[] readdir(File dir) throws IOException {
+        String[] names = dir.list();
+        if (names == null) {
+            throw new IOException("路径不是目录: " + dir.getName());
+        }
+        // 不列出受保护的目录
+        String dirPath = dir.getPath();
+        List<String> visible = new ArrayList<>(names.length);
+        for (String name : names) {
+            String path = dirPath + File.separator + name;
+            if (!path.equals(storagePath) && !path.equals(httpCachePath)) {
+                visible.add(name);
+            }
+        }
+        return visible.size() == names.length ? names : visible.toArray(new String[0]);
+    }
+
+    /**
+     * 创建目录，包括不存在的父目录
+     * @param dir 目录
+     * @return 是否新建了目录
+     */
+    public boolean mkdir(File dir) {
+        ensureOpen();
+        return dir.mkdirs();
+    }
+
+    /**
+     * 删除文件或空目录
+     * @param file 文件
+     * @return 是否删除成功
+     */
+    public boolean unlink(File file) {
+        ensureOpen();
+        long size = file.isFile() ? file.length() : 0;
+        if (!file.delete()) {
+            return false;
+        }
+        adjust(-size);
+        return true;
+    }
+
+    /**
+     * 重命名文件，目标文件已存在时覆盖
+     * @param from 原文件
+     * @param to 目标文件
+     * @return 是否重命名成功
+     */
+    public boolean rename(File from, File to) {
+        ensureOpen();
+        long replaced = to.isFile() ? to.length() : 0;
+        if (!from.renameTo(to)) {
+            return false;
+        }
+        adjust(-replaced);
+        return true;
+    }
+
+    /**
+     * 打开文件
+     * @param file 文件
+     * @param flags 打开方式："r" 只读，"r+" 读写，"w" 截断写入，"a" 追加写入
+     * @return 文件描述符
+     * @throws IOException 如果打开失败
+     */
+    public int open(File file, String flags) throws IOException {
+        ensureOpen();
+        if (openFiles.size() >= MAX_OPEN_FILES) {
+            throw new IOException("打开的文件过多: " + MAX_OPEN_FILES);
+        }
+
+        boolean writable;
+        boolean append = false;
+        boolean truncate = false;
+        switch (flags) {
+            case "r":
+                writable = false;
+                break;
+            case "r+":
+                writable = true;
+                break;
+            case "w":
+                writable = true;
+                truncate = true;
+                break;
+            case "a":
+                writable = true;
+                append = true;
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的打开方式: " + flags);
+        }
+
+        long oldSize = file.length();
+        RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+        FileChannel channel = raf.getChannel();
+        try {
+            if (truncate) {
+                channel.truncate(0);
+                adjust(-oldSize);
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+
+        int fd = nextFd.getAndIncrement();
+        openFiles.put(fd, new OpenFile(file, channel, writable, append));
+
+        // 与 close() 并发时确保不泄漏
+        if (closed && openFiles.remove(fd) != null) {
+            raf.close();
+            throw new IllegalStateException("文件系统已关闭");
+        }
+        return fd;
+    }
+
+    /**
+     * 从打开的文件读取数据
+     * @param fd 文件描述符
+     * @param length 最多读取的字节数，按文件剩余大小截断
+     * @param position 读取位置，小于 0 时从当前位置读取并移动位置
+     * @return 数据，到达文件末尾时为空缓冲区
+     * @throws IOException 如果读取失败
+     */
+    public ByteBuffer read(int fd, int length, long position) throws IOException {
+        OpenFile open = getOpenFile(fd);
+        if (length < 0) {
+            throw new IllegalArgumentException("读取长度无效: " + length);
+        }
+
+        // 缓冲区大小不超过文件剩余部分，避免脚本传入的长度直接决定直接内存的分配
+        long start = position < 0 ? open.channel.position() : position;
+        long remaining = Math.max(0, open.channel.size() - start);
+        int capacity = (int) Math.min(Math.min(length, remaining), MAX_READ_SIZE);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+        if (capacity == 0) {
+            return buffer;
+        }
+        if (position < 0) {
+            while (buffer.hasRemaining() && open.channel.read(buffer) >= 0) {
+                // 读取直到缓冲区填满或到达文件末尾
+            }
+        } else {
+            int read;
+            while (buffer.hasRemaining() && (read = open.channel.read(buffer, position)) >= 0) {
+                position += read;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 向打开的文件写入数据
+     * @param fd 文件描述符
+     * @param data 数据
+     * @param position 写入位置，小于 0 时从当前位置写入并移动位置；追加模式下忽略
+     * @return 写入的字节数
+     * @throws IOException 如果写入失败或超出存储配额
+     */
+    public int write(int fd, ByteBuffer data, long position) throws IOException {
+        OpenFile open = getOpenFile(fd);
+        if (!open.writable) {
+            throw new IOException("文件未以写入方式打开: " + open.file.getName());
+        }
+
+        FileChannel channel = open.channel;
+        long oldSize = channel.size();
+        long start = open.append ? oldSize : (position < 0 ? channel.position() : position);
+        int length = data.remaining();
+        long growth = Math.max(0, start + length - oldSize);
+        reserve(growth);
+
+        try {
+            writeFully(channel, data, open.append || position >= 0 ? start : -1);
+        } finally {
+            long actual = channel.isOpen() ? channel.size() - oldSize : 0;
+            if (actual != growth) {
+                adjust(actual - growth);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 关闭打开的文件
+     * @param fd 文件描述符
+     * @return 文件描述符是否有效
+     */
+    public boolean close(int fd) {
+        OpenFile open = openFiles.remove(fd);
+        if (open == null) {
+            return false;
+        }
+        closeQuietly(open);
+        return true;
+    }
+
+    /**
+     * 在 I/O 线程池中执行操作
+     * @param task 操作
+     * @param completion 完成回调，在 I/O 线程中调用
+     */
+    public void submit(Callable<Object> task, Completion completion) {
+        ensureOpen();
+        try {
+            getIoExecutor().execute(() -> {
+                Object result = null;
+                Throwable error = null;
+                try {
+                    result = task.call();
+                } catch (Throwable t) {
+                    error = t;
+                }
+                completion.onComplete(result, error);
+            });
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("I/O 线程池已关闭", e);
+        }
+    }
+
+    /**
+     * 获取已使用的存储空间
+     * @return 已使用的存储空间（字节）
+     */
+    public long getStorageUsage() {
+        ensureUsageLoaded();
+        return storageUsage.get();
+    }
+
+    /**
+     * 获取打开的文件数量
+     * @return 打开的文件数量
+     */
+    public int getOpenFileCount() {
+        return openFiles.size();
+    }
+
+    /**
+     * 文件系统是否已关闭
+     * @return 是否已关闭
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭文件系统和所有打开的文件
+     * 正在执行的异步操作会因文件关闭而失败
+     */
+    public void close() {
+        closed = true;
+        for (Integer fd : openFiles.keySet()) {
+            close(fd);
+        }
+    }
+
+    /**
+     * 获取共用的 I/O 线程池
+     * @return I/O 线程池
+     */
+    private static ExecutorService getIoExecutor() {
+        ExecutorService executor = ioExecutor;
+        if (executor == null) {
+            synchronized (MpkJSFileSystem.class) {
+                executor = ioExecutor;
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(IO_THREADS, runnable -> {
+                        Thread thread = new Thread(runnable, "MpkJSIO-" + THREAD_COUNT.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    ioExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private OpenFile getOpenFile(int fd) throws IOException {
+        ensureOpen();
+        OpenFile open = openFiles.get(fd);
+        if (open == null) {
+            throw new IOException("无效的文件描述符: " + fd);
+        }
+        return open;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("文件系统已关闭");
+        }
+    }
+
+    /**
+     * 预留存储空间，超出配额时抛出异常
+     * @param bytes 增加的字节数，小于 0 时直接释放
+     */
+    private void reserve(long bytes) throws IOException {
+        ensureUsageLoaded();
+        if (bytes <= 0) {
+            storageUsage.addAndGet(bytes);
+            return;
+        }
+
+        long limit = quota;
+        while (true) {
+            long current = storageUsage.get();
+            if (limit > 0 && current + bytes > limit) {
+                throw new IOException("存储空间不足: 需要 " + bytes + " 字节，已使用 " + current + "/" + limit);
+            }
+            if (storageUsage.compareAndSet(current, current + bytes)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 按文件实际大小修正预留的存储空间
+     * @param file 文件
+     * @param expectedSize 预留时假定的文件大小
+     */
+    private void settle(File file, long expectedSize) {
+        long actual = file.length();
+        if (actual != expectedSize) {
+            adjust(actual - expectedSize);
+        }
+    }
+
+    private void adjust(long bytes) {
+        if (bytes != 0) {
+            ensureUsageLoaded();
+            storageUsage.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * 首次使用时统计沙箱已使用的存储空间
+     */
+    private void ensureUsageLoaded() {
+        if (usageLoaded) {
+            return;
+        }
+        synchronized (storageUsage) {
+            if (!usageLoaded) {
+                // 键值存储和 HTTP 缓存单独限制空间，不计入文件 API 的用量
+                long size = directorySize(env.rootDir)
+                    - directorySize(new File(storagePath))
+                    - directorySize(new File(httpCachePath));
+                storageUsage.addAndGet(Math.max(size, 0));
+                usageLoaded = true;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        if (position < 0) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } else {
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+        }
+    }
+
+    private static long directorySize(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.isDirectory() ? directorySize(file) : file.length();
+            }
+        }
+        return size;
+    }
+
+    private static boolean isWithin(String path, String dirPath) {
+        return path.equals(dirPath) || path.startsWith(dirPath + File.separator);
+    }
+
+    private static String canonicalPath(File dir) {
+        try {
+            return dir.getCanonicalPath();
+        } catch (IOException e) {
+            Log.w(TAG, "获取沙箱规范路径失败: " + dir.getAbsolutePath(), e);
+            return dir.getAbsolutePath();
+        }
+    }
+
+    private static void closeQuietly(OpenFile open) {
+        try {
+            open.channel.close();
+        } catch (IOException e) {
+            Log.w(TAG, "关闭文件失败: " + open.file.getName(), e);
+        }
+    }
+}
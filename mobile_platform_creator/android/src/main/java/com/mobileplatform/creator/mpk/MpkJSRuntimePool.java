@@ -0,0 +1,513 @@
+package com.mobileplatform.creator.mpk;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MPK JavaScript 运行时池
+ * 在后台预先创建并初始化与应用无关的运行时，启动应用时只需绑定沙箱；
+ * 同时统计应用启动次数，为最常启动的应用提前绑定好运行时
+ */
+public class MpkJSRuntimePool {
+    private static final String TAG = "MpkJSRuntimePool";
+
+    // 默认空闲运行时数量
+    public static final int DEFAULT_CAPACITY = 2;
+
+    // 默认预测预热的应用数量
+    public static final int DEFAULT_PREDICTIVE_SLOTS = 2;
+
+    // 上下文
+    private final Context context;
+
+    // JavaScript 引擎类型
+    private final String engineType;
+
+    // 启动统计文件
+    private final File statsFile;
+
+    // 预热线程，创建运行时和保存统计都在此线程执行
+    private final ExecutorService warmUpExecutor;
+
+    // 空闲的未绑定运行时
+    private final ConcurrentLinkedQueue<MpkJavaScriptRuntime> idleRuntimes;
+
+    // 空闲运行时数量
+    private final AtomicInteger idleCount;
+
+    // 为常用应用提前绑定的运行时
+    private final Map<String, MpkJavaScriptRuntime> reservedRuntimes;
+
+    // 应用启动次数
+    private final Map<String, AtomicInteger> launchCounts;
+
+    // 是否已安排补充空闲运行时
+    private final AtomicBoolean refillScheduled;
+
+    // 是否已安排保存统计
+    private final AtomicBoolean saveScheduled;
+
+    // 命中预热运行时的次数
+    private final AtomicLong hitCount;
+
+    // 需要现场创建运行时的次数
+    private final AtomicLong missCount;
+
+    // 空闲运行时数量上限
+    private volatile int capacity;
+
+    // 预测预热的应用数量
+    private volatile int predictiveSlots;
+
+    // 是否已关闭
+    private volatile boolean closed;
+
+    /**
+     * 创建运行时池
+     * @param context 上下文
+     * @param engineType JavaScript 引擎类型
+     * @param statsFile 启动统计文件
+     */
+    public MpkJSRuntimePool(Context context, String engineType, File statsFile) {
+        this.context = context;
+        this.engineType = engineType;
+        this.statsFile = statsFile;
+        this.warmUpExecutor = Executors.newSingleThreadExecutor();
+        this.idleRuntimes = new ConcurrentLinkedQueue<>();
+        this.idleCount = new AtomicInteger(0);
+        this.reservedRuntimes = new ConcurrentHashMap<>();
+        this.launchCounts = new ConcurrentHashMap<>();
+        this.refillScheduled = new AtomicBoolean(false);
+        this.saveScheduled = new AtomicBoolean(false);
+        this.hitCount = new AtomicLong(0);
+        this.missCount = new AtomicLong(0);
+        this.capacity = DEFAULT_CAPACITY;
+        this.predictiveSlots = DEFAULT_PREDICTIVE_SLOTS;
+    }
+
+    /**
+     * 在后台加载启动统计并填充空闲运行时
+     */
+    public void start() {
+        submit(this::loadLaunchStats);
+        scheduleRefill();
+    }
+
+    /**
+     * 获取绑定到应用的运行时
+     * 优先使用为该应用提前绑定的运行时，其次使用空闲运行时，都没有时现场创建
+     * @param appId 应用 ID
+     * @param sandboxEnv 沙箱环境
+     * @return 已初始化并绑定的运行时
+     * @throws IOException 如果创建运行时失败
+     */
+    public MpkJavaScriptRuntime acquire(String appId, MpkSandbox.SandboxEnvironment sandboxEnv) throws IOException {
+        recordLaunch(appId);
+
+        // 提前绑定的运行时
+        MpkJavaScriptRuntime runtime = reservedRuntimes.remove(appId);
+        if (runtime != null) {
+            if (runtime.isRunning()) {
+                hitCount.incrementAndGet();
+                Log.d(TAG, "使用预绑定的运行时: " + appId);
+                return runtime;
+            }
+            runtime.shutdown();
+        }
+
+        // 空闲运行时
+        try {
+            while ((runtime = pollIdle()) != null) {
+                if (runtime.bind(appId, sandboxEnv)) {
+                    hitCount.incrementAndGet();
+                    Log.d(TAG, "使用预初始化的运行时: " + appId);
+                    return runtime;
+                }
+                runtime.shutdown();
+            }
+        } finally {
+            scheduleRefill();
+        }
+
+        // 现场创建
+        missCount.incrementAndGet();
+        Log.d(TAG, "没有可用的预初始化运行时，现场创建: " + appId);
+        runtime = new MpkJavaScriptRuntime(context, appId, sandboxEnv, engineType);
+        if (!runtime.initialize()) {
+            runtime.shutdown();
+            throw new IOException("初始化 JavaScript 运行时失败");
+        }
+        return runtime;
+    }
+
+    /**
+     * 归还运行时
+     * 清理应用状态后放回空闲队列，无法清理或空闲队列已满时关闭
+     * @param runtime 运行时
+     */
+    public void release(MpkJavaScriptRuntime runtime) {
+        if (closed || !runtime.scrub()) {
+            runtime.shutdown();
+            return;
+        }
+
+        if (idleCount.incrementAndGet() > capacity) {
+            idleCount.decrementAndGet();
+            runtime.shutdown();
+            return;
+        }
+
+        idleRuntimes.offer(runtime);
+        if (closed) {
+            drainIdle();
+        }
+    }
+
+    /**
+     * 如果应用属于最常启动的应用，在后台为其提前绑定运行时
+     * @param appId 应用 ID
+     * @param sandboxEnv 沙箱环境
+     */
+    public void warmUp(String appId, MpkSandbox.SandboxEnvironment sandboxEnv) {
+        if (closed || reservedRuntimes.containsKey(appId) || !isFrequentApp(appId)) {
+            return;
+        }
+
+        submit(() -> {
+            if (closed || reservedRuntimes.containsKey(appId) || reservedRuntimes.size() >= predictiveSlots) {
+                return;
+            }
+
+            MpkJavaScriptRuntime runtime = pollIdle();
+            if (runtime == null) {
+                runtime = createRuntime();
+                if (runtime == null) {
+                    return;
+                }
+            }
+
+            if (!runtime.bind(appId, sandboxEnv)) {
+                runtime.shutdown();
+                return;
+            }
+
+            if (reservedRuntimes.putIfAbsent(appId, runtime) != null || closed) {
+                reservedRuntimes.remove(appId, runtime);
+                release(runtime);
+                return;
+            }
+
+            Log.i(TAG, "已为常用应用预绑定运行时: " + appId);
+            scheduleRefill();
+        });
+    }
+
+    /**
+     * 丢弃为应用提前绑定的运行时
+     * 应用卸载或沙箱重建时调用
+     * @param appId 应用 ID
+     */
+    public void discardReserved(String appId) {
+        MpkJavaScriptRuntime runtime = reservedRuntimes.remove(appId);
+        if (runtime != null) {
+            runtime.shutdown();
+        }
+    }
+
+    /**
+     * 获取启动次数最多的应用
+     * @param limit 最大数量
+     * @return 按启动次数降序排列的应用 ID
+     */
+    public List<String> getTopLaunchedApps(int limit) {
+        List<Map.Entry<String, AtomicInteger>> entries = new ArrayList<>(launchCounts.entrySet());
+        entries.sort((a, b) -> Integer.compare(b.getValue().get(), a.getValue().get()));
+
+        List<String> appIds = new ArrayList<>();
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            appIds.add(entries.get(i).getKey());
+        }
+        return appIds;
+    }
+
+    /**
+     * 获取应用启动次数
+     * @param appId 应用 ID
+     * @return 启动次数
+     */
+    public int getLaunchCount(String appId) {
+        AtomicInteger count = launchCounts.get(appId);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * 设置空闲运行时数量上限
+     * @param capacity 数量上限，0 表示不预先创建
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("运行时池容量不能为负数: " + capacity);
+        }
+
+        this.capacity = capacity;
+
+        // 关闭多余的空闲运行时
+        while (idleCount.get() > capacity) {
+            MpkJavaScriptRuntime runtime = pollIdle();
+            if (runtime == null) {
+                break;
+            }
+            runtime.shutdown();
+        }
+
+        scheduleRefill();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 设置预测预热的应用数量
+     * @param slots 应用数量，0 表示关闭预测预热
+     */
+    public void setPredictiveSlots(int slots) {
+        if (slots < 0) {
+            throw new IllegalArgumentException("预热数量不能为负数: " + slots);
+        }
+
+        this.predictiveSlots = slots;
+    }
+
+    public int getPredictiveSlots() {
+        return predictiveSlots;
+    }
+
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    public int getReservedCount() {
+        return reservedRuntimes.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 关闭运行时池
+     */
+    public void shutdown() {
+        closed = true;
+        warmUpExecutor.shutdown();
+
+        drainIdle();
+
+        Iterator<MpkJavaScriptRuntime> iterator = reservedRuntimes.values().iterator();
+        while (iterator.hasNext()) {
+            MpkJavaScriptRuntime runtime = iterator.next();
+            iterator.remove();
+            runtime.shutdown();
+        }
+
+        saveLaunchStats();
+        Log.i(TAG, "JavaScript 运行时池已关闭");
+    }
+
+    /**
+     * 取出一个空闲运行时
+     * @return 空闲运行时，没有时返回 null
+     */
+    private MpkJavaScriptRuntime pollIdle() {
+        MpkJavaScriptRuntime runtime = idleRuntimes.poll();
+        if (runtime != null) {
+            idleCount.decrementAndGet();
+        }
+        return runtime;
+    }
+
+    /**
+     * 关闭所有空闲运行时
+     */
+    private void drainIdle() {
+        MpkJavaScriptRuntime runtime;
+        while ((runtime = pollIdle()) != null) {
+            runtime.shutdown();
+        }
+    }
+
+    /**
+     * 创建并初始化未绑定的运行时
+     * @return 运行时，失败时返回 null
+     */
+    private MpkJavaScriptRuntime createRuntime() {
+        MpkJavaScriptRuntime runtime = new MpkJavaScriptRuntime(context, engineType);
+        if (!runtime.initialize()) {
+            Log.e(TAG, "预初始化 JavaScript 运行时失败");
+            runtime.shutdown();
+            return null;
+        }
+        return runtime;
+    }
+
+    /**
+     * 在后台补充空闲运行时
+     */
+    private void scheduleRefill() {
+        if (closed || idleCount.get() >= capacity || !refillScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (!submit(() -> {
+            refillScheduled.set(false);
+            while (!closed && idleCount.get() < capacity) {
+                MpkJavaScriptRuntime runtime = createRuntime();
+                if (runtime == null) {
+                    break;
+                }
+                idleCount.incrementAndGet();
+                idleRuntimes.offer(runtime);
+            }
+            if (closed) {
+                drainIdle();
+            }
+        })) {
+            refillScheduled.set(false);
+        }
+    }
+
+    /**
+     * 记录一次启动
+     * @param appId 应用 ID
+     */
+    private void recordLaunch(String appId) {
+        AtomicInteger count = launchCounts.get(appId);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = launchCounts.putIfAbsent(appId, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+
+        if (saveScheduled.compareAndSet(false, true)) {
+            if (!submit(() -> {
+                saveScheduled.set(false);
+                saveLaunchStats();
+            })) {
+                saveScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * 应用是否属于最常启动的应用
+     * @param appId 应用 ID
+     * @return 是否常用
+     */
+    private boolean isFrequentApp(String appId) {
+        int slots = predictiveSlots;
+        return slots > 0 && getLaunchCount(appId) > 0 && getTopLaunchedApps(slots).contains(appId);
+    }
+
+    /**
+     * 在预热线程中执行任务
+     * @param task 任务
+     * @return 是否成功提交
+     */
+    private boolean submit(Runnable task) {
+        if (closed) {
+            return false;
+        }
+
+        try {
+            warmUpExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 加载启动统计
+     */
+    private void loadLaunchStats() {
+        if (statsFile == null || !statsFile.exists()) {
+            return;
+        }
+
+        try {
+            String json = new String(Files.readAllBytes(statsFile.toPath()), StandardCharsets.UTF_8);
+            JSONObject stats = new JSONObject(json);
+            Iterator<String> keys = stats.keys();
+            while (keys.hasNext()) {
+                String appId = keys.next();
+                AtomicInteger count = launchCounts.get(appId);
+                if (count == null) {
+                    AtomicInteger created = new AtomicInteger();
+                    count = launchCounts.putIfAbsent(appId, created);
+                    if (count == null) {
+                        count = created;
+                    }
+                }
+                count.addAndGet(stats.optInt(appId, 0));
+            }
+            Log.i(TAG, "已加载应用启动统计: " + launchCounts.size() + " 个应用");
+        } catch (Exception e) {
+            Log.e(TAG, "加载应用启动统计失败", e);
+        }
+    }
+
+    /**
+     * 保存启动统计
+     */
+    private synchronized void saveLaunchStats() {
+        if (statsFile == null) {
+            return;
+        }
+
+        try {
+            JSONObject stats = new JSONObject();
+            for (Map.Entry<String, AtomicInteger> entry : launchCounts.entrySet()) {
+                stats.put(entry.getKey(), entry.getValue().get());
+            }
+
+            // 先写临时文件再替换，避免写入中断导致统计损坏
+            File tempFile = new File(statsFile.getPath() + ".tmp");
+            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                fos.write(stats.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!tempFile.renameTo(statsFile)) {
+                Log.w(TAG, "替换应用启动统计文件失败: " + statsFile.getAbsolutePath());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "保存应用启动统计失败", e);
+        }
+    }
+}
@@ -10,21 +10,37 @@ import android.webkit.WebViewClient;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.os.Build;
+import android.os.Debug;
 import android.webkit.ValueCallback;
 
 import androidx.annotation.RequiresApi;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import com.mobileplatform.creator.mpk.MpkNativeBridge.ArgType;
+import com.mobileplatform.creator.mpk.MpkNativeBridge.Signature;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -36,6 +52,33 @@ import org.json.JSONObject;
 public class MpkJavaScriptRuntime {
     private static final String TAG = "MpkJavaScriptRuntime";
     
+    // 内存软上限占内存限制的百分比，超过后先触发垃圾回收
+    private static final int MEMORY_SOFT_LIMIT_PERCENT = 80;
+    
+    // 事件循环中两次内存检查的最小间隔（纳秒）
+    private static final long MEMORY_CHECK_INTERVAL_NS = 500_000_000L;
+    
+    // 超过软上限时两次垃圾回收的最小间隔（纳秒），超过硬上限时不受限制
+    private static final long MEMORY_GC_INTERVAL_NS = 5_000_000_000L;
+    
+    // 单轮事件循环（一个宏任务及其微任务）默认的 CPU 时间预算（毫秒）
+    public static final long DEFAULT_SLICE_BUDGET_MS = 1000;
+    
+    // 宿主直接调用（入口脚本、函数调用）默认的 CPU 时间预算（毫秒）
+    public static final long DEFAULT_CALL_BUDGET_MS = 10000;
+    
+    // 单轮执行超过该时间后 scheduler.shouldYield 返回 true（纳秒）
+    private static final long YIELD_INTERVAL_NS = 16_000_000L;
+    
+    // 宿主调用超出预算后额外等待引擎响应中断的时间（毫秒）
+    private static final long CALL_WAIT_GRACE_MS = 2000;
+    
+    // 核心快照的缓存键来源，核心快照保存在宿主的代码缓存目录中，宿主或系统升级时由系统清除
+    private static final byte[] CORE_SNAPSHOT_SOURCE = "mpk-core-apis".getBytes(StandardCharsets.UTF_8);
+    
+    // 已确认不支持快照的引擎（类名和版本），之后的运行时跳过快照，只在首次发现时记录日志
+    private static final Set<String> SNAPSHOT_UNSUPPORTED_ENGINES = ConcurrentHashMap.newKeySet();
+    
     // JavaScript 引擎接口
     public interface JSEngine {
         // 初始化引擎
@@ -67,6 +110,89 @@ public class MpkJavaScriptRuntime {
         
         // 获取内存使用情况
         long getMemoryUsage();
+        
+        // 设置堆内存硬上限（字节），超过后分配失败，脚本收到内存不足异常；0 表示不限制
+        // 不支持时忽略，由运行时按统计值终止应用
+        default void setMemoryLimit(long limit) {
+        }
+        
+        // 保存当前脚本上下文的堆快照，快照不包含原生方法的实现
+        // 不支持快照时返回 null，运行时随后对该引擎停用快照；内置的 DummyJSEngine 不支持快照
+        default byte[] createSnapshot() throws Exception {
+            return null;
+        }
+        
+        // 用 createSnapshot 保存的快照替换当前脚本上下文，已注册和之后注册的原生方法按名称绑定
+        // 快照无法使用（引擎版本不一致或数据损坏）时返回 false，当前上下文保持不变
+        default boolean restoreSnapshot(byte[] data) throws Exception {
+            return false;
+        }
+        
+        // 设置中断处理器，引擎在执行脚本期间定期调用，返回 true 时中止当前脚本并抛出 ScriptInterruptedException
+        // 不支持时忽略，宿主调用最多等待执行时间预算，超时后终止应用
+        default void setInterruptHandler(InterruptHandler handler) {
+        }
+        
+        // 重置脚本上下文，丢弃脚本创建的全局状态，保留已注册的原生方法
+        // 不支持时返回 false，运行时将不会被复用
+        default boolean reset() {
+            return false;
+        }
+
+        // 获取引擎版本，作为编译缓存键的一部分，引擎升级后旧缓存自动失效
+        // 不支持编译缓存时返回 null
+        default String getVersion() {
+            return null;
+        }
+
+        // 编译脚本并序列化为字节码，不执行脚本
+        // 不支持编译缓存时返回 null
+        default byte[] compile(String script, String filename) throws Exception {
+            return null;
+        }
+
+        // 执行 compile 生成的字节码
+        // 字节码无法使用时必须在执行任何代码之前抛出 CompiledScriptRejectedException
+        default Object executeCompiled(byte[] data, String filename) throws Exception {
+            throw new CompiledScriptRejectedException("引擎不支持编译缓存");
+        }
+
+        // 创建以指定缓冲区为底层内存的 ArrayBuffer，直接缓冲区由引擎直接引用，不复制
+        default Object createArrayBuffer(ByteBuffer buffer) {
+            return buffer;
+        }
+
+        // 获取 ArrayBuffer 的底层内存，不是 ArrayBuffer 时返回 null
+        default ByteBuffer getArrayBufferData(Object value) {
+            return value instanceof ByteBuffer ? ((ByteBuffer) value).duplicate() : null;
+        }
+
+        // 注册类型化原生方法，引擎按签名把参数直接写入复用的调用帧
+        // 不支持类型化调用的引擎按普通原生方法注册，参数和返回值装箱，结构化结果解码为 JSONObject，
+        // 缓冲区参数通过 getArrayBufferData 转换，与引擎自己的 ArrayBuffer 表示保持一致
+        default void registerTypedMethod(String methodName, MpkNativeBridge.Signature signature,
+                                         MpkNativeBridge.TypedMethod method) {
+            registerNativeMethod(methodName, MpkNativeBridge.adapt(signature, method, this::getArrayBufferData));
+        }
+    }
+
+    // 脚本中断处理器，在执行脚本的线程中调用，需要尽量轻量
+    public interface InterruptHandler {
+        boolean shouldInterrupt();
+    }
+    
+    // 脚本因超出执行时间预算或宿主请求而被中断
+    public static class ScriptInterruptedException extends Exception {
+        public ScriptInterruptedException(String message) {
+            super(message);
+        }
+    }
+    
+    // 编译缓存无法被引擎使用（引擎版本、编译参数不一致或数据损坏），脚本尚未执行
+    public static class CompiledScriptRejectedException extends Exception {
+        public CompiledScriptRejectedException(String message) {
+            super(message);
+        }
     }
     
     // 原生方法接口
@@ -79,6 +205,12 @@ public class MpkJavaScriptRuntime {
         void onEvent(String eventName, JSONObject data);
     }
     
+    // 资源超限监听器，在主线程中回调
+    // terminated 为 true 时运行时已停止执行脚本，由宿主停止应用；否则只中断了超限的脚本
+    public interface ResourceLimitListener {
+        void onResourceLimitExceeded(String appId, MpkSandbox.ResourceExceededEvent event, boolean terminated);
+    }
+    
     // JavaScript API 提供者
     public interface JSAPIProvider {
         String getNamespace();
@@ -87,14 +219,19 @@ public class MpkJavaScriptRuntime {
         void onUnregistered();
     }
     
+    // 文件系统操作，可能在 I/O 线程中执行，不能访问引擎
+    private interface FsOperation {
+        Object run(MpkJSFileSystem fs, Object[] args) throws Exception;
+    }
+    
     // 上下文
     private Context context;
     
-    // 应用 ID
-    private String appId;
+    // 应用 ID，未绑定应用时为 null
+    private volatile String appId;
     
-    // 沙箱环境
-    private MpkSandbox.SandboxEnvironment sandboxEnv;
+    // 沙箱环境，未绑定应用时为 null
+    private volatile MpkSandbox.SandboxEnvironment sandboxEnv;
     
     // JavaScript 引擎
     private JSEngine jsEngine;
@@ -112,11 +249,71 @@ public class MpkJavaScriptRuntime {
     private AtomicLong memoryUsage;
     
     // 最大内存限制
-    private long maxMemory;
+    private volatile long maxMemory;
     
-    // 主线程处理器
+    // 主线程处理器，仅用于在事件循环之外关闭运行时
     private Handler mainHandler;
     
+    // 事件循环，脚本执行、原生方法回调和定时器都在其线程中运行
+    private final MpkJSEventLoop eventLoop;
+
+    // 脚本编译缓存，绑定应用时创建，引擎不支持编译时为 null
+    private volatile MpkScriptCache scriptCache;
+    
+    // 文件系统，绑定应用时创建
+    private volatile MpkJSFileSystem fileSystem;
+    
+    // 键值存储，首次使用时打开
+    private volatile MpkKeyValueStore keyValueStore;
+    
+    // 网络请求服务，首次使用时创建
+    private volatile MpkJSFetch networkFetch;
+    
+    // 权限管理器，由宿主在绑定后设置
+    private volatile MpkPermissionManager permissionManager;
+    
+    // 权限变更监听器，网络权限被撤销时取消进行中的请求
+    private volatile MpkPermissionManager.PermissionChangeListener permissionListener;
+    
+    // 应用的资源使用情况，由宿主在绑定后设置
+    private volatile MpkSandbox.ResourceUsage resourceUsage;
+    
+    // 资源超限监听器，由宿主在绑定后设置
+    private volatile ResourceLimitListener resourceLimitListener;
+    
+    // 应用间消息总线，由宿主在绑定后设置
+    private volatile MpkInterAppCommunication messageBus;
+    
+    // 脚本注册的消息回调，只在事件循环线程中访问
+    private MpkInterAppCommunication.MessageCallback scriptMessageCallback;
+    
+    // 上次内存检查时间（纳秒），只在事件循环线程中访问
+    private long lastMemoryCheckTime;
+    
+    // 上次因软上限触发垃圾回收的时间（纳秒），只在事件循环线程中访问
+    private long lastMemoryGcTime;
+    
+    // 单轮事件循环和宿主调用的 CPU 时间预算（纳秒）
+    private volatile long sliceBudget = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLICE_BUDGET_MS);
+    private volatile long callBudget = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CALL_BUDGET_MS);
+    
+    // 当前轮次的预算、开始时间和开始时的线程 CPU 时间，只在事件循环线程中访问
+    private long turnBudget = Long.MAX_VALUE;
+    private long turnStartTime;
+    private long turnStartCpuTime;
+    
+    // 当前轮次超出预算时已消耗的 CPU 时间，未超出时为 0，只在事件循环线程中访问
+    private long turnExceededCpuTime;
+    
+    // 宿主请求中断正在执行的脚本，清理运行时后复位
+    private volatile boolean interruptRequested;
+    
+    // 是否使用堆快照加快启动
+    private volatile boolean snapshotsEnabled = true;
+    
+    // 已提交但结果尚未投递到事件循环的异步操作数量
+    private final AtomicInteger pendingCallbacks = new AtomicInteger();
+    
     // JavaScript引擎类型
     private String engineType;
     
@@ -132,25 +329,67 @@ public class MpkJavaScriptRuntime {
      * @param engineType JavaScript 引擎类型（"v8"、"quickjs" 等）
      */
     public MpkJavaScriptRuntime(Context context, String appId, MpkSandbox.SandboxEnvironment sandboxEnv, String engineType) {
-        this.context = context;
+        this(context, engineType);
         this.appId = appId;
         this.sandboxEnv = sandboxEnv;
+        this.maxMemory = sandboxEnv.limits.maxMemory;
+        this.eventLoop.setMaxTimers(sandboxEnv.limits.maxTimers);
+    }
+    
+    /**
+     * 构造未绑定应用的运行时
+     * 初始化后只注册与应用无关的 API，由运行时池预先创建，启动应用时再调用 {@link #bind}
+     * 
+     * @param context 上下文
+     * @param engineType JavaScript 引擎类型（"v8"、"quickjs" 等）
+     */
+    public MpkJavaScriptRuntime(Context context, String engineType) {
+        this.context = context;
         this.engineType = engineType;
-        this.eventListeners = new HashMap<>();
+        this.eventListeners = new ConcurrentHashMap<>();
         this.apiProviders = new HashMap<>();
         this.isRunning = new AtomicBoolean(false);
         this.memoryUsage = new AtomicLong(0);
-        this.maxMemory = sandboxEnv.limits.maxMemory;
+        this.maxMemory = Long.MAX_VALUE;
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.eventLoop = new MpkJSEventLoop();
+        this.eventLoop.setTurnListener(new MpkJSEventLoop.TurnListener() {
+            @Override
+            public void onTurnStart() {
+                beginTurn();
+            }
+            
+            @Override
+            public void onTurnEnd() {
+                endTurn();
+                checkMemoryUsage();
+            }
+        });
         this.jsEngineFactory = new JSEngineFactory();
     }
     
     /**
      * 初始化 JavaScript 运行时
+     * 启动事件循环，并在事件循环线程中创建和初始化引擎
      * 
      * @return 是否成功初始化
      */
     public boolean initialize() {
+        try {
+            eventLoop.start();
+            return eventLoop.call(this::initializeEngine);
+        } catch (Exception e) {
+            Log.e(TAG, "初始化 JavaScript 运行时失败: " + appId, e);
+            return false;
+        }
+    }
+    
+    /**
+     * 创建引擎并注册 API，在事件循环线程中执行
+     * 
+     * @return 是否成功初始化
+     */
+    private boolean initializeEngine() {
         try {
             // 创建 JavaScript 引擎
             this.jsEngine = jsEngineFactory.createEngine(engineType);
@@ -166,6 +405,14 @@ public class MpkJavaScriptRuntime {
                 return false;
             }
             
+            // 按执行时间预算中断脚本
+            jsEngine.setInterruptHandler(this::shouldInterrupt);
+            
+            // 从核心快照恢复注册 API 后的脚本上下文，原生方法仍需注册，由引擎按名称绑定
+            MpkScriptCache coreSnapshots = createCoreSnapshotCache();
+            String coreKey = coreSnapshots != null ? coreSnapshots.snapshotKeyFor(CORE_SNAPSHOT_SOURCE) : null;
+            boolean coreRestored = coreSnapshots != null && restoreSnapshot(coreSnapshots, coreKey);
+            
             // 注册核心 API
             registerCoreAPIs();
             
@@ -184,12 +431,22 @@ public class MpkJavaScriptRuntime {
             // 注册存储 API
             registerStorageAPIs();
             
-            // 设置全局变量
-            setupGlobalVariables();
+            // 保存与应用无关的核心快照，供之后创建的运行时使用
+            if (coreSnapshots != null && !coreRestored) {
+                captureSnapshot(coreSnapshots, coreKey);
+            }
+            
+            // 设置全局变量，未绑定应用时在绑定时设置
+            if (sandboxEnv != null) {
+                jsEngine.setMemoryLimit(maxMemory);
+                setupGlobalVariables();
+                scriptCache = createScriptCache(sandboxEnv);
+                fileSystem = new MpkJSFileSystem(sandboxEnv);
+            }
             
             isRunning.set(true);
             
-            Log.i(TAG, "JavaScript 运行时初始化成功: " + appId);
+            Log.i(TAG, "JavaScript 运行时初始化成功: " + (appId != null ? appId : "(未绑定)"));
             return true;
         } catch (Exception e) {
             Log.e(TAG, "初始化 JavaScript 运行时失败: " + appId, e);
@@ -198,134 +455,800 @@ public class MpkJavaScriptRuntime {
     }
     
     /**
-     * 释放 JavaScript 运行时
+     * 将运行时绑定到应用
+     * 
+     * @param appId 应用 ID
+     * @param sandboxEnv 沙箱环境
+     * @return 是否成功绑定
+     */
+    public boolean bind(String appId, MpkSandbox.SandboxEnvironment sandboxEnv) {
+        if (!isRunning.get()) {
+            Log.e(TAG, "JavaScript 运行时未初始化或已关闭，无法绑定: " + appId);
+            return false;
+        }
+        
+        // 在事件循环中执行，与脚本和清理操作串行
+        try {
+            return eventLoop.call(() -> {
+                if (this.appId != null) {
+                    Log.e(TAG, "JavaScript 运行时已绑定到应用: " + this.appId);
+                    return false;
+                }
+                
+                this.appId = appId;
+                this.sandboxEnv = sandboxEnv;
+                this.maxMemory = sandboxEnv.limits.maxMemory;
+                jsEngine.setMemoryLimit(maxMemory);
+                eventLoop.setMaxTimers(sandboxEnv.limits.maxTimers);
+                setupGlobalVariables();
+                scriptCache = createScriptCache(sandboxEnv);
+                fileSystem = new MpkJSFileSystem(sandboxEnv);
+                
+                Log.i(TAG, "JavaScript 运行时已绑定: " + appId);
+                return true;
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "绑定 JavaScript 运行时失败: " + appId, e);
+            return false;
+        }
+    }
+    
+    /**
+     * 清理应用留下的状态，使运行时可以重新绑定到其他应用
+     * 
+     * @return 是否可以复用，返回 false 时调用方应关闭该运行时
+     */
+    public boolean scrub() {
+        if (!isRunning.get()) {
+            return false;
+        }
+        
+        // 中断仍在执行的脚本，引擎不响应中断时放弃复用
+        interruptRequested = true;
+        try {
+            return eventLoop.call(this::scrubOnLoop, TimeUnit.NANOSECONDS.toMillis(callBudget) + CALL_WAIT_GRACE_MS);
+        } catch (Exception e) {
+            Log.e(TAG, "清理 JavaScript 运行时失败: " + appId, e);
+            return false;
+        }
+    }
+    
+    /**
+     * 清理应用状态，在事件循环线程中执行
+     * 
+     * @return 是否可以复用
+     */
+    private boolean scrubOnLoop() {
+        if (jsEngine == null) {
+            return false;
+        }
+        
+        // 取消未执行的定时器和任务
+        eventLoop.clear();
+        
+        // 关闭应用打开的文件和网络请求，丢弃未完成的异步操作结果
+        closeFileSystem();
+        closeKeyValueStore();
+        closeFetch();
+        detachPermissionListener();
+        permissionManager = null;
+        MpkSandbox.ResourceUsage appUsage = resourceUsage;
+        if (appUsage != null) {
+            appUsage.setJsHeapUsage(0);
+        }
+        resourceUsage = null;
+        resourceLimitListener = null;
+        removeScriptMessageCallback();
+        messageBus = null;
+        
+        // 清理事件监听器
+        eventListeners.clear();
+        
+        // 应用注册的 API 提供者无法从引擎中移除，不能复用
+        if (!apiProviders.isEmpty()) {
+            return false;
+        }
+        
+        // 重置脚本上下文
+        if (!jsEngine.reset()) {
+            return false;
+        }
+        
+        appId = null;
+        sandboxEnv = null;
+        scriptCache = null;
+        maxMemory = Long.MAX_VALUE;
+        jsEngine.setMemoryLimit(0);
+        interruptRequested = false;
+        eventLoop.setMaxTimers(MpkJSEventLoop.DEFAULT_MAX_TIMERS);
+        memoryUsage.set(0);
+        pendingCallbacks.set(0);
+        return true;
+    }
+    
+    /**
+     * 关闭文件系统，在事件循环线程中执行
+     */
+    private void closeFileSystem() {
+        MpkJSFileSystem fs = fileSystem;
+        if (fs != null) {
+            fileSystem = null;
+            fs.close();
+        }
+    }
+    
+    /**
+     * 是否已绑定到应用
+     * 
+     * @return 是否已绑定
+     */
+    public boolean isBound() {
+        return appId != null;
+    }
+    
+    /**
+     * 获取绑定的应用 ID
+     * 
+     * @return 应用 ID，未绑定时返回 null
+     */
+    public String getAppId() {
+        return appId;
+    }
+    
+    /**
+     * 运行时是否处于可用状态
+     * 
+     * @return 是否已初始化且未关闭
+     */
+    public boolean isRunning() {
+        return isRunning.get();
+    }
+    
+    /**
+     * 释放 JavaScript 运行时
+     * 引擎在事件循环线程中关闭，随后停止事件循环
+     */
+    public void shutdown() {
+        if (isRunning.compareAndSet(true, false)) {
+            // 中断仍在执行的脚本，引擎不响应中断时不再等待
+            interruptRequested = true;
+            try {
+                eventLoop.call(() -> {
+                    // 解注册所有 API 提供者
+                    for (JSAPIProvider provider : apiProviders.values()) {
+                        try {
+                            provider.onUnregistered();
+                        } catch (Exception e) {
+                            Log.e(TAG, "解注册 API 提供者失败: " + provider.getNamespace(), e);
+                        }
+                    }
+                    
+                    // 清理事件监听器
+                    eventListeners.clear();
+                    
+                    // 关闭打开的文件、键值存储和网络请求
+                    closeFileSystem();
+                    closeKeyValueStore();
+                    closeFetch();
+                    
+                    // 关闭 JavaScript 引擎
+                    if (jsEngine != null) {
+                        jsEngine.shutdown();
+                        jsEngine = null;
+                    }
+                    return null;
+                }, TimeUnit.NANOSECONDS.toMillis(callBudget) + CALL_WAIT_GRACE_MS);
+                
+                Log.i(TAG, "JavaScript 运行时已关闭: " + appId);
+            } catch (Exception e) {
+                Log.e(TAG, "关闭 JavaScript 运行时失败: " + appId, e);
+            }
+        }
+        
+        // 停止事件循环，同时取消所有定时器
+        eventLoop.quit();
+    }
+    
+    /**
+     * 执行 JavaScript 文件
+     * 
+     * @param file JavaScript 文件
+     * @return 执行结果
+     * @throws IOException 如果读取文件失败
+     * @throws Exception 如果执行脚本失败
+     */
+    public Object executeFile(File file) throws IOException, Exception {
+        if (!isRunning.get()) {
+            throw new IllegalStateException("JavaScript 运行时未初始化或已关闭");
+        }
+        
+        if (appId == null) {
+            throw new IllegalStateException("JavaScript 运行时未绑定应用");
+        }
+        
+        // 读取文件在调用线程中进行，不占用事件循环
+        return executeSource(Files.readAllBytes(file.toPath()), file.getName());
+    }
+    
+    /**
+     * 启动应用入口脚本
+     * 优先从应用快照恢复启动后的脚本上下文，跳过脚本执行；没有快照时执行脚本，
+     * 执行后应用处于静止状态（没有定时器、待执行任务、异步操作、事件监听器、打开的文件和请求）时保存快照，
+     * 否则快照无法还原这些原生状态，不保存。
+     * 快照需要引擎实现 createSnapshot / restoreSnapshot，内置的 DummyJSEngine 没有实现，
+     * 使用它时首次发现后记录一次日志，之后直接执行脚本
+     * 
+     * @param file 入口脚本文件
+     * @return 执行结果，从快照恢复时为 null
+     * @throws IOException 如果读取文件失败
+     * @throws Exception 如果执行脚本失败
+     */
+    public Object executeEntryFile(File file) throws IOException, Exception {
+        MpkScriptCache cache = scriptCache;
+        if (cache == null || !snapshotsSupported()) {
+            return executeFile(file);
+        }
+        
+        if (!isRunning.get()) {
+            throw new IllegalStateException("JavaScript 运行时未初始化或已关闭");
+        }
+        
+        byte[] source = Files.readAllBytes(file.toPath());
+        String filename = file.getName();
+        String key = cache.snapshotKeyFor(source);
+        
+        byte[] snapshot = cache.load(key);
+        if (snapshot != null) {
+            try {
+                if (callWithBudget(() -> jsEngine.restoreSnapshot(snapshot))) {
+                    Log.i(TAG, "已从快照启动: " + appId + " (" + filename + ")");
+                    return null;
+                }
+                Log.w(TAG, "引擎拒绝应用快照: " + filename);
+            } catch (ScriptInterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                Log.w(TAG, "恢复应用快照失败: " + filename, e);
+            }
+            cache.remove(key);
+        }
+        
+        Object result = executeSource(source, filename);
+        
+        // 引导阶段的微任务已在上一轮中执行完毕，在新的一轮中检查状态并保存快照
+        boolean[] quiescent = new boolean[1];
+        byte[] data = eventLoop.call(() -> {
+            quiescent[0] = isQuiescent();
+            return quiescent[0] ? jsEngine.createSnapshot() : null;
+        });
+        if (data == null) {
+            if (quiescent[0]) {
+                markSnapshotsUnsupported();
+            }
+        } else if (cache.store(key, data)) {
+            Log.i(TAG, "已保存应用快照: " + appId + " (" + data.length + " 字节)");
+        }
+        return result;
+    }
+    
+    /**
+     * 是否尝试使用快照：未禁用且引擎未被确认不支持快照
+     * 
+     * @return 是否尝试
+     */
+    private boolean snapshotsSupported() {
+        return snapshotsEnabled && !SNAPSHOT_UNSUPPORTED_ENGINES.contains(snapshotEngineKey());
+    }
+    
+    /**
+     * 引擎的 createSnapshot 返回 null，记录该引擎不支持快照，同一引擎只记录一次日志
+     */
+    private void markSnapshotsUnsupported() {
+        if (SNAPSHOT_UNSUPPORTED_ENGINES.add(snapshotEngineKey())) {
+            Log.i(TAG, "JavaScript 引擎不支持堆快照，启动时直接执行脚本: " + snapshotEngineKey());
+        }
+    }
+    
+    private String snapshotEngineKey() {
+        return jsEngine.getClass().getName() + "/" + jsEngine.getVersion();
+    }
+    
+    /**
+     * 执行脚本内容，命中编译缓存时跳过解析和编译
+     * 
+     * @param source 脚本内容
+     * @param filename 文件名（用于错误报告）
+     * @return 执行结果
+     * @throws Exception 如果执行脚本失败
+     */
+    private Object executeSource(byte[] source, String filename) throws Exception {
+        MpkScriptCache cache = scriptCache;
+        
+        if (cache == null) {
+            String script = new String(source, StandardCharsets.UTF_8);
+            return callWithBudget(() -> jsEngine.executeScript(script, filename));
+        }
+        
+        // 命中编译缓存时跳过解析和编译
+        String key = cache.keyFor(source);
+        byte[] compiled = cache.load(key);
+        if (compiled != null) {
+            try {
+                return callWithBudget(() -> jsEngine.executeCompiled(compiled, filename));
+            } catch (CompiledScriptRejectedException e) {
+                Log.w(TAG, "编译缓存不可用，重新编译: " + filename + " - " + e.getMessage());
+                cache.remove(key);
+            }
+        }
+        
+        // 未命中时在事件循环中编译，在调用线程中写入缓存后执行
+        String script = new String(source, StandardCharsets.UTF_8);
+        byte[] data = eventLoop.call(() -> jsEngine.compile(script, filename));
+        if (data == null) {
+            return callWithBudget(() -> jsEngine.executeScript(script, filename));
+        }
+        
+        cache.store(key, data);
+        try {
+            return callWithBudget(() -> jsEngine.executeCompiled(data, filename));
+        } catch (CompiledScriptRejectedException e) {
+            Log.w(TAG, "引擎拒绝刚编译的字节码: " + filename + " - " + e.getMessage());
+            cache.remove(key);
+            return callWithBudget(() -> jsEngine.executeScript(script, filename));
+        }
+    }
+    
+    /**
+     * 设置是否使用堆快照加快启动
+     * 
+     * @param enabled 是否使用
+     */
+    public void setSnapshotsEnabled(boolean enabled) {
+        this.snapshotsEnabled = enabled;
+    }
+    
+    /**
+     * 创建核心快照缓存，在事件循环线程中执行
+     * 
+     * @return 快照缓存，引擎不支持或禁用快照时返回 null
+     */
+    private MpkScriptCache createCoreSnapshotCache() {
+        String version = jsEngine.getVersion();
+        if (!snapshotsSupported() || version == null || context == null) {
+            return null;
+        }
+        File dir = context.getCodeCacheDir();
+        return dir != null ? new MpkScriptCache(dir, version) : null;
+    }
+    
+    /**
+     * 从快照恢复脚本上下文，在事件循环线程中执行
+     * 快照无法使用时删除
+     * 
+     * @param cache 快照缓存
+     * @param key 缓存键
+     * @return 是否已恢复
+     */
+    private boolean restoreSnapshot(MpkScriptCache cache, String key) {
+        byte[] data = cache.load(key);
+        if (data == null) {
+            return false;
+        }
+        
+        try {
+            if (jsEngine.restoreSnapshot(data)) {
+                return true;
+            }
+            Log.w(TAG, "引擎拒绝快照: " + key);
+        } catch (Exception e) {
+            Log.w(TAG, "恢复快照失败: " + key, e);
+        }
+        cache.remove(key);
+        return false;
+    }
+    
+    /**
+     * 保存当前脚本上下文的快照，在事件循环线程中执行
+     * 
+     * @param cache 快照缓存
+     * @param key 缓存键
+     */
+    private void captureSnapshot(MpkScriptCache cache, String key) {
+        try {
+            byte[] data = jsEngine.createSnapshot();
+            if (data != null) {
+                cache.store(key, data);
+            } else {
+                markSnapshotsUnsupported();
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "保存快照失败: " + key, e);
+        }
+    }
+    
+    /**
+     * 应用是否处于静止状态，只有静止状态的脚本上下文可以保存为快照，在事件循环线程中执行
+     * 注册了宿主侧回调的脚本不算静止，恢复快照时不执行脚本，回调不会重新注册
+     * 
+     * @return 是否静止
+     */
+    private boolean isQuiescent() {
+        MpkJSFileSystem fs = fileSystem;
+        MpkJSFetch fetch = networkFetch;
+        return eventLoop.getPendingTimerCount() == 0
+            && eventLoop.getPendingTaskCount() == 0
+            && pendingCallbacks.get() == 0
+            && eventListeners.isEmpty()
+            && scriptMessageCallback == null
+            && (fs == null || fs.getOpenFileCount() == 0)
+            && (fetch == null || fetch.getActiveRequestCount() == 0);
+    }
+    
+    /**
+     * 创建脚本编译缓存，在事件循环线程中执行
+     * 
+     * @param env 沙箱环境
+     * @return 编译缓存，引擎不支持编译时返回 null
+     */
+    private MpkScriptCache createScriptCache(MpkSandbox.SandboxEnvironment env) {
+        String version = jsEngine.getVersion();
+        if (version == null || env.cacheDir == null) {
+            return null;
+        }
+        return new MpkScriptCache(env.cacheDir, version);
+    }
+    
+    /**
+     * 执行 JavaScript 脚本
+     * 
+     * @param script JavaScript 脚本
+     * @param filename 文件名（用于错误报告）
+     * @return 执行结果
+     * @throws Exception 如果执行脚本失败
+     */
+    public Object executeScript(String script, String filename) throws Exception {
+        if (!isRunning.get()) {
+            throw new IllegalStateException("JavaScript 运行时未初始化或已关闭");
+        }
+        
+        if (appId == null) {
+            throw new IllegalStateException("JavaScript 运行时未绑定应用");
+        }
+        
+        return callWithBudget(() -> jsEngine.executeScript(script, filename));
+    }
+    
+    /**
+     * 调用 JavaScript 函数
+     * 
+     * @param functionName 函数名
+     * @param args 参数
+     * @return 函数返回值
+     * @throws Exception 如果调用函数失败
+     */
+    public Object callFunction(String functionName, Object... args) throws Exception {
+        if (!isRunning.get()) {
+            throw new IllegalStateException("JavaScript 运行时未初始化或已关闭");
+        }
+        
+        return callWithBudget(() -> jsEngine.callFunction(functionName, args));
+    }
+    
+    /**
+     * 设置执行时间预算
+     * 
+     * @param sliceBudgetMs 单轮事件循环的 CPU 时间预算（毫秒）
+     * @param callBudgetMs 宿主直接调用（入口脚本、函数调用）的 CPU 时间预算（毫秒）
+     */
+    public void setExecutionBudgets(long sliceBudgetMs, long callBudgetMs) {
+        this.sliceBudget = TimeUnit.MILLISECONDS.toNanos(sliceBudgetMs);
+        this.callBudget = TimeUnit.MILLISECONDS.toNanos(callBudgetMs);
+    }
+    
+    /**
+     * 在事件循环中执行宿主调用，使用调用预算代替单轮预算
+     * 预算从任务开始执行时计算，在队列中等待的时间不计入；引擎不响应中断时，
+     * 任务开始后最多等待预算加宽限时间，超时后终止应用。任务排队超过同样的时间仍未开始时放弃调用，
+     * 不终止应用
+     * 
+     * @param task 任务
+     * @return 任务结果
+     * @throws Exception 任务抛出的异常，超时时为 ScriptInterruptedException
+     */
+    private <T> T callWithBudget(Callable<T> task) throws Exception {
+        long budget = callBudget;
+        if (eventLoop.isInLoopThread()) {
+            turnBudget = budget;
+            return task.call();
+        }
+        
+        // 0 表示排队中，1 表示已开始，2 表示已放弃
+        AtomicInteger state = new AtomicInteger();
+        AtomicLong startTime = new AtomicLong();
+        FutureTask<T> future = new FutureTask<>(() -> {
+            startTime.set(System.nanoTime());
+            if (!state.compareAndSet(0, 1)) {
+                return null;
+            }
+            turnBudget = budget;
+            return task.call();
+        });
+        if (!eventLoop.post(future)) {
+            throw new IllegalStateException("事件循环已停止: " + appId);
+        }
+        
+        long wait = budget + TimeUnit.MILLISECONDS.toNanos(CALL_WAIT_GRACE_MS);
+        long deadline = System.nanoTime() + wait;
+        while (true) {
+            try {
+                return future.get(Math.max(1, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            } catch (TimeoutException e) {
+                if (state.compareAndSet(0, 2)) {
+                    // 前面的宏任务占满了等待时间，调用本身没有消耗预算
+                    throw new ScriptInterruptedException("宿主调用排队超时: " + appId);
+                }
+                long runDeadline = startTime.get() + wait;
+                if (runDeadline - System.nanoTime() > 0) {
+                    deadline = runDeadline;
+                    continue;
+                }
+                long budgetMs = TimeUnit.NANOSECONDS.toMillis(budget);
+                terminateForResourceLimit(new MpkSandbox.ResourceExceededEvent(
+                    MpkSandbox.ResourceExceededEvent.Type.CPU, budgetMs + CALL_WAIT_GRACE_MS, budgetMs));
+                throw new ScriptInterruptedException("JavaScript 执行超出时间预算: " + budgetMs + "ms");
+            }
+        }
+    }
+    
+    /**
+     * 轮次开始，使用单轮预算并记录开始时间，在事件循环线程中执行
+     */
+    private void beginTurn() {
+        turnBudget = sliceBudget;
+        turnStartTime = System.nanoTime();
+        turnStartCpuTime = threadCpuTime(turnStartTime);
+        turnExceededCpuTime = 0;
+    }
+    
+    /**
+     * 轮次结束，统计 CPU 时间并报告超出预算的轮次，在事件循环线程中执行
+     */
+    private void endTurn() {
+        long cpuTime = threadCpuTime(System.nanoTime()) - turnStartCpuTime;
+        long exceeded = turnExceededCpuTime;
+        long budget = turnBudget;
+        turnBudget = Long.MAX_VALUE;
+        turnExceededCpuTime = 0;
+        
+        MpkSandbox.ResourceUsage appUsage = resourceUsage;
+        if (appUsage != null) {
+            appUsage.addJsCpuTime(cpuTime);
+        }
+        
+        if (exceeded > 0 && appId != null) {
+            reportResourceLimit(new MpkSandbox.ResourceExceededEvent(MpkSandbox.ResourceExceededEvent.Type.CPU,
+                TimeUnit.NANOSECONDS.toMillis(exceeded), TimeUnit.NANOSECONDS.toMillis(budget)));
+        }
+    }
+    
+    /**
+     * 引擎中断检查，在事件循环线程中执行脚本期间调用
+     * 墙钟时间未超出预算时不读取线程 CPU 时间，CPU 时间不会超过墙钟时间
+     * 
+     * @return 是否中断当前脚本
+     */
+    private boolean shouldInterrupt() {
+        if (interruptRequested || turnExceededCpuTime > 0) {
+            return true;
+        }
+        
+        long now = System.nanoTime();
+        long budget = turnBudget;
+        if (now - turnStartTime < budget) {
+            return false;
+        }
+        
+        long cpuTime = threadCpuTime(now) - turnStartCpuTime;
+        if (cpuTime < budget) {
+            return false;
+        }
+        
+        turnExceededCpuTime = cpuTime;
+        Log.w(TAG, "JavaScript 执行超出时间预算，中断脚本: " + appId
+            + " (" + TimeUnit.NANOSECONDS.toMillis(cpuTime) + "/" + TimeUnit.NANOSECONDS.toMillis(budget) + "ms)");
+        return true;
+    }
+    
+    /**
+     * 获取当前线程的 CPU 时间
+     * 
+     * @param wallTime 当前墙钟时间（纳秒），系统不支持线程 CPU 时间时使用
+     * @return CPU 时间（纳秒）
+     */
+    private static long threadCpuTime(long wallTime) {
+        long cpuTime = Debug.threadCpuTimeNanos();
+        return cpuTime >= 0 ? cpuTime : wallTime;
+    }
+    
+    /**
+     * 触发垃圾回收
+     * 在事件循环中异步执行
+     */
+    public void triggerGC() {
+        if (!isRunning.get()) {
+            return;
+        }
+        
+        runOnLoop(() -> {
+            if (isRunning.get() && jsEngine != null) {
+                jsEngine.triggerGC();
+                Log.i(TAG, "触发 JavaScript 垃圾回收: " + appId);
+                
+                // 更新内存使用统计
+                updateMemoryUsage();
+            }
+        });
+    }
+    
+    /**
+     * 每轮事件循环结束后检查内存使用，按最小间隔限制检查频率
+     */
+    private void checkMemoryUsage() {
+        if (appId == null || maxMemory == Long.MAX_VALUE) {
+            return;
+        }
+        
+        if (System.nanoTime() - lastMemoryCheckTime >= MEMORY_CHECK_INTERVAL_NS) {
+            updateMemoryUsage();
+        }
+    }
+    
+    /**
+     * 更新内存使用统计并执行内存限制，在事件循环线程中执行
+     * 超过软上限时先触发垃圾回收，回收后仍超过限制则终止应用
+     */
+    private void updateMemoryUsage() {
+        if (!isRunning.get() || jsEngine == null) {
+            return;
+        }
+        
+        long now = System.nanoTime();
+        lastMemoryCheckTime = now;
+        long usage = jsEngine.getMemoryUsage();
+        long limit = maxMemory;
+        
+        if (limit > 0 && limit != Long.MAX_VALUE && usage > limit / 100 * MEMORY_SOFT_LIMIT_PERCENT
+            && (usage > limit || now - lastMemoryGcTime >= MEMORY_GC_INTERVAL_NS)) {
+            // 超过软上限，尝试回收垃圾；持续超过软上限时限制频率，超过硬上限时终止前总是先回收
+            lastMemoryGcTime = now;
+            jsEngine.triggerGC();
+            long collected = jsEngine.getMemoryUsage();
+            Log.w(TAG, "JavaScript 内存使用接近限制，已触发垃圾回收: " + appId
+                + " (" + usage + " -> " + collected + "/" + limit + ")");
+            usage = collected;
+        }
+        
+        memoryUsage.set(usage);
+        MpkSandbox.ResourceUsage appUsage = resourceUsage;
+        if (appUsage != null) {
+            appUsage.setJsHeapUsage(usage);
+        }
+        
+        if (limit > 0 && limit != Long.MAX_VALUE && usage > limit) {
+            terminateForResourceLimit(new MpkSandbox.ResourceExceededEvent(
+                MpkSandbox.ResourceExceededEvent.Type.MEMORY, usage, limit));
+        }
+    }
+    
+    /**
+     * 因资源超限终止应用
+     * 中断正在执行的脚本，丢弃未执行的任务和定时器，由宿主停止应用；未设置监听器时直接关闭运行时
+     * 
+     * @param event 资源超限事件
+     */
+    private void terminateForResourceLimit(MpkSandbox.ResourceExceededEvent event) {
+        String id = appId;
+        Log.e(TAG, "JavaScript 应用资源超限，终止执行: " + id + " - " + event);
+        
+        interruptRequested = true;
+        eventLoop.clear();
+        
+        ResourceLimitListener listener = resourceLimitListener;
+        mainHandler.post(() -> {
+            if (listener != null) {
+                listener.onResourceLimitExceeded(id, event, true);
+            } else {
+                shutdown();
+            }
+        });
+    }
+    
+    /**
+     * 报告已通过中断脚本处理的资源超限，应用继续运行
+     * 
+     * @param event 资源超限事件
      */
-    public void shutdown() {
-        if (isRunning.compareAndSet(true, false)) {
-            try {
-                // 解注册所有 API 提供者
-                for (JSAPIProvider provider : apiProviders.values()) {
-                    try {
-                        provider.onUnregistered();
-                    } catch (Exception e) {
-                        Log.e(TAG, "解注册 API 提供者失败: " + provider.getNamespace(), e);
-                    }
-                }
-                
-                // 清理事件监听器
-                eventListeners.clear();
-                
-                // 关闭 JavaScript 引擎
-                if (jsEngine != null) {
-                    jsEngine.shutdown();
-                    jsEngine = null;
-                }
-                
-                Log.i(TAG, "JavaScript 运行时已关闭: " + appId);
-            } catch (Exception e) {
-                Log.e(TAG, "关闭 JavaScript 运行时失败: " + appId, e);
-            }
+    private void reportResourceLimit(MpkSandbox.ResourceExceededEvent event) {
+        String id = appId;
+        ResourceLimitListener listener = resourceLimitListener;
+        if (listener != null) {
+            mainHandler.post(() -> listener.onResourceLimitExceeded(id, event, false));
         }
     }
     
     /**
-     * 执行 JavaScript 文件
+     * 获取内存使用量
+     * 在事件循环之外调用时返回最近一次统计值，并在事件循环中异步刷新
      * 
-     * @param file JavaScript 文件
-     * @return 执行结果
-     * @throws IOException 如果读取文件失败
-     * @throws Exception 如果执行脚本失败
+     * @return 内存使用量（字节）
      */
-    public Object executeFile(File file) throws IOException, Exception {
-        if (!isRunning.get()) {
-            throw new IllegalStateException("JavaScript 运行时未初始化或已关闭");
-        }
-        
-        try (FileReader reader = new FileReader(file)) {
-            StringBuilder sb = new StringBuilder();
-            char[] buffer = new char[8192];
-            int read;
-            
-            while ((read = reader.read(buffer)) != -1) {
-                sb.append(buffer, 0, read);
-            }
-            
-            String script = sb.toString();
-            return jsEngine.executeScript(script, file.getName());
-        }
+    public long getMemoryUsage() {
+        runOnLoop(this::updateMemoryUsage);
+        return memoryUsage.get();
     }
     
     /**
-     * 执行 JavaScript 脚本
+     * 在事件循环线程中执行任务
+     * 当前线程即事件循环线程时直接执行，否则作为宏任务异步执行
      * 
-     * @param script JavaScript 脚本
-     * @param filename 文件名（用于错误报告）
-     * @return 执行结果
-     * @throws Exception 如果执行脚本失败
+     * @param task 任务
      */
-    public Object executeScript(String script, String filename) throws Exception {
-        if (!isRunning.get()) {
-            throw new IllegalStateException("JavaScript 运行时未初始化或已关闭");
+    private void runOnLoop(Runnable task) {
+        if (eventLoop.isInLoopThread()) {
+            task.run();
+        } else {
+            eventLoop.post(task);
         }
-        
-        return jsEngine.executeScript(script, filename);
     }
     
     /**
-     * 调用 JavaScript 函数
+     * 获取未执行的定时器数量
      * 
-     * @param functionName 函数名
-     * @param args 参数
-     * @return 函数返回值
-     * @throws Exception 如果调用函数失败
+     * @return 定时器数量
      */
-    public Object callFunction(String functionName, Object... args) throws Exception {
-        if (!isRunning.get()) {
-            throw new IllegalStateException("JavaScript 运行时未初始化或已关闭");
-        }
-        
-        return jsEngine.callFunction(functionName, args);
+    public int getTimerCount() {
+        return eventLoop.getPendingTimerCount();
     }
     
     /**
-     * 触发垃圾回收
+     * 获取定时器数量上限
+     * 
+     * @return 定时器数量上限
      */
-    public void triggerGC() {
-        if (isRunning.get() && jsEngine != null) {
-            jsEngine.triggerGC();
-            Log.i(TAG, "触发 JavaScript 垃圾回收: " + appId);
-            
-            // 更新内存使用统计
-            updateMemoryUsage();
-        }
+    public int getMaxTimers() {
+        return eventLoop.getMaxTimers();
     }
     
     /**
-     * 更新内存使用统计
+     * 获取事件循环
+     * 
+     * @return 事件循环
      */
-    private void updateMemoryUsage() {
-        if (isRunning.get() && jsEngine != null) {
-            long usage = jsEngine.getMemoryUsage();
-            memoryUsage.set(usage);
-            
-            // 检查内存使用是否超过限制
-            if (usage > maxMemory) {
-                Log.w(TAG, "JavaScript 内存使用超过限制: " + usage + "/" + maxMemory);
-                
-                // 触发垃圾回收尝试释放内存
-                jsEngine.triggerGC();
-            }
-        }
+    public MpkJSEventLoop getEventLoop() {
+        return eventLoop;
     }
     
     /**
-     * 获取内存使用量
+     * 获取在事件循环线程中执行任务的执行器
+     * 用于把应用间消息投递到运行时线程，事件循环已停止时拒绝任务
      * 
-     * @return 内存使用量（字节）
+     * @return 执行器
      */
-    public long getMemoryUsage() {
-        updateMemoryUsage();
-        return memoryUsage.get();
+    public Executor getLoopExecutor() {
+        return task -> {
+            if (!eventLoop.post(task)) {
+                throw new RejectedExecutionException("事件循环已停止: " + appId);
+            }
+        };
     }
     
     /**
@@ -335,14 +1258,7 @@ public class MpkJavaScriptRuntime {
      * @param listener 监听器
      */
     public void addEventListener(String eventName, EventListener listener) {
-        Set<EventListener> listeners = eventListeners.get(eventName);
-        
-        if (listeners == null) {
-            listeners = new HashSet<>();
-            eventListeners.put(eventName, listeners);
-        }
-        
-        listeners.add(listener);
+        eventListeners.computeIfAbsent(eventName, name -> new CopyOnWriteArraySet<>()).add(listener);
     }
     
     /**
@@ -378,8 +1294,8 @@ public class MpkJavaScriptRuntime {
         Set<EventListener> listeners = eventListeners.get(eventName);
         
         if (listeners != null && !listeners.isEmpty()) {
-            // 在主线程中分发事件
-            mainHandler.post(() -> {
+            // 在事件循环中分发事件
+            eventLoop.post(() -> {
                 for (EventListener listener : listeners) {
                     try {
                         listener.onEvent(eventName, data);
@@ -409,7 +1325,7 @@ public class MpkJavaScriptRuntime {
         
         for (Map.Entry<String, NativeMethod> entry : apis.entrySet()) {
             String apiName = namespace + "." + entry.getKey();
-            jsEngine.registerNativeMethod(apiName, entry.getValue());
+            registerNative(apiName, entry.getValue());
         }
         
         // 通知提供者已注册
@@ -484,57 +1400,128 @@ public class MpkJavaScriptRuntime {
         
         // 注册控制台 API
         for (Map.Entry<String, NativeMethod> entry : consoleAPIs.entrySet()) {
-            jsEngine.registerNativeMethod("console." + entry.getKey(), entry.getValue());
+            registerNative("console." + entry.getKey(), entry.getValue());
         }
         
-        // 定时器 API
-        Map<String, NativeMethod> timerAPIs = new HashMap<>();
+        // 定时器 API，回调在事件循环中执行
+        registerTypedNative("setTimeout", Signature.of(ArgType.INT, ArgType.STRING, ArgType.DOUBLE), frame -> {
+            String callback = frame.getString(0);
+            long delay = (long) frame.getDouble(1);
+            frame.returnInt(checkTimerId(eventLoop.setTimeout(() -> invokeCallback("setTimeout", callback), delay)));
+        });
         
-        final Map<Integer, Runnable> timerTasks = new HashMap<>();
-        final AtomicLong timerId = new AtomicLong(1);
+        registerTypedNative("setInterval", Signature.of(ArgType.INT, ArgType.STRING, ArgType.DOUBLE), frame -> {
+            String callback = frame.getString(0);
+            long interval = (long) frame.getDouble(1);
+            frame.returnInt(checkTimerId(eventLoop.setInterval(() -> invokeCallback("setInterval", callback), interval)));
+        });
         
-        timerAPIs.put("setTimeout", args -> {
-            if (args.length < 2) {
-                throw new IllegalArgumentException("setTimeout 需要至少两个参数");
-            }
-            
-            String callback = args[0].toString();
-            long delay = Long.parseLong(args[1].toString());
-            int id = (int) timerId.getAndIncrement();
-            
-            Runnable task = () -> {
-                try {
-                    timerTasks.remove(id);
-                    jsEngine.callFunction(callback);
-                } catch (Exception e) {
-                    Log.e(TAG, "执行 setTimeout 回调失败", e);
-                }
-            };
-            
-            timerTasks.put(id, task);
-            mainHandler.postDelayed(task, delay);
-            
-            return id;
+        MpkNativeBridge.TypedMethod clearTimer = frame -> eventLoop.clearTimer(frame.getInt(0));
+        registerTypedNative("clearTimeout", Signature.of(ArgType.VOID, ArgType.INT), clearTimer);
+        registerTypedNative("clearInterval", Signature.of(ArgType.VOID, ArgType.INT), clearTimer);
+        
+        registerTypedNative("queueMicrotask", Signature.of(ArgType.VOID, ArgType.STRING), frame -> {
+            String callback = frame.getString(0);
+            eventLoop.queueMicrotask(() -> invokeCallback("queueMicrotask", callback));
         });
         
-        timerAPIs.put("clearTimeout", args -> {
-            if (args.length < 1) {
-                throw new IllegalArgumentException("clearTimeout 需要至少一个参数");
-            }
-            
-            int id = Integer.parseInt(args[0].toString());
-            Runnable task = timerTasks.remove(id);
-            
-            if (task != null) {
-                mainHandler.removeCallbacks(task);
+        // 协作式调度：长任务定期检查 shouldYield，需要时通过 yield 在下一轮继续，每轮重新计算时间预算
+        registerTypedNative("scheduler.shouldYield", Signature.of(ArgType.BOOLEAN), frame ->
+            frame.returnBoolean(System.nanoTime() - turnStartTime >= YIELD_INTERVAL_NS));
+        
+        registerTypedNative("scheduler.yield", Signature.of(ArgType.VOID, ArgType.STRING), frame -> {
+            String callback = frame.getString(0);
+            if (!eventLoop.post(() -> invokeCallback("scheduler.yield", callback))) {
+                throw new IllegalStateException("事件循环已停止");
             }
-            
-            return null;
         });
+    }
+    
+    /**
+     * 检查定时器是否添加成功
+     * 
+     * @param timerId 定时器 ID
+     * @return 定时器 ID
+     */
+    private int checkTimerId(int timerId) {
+        if (timerId == 0) {
+            throw new IllegalStateException("定时器数量超过限制或运行时已关闭: " + eventLoop.getMaxTimers());
+        }
+        return timerId;
+    }
+    
+    /**
+     * 调用 JavaScript 回调，在事件循环线程中执行
+     * 
+     * @param source 回调来源，用于错误报告
+     * @param callback 回调函数名
+     */
+    private void invokeCallback(String source, String callback) {
+        JSEngine engine = jsEngine;
+        if (engine == null) {
+            return;
+        }
+        
+        try {
+            engine.callFunction(callback);
+        } catch (Exception e) {
+            Log.e(TAG, "执行 " + source + " 回调失败", e);
+        }
+    }
+    
+    /**
+     * 向引擎注册原生方法
+     * 原生方法总是在事件循环线程中执行，从其他线程调用时会转到事件循环并等待结果
+     * 
+     * @param name 方法名
+     * @param method 原生方法
+     */
+    private void registerNative(String name, NativeMethod method) {
+        NativeMethod bridged = args -> eventLoop.isInLoopThread()
+            ? method.invoke(args)
+            : eventLoop.call(() -> method.invoke(args));
+        
+        try {
+            eventLoop.call(() -> {
+                jsEngine.registerNativeMethod(name, bridged);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("注册原生方法失败: " + name, e);
+        }
+    }
+    
+    /**
+     * 向引擎注册类型化原生方法
+     * 与 {@link #registerNative} 相同，方法总是在事件循环线程中执行
+     * 
+     * @param name 方法名
+     * @param signature 签名
+     * @param method 类型化原生方法
+     */
+    private void registerTypedNative(String name, Signature signature, MpkNativeBridge.TypedMethod method) {
+        MpkNativeBridge.TypedMethod bridged = frame -> {
+            if (eventLoop.isInLoopThread()) {
+                method.invoke(frame);
+            } else {
+                eventLoop.call(() -> {
+                    method.invoke(frame);
+                    return null;
+                });
+            }
+        };
         
-        // 注册定时器 API
-        for (Map.Entry<String, NativeMethod> entry : timerAPIs.entrySet()) {
-            jsEngine.registerNativeMethod(entry.getKey(), entry.getValue());
+        try {
+            eventLoop.call(() -> {
+                jsEngine.registerTypedMethod(name, signature, bridged);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("注册原生方法失败: " + name, e);
         }
     }
     
@@ -544,22 +1531,16 @@ public class MpkJavaScriptRuntime {
     private void registerPlatformAPIs() {
         Map<String, NativeMethod> platformAPIs = new HashMap<>();
         
-        // 获取平台信息
-        platformAPIs.put("getInfo", args -> {
-            try {
-                JSONObject info = new JSONObject();
-                info.put("os", "Android");
-                info.put("version", android.os.Build.VERSION.RELEASE);
-                info.put("apiLevel", android.os.Build.VERSION.SDK_INT);
-                info.put("device", android.os.Build.DEVICE);
-                info.put("model", android.os.Build.MODEL);
-                info.put("brand", android.os.Build.BRAND);
-                info.put("appId", appId);
-                return info;
-            } catch (JSONException e) {
-                throw new RuntimeException("获取平台信息失败", e);
-            }
-        });
+        // 获取平台信息，支持类型化调用的引擎得到结构化二进制编码，其他引擎得到普通对象
+        registerTypedNative("platform.getInfo", Signature.of(ArgType.STRUCT), frame -> frame.returnStruct()
+            .beginMap(7)
+            .put("os", "Android")
+            .put("version", android.os.Build.VERSION.RELEASE)
+            .put("apiLevel", android.os.Build.VERSION.SDK_INT)
+            .put("device", android.os.Build.DEVICE)
+            .put("model", android.os.Build.MODEL)
+            .put("brand", android.os.Build.BRAND)
+            .put("appId", appId));
         
         // 获取应用信息
         platformAPIs.put("getAppInfo", args -> {
@@ -602,211 +1583,672 @@ public class MpkJavaScriptRuntime {
             }
         });
         
-        // 退出应用
-        platformAPIs.put("exit", args -> {
-            int exitCode = 0;
-            if (args.length > 0) {
-                exitCode = Integer.parseInt(args[0].toString());
-            }
-            
-            final int code = exitCode;
-            mainHandler.post(() -> {
-                Log.i(TAG, "JavaScript 应用请求退出: " + appId + " (code=" + code + ")");
-                shutdown();
-            });
-            
-            return null;
+        // 退出应用
+        registerTypedNative("platform.exit", Signature.of(ArgType.VOID, ArgType.INT), frame -> {
+            int code = frame.argCount() > 0 ? frame.getInt(0) : 0;
+            mainHandler.post(() -> {
+                Log.i(TAG, "JavaScript 应用请求退出: " + appId + " (code=" + code + ")");
+                shutdown();
+            });
+        });
+        
+        // 注册平台 API
+        for (Map.Entry<String, NativeMethod> entry : platformAPIs.entrySet()) {
+            registerNative("platform." + entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /**
+     * 注册消息 API
+     */
+    private void registerMessageAPIs() {
+        Map<String, NativeMethod> messageAPIs = new HashMap<>();
+        
+        // 发送消息到其他应用，可选第三个参数为消息类型
+        messageAPIs.put("sendToApp", args -> {
+            if (args.length < 2) {
+                throw new IllegalArgumentException("sendToApp 需要至少两个参数");
+            }
+            
+            String targetAppId = args[0].toString();
+            String messageData = args[1].toString();
+            String type = args.length > 2 && args[2] != null ? args[2].toString() : "message";
+            
+            try {
+                return requireMessageBus().sendMessage(appId, targetAppId, type, new JSONObject(messageData));
+            } catch (JSONException e) {
+                throw new RuntimeException("发送消息失败", e);
+            }
+        });
+        
+        // 广播消息到所有应用
+        messageAPIs.put("broadcast", args -> {
+            if (args.length < 1) {
+                throw new IllegalArgumentException("broadcast 需要至少一个参数");
+            }
+            
+            String messageData = args[0].toString();
+            String type = args.length > 1 && args[1] != null ? args[1].toString() : "message";
+            
+            try {
+                requireMessageBus().broadcastMessage(appId, type, new JSONObject(messageData));
+                return true;
+            } catch (JSONException e) {
+                throw new RuntimeException("广播消息失败", e);
+            }
+        });
+        
+        // 接收消息，回调参数为 (发送者, 消息类型, 消息数据 JSON, 二进制负载 ArrayBuffer)，
+        // 二进制负载只读，没有时为 null；再次调用时替换之前的回调
+        messageAPIs.put("onMessage", args -> {
+            requireArgs("onMessage", args, 1);
+            String callback = args[0].toString();
+            MpkInterAppCommunication bus = requireMessageBus();
+            
+            removeScriptMessageCallback();
+            MpkInterAppCommunication.MessageCallback listener = message -> deliverScriptMessage(callback, message);
+            if (!bus.addMessageCallback(appId, listener)) {
+                return false;
+            }
+            scriptMessageCallback = listener;
+            return true;
+        });
+        
+        // 注册消息 API
+        for (Map.Entry<String, NativeMethod> entry : messageAPIs.entrySet()) {
+            registerNative("message." + entry.getKey(), entry.getValue());
+        }
+        
+        // 发送二进制负载 (应用 ID, 消息类型, ArrayBuffer)，
+        // ArrayBuffer 的内存属于引擎，复制一次后所有接收者共享同一份数据
+        registerTypedNative("message.sendBuffer",
+            Signature.of(ArgType.BOOLEAN, ArgType.STRING, ArgType.STRING, ArgType.BUFFER), frame -> {
+                // 先校验参数，参数不是 ArrayBuffer 时向脚本抛出错误
+                ByteBuffer data = frame.getBuffer(2);
+                MpkInterAppCommunication bus = requireMessageBus();
+                MpkSharedPayload payload = MpkSharedPayload.copyOf(data);
+                try {
+                    frame.returnBoolean(bus.sendPayload(appId, frame.getString(0), frame.getString(1), payload));
+                } finally {
+                    payload.release();
+                }
+            });
+    }
+    
+    /**
+     * 获取应用间消息总线
+     * 
+     * @return 消息总线
+     */
+    private MpkInterAppCommunication requireMessageBus() {
+        MpkInterAppCommunication bus = messageBus;
+        if (bus == null) {
+            throw new IllegalStateException("应用间消息总线不可用");
+        }
+        return bus;
+    }
+    
+    /**
+     * 移除脚本注册的消息回调，在事件循环线程中执行
+     */
+    private void removeScriptMessageCallback() {
+        MpkInterAppCommunication.MessageCallback callback = scriptMessageCallback;
+        MpkInterAppCommunication bus = messageBus;
+        if (callback != null && bus != null) {
+            bus.removeMessageCallback(appId, callback);
+        }
+        scriptMessageCallback = null;
+    }
+    
+    /**
+     * 把消息交给脚本回调
+     * 消息总线在运行时的事件循环中投递；进程内的直接缓冲区负载直接作为 ArrayBuffer 的底层内存，
+     * 共享内存负载在引用归零时解除映射，堆缓冲区不能被引擎引用，这两种情况复制后交给脚本
+     * 
+     * @param callback 回调函数名
+     * @param message 消息
+     */
+    private void deliverScriptMessage(String callback, MpkInterAppCommunication.Message message) {
+        JSEngine engine = jsEngine;
+        if (engine == null || !eventLoop.isInLoopThread()) {
+            // 运行时已归还，消息改由共用投递线程投递
+            return;
+        }
+        
+        try {
+            Object buffer = null;
+            MpkSharedPayload payload = message.getPayload();
+            if (payload != null) {
+                ByteBuffer data = payload.asBuffer();
+                if (payload.isShared() || !data.isDirect()) {
+                    ByteBuffer copy = ByteBuffer.allocateDirect(data.remaining());
+                    copy.put(data);
+                    copy.flip();
+                    data = copy;
+                }
+                buffer = engine.createArrayBuffer(data);
+            }
+            
+            JSONObject data = message.getData();
+            engine.callFunction(callback, message.getFrom(), message.getType(),
+                data != null ? data.toString() : null, buffer);
+        } catch (Exception e) {
+            Log.e(TAG, "执行消息回调失败: " + message.getType(), e);
+        }
+    }
+    
+    /**
+     * 注册文件系统 API
+     * 每个操作同时注册同步版本和异步版本（名称加 "Async" 后缀，最后一个参数为回调函数名），
+     * 异步版本在 I/O 线程池中执行，完成后在事件循环中以 (错误信息, 结果) 调用回调
+     */
+    private void registerFileSystemAPIs() {
+        Map<String, FsOperation> fsOps = new HashMap<>();
+        
+        // 读取文件，encoding 为 "buffer" 时返回 ArrayBuffer
+        fsOps.put("readFile", (fs, args) -> {
+            requireArgs("readFile", args, 1);
+            ByteBuffer data = fs.readFile(fs.resolve(args[0].toString()));
+            return decodeBuffer(data, args.length > 1 ? args[1] : null);
+        });
+        
+        // 写入文件
+        fsOps.put("writeFile", (fs, args) -> {
+            requireArgs("writeFile", args, 2);
+            fs.writeFile(fs.resolve(args[0].toString()), encodeData(args[1], args.length > 2 ? args[2] : null));
+            return true;
+        });
+        
+        // 追加写入文件
+        fsOps.put("appendFile", (fs, args) -> {
+            requireArgs("appendFile", args, 2);
+            fs.appendFile(fs.resolve(args[0].toString()), encodeData(args[1], args.length > 2 ? args[2] : null));
+            return true;
+        });
+        
+        // 获取文件信息
+        fsOps.put("stat", (fs, args) -> {
+            requireArgs("stat", args, 1);
+            return fs.stat(fs.resolve(args[0].toString()));
+        });
+        
+        // 文件是否存在
+        fsOps.put("exists", (fs, args) -> {
+            requireArgs("exists", args, 1);
+            return fs.resolve(args[0].toString()).exists();
+        });
+        
+        // 列出目录
+        fsOps.put("readdir", (fs, args) -> {
+            requireArgs("readdir", args, 1);
+            return fs.readdir(fs.resolve(args[0].toString()));
+        });
+        
+        // 创建目录
+        fsOps.put("mkdir", (fs, args) -> {
+            requireArgs("mkdir", args, 1);
+            return fs.mkdir(fs.resolve(args[0].toString()));
         });
         
-        // 注册平台 API
-        for (Map.Entry<String, NativeMethod> entry : platformAPIs.entrySet()) {
-            jsEngine.registerNativeMethod("platform." + entry.getKey(), entry.getValue());
+        // 删除文件
+        fsOps.put("unlink", (fs, args) -> {
+            requireArgs("unlink", args, 1);
+            return fs.unlink(fs.resolve(args[0].toString()));
+        });
+        
+        // 重命名文件
+        fsOps.put("rename", (fs, args) -> {
+            requireArgs("rename", args, 2);
+            return fs.rename(fs.resolve(args[0].toString()), fs.resolve(args[1].toString()));
+        });
+        
+        // 打开文件，返回文件描述符，用于流式读写
+        fsOps.put("open", (fs, args) -> {
+            requireArgs("open", args, 1);
+            return fs.open(fs.resolve(args[0].toString()), args.length > 1 ? args[1].toString() : "r");
+        });
+        
+        // 从文件描述符读取，返回 ArrayBuffer
+        fsOps.put("read", (fs, args) -> {
+            requireArgs("read", args, 2);
+            long position = args.length > 2 ? Long.parseLong(args[2].toString()) : -1;
+            return fs.read(Integer.parseInt(args[0].toString()), Integer.parseInt(args[1].toString()), position);
+        });
+        
+        // 向文件描述符写入
+        fsOps.put("write", (fs, args) -> {
+            requireArgs("write", args, 2);
+            long position = args.length > 2 ? Long.parseLong(args[2].toString()) : -1;
+            return fs.write(Integer.parseInt(args[0].toString()), encodeData(args[1], null), position);
+        });
+        
+        // 关闭文件描述符
+        fsOps.put("close", (fs, args) -> {
+            requireArgs("close", args, 1);
+            return fs.close(Integer.parseInt(args[0].toString()));
+        });
+        
+        // 注册文件系统 API
+        for (Map.Entry<String, FsOperation> entry : fsOps.entrySet()) {
+            String name = entry.getKey();
+            FsOperation operation = entry.getValue();
+            
+            registerNative("fs." + name, args -> toJsValue(operation.run(requireFileSystem(), unwrapArrayBuffers(args))));
+            registerNative("fs." + name + "Async", args -> {
+                submitFsOperation(name, operation, args);
+                return null;
+            });
         }
     }
     
     /**
-     * 注册消息 API
+     * 在 I/O 线程池中执行文件系统操作，在事件循环线程中调用
+     * 
+     * @param name 操作名称
+     * @param operation 操作
+     * @param args 参数，最后一个为回调函数名
      */
-    private void registerMessageAPIs() {
-        Map<String, NativeMethod> messageAPIs = new HashMap<>();
+    private void submitFsOperation(String name, FsOperation operation, Object[] args) {
+        requireArgs(name + "Async", args, 1);
         
-        // 发送消息到其他应用
-        messageAPIs.put("sendToApp", args -> {
-            if (args.length < 2) {
-                throw new IllegalArgumentException("sendToApp 需要至少两个参数");
-            }
-            
-            String targetAppId = args[0].toString();
-            String messageData = args[1].toString();
-            
-            try {
-                JSONObject message = new JSONObject();
-                message.put("from", appId);
-                message.put("data", new JSONObject(messageData));
-                
-                // TODO: 实际发送消息的逻辑
-                Log.i(TAG, "发送消息到应用: " + targetAppId + " - " + message);
-                
-                return true;
-            } catch (JSONException e) {
-                throw new RuntimeException("发送消息失败", e);
-            }
-        });
+        String callback = args[args.length - 1].toString();
+        Object[] operationArgs = unwrapArrayBuffers(Arrays.copyOf(args, args.length - 1));
+        MpkJSFileSystem fs = requireFileSystem();
         
-        // 广播消息到所有应用
-        messageAPIs.put("broadcast", args -> {
-            if (args.length < 1) {
-                throw new IllegalArgumentException("broadcast 需要至少一个参数");
+        fs.submit(() -> operation.run(fs, operationArgs),
+            (result, error) -> postCallback("fs." + name, callback, result, error, () -> fileSystem == fs));
+        pendingCallbacks.incrementAndGet();
+    }
+    
+    /**
+     * 将异步操作的结果投递到事件循环，以 (错误信息, 结果) 调用 JavaScript 回调
+     * 
+     * @param source 操作名称，用于错误报告
+     * @param callback 回调函数名
+     * @param result 结果
+     * @param error 错误，成功时为 null
+     * @param valid 在事件循环中检查结果是否仍属于当前应用，运行时已清理或重新绑定时丢弃结果
+     */
+    private void postCallback(String source, String callback, Object result, Throwable error, BooleanSupplier valid) {
+        // 提交操作的原生方法在事件循环线程中计数，结果总是在之后的一轮中投递，计数不会先于提交减少
+        eventLoop.post(() -> {
+            pendingCallbacks.decrementAndGet();
+            JSEngine engine = jsEngine;
+            if (engine == null || !valid.getAsBoolean()) {
+                return;
             }
             
-            String messageData = args[0].toString();
-            
             try {
-                JSONObject message = new JSONObject();
-                message.put("from", appId);
-                message.put("data", new JSONObject(messageData));
-                
-                // TODO: 实际广播消息的逻辑
-                Log.i(TAG, "广播消息: " + message);
-                
-                return true;
-            } catch (JSONException e) {
-                throw new RuntimeException("广播消息失败", e);
+                if (error != null) {
+                    engine.callFunction(callback, source + " 失败: " + error.getMessage());
+                } else {
+                    engine.callFunction(callback, null, toJsValue(result));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "执行 " + source + " 回调失败", e);
             }
         });
-        
-        // 注册消息 API
-        for (Map.Entry<String, NativeMethod> entry : messageAPIs.entrySet()) {
-            jsEngine.registerNativeMethod("message." + entry.getKey(), entry.getValue());
+    }
+    
+    /**
+     * 获取当前应用的文件系统
+     * 
+     * @return 文件系统
+     */
+    private MpkJSFileSystem requireFileSystem() {
+        MpkJSFileSystem fs = fileSystem;
+        if (fs == null) {
+            throw new IllegalStateException("JavaScript 运行时未绑定应用");
         }
+        return fs;
     }
     
     /**
-     * 注册文件系统 API
+     * 检查参数数量
      */
-    private void registerFileSystemAPIs() {
-        Map<String, NativeMethod> fsAPIs = new HashMap<>();
-        
-        // 读取文件
-        fsAPIs.put("readFile", args -> {
-            if (args.length < 1) {
-                throw new IllegalArgumentException("readFile 需要至少一个参数");
+    private static void requireArgs(String name, Object[] args, int count) {
+        if (args.length < count) {
+            throw new IllegalArgumentException(name + " 需要至少 " + count + " 个参数");
+        }
+    }
+    
+    /**
+     * 将引擎的 ArrayBuffer 参数替换为其底层内存，在事件循环线程中执行
+     * 
+     * @param args 参数
+     * @return 替换后的参数
+     */
+    private Object[] unwrapArrayBuffers(Object[] args) {
+        Object[] result = args;
+        for (int i = 0; i < args.length; i++) {
+            ByteBuffer data = args[i] == null ? null : jsEngine.getArrayBufferData(args[i]);
+            if (data != null) {
+                if (result == args) {
+                    result = args.clone();
+                }
+                result[i] = data;
             }
+        }
+        return result;
+    }
+    
+    /**
+     * 将结果转换为引擎值，在事件循环线程中执行
+     * 缓冲区直接作为 ArrayBuffer 的底层内存交给引擎，不复制
+     * 
+     * @param value 结果
+     * @return 引擎值
+     */
+    private Object toJsValue(Object value) {
+        if (value instanceof ByteBuffer) {
+            return jsEngine.createArrayBuffer((ByteBuffer) value);
+        }
+        return value;
+    }
+    
+    /**
+     * 按编码解码读取的数据
+     * 
+     * @param data 数据
+     * @param encoding 编码，"buffer" 时保留为缓冲区，为空时按 UTF-8 解码
+     * @return 字符串或缓冲区
+     */
+    private static Object decodeBuffer(ByteBuffer data, Object encoding) {
+        if (encoding != null && "buffer".equals(encoding.toString())) {
+            return data;
+        }
+        return charsetFor(encoding).decode(data).toString();
+    }
+    
+    /**
+     * 将写入的内容转换为缓冲区
+     * 
+     * @param content 字符串或缓冲区
+     * @param encoding 字符串的编码，为空时使用 UTF-8
+     * @return 缓冲区
+     */
+    private static ByteBuffer encodeData(Object content, Object encoding) {
+        if (content instanceof ByteBuffer) {
+            return ((ByteBuffer) content).duplicate();
+        }
+        if (content instanceof byte[]) {
+            return ByteBuffer.wrap((byte[]) content);
+        }
+        return charsetFor(encoding).encode(String.valueOf(content));
+    }
+    
+    private static Charset charsetFor(Object encoding) {
+        if (encoding == null) {
+            return StandardCharsets.UTF_8;
+        }
+        String name = encoding.toString();
+        return "utf8".equals(name) ? StandardCharsets.UTF_8 : Charset.forName(name);
+    }
+    
+    /**
+     * 注册网络 API
+     * fetch 在收到响应头后回调，响应体通过 read 分块读取或 readAll 完整读取
+     */
+    private void registerNetworkAPIs() {
+        Map<String, NativeMethod> networkAPIs = new HashMap<>();
+        
+        // 发起请求：fetch(url, options, callback)，options 包含 method、headers、body，返回请求 ID
+        networkAPIs.put("fetch", args -> {
+            requireArgs("fetch", args, 2);
+            String url = args[0].toString();
+            JSONObject options = args.length > 2 ? toJSONObject(args[1]) : null;
+            String callback = args[args.length - 1].toString();
             
-            String path = args[0].toString();
-            String encoding = args.length > 1 ? args[1].toString() : "utf8";
-            
-            try {
-                File file = resolveFilePath(path);
-                
-                // TODO: 读取文件内容并返回
-                // 这里需要根据编码格式读取文件
-                
-                return "文件内容"; // 这里返回实际读取的内容
-            } catch (Exception e) {
-                throw new RuntimeException("读取文件失败: " + path, e);
+            String method = "GET";
+            Map<String, String> headers = null;
+            ByteBuffer body = null;
+            if (options != null) {
+                method = options.optString("method", "GET");
+                JSONObject headerObject = options.optJSONObject("headers");
+                if (headerObject != null) {
+                    headers = new HashMap<>();
+                    JSONArray names = headerObject.names();
+                    for (int i = 0; names != null && i < names.length(); i++) {
+                        String headerName = names.getString(i);
+                        headers.put(headerName, headerObject.getString(headerName));
+                    }
+                }
+                Object bodyValue = options.opt("body");
+                if (bodyValue != null && bodyValue != JSONObject.NULL) {
+                    ByteBuffer data = jsEngine.getArrayBufferData(bodyValue);
+                    body = data != null ? data : encodeData(bodyValue, null);
+                }
             }
+            
+            MpkJSFetch fetch = requireFetch();
+            int id = fetch.fetch(url, method, headers, body,
+                (result, error) -> postCallback("network.fetch", callback, result, error, () -> networkFetch == fetch));
+            pendingCallbacks.incrementAndGet();
+            return id;
         });
         
-        // 写入文件
-        fsAPIs.put("writeFile", args -> {
-            if (args.length < 2) {
-                throw new IllegalArgumentException("writeFile 需要至少两个参数");
-            }
-            
-            String path = args[0].toString();
-            String content = args[1].toString();
-            String encoding = args.length > 2 ? args[2].toString() : "utf8";
+        // 读取响应体的下一块：read(id, maxBytes, callback)，读取完毕时结果为 null
+        networkAPIs.put("read", args -> {
+            requireArgs("read", args, 2);
+            int id = Integer.parseInt(args[0].toString());
+            int maxBytes = args.length > 2 ? Integer.parseInt(args[1].toString()) : MpkJSFetch.DEFAULT_CHUNK_SIZE;
+            String callback = args[args.length - 1].toString();
             
-            try {
-                File file = resolveFilePath(path);
-                
-                // TODO: 写入文件内容
-                // 这里需要根据编码格式写入文件
-                
-                return true;
-            } catch (Exception e) {
-                throw new RuntimeException("写入文件失败: " + path, e);
-            }
+            MpkJSFetch fetch = requireFetch();
+            fetch.read(id, maxBytes,
+                (result, error) -> postCallback("network.read", callback, result, error, () -> networkFetch == fetch));
+            pendingCallbacks.incrementAndGet();
+            return null;
         });
         
-        // 文件是否存在
-        fsAPIs.put("exists", args -> {
-            if (args.length < 1) {
-                throw new IllegalArgumentException("exists 需要至少一个参数");
-            }
-            
-            String path = args[0].toString();
+        // 读取完整的响应体：readAll(id, callback)
+        networkAPIs.put("readAll", args -> {
+            requireArgs("readAll", args, 2);
+            int id = Integer.parseInt(args[0].toString());
+            String callback = args[1].toString();
             
-            try {
-                File file = resolveFilePath(path);
-                return file.exists();
-            } catch (Exception e) {
-                throw new RuntimeException("检查文件是否存在失败: " + path, e);
-            }
+            MpkJSFetch fetch = requireFetch();
+            fetch.readAll(id,
+                (result, error) -> postCallback("network.readAll", callback, result, error, () -> networkFetch == fetch));
+            pendingCallbacks.incrementAndGet();
+            return null;
         });
         
-        // 列出目录
-        fsAPIs.put("readdir", args -> {
-            if (args.length < 1) {
-                throw new IllegalArgumentException("readdir 需要至少一个参数");
-            }
-            
-            String path = args[0].toString();
-            
-            try {
-                File dir = resolveFilePath(path);
-                
-                if (!dir.exists() || !dir.isDirectory()) {
-                    throw new IllegalArgumentException("路径不是目录: " + path);
-                }
-                
-                File[] files = dir.listFiles();
-                JSONArray result = new JSONArray();
-                
-                if (files != null) {
-                    for (File file : files) {
-                        result.put(file.getName());
-                    }
-                }
-                
-                return result;
-            } catch (Exception e) {
-                throw new RuntimeException("列出目录失败: " + path, e);
-            }
+        // 取消请求：abort(id)
+        networkAPIs.put("abort", args -> {
+            requireArgs("abort", args, 1);
+            MpkJSFetch fetch = networkFetch;
+            return fetch != null && fetch.abort(Integer.parseInt(args[0].toString()));
         });
         
-        // 注册文件系统 API
-        for (Map.Entry<String, NativeMethod> entry : fsAPIs.entrySet()) {
-            jsEngine.registerNativeMethod("fs." + entry.getKey(), entry.getValue());
+        // 注册网络 API
+        for (Map.Entry<String, NativeMethod> entry : networkAPIs.entrySet()) {
+            registerNative("network." + entry.getKey(), entry.getValue());
         }
     }
     
     /**
-     * 注册网络 API
+     * 设置应用相关的宿主服务，用于网络权限检查和流量统计
+     * 在运行时绑定到应用之后调用，清理运行时时一并清除
+     * 
+     * @param permissionManager 权限管理器
+     * @param resourceUsage 应用的资源使用情况，可以为 null
      */
-    private void registerNetworkAPIs() {
-        Map<String, NativeMethod> networkAPIs = new HashMap<>();
+    public void attachAppServices(MpkPermissionManager permissionManager, MpkSandbox.ResourceUsage resourceUsage) {
+        detachPermissionListener();
+        this.permissionManager = permissionManager;
+        this.resourceUsage = resourceUsage;
+        
+        if (permissionManager != null) {
+            // 网络权限被撤销后立即取消进行中的请求，之后的请求在权限检查时失败
+            String boundAppId = appId;
+            long networkMask = MpkPermissionManager.PermissionType.NETWORK.getMask();
+            MpkPermissionManager.PermissionChangeListener listener = (changedAppId, granted, revoked) -> {
+                if ((revoked & networkMask) != 0 && changedAppId.equals(boundAppId)) {
+                    Log.i(TAG, "网络权限已撤销，取消进行中的请求: " + changedAppId);
+                    eventLoop.post(this::closeFetch);
+                }
+            };
+            permissionListener = listener;
+            permissionManager.addPermissionChangeListener(listener);
+        }
+    }
+    
+    /**
+     * 移除权限变更监听器
+     */
+    private void detachPermissionListener() {
+        MpkPermissionManager.PermissionChangeListener listener = permissionListener;
+        MpkPermissionManager manager = permissionManager;
+        permissionListener = null;
+        if (listener != null && manager != null) {
+            manager.removePermissionChangeListener(listener);
+        }
+    }
+    
+    /**
+     * 设置应用间消息总线，供脚本收发消息
+     * 在运行时绑定到应用之后调用，清理运行时时一并清除
+     * 
+     * @param messageBus 消息总线
+     */
+    public void attachMessageBus(MpkInterAppCommunication messageBus) {
+        this.messageBus = messageBus;
+    }
+    
+    /**
+     * 设置资源超限监听器
+     * 在运行时绑定到应用之后调用，清理运行时时一并清除
+     * 
+     * @param listener 监听器，为 null 时超限后直接关闭运行时
+     */
+    public void setResourceLimitListener(ResourceLimitListener listener) {
+        this.resourceLimitListener = listener;
+    }
+    
+    /**
+     * 获取当前应用的网络请求服务，首次使用时创建，在事件循环线程中执行
+     * 
+     * @return 网络请求服务
+     */
+    private MpkJSFetch requireFetch() {
+        MpkJSFetch fetch = networkFetch;
+        if (fetch != null) {
+            return fetch;
+        }
         
-        // TODO: 实现网络 API，例如 fetch、XMLHttpRequest 等
+        MpkSandbox.SandboxEnvironment env = sandboxEnv;
+        if (env == null) {
+            throw new IllegalStateException("JavaScript 运行时未绑定应用");
+        }
         
-        // 注册网络 API
-        for (Map.Entry<String, NativeMethod> entry : networkAPIs.entrySet()) {
-            jsEngine.registerNativeMethod("network." + entry.getKey(), entry.getValue());
+        fetch = new MpkJSFetch(appId, env, permissionManager, resourceUsage);
+        networkFetch = fetch;
+        return fetch;
+    }
+    
+    /**
+     * 关闭网络请求服务，取消进行中的请求
+     */
+    private void closeFetch() {
+        MpkJSFetch fetch = networkFetch;
+        if (fetch != null) {
+            networkFetch = null;
+            fetch.close();
+        }
+    }
+    
+    /**
+     * 将参数转换为 JSON 对象
+     * 
+     * @param value JSON 对象或 JSON 字符串
+     * @return JSON 对象，参数为空时返回 null
+     * @throws JSONException 如果解析失败
+     */
+    private static JSONObject toJSONObject(Object value) throws JSONException {
+        if (value == null || value == JSONObject.NULL) {
+            return null;
+        }
+        if (value instanceof JSONObject) {
+            return (JSONObject) value;
         }
+        return new JSONObject(value.toString());
     }
     
     /**
      * 注册存储 API
+     * localStorage 风格的键值存储，读取直接从内存返回，写入由存储批量同步到磁盘
      */
     private void registerStorageAPIs() {
         Map<String, NativeMethod> storageAPIs = new HashMap<>();
         
-        // TODO: 实现存储 API，例如 localStorage、sessionStorage 等
+        // 获取值和设置值是高频调用，使用类型化方法
+        registerTypedNative("storage.getItem", Signature.of(ArgType.STRING, ArgType.STRING),
+            frame -> frame.returnString(requireKeyValueStore().get(frame.getString(0))));
+        
+        registerTypedNative("storage.setItem", Signature.of(ArgType.VOID, ArgType.STRING, ArgType.STRING),
+            frame -> requireKeyValueStore().put(frame.getString(0), frame.getString(1)));
+        
+        // 删除值
+        storageAPIs.put("removeItem", args -> {
+            requireArgs("removeItem", args, 1);
+            return requireKeyValueStore().remove(args[0].toString());
+        });
+        
+        // 清空存储
+        storageAPIs.put("clear", args -> {
+            requireKeyValueStore().clear();
+            return null;
+        });
+        
+        // 获取所有键
+        storageAPIs.put("keys", args -> requireKeyValueStore().keys());
+        
+        // 获取键的数量
+        storageAPIs.put("length", args -> requireKeyValueStore().size());
+        
+        // 立即同步到磁盘
+        storageAPIs.put("flush", args -> {
+            requireKeyValueStore().flush();
+            return null;
+        });
         
         // 注册存储 API
         for (Map.Entry<String, NativeMethod> entry : storageAPIs.entrySet()) {
-            jsEngine.registerNativeMethod("storage." + entry.getKey(), entry.getValue());
+            registerNative("storage." + entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /**
+     * 获取当前应用的键值存储，首次使用时打开，在事件循环线程中执行
+     * 
+     * @return 键值存储
+     * @throws IOException 如果打开存储失败
+     */
+    private MpkKeyValueStore requireKeyValueStore() throws IOException {
+        MpkKeyValueStore store = keyValueStore;
+        if (store != null) {
+            return store;
+        }
+        
+        MpkSandbox.SandboxEnvironment env = sandboxEnv;
+        if (env == null) {
+            throw new IllegalStateException("JavaScript 运行时未绑定应用");
+        }
+        
+        store = MpkKeyValueStore.open(new File(env.dataDir, MpkKeyValueStore.DIR_NAME), MpkKeyValueStore.quotaFor(env.limits));
+        keyValueStore = store;
+        return store;
+    }
+    
+    /**
+     * 关闭键值存储，写入未同步的数据
+     */
+    private void closeKeyValueStore() {
+        MpkKeyValueStore store = keyValueStore;
+        if (store != null) {
+            keyValueStore = null;
+            store.close();
         }
     }
     
@@ -838,22 +2280,10 @@ public class MpkJavaScriptRuntime {
      * 
      * @param path 相对路径或绝对路径
      * @return 文件对象
+     * @throws IOException 如果解析路径失败
      */
-    private File resolveFilePath(String path) {
-        if (path.startsWith("/")) {
-            // 绝对路径，需要检查是否在沙箱目录内
-            File file = new File(path);
-            String sandboxPath = sandboxEnv.rootDir.getAbsolutePath();
-            
-            if (!file.getAbsolutePath().startsWith(sandboxPath)) {
-                throw new SecurityException("访问沙箱外的文件: " + path);
-            }
-            
-            return file;
-        } else {
-            // 相对路径，基于应用数据目录
-            return new File(sandboxEnv.dataDir, path);
-        }
+    private File resolveFilePath(String path) throws IOException {
+        return requireFileSystem().resolve(path);
     }
     
     /**
@@ -909,6 +2339,9 @@ public class MpkJavaScriptRuntime {
      * 用于测试和演示
      */
     private static class DummyJSEngine implements JSEngine {
+        // 字节码格式标记
+        private static final String COMPILED_MAGIC = "MPKJS1\n";
+        
         private String engineName;
         private Map<String, NativeMethod> nativeMethods;
         private Map<String, Object> globalProperties;
@@ -992,5 +2425,34 @@ public class MpkJavaScriptRuntime {
         public long getMemoryUsage() {
             return memoryUsage;
         }
+        
+        @Override
+        public boolean reset() {
+            Log.i(TAG, "重置 " + engineName + " 上下文");
+            globalProperties.clear();
+            memoryUsage = 0;
+            return true;
+        }
+        
+        @Override
+        public String getVersion() {
+            return engineName + "-dummy-1";
+        }
+        
+        @Override
+        public byte[] compile(String script, String filename) throws Exception {
+            // 虚拟引擎的字节码为带版本前缀的源码
+            return (COMPILED_MAGIC + getVersion() + "\n" + script).getBytes(StandardCharsets.UTF_8);
+        }
+        
+        @Override
+        public Object executeCompiled(byte[] data, String filename) throws Exception {
+            String text = new String(data, StandardCharsets.UTF_8);
+            String header = COMPILED_MAGIC + getVersion() + "\n";
+            if (!text.startsWith(header)) {
+                throw new CompiledScriptRejectedException("字节码版本不匹配: " + filename);
+            }
+            return executeScript(text.substring(header.length()), filename);
+        }
     }
 } 
\ No newline at end of file
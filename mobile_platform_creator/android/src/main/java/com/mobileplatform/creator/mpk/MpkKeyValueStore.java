@@ -0,0 +1,561 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * MPK 键值存储
+ * 为 JavaScript 应用提供 localStorage 风格的持久化存储：所有数据保存在内存哈希表中，
+ * 修改以记录形式追加到日志文件，批量写入并同步到磁盘，日志中的失效记录过多时压缩重写
+ */
+public class MpkKeyValueStore {
+    private static final String TAG = "MpkKeyValueStore";
+
+    // 存储目录名，位于应用数据目录下
+    public static final String DIR_NAME = ".storage";
+
+    // 日志文件名
+    public static final String FILE_NAME = "kvstore.log";
+
+    // 存储空间占沙箱存储配额的比例（1/N）
+    public static final int STORAGE_SHARE_DIVISOR = 10;
+
+    // 记录类型
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final byte RECORD_CLEAR = 3;
+
+    // 记录头长度：类型 + 键长度 + 值长度
+    private static final int HEADER_SIZE = 1 + 4 + 4;
+
+    // 记录尾长度：CRC32
+    private static final int TRAILER_SIZE = 4;
+
+    // 修改后延迟同步到磁盘的时间（毫秒）
+    private static final long FLUSH_DELAY_MS = 500;
+
+    // 待写入数据超过该大小时立即写入
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    // 日志文件超过该大小才考虑压缩
+    private static final long COMPACT_MIN_SIZE = 256 * 1024;
+
+    // 日志文件超过有效数据的倍数时压缩
+    private static final int COMPACT_RATIO = 2;
+
+    // 共用的后台同步线程
+    private static volatile ScheduledExecutorService flushScheduler;
+
+    // 日志文件
+    private final File file;
+
+    // 有效数据上限（字节）
+    private final long maxBytes;
+
+    // 日志文件上限（字节），追加记录会超出时先压缩
+    private final long maxLogBytes;
+
+    // 键值数据，保持插入顺序
+    private final Map<String, String> entries = new LinkedHashMap<>();
+
+    // 待写入的记录
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    // 待写入记录的输出流
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+
+    // 记录校验
+    private final CRC32 crc = new CRC32();
+
+    // 日志文件通道
+    private FileChannel channel;
+
+    // 有效记录的总长度
+    private long liveBytes;
+
+    // 日志总长度，包括待写入的记录
+    private long logSize;
+
+    // 后台同步任务
+    private ScheduledFuture<?> flushTask;
+
+    // 是否已关闭
+    private boolean closed;
+
+    private MpkKeyValueStore(File file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxLogBytes = diskBudget(maxBytes);
+    }
+
+    /**
+     * 打开键值存储，读取日志重建内存数据
+     * 日志末尾不完整或校验失败的记录（写入过程中断）会被截掉
+     * @param dir 存储目录
+     * @param maxBytes 有效数据上限（字节），小于等于 0 表示不限制
+     * @return 键值存储
+     * @throws IOException 如果打开失败
+     */
+    public static MpkKeyValueStore open(File dir, long maxBytes) throws IOException {
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("创建存储目录失败: " + dir.getAbsolutePath());
+        }
+
+        MpkKeyValueStore store = new MpkKeyValueStore(new File(dir, FILE_NAME), maxBytes);
+        store.openChannel();
+        try {
+            store.load();
+        } catch (IOException e) {
+            store.channel.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * 按沙箱资源限制计算键值存储的空间上限
+     * @param limits 资源限制
+     * @return 有效数据上限（字节）
+     */
+    public static long quotaFor(MpkSandbox.ResourceLimits limits) {
+        return limits.maxStorage / STORAGE_SHARE_DIVISOR;
+    }
+
+    /**
+     * 按沙箱资源限制计算日志文件最多占用的磁盘空间
+     * 追加记录会使日志超过有效数据上限的 COMPACT_RATIO 倍（且不小于 COMPACT_MIN_SIZE）时先同步压缩
+     * @param limits 资源限制
+     * @return 磁盘空间（字节），不限制时返回 0
+     */
+    public static long diskBudgetFor(MpkSandbox.ResourceLimits limits) {
+        return diskBudget(quotaFor(limits));
+    }
+
+    private static long diskBudget(long maxBytes) {
+        return maxBytes > 0 ? Math.max(maxBytes * COMPACT_RATIO, COMPACT_MIN_SIZE) : 0;
+    }
+
+    /**
+     * 获取值
+     * @param key 键
+     * @return 值，不存在时返回 null
+     */
+    public synchronized String get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * 设置值
+     * @param key 键
+     * @param value 值，不能为 null
+     * @throws IOException 如果超出空间上限或写入失败
+     */
+    public synchronized void put(String key, String value) throws IOException {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("键和值不能为 null");
+        }
+        ensureOpen();
+        String old = entries.get(key);
+        if (value.equals(old)) {
+            return;
+        }
+
+        long size = recordSize(key, value);
+        long newLiveBytes = liveBytes - (old != null ? recordSize(key, old) : 0) + size;
+        if (maxBytes > 0 && newLiveBytes > maxBytes) {
+            throw new IOException("存储空间不足: " + newLiveBytes + "/" + maxBytes);
+        }
+
+        appendRecord(RECORD_PUT, key, value);
+        entries.put(key, value);
+        liveBytes = newLiveBytes;
+    }
+
+    /**
+     * 删除值
+     * @param key 键
+     * @return 键是否存在
+     * @throws IOException 如果写入失败
+     */
+    public synchronized boolean remove(String key) throws IOException {
+        ensureOpen();
+        String old = entries.get(key);
+        if (old == null) {
+            return false;
+        }
+
+        appendRecord(RECORD_DELETE, key, "");
+        entries.remove(key);
+        liveBytes -= recordSize(key, old);
+        return true;
+    }
+
+    /**
+     * 清空所有数据
+     * @throws IOException 如果写入失败
+     */
+    public synchronized void clear() throws IOException {
+        ensureOpen();
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        appendRecord(RECORD_CLEAR, "", "");
+        entries.clear();
+        liveBytes = 0;
+    }
+
+    /**
+     * 获取键的数量
+     * @return 键的数量
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 获取所有键
+     * @return 按插入顺序排列的键
+     */
+    public synchronized String[] keys() {
+        return entries.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * 获取有效数据大小
+     * @return 有效数据大小（字节）
+     */
+    public synchronized long getDataSize() {
+        return liveBytes;
+    }
+
+    /**
+     * 获取日志大小
+     * @return 日志大小（字节）
+     */
+    public synchronized long getLogSize() {
+        return logSize;
+    }
+
+    /**
+     * 将待写入的记录写入日志并同步到磁盘，需要时压缩日志
+     * @throws IOException 如果写入失败
+     */
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        cancelFlushTask();
+        writePending(true);
+
+        if (logSize > COMPACT_MIN_SIZE && logSize > liveBytes * COMPACT_RATIO) {
+            compact();
+        }
+    }
+
+    /**
+     * 写入所有数据并关闭存储
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        try {
+            flush();
+        } catch (IOException e) {
+            Log.e(TAG, "关闭前写入存储失败: " + file.getAbsolutePath(), e);
+        }
+
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.w(TAG, "关闭存储文件失败: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 追加记录到待写入缓冲区，并安排后台同步
+     * 日志会超出上限时先压缩，压缩后的日志只包含有效数据，不超过有效数据上限，
+     * 因此追加后日志不超过 maxLogBytes
+     */
+    private void appendRecord(byte type, String key, String value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        long size = HEADER_SIZE + keyBytes.length + valueBytes.length + TRAILER_SIZE;
+        if (maxLogBytes > 0 && logSize + size > maxLogBytes) {
+            compact();
+            if (logSize + size > maxLogBytes) {
+                throw new IOException("存储空间不足: 日志 " + (logSize + size) + "/" + maxLogBytes);
+            }
+        }
+
+        writeRecord(pendingOut, crc, type, keyBytes, valueBytes);
+        logSize += size;
+
+        if (pending.size() >= FLUSH_THRESHOLD) {
+            // 大量写入时立即写入文件，仍由后台任务同步到磁盘
+            writePending(false);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * 将待写入的记录写入日志文件
+     * @param sync 是否同步到磁盘
+     */
+    private void writePending(boolean sync) throws IOException {
+        if (pending.size() > 0) {
+            ByteBuffer data = ByteBuffer.wrap(pending.toByteArray());
+            pending.reset();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushTask != null) {
+            return;
+        }
+        flushTask = getFlushScheduler().schedule(() -> {
+            synchronized (this) {
+                flushTask = null;
+                try {
+                    flush();
+                } catch (IOException e) {
+                    Log.e(TAG, "同步存储失败: " + file.getAbsolutePath(), e);
+                }
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelFlushTask() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+
+    /**
+     * 只保留有效记录，重写日志文件
+     * 先写入临时文件再重命名，中途失败时原日志和待写入的记录保持不变；
+     * 成功后待写入的记录已包含在新日志中，直接丢弃
+     */
+    private void compact() throws IOException {
+        long oldSize = logSize;
+        File tempFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        CRC32 checksum = new CRC32();
+
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, FLUSH_THRESHOLD));
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writeRecord(out, checksum, RECORD_PUT,
+                    entry.getKey().getBytes(StandardCharsets.UTF_8),
+                    entry.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        channel.close();
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            openChannel();
+            throw new IOException("替换存储日志失败: " + file.getAbsolutePath());
+        }
+        openChannel();
+        pending.reset();
+        logSize = channel.size();
+
+        Log.d(TAG, "存储日志已压缩: " + oldSize + " -> " + logSize + " 字节");
+    }
+
+    /**
+     * 读取日志重建内存数据
+     */
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("存储日志过大: " + size);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // 读取整个日志
+        }
+        buffer.flip();
+
+        CRC32 checksum = new CRC32();
+        long validSize = 0;
+        while (buffer.remaining() >= HEADER_SIZE + TRAILER_SIZE) {
+            int start = buffer.position();
+            byte type = buffer.get();
+            int keyLength = buffer.getInt();
+            int valueLength = buffer.getInt();
+            if (keyLength < 0 || valueLength < 0
+                    || (long) keyLength + valueLength + TRAILER_SIZE > buffer.remaining()) {
+                break;
+            }
+
+            int bodyLength = HEADER_SIZE + keyLength + valueLength;
+            checksum.reset();
+            checksum.update(buffer.array(), start, bodyLength);
+            buffer.position(start + bodyLength);
+            if ((int) checksum.getValue() != buffer.getInt()) {
+                break;
+            }
+
+            String key = new String(buffer.array(), start + HEADER_SIZE, keyLength, StandardCharsets.UTF_8);
+            if (!applyRecord(type, key, buffer.array(), start + HEADER_SIZE + keyLength, valueLength)) {
+                break;
+            }
+            validSize = buffer.position();
+        }
+
+        if (validSize < size) {
+            Log.w(TAG, "存储日志末尾不完整，截断 " + (size - validSize) + " 字节: " + file.getAbsolutePath());
+            channel.truncate(validSize);
+        }
+
+        logSize = validSize;
+        channel.position(validSize);
+    }
+
+    /**
+     * 应用一条日志记录
+     * @return 记录类型是否有效
+     */
+    private boolean applyRecord(byte type, String key, byte[] data, int valueOffset, int valueLength) {
+        switch (type) {
+            case RECORD_PUT: {
+                String value = new String(data, valueOffset, valueLength, StandardCharsets.UTF_8);
+                String old = entries.put(key, value);
+                if (old != null) {
+                    liveBytes -= recordSize(key, old);
+                }
+                liveBytes += recordSize(key, value);
+                return true;
+            }
+            case RECORD_DELETE: {
+                String old = entries.remove(key);
+                if (old != null) {
+                    liveBytes -= recordSize(key, old);
+                }
+                return true;
+            }
+            case RECORD_CLEAR:
+                entries.clear();
+                liveBytes = 0;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.position(channel.size());
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("存储已关闭: " + file.getAbsolutePath());
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, CRC32 checksum, byte type,
+                                    byte[] key, byte[] value) throws IOException {
+        checksum.reset();
+        checksum.update(type);
+        updateInt(checksum, key.length);
+        updateInt(checksum, value.length);
+        checksum.update(key, 0, key.length);
+        checksum.update(value, 0, value.length);
+
+        out.writeByte(type);
+        out.writeInt(key.length);
+        out.writeInt(value.length);
+        out.write(key);
+        out.write(value);
+        out.writeInt((int) checksum.getValue());
+    }
+
+    private static void updateInt(CRC32 checksum, int value) {
+        checksum.update(value >>> 24);
+        checksum.update(value >>> 16);
+        checksum.update(value >>> 8);
+        checksum.update(value);
+    }
+
+    /**
+     * 计算记录长度，不分配临时数组
+     */
+    private static long recordSize(String key, String value) {
+        return HEADER_SIZE + utf8Length(key) + utf8Length(value) + TRAILER_SIZE;
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // 不成对的代理字符编码为 '?'
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static ScheduledExecutorService getFlushScheduler() {
+        ScheduledExecutorService scheduler = flushScheduler;
+        if (scheduler == null) {
+            synchronized (MpkKeyValueStore.class) {
+                scheduler = flushScheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "MpkKVFlush");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    flushScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+}
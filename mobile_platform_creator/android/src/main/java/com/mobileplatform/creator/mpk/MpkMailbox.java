@@ -0,0 +1,254 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * MPK 应用邮箱
+ * 有界的多生产者单消费者无锁队列：任意线程投递，不加锁；
+ * 有新元素时在应用的投递执行器中调度一次排空任务，同一时间最多一个排空任务，
+ * 因此消费者回调总是串行执行，执行器可以是应用运行时的事件循环；
+ * 关闭后未处理的元素交给丢弃处理器，用于释放元素持有的资源
+ *
+ * @param <T> 元素类型
+ */
+public class MpkMailbox<T> {
+    private static final String TAG = "MpkMailbox";
+
+    // 每次排空最多处理的元素数量，之后重新调度，避免长时间占用执行器线程
+    private static final int DRAIN_BATCH = 256;
+
+    // 槽位数组，容量为 2 的幂
+    private final AtomicReferenceArray<T> buffer;
+
+    // 容量
+    private final int capacity;
+
+    // 下标掩码
+    private final int mask;
+
+    // 生产者下标，生产者通过 CAS 占用槽位
+    private final AtomicLong producerIndex = new AtomicLong();
+
+    // 消费者下标，只由排空任务写入
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    // 是否已调度排空任务
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // 消费者
+    private final Consumer<T> consumer;
+
+    // 丢弃处理器，关闭后未处理的元素交给它，可以为 null
+    private final Consumer<T> dropHandler;
+
+    // 排空任务
+    private final Runnable drainTask = this::drain;
+
+    // 投递执行器
+    private volatile Executor executor;
+
+    // 是否已关闭
+    private volatile boolean closed;
+
+    /**
+     * 创建邮箱
+     * @param capacity 容量，向上取整为 2 的幂
+     * @param executor 投递执行器
+     * @param consumer 消费者，在执行器中串行调用
+     */
+    public MpkMailbox(int capacity, Executor executor, Consumer<T> consumer) {
+        this(capacity, executor, consumer, null);
+    }
+
+    /**
+     * 创建邮箱
+     * @param capacity 容量，向上取整为 2 的幂
+     * @param executor 投递执行器
+     * @param consumer 消费者，在执行器中串行调用
+     * @param dropHandler 丢弃处理器，关闭后未处理的元素交给它，可以为 null
+     */
+    public MpkMailbox(int capacity, Executor executor, Consumer<T> consumer, Consumer<T> dropHandler) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.capacity = size;
+        this.mask = size - 1;
+        this.executor = executor;
+        this.consumer = consumer;
+        this.dropHandler = dropHandler;
+    }
+
+    /**
+     * 投递元素，可以在任意线程中调用
+     * @param item 元素
+     * @return 是否投递成功，邮箱已满或已关闭时返回 false
+     */
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new NullPointerException("邮箱元素不能为 null");
+        }
+
+        while (true) {
+            if (closed) {
+                return false;
+            }
+
+            long index = producerIndex.get();
+            if (index - consumerIndex.get() >= capacity) {
+                return false;
+            }
+
+            if (producerIndex.compareAndSet(index, index + 1)) {
+                buffer.lazySet((int) (index & mask), item);
+                break;
+            }
+        }
+
+        schedule();
+        return true;
+    }
+
+    /**
+     * 设置投递执行器，之后调度的排空任务在新的执行器中执行
+     * @param executor 投递执行器
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+        if (!isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * 获取未处理的元素数量
+     * @return 元素数量
+     */
+    public int size() {
+        long size = producerIndex.get() - consumerIndex.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    /**
+     * 获取容量
+     * @return 容量
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 是否没有未处理的元素
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return producerIndex.get() == consumerIndex.get();
+    }
+
+    /**
+     * 关闭邮箱，之后的投递失败，未处理的元素在排空任务中交给丢弃处理器
+     * 执行器已不接受任务时在调用线程中排空
+     */
+    public void close() {
+        closed = true;
+        if (!isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * 调度排空任务
+     */
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            if (closed) {
+                // 已持有调度标志，可以在当前线程中丢弃剩余元素
+                drain();
+                return;
+            }
+            scheduled.set(false);
+            Log.w(TAG, "投递执行器拒绝任务，未处理元素: " + size());
+        }
+    }
+
+    /**
+     * 排空任务，同一时间只在一个线程中执行
+     */
+    private void drain() {
+        int count = 0;
+        T item;
+        while (count < DRAIN_BATCH && (item = poll()) != null) {
+            count++;
+            if (closed) {
+                discard(item);
+                continue;
+            }
+            try {
+                consumer.accept(item);
+            } catch (Throwable t) {
+                Log.e(TAG, "处理邮箱元素失败", t);
+            }
+        }
+
+        scheduled.set(false);
+
+        // 排空期间有新元素或达到单次上限时重新调度
+        if (!isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * 把关闭后未处理的元素交给丢弃处理器
+     * @param item 元素
+     */
+    private void discard(T item) {
+        if (dropHandler == null) {
+            return;
+        }
+        try {
+            dropHandler.accept(item);
+        } catch (Throwable t) {
+            Log.e(TAG, "丢弃邮箱元素失败", t);
+        }
+    }
+
+    /**
+     * 取出下一个元素，只在排空任务中调用
+     * @return 元素，为空时返回 null
+     */
+    private T poll() {
+        long index = consumerIndex.get();
+        int offset = (int) (index & mask);
+        T item = buffer.get(offset);
+
+        if (item == null) {
+            if (index == producerIndex.get()) {
+                return null;
+            }
+            // 生产者已占用槽位但尚未写入，等待写入完成
+            do {
+                Thread.yield();
+                item = buffer.get(offset);
+            } while (item == null);
+        }
+
+        buffer.lazySet(offset, null);
+        consumerIndex.lazySet(index + 1);
+        return item;
+    }
+}
@@ -0,0 +1,182 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MPK 应用间消息总线基准测试
+ * 测量点对点消息（多个发送线程发给同一个应用）和主题事件扇出（一个发布者、多个订阅者）
+ * 每秒可投递的消息数量，从发送开始计时到所有回调执行完成为止；
+ * 邮箱已满时发送方让出线程后重试，测试在独立的通信实例中进行，不影响已注册的应用
+ */
+public class MpkMessageBusBenchmark {
+    private static final String TAG = "MpkMessageBusBenchmark";
+
+    // 默认消息数量
+    public static final int DEFAULT_MESSAGES = 200_000;
+
+    // 默认点对点发送线程数量
+    public static final int DEFAULT_PRODUCERS = 4;
+
+    // 默认扇出订阅者数量
+    public static final int DEFAULT_SUBSCRIBERS = 8;
+
+    // 等待投递完成的超时时间（秒）
+    private static final long COMPLETE_TIMEOUT_SECONDS = 60;
+
+    // 测试主题
+    private static final String TOPIC = "benchmark";
+
+    /**
+     * 基准测试结果，单位为每秒投递的消息数量
+     */
+    public static class Result {
+        public final double pointToPointMessagesPerSecond;
+        public final double fanOutMessagesPerSecond;
+
+        Result(double pointToPoint, double fanOut) {
+            this.pointToPointMessagesPerSecond = pointToPoint;
+            this.fanOutMessagesPerSecond = fanOut;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "点对点: %.0f 条/秒, 扇出: %.0f 条/秒",
+                pointToPointMessagesPerSecond, fanOutMessagesPerSecond);
+        }
+    }
+
+    /**
+     * 运行基准测试
+     * @param messages 点对点发送的消息总数，扇出时发布的事件数量为其除以订阅者数量
+     * @param producers 点对点发送线程数量
+     * @param subscribers 扇出订阅者数量
+     * @return 测试结果
+     */
+    public static Result run(int messages, int producers, int subscribers) throws Exception {
+        int events = Math.max(1, messages / Math.max(1, subscribers));
+
+        // 预热
+        runPointToPoint(Math.max(1, messages / 10), producers);
+        runFanOut(Math.max(1, events / 10), subscribers);
+
+        Result result = new Result(
+            messagesPerSecond(messages, runPointToPoint(messages, producers)),
+            messagesPerSecond((long) events * subscribers, runFanOut(events, subscribers)));
+
+        Log.i(TAG, "消息总线基准测试 (" + messages + " 条, " + producers + " 个发送线程, "
+            + subscribers + " 个订阅者): " + result);
+        return result;
+    }
+
+    /**
+     * 以默认参数运行基准测试
+     * @return 测试结果
+     */
+    public static Result run() throws Exception {
+        return run(DEFAULT_MESSAGES, DEFAULT_PRODUCERS, DEFAULT_SUBSCRIBERS);
+    }
+
+    /**
+     * 多个发送线程向同一个应用发送消息
+     * @return 耗时（纳秒）
+     */
+    private static long runPointToPoint(int messages, int producers) throws Exception {
+        MpkInterAppCommunication bus = new MpkInterAppCommunication();
+        try {
+            String receiver = "benchmark.receiver";
+            bus.registerApp(receiver);
+
+            CountDownLatch delivered = new CountDownLatch(messages);
+            bus.addMessageCallback(receiver, message -> delivered.countDown());
+
+            Thread[] threads = new Thread[producers];
+            int perProducer = messages / producers;
+            long start = System.nanoTime();
+            for (int p = 0; p < producers; p++) {
+                String sender = "benchmark.sender" + p;
+                bus.registerApp(sender);
+                int count = p == producers - 1 ? messages - perProducer * (producers - 1) : perProducer;
+                threads[p] = new Thread(() -> {
+                    JSONObject data = new JSONObject();
+                    for (int i = 0; i < count; i++) {
+                        while (!bus.sendMessage(sender, receiver, "ping", data)) {
+                            Thread.yield();
+                        }
+                    }
+                }, "MpkMessageBusBenchmark-" + p);
+                threads[p].start();
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            await(delivered);
+            return System.nanoTime() - start;
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    /**
+     * 一个发布者向多个订阅者发布主题事件
+     * @return 耗时（纳秒）
+     */
+    private static long runFanOut(int events, int subscribers) throws Exception {
+        MpkInterAppCommunication bus = new MpkInterAppCommunication();
+        try {
+            String publisher = "benchmark.publisher";
+            bus.registerApp(publisher);
+
+            CountDownLatch delivered = new CountDownLatch(events * subscribers);
+            MpkInterAppCommunication.EventCallback callback = event -> delivered.countDown();
+            String[] names = new String[subscribers];
+            for (int s = 0; s < subscribers; s++) {
+                names[s] = "benchmark.subscriber" + s;
+                bus.registerApp(names[s]);
+                bus.addEventListener(names[s], callback);
+                bus.subscribeTopic(names[s], TOPIC);
+            }
+
+            JSONObject data = new JSONObject();
+            long start = System.nanoTime();
+            for (int i = 0; i < events; i++) {
+                bus.publishEvent(publisher, "tick", TOPIC, data);
+                // 发布不等待邮箱空间，积压较多时让出线程，避免订阅者丢弃事件
+                while (maxPending(bus, names) > MpkInterAppCommunication.MAILBOX_CAPACITY / 2) {
+                    Thread.yield();
+                }
+            }
+            await(delivered);
+            return System.nanoTime() - start;
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    private static int maxPending(MpkInterAppCommunication bus, String[] appIds) {
+        int max = 0;
+        for (String appId : appIds) {
+            max = Math.max(max, bus.getPendingCount(appId));
+        }
+        return max;
+    }
+
+    private static void await(CountDownLatch latch) throws Exception {
+        if (!latch.await(COMPLETE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("消息投递超时，剩余: " + latch.getCount());
+        }
+    }
+
+    private static double messagesPerSecond(long messages, long nanos) {
+        return messages * 1_000_000_000.0 / Math.max(1, nanos);
+    }
+
+    private MpkMessageBusBenchmark() {
+    }
+}
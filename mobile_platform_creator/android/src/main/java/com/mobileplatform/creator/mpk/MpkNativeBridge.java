@@ -0,0 +1,726 @@
+package com.mobileplatform.creator.mpk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * MPK 类型化原生桥接
+ * 原生方法声明参数和返回值类型，引擎直接把 JavaScript 值写入可复用的调用帧，
+ * 数字和布尔值不装箱、不经过字符串转换；结构化结果使用紧凑的二进制编码返回，
+ * 支持类型化调用的引擎直接解码为脚本对象，不需要序列化 JSON；
+ * 不支持的引擎通过 {@link #adapt} 得到解码后的 JSONObject / JSONArray
+ *
+ * 结构化结果编码（大端）：
+ * <pre>
+ * 0x00 null
+ * 0x01 false
+ * 0x02 true
+ * 0x03 int32
+ * 0x04 float64
+ * 0x05 字符串：varint 字节数 + UTF-8
+ * 0x06 字节数组：varint 字节数 + 数据
+ * 0x07 对象：varint 字段数 + (varint 字节数 + UTF-8 键, 值)*
+ * 0x08 数组：varint 元素数 + 值*
+ * </pre>
+ */
+public final class MpkNativeBridge {
+
+    // 调用帧支持的最大参数数量
+    public static final int MAX_ARGS = 8;
+
+    // 结构化结果类型标记
+    static final byte TAG_NULL = 0x00;
+    static final byte TAG_FALSE = 0x01;
+    static final byte TAG_TRUE = 0x02;
+    static final byte TAG_INT = 0x03;
+    static final byte TAG_DOUBLE = 0x04;
+    static final byte TAG_STRING = 0x05;
+    static final byte TAG_BYTES = 0x06;
+    static final byte TAG_MAP = 0x07;
+    static final byte TAG_ARRAY = 0x08;
+
+    private MpkNativeBridge() {
+    }
+
+    /**
+     * 参数和返回值类型
+     */
+    public enum ArgType {
+        VOID,       // 无返回值，仅用于返回值
+        BOOLEAN,
+        INT,
+        DOUBLE,     // JavaScript number
+        STRING,
+        BUFFER,     // ArrayBuffer，对应直接缓冲区
+        STRUCT      // 结构化结果，仅用于返回值
+    }
+
+    /**
+     * 原生方法签名
+     */
+    public static final class Signature {
+        private final ArgType returnType;
+        private final ArgType[] params;
+
+        private Signature(ArgType returnType, ArgType[] params) {
+            this.returnType = returnType;
+            this.params = params;
+        }
+
+        /**
+         * 创建签名
+         * @param returnType 返回值类型
+         * @param params 参数类型
+         * @return 签名
+         */
+        public static Signature of(ArgType returnType, ArgType... params) {
+            if (params.length > MAX_ARGS) {
+                throw new IllegalArgumentException("参数数量超过上限: " + params.length);
+            }
+            for (ArgType param : params) {
+                if (param == ArgType.VOID || param == ArgType.STRUCT) {
+                    throw new IllegalArgumentException("不支持的参数类型: " + param);
+                }
+            }
+            return new Signature(returnType, params.clone());
+        }
+
+        public ArgType getReturnType() {
+            return returnType;
+        }
+
+        public int getParamCount() {
+            return params.length;
+        }
+
+        public ArgType getParamType(int index) {
+            return params[index];
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(params) + " -> " + returnType;
+        }
+    }
+
+    /**
+     * 类型化原生方法
+     */
+    public interface TypedMethod {
+        /**
+         * 执行方法
+         * @param frame 调用帧，读取参数并写入返回值
+         * @throws Exception 如果执行失败
+         */
+        void invoke(CallFrame frame) throws Exception;
+    }
+
+    /**
+     * 缓冲区参数转换，用于装箱调用
+     */
+    public interface BufferConverter {
+        /**
+         * 获取 ArrayBuffer 的底层内存
+         * @param value 引擎传入的参数
+         * @return 缓冲区，不是 ArrayBuffer 时返回 null
+         */
+        ByteBuffer toBuffer(Object value);
+    }
+
+    /**
+     * 调用帧
+     * 由引擎创建并在调用之间复用：调用前写入参数，调用后读取返回值；
+     * 数值参数和返回值保存在基本类型数组中，不产生装箱对象
+     */
+    public static final class CallFrame {
+        private final long[] longs = new long[MAX_ARGS];
+        private final double[] doubles = new double[MAX_ARGS];
+        private final Object[] refs = new Object[MAX_ARGS];
+        private final StructWriter structWriter = new StructWriter();
+
+        private int argCount;
+        private ArgType returnKind = ArgType.VOID;
+        private long returnLong;
+        private double returnDouble;
+        private Object returnRef;
+
+        /**
+         * 开始新的调用，清除上一次的参数和返回值
+         * @param argCount 参数数量
+         */
+        public void reset(int argCount) {
+            if (argCount > MAX_ARGS) {
+                throw new IllegalArgumentException("参数数量超过上限: " + argCount);
+            }
+            for (int i = 0; i < this.argCount; i++) {
+                refs[i] = null;
+            }
+            this.argCount = argCount;
+            this.returnKind = ArgType.VOID;
+            this.returnRef = null;
+        }
+
+        // ---- 引擎写入参数 ----
+
+        public void setBoolean(int index, boolean value) {
+            longs[index] = value ? 1 : 0;
+        }
+
+        public void setInt(int index, int value) {
+            longs[index] = value;
+            doubles[index] = value;
+        }
+
+        public void setDouble(int index, double value) {
+            doubles[index] = value;
+            longs[index] = (long) value;
+        }
+
+        public void setString(int index, String value) {
+            refs[index] = value;
+        }
+
+        public void setBuffer(int index, ByteBuffer value) {
+            refs[index] = value;
+        }
+
+        // ---- 原生方法读取参数 ----
+
+        public int argCount() {
+            return argCount;
+        }
+
+        public boolean getBoolean(int index) {
+            checkIndex(index);
+            return longs[index] != 0;
+        }
+
+        public int getInt(int index) {
+            checkIndex(index);
+            return (int) longs[index];
+        }
+
+        public long getLong(int index) {
+            checkIndex(index);
+            return longs[index];
+        }
+
+        public double getDouble(int index) {
+            checkIndex(index);
+            return doubles[index];
+        }
+
+        public String getString(int index) {
+            checkIndex(index);
+            Object value = refs[index];
+            if (value == null) {
+                throw new IllegalArgumentException("参数 " + index + " 不能为空");
+            }
+            return (String) value;
+        }
+
+        public String getOptionalString(int index) {
+            return index < argCount ? (String) refs[index] : null;
+        }
+
+        public ByteBuffer getBuffer(int index) {
+            checkIndex(index);
+            Object value = refs[index];
+            if (!(value instanceof ByteBuffer)) {
+                // 对象参数路径把非 ArrayBuffer 的参数转换为 null
+                throw new IllegalArgumentException("参数 " + index + " 必须是 ArrayBuffer");
+            }
+            return (ByteBuffer) value;
+        }
+
+        private void checkIndex(int index) {
+            if (index >= argCount) {
+                throw new IllegalArgumentException("缺少参数 " + index + "，实际参数数量: " + argCount);
+            }
+        }
+
+        // ---- 原生方法写入返回值 ----
+
+        public void returnBoolean(boolean value) {
+            returnKind = ArgType.BOOLEAN;
+            returnLong = value ? 1 : 0;
+        }
+
+        public void returnInt(int value) {
+            returnKind = ArgType.INT;
+            returnLong = value;
+        }
+
+        public void returnDouble(double value) {
+            returnKind = ArgType.DOUBLE;
+            returnDouble = value;
+        }
+
+        public void returnString(String value) {
+            returnKind = ArgType.STRING;
+            returnRef = value;
+        }
+
+        public void returnBuffer(ByteBuffer value) {
+            returnKind = ArgType.BUFFER;
+            returnRef = value;
+        }
+
+        /**
+         * 开始写入结构化返回值
+         * @return 复用的结构化结果写入器
+         */
+        public StructWriter returnStruct() {
+            returnKind = ArgType.STRUCT;
+            structWriter.reset();
+            return structWriter;
+        }
+
+        // ---- 引擎读取返回值 ----
+
+        public ArgType getReturnKind() {
+            return returnKind;
+        }
+
+        public boolean getReturnBoolean() {
+            return returnLong != 0;
+        }
+
+        public int getReturnInt() {
+            return (int) returnLong;
+        }
+
+        public double getReturnDouble() {
+            return returnDouble;
+        }
+
+        public String getReturnString() {
+            return (String) returnRef;
+        }
+
+        /**
+         * 获取缓冲区或结构化返回值
+         * 结构化结果为调用帧内部缓冲区的只读视图，只在下一次调用前有效，引擎需在返回前读取完毕
+         * @return 缓冲区
+         */
+        public ByteBuffer getReturnBuffer() {
+            return returnKind == ArgType.STRUCT ? structWriter.view() : (ByteBuffer) returnRef;
+        }
+
+        /**
+         * 按对象形式读取返回值，用于不支持类型化调用的引擎
+         * @return 返回值
+         */
+        public Object getReturnValue() {
+            switch (returnKind) {
+                case BOOLEAN:
+                    return getReturnBoolean();
+                case INT:
+                    return getReturnInt();
+                case DOUBLE:
+                    return returnDouble;
+                case STRING:
+                    return returnRef;
+                case BUFFER:
+                    return returnRef;
+                case STRUCT:
+                    // 不支持类型化调用的引擎不认识二进制编码，解码为普通对象
+                    return structWriter.toObject();
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * 结构化结果写入器
+     * 先编码到可复用的字节数组，{@link #view} 时整体复制到可复用的直接缓冲区，
+     * {@link #toBuffer} 复制到新的直接缓冲区
+     */
+    public static final class StructWriter {
+        private static final int INITIAL_CAPACITY = 256;
+
+        private byte[] data = new byte[INITIAL_CAPACITY];
+        private int position;
+        private ByteBuffer direct;
+
+        void reset() {
+            position = 0;
+        }
+
+        public StructWriter beginMap(int fieldCount) {
+            ensure(1 + 5);
+            data[position++] = TAG_MAP;
+            writeVarint(fieldCount);
+            return this;
+        }
+
+        public StructWriter beginArray(int length) {
+            ensure(1 + 5);
+            data[position++] = TAG_ARRAY;
+            writeVarint(length);
+            return this;
+        }
+
+        public StructWriter key(String key) {
+            writeUtf8(key);
+            return this;
+        }
+
+        public StructWriter writeNull() {
+            ensure(1);
+            data[position++] = TAG_NULL;
+            return this;
+        }
+
+        public StructWriter writeBoolean(boolean value) {
+            ensure(1);
+            data[position++] = value ? TAG_TRUE : TAG_FALSE;
+            return this;
+        }
+
+        public StructWriter writeInt(int value) {
+            ensure(1 + 4);
+            data[position++] = TAG_INT;
+            writeInt32(value);
+            return this;
+        }
+
+        public StructWriter writeDouble(double value) {
+            ensure(1 + 8);
+            data[position++] = TAG_DOUBLE;
+            long bits = Double.doubleToRawLongBits(value);
+            writeInt32((int) (bits >>> 32));
+            writeInt32((int) bits);
+            return this;
+        }
+
+        public StructWriter writeString(String value) {
+            if (value == null) {
+                return writeNull();
+            }
+            ensure(1);
+            data[position++] = TAG_STRING;
+            writeUtf8(value);
+            return this;
+        }
+
+        public StructWriter writeBytes(ByteBuffer value) {
+            ByteBuffer source = value.duplicate();
+            int length = source.remaining();
+            ensure(1 + 5 + length);
+            data[position++] = TAG_BYTES;
+            writeVarint(length);
+            source.get(data, position, length);
+            position += length;
+            return this;
+        }
+
+        // 对象字段的便捷写法
+
+        public StructWriter put(String key, String value) {
+            return key(key).writeString(value);
+        }
+
+        public StructWriter put(String key, int value) {
+            return key(key).writeInt(value);
+        }
+
+        public StructWriter put(String key, double value) {
+            return key(key).writeDouble(value);
+        }
+
+        public StructWriter put(String key, boolean value) {
+            return key(key).writeBoolean(value);
+        }
+
+        /**
+         * 已写入的字节数
+         * @return 字节数
+         */
+        public int size() {
+            return position;
+        }
+
+        /**
+         * 已写入数据的只读直接缓冲区视图，下一次写入后失效
+         * @return 直接缓冲区视图，position 为 0
+         */
+        public ByteBuffer view() {
+            if (direct == null || direct.capacity() < position) {
+                direct = ByteBuffer.allocateDirect(Math.max(data.length, INITIAL_CAPACITY));
+            }
+            direct.clear();
+            direct.put(data, 0, position);
+            direct.flip();
+            return direct.asReadOnlyBuffer();
+        }
+
+        /**
+         * 复制已写入的数据到新的直接缓冲区
+         * @return 直接缓冲区，position 为 0
+         */
+        public ByteBuffer toBuffer() {
+            ByteBuffer result = ByteBuffer.allocateDirect(position);
+            result.put(data, 0, position);
+            result.flip();
+            return result;
+        }
+
+        /**
+         * 把已写入的数据解码为普通对象
+         * 对象解码为 JSONObject，数组解码为 JSONArray，字节数组解码为直接缓冲区，null 解码为 JSONObject.NULL
+         * @return 解码后的值
+         */
+        public Object toObject() {
+            if (position == 0) {
+                return null;
+            }
+            StructReader reader = new StructReader(data, position);
+            try {
+                return reader.readValue();
+            } catch (JSONException e) {
+                throw new IllegalStateException("解码结构化结果失败", e);
+            }
+        }
+
+        private void writeInt32(int value) {
+            data[position++] = (byte) (value >>> 24);
+            data[position++] = (byte) (value >>> 16);
+            data[position++] = (byte) (value >>> 8);
+            data[position++] = (byte) value;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[position++] = (byte) value;
+        }
+
+        /**
+         * 写入 varint 长度和 UTF-8 字节，不分配临时数组
+         */
+        private void writeUtf8(String value) {
+            int length = value.length();
+            int byteLength = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    byteLength += 1;
+                } else if (c < 0x800) {
+                    byteLength += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    byteLength += 4;
+                    i++;
+                } else {
+                    byteLength += 3;
+                }
+            }
+            ensure(5 + byteLength);
+            writeVarint(byteLength);
+
+            byte[] out = data;
+            int p = position;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    out[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[p++] = (byte) (0xC0 | (c >> 6));
+                    out[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    out[p++] = (byte) (0xF0 | (codePoint >> 18));
+                    out[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    out[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    out[p++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // 不成对的代理字符按 U+FFFD 编码
+                    out[p++] = (byte) 0xEF;
+                    out[p++] = (byte) 0xBF;
+                    out[p++] = (byte) 0xBD;
+                } else {
+                    out[p++] = (byte) (0xE0 | (c >> 12));
+                    out[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[p++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            position = p;
+        }
+
+        private void ensure(int bytes) {
+            if (data.length - position >= bytes) {
+                return;
+            }
+            data = Arrays.copyOf(data, Math.max(data.length * 2, position + bytes));
+        }
+    }
+
+    /**
+     * 结构化结果读取器，按编码格式解码为普通对象
+     */
+    private static final class StructReader {
+        private final byte[] data;
+        private final int limit;
+        private int position;
+
+        StructReader(byte[] data, int limit) {
+            this.data = data;
+            this.limit = limit;
+        }
+
+        Object readValue() throws JSONException {
+            byte tag = data[position++];
+            switch (tag) {
+                case TAG_NULL:
+                    return JSONObject.NULL;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_INT:
+                    return readInt32();
+                case TAG_DOUBLE:
+                    long high = readInt32() & 0xFFFFFFFFL;
+                    long low = readInt32() & 0xFFFFFFFFL;
+                    return Double.longBitsToDouble((high << 32) | low);
+                case TAG_STRING:
+                    return readUtf8();
+                case TAG_BYTES: {
+                    int length = readLength();
+                    ByteBuffer bytes = ByteBuffer.allocateDirect(length);
+                    bytes.put(data, position, length);
+                    bytes.flip();
+                    position += length;
+                    return bytes;
+                }
+                case TAG_MAP: {
+                    int count = readVarint();
+                    JSONObject object = new JSONObject();
+                    for (int i = 0; i < count; i++) {
+                        String key = readUtf8();
+                        object.put(key, readValue());
+                    }
+                    return object;
+                }
+                case TAG_ARRAY: {
+                    int count = readVarint();
+                    JSONArray array = new JSONArray();
+                    for (int i = 0; i < count; i++) {
+                        array.put(readValue());
+                    }
+                    return array;
+                }
+                default:
+                    throw new IllegalStateException("未知的结构化结果类型: " + tag);
+            }
+        }
+
+        private int readInt32() {
+            int value = ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+                | ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+            position += 4;
+            return value;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private int readLength() {
+            int length = readVarint();
+            if (length < 0 || length > limit - position) {
+                throw new IllegalStateException("结构化结果长度无效: " + length);
+            }
+            return length;
+        }
+
+        private String readUtf8() {
+            int length = readLength();
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+
+    /**
+     * 将类型化方法适配为普通原生方法，用于不支持类型化调用的引擎
+     * 参数按签名转换，返回值装箱，结构化结果解码为 JSONObject / JSONArray 返回；
+     * 只接受 ByteBuffer 作为缓冲区参数，引擎有自己的 ArrayBuffer 表示时使用
+     * {@link #adapt(Signature, TypedMethod, BufferConverter)}
+     * @param signature 签名
+     * @param method 类型化方法
+     * @return 普通原生方法
+     */
+    public static MpkJavaScriptRuntime.NativeMethod adapt(Signature signature, TypedMethod method) {
+        return adapt(signature, method, value -> value instanceof ByteBuffer ? ((ByteBuffer) value).duplicate() : null);
+    }
+
+    /**
+     * 将类型化方法适配为普通原生方法，缓冲区参数由引擎转换
+     * @param signature 签名
+     * @param method 类型化方法
+     * @param bufferConverter 把引擎的 ArrayBuffer 转换为底层缓冲区
+     * @return 普通原生方法
+     */
+    public static MpkJavaScriptRuntime.NativeMethod adapt(Signature signature, TypedMethod method,
+                                                          BufferConverter bufferConverter) {
+        return args -> {
+            int count = Math.min(args.length, signature.getParamCount());
+            CallFrame frame = new CallFrame();
+            frame.reset(count);
+            for (int i = 0; i < count; i++) {
+                ArgType type = signature.getParamType(i);
+                if (type == ArgType.BUFFER) {
+                    frame.setBuffer(i, args[i] != null ? bufferConverter.toBuffer(args[i]) : null);
+                } else {
+                    setArg(frame, i, type, args[i]);
+                }
+            }
+            method.invoke(frame);
+            return frame.getReturnValue();
+        };
+    }
+
+    /**
+     * 按参数类型转换对象参数
+     */
+    private static void setArg(CallFrame frame, int index, ArgType type, Object value) {
+        switch (type) {
+            case BOOLEAN:
+                frame.setBoolean(index, value instanceof Boolean
+                    ? (Boolean) value : Boolean.parseBoolean(String.valueOf(value)));
+                break;
+            case INT:
+                frame.setInt(index, value instanceof Number
+                    ? ((Number) value).intValue() : (int) Double.parseDouble(value.toString()));
+                break;
+            case DOUBLE:
+                frame.setDouble(index, value instanceof Number
+                    ? ((Number) value).doubleValue() : Double.parseDouble(value.toString()));
+                break;
+            case STRING:
+                frame.setString(index, value != null ? value.toString() : null);
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的参数类型: " + type);
+        }
+    }
+}
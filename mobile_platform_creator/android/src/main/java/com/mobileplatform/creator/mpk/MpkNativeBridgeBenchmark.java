@@ -0,0 +1,197 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MPK 原生桥接基准测试
+ * 比较旧的 Object... 原生方法（参数 toString 后重新解析、返回 JSONObject 再序列化）
+ * 与类型化原生方法每秒可完成的调用次数。类型化方法分两种调用方式测量：
+ * 支持类型化调用的引擎复用调用帧、直接读取结构化结果的二进制编码；
+ * 不支持的引擎（包括现有的引擎实现）经 {@link MpkNativeBridge#adapt} 装箱调用，
+ * 每次调用创建调用帧，结构化结果解码为 JSONObject；
+ * 只测量桥接本身的开销，不包括引擎和事件循环
+ */
+public class MpkNativeBridgeBenchmark {
+    private static final String TAG = "MpkNativeBridgeBenchmark";
+
+    // 默认迭代次数
+    public static final int DEFAULT_ITERATIONS = 1_000_000;
+
+    // 预热迭代次数占比（1/N）
+    private static final int WARM_UP_DIVISOR = 10;
+
+    /**
+     * 基准测试结果，单位为每秒调用次数
+     */
+    public static class Result {
+        public final double legacyScalarCallsPerSecond;
+        public final double adaptedScalarCallsPerSecond;
+        public final double typedScalarCallsPerSecond;
+        public final double legacyStructCallsPerSecond;
+        public final double adaptedStructCallsPerSecond;
+        public final double typedStructCallsPerSecond;
+
+        Result(double legacyScalar, double adaptedScalar, double typedScalar,
+               double legacyStruct, double adaptedStruct, double typedStruct) {
+            this.legacyScalarCallsPerSecond = legacyScalar;
+            this.adaptedScalarCallsPerSecond = adaptedScalar;
+            this.typedScalarCallsPerSecond = typedScalar;
+            this.legacyStructCallsPerSecond = legacyStruct;
+            this.adaptedStructCallsPerSecond = adaptedStruct;
+            this.typedStructCallsPerSecond = typedStruct;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT,
+                "标量调用: %.0f -> 装箱 %.0f (%.1fx) / 类型化 %.0f 次/秒 (%.1fx), "
+                    + "结构化结果: %.0f -> 装箱 %.0f (%.1fx) / 类型化 %.0f 次/秒 (%.1fx)",
+                legacyScalarCallsPerSecond,
+                adaptedScalarCallsPerSecond, adaptedScalarCallsPerSecond / legacyScalarCallsPerSecond,
+                typedScalarCallsPerSecond, typedScalarCallsPerSecond / legacyScalarCallsPerSecond,
+                legacyStructCallsPerSecond,
+                adaptedStructCallsPerSecond, adaptedStructCallsPerSecond / legacyStructCallsPerSecond,
+                typedStructCallsPerSecond, typedStructCallsPerSecond / legacyStructCallsPerSecond);
+        }
+    }
+
+    // 防止调用结果被优化掉
+    private static volatile long sink;
+
+    /**
+     * 运行基准测试
+     * @param iterations 每项测试的调用次数
+     * @return 测试结果
+     */
+    public static Result run(int iterations) throws Exception {
+        // 标量调用：与 setTimeout 相同的 (string, number) -> int 签名
+        MpkJavaScriptRuntime.NativeMethod legacyScalar = args -> {
+            String callback = args[0].toString();
+            long delay = Long.parseLong(args[1].toString());
+            return (int) (delay + callback.length());
+        };
+        MpkNativeBridge.TypedMethod typedScalar = frame ->
+            frame.returnInt((int) ((long) frame.getDouble(1) + frame.getString(0).length()));
+
+        // 结构化结果：与 platform.getInfo 相同的字段
+        MpkJavaScriptRuntime.NativeMethod legacyStruct = args -> {
+            JSONObject info = new JSONObject();
+            info.put("os", "Android");
+            info.put("version", "14");
+            info.put("apiLevel", 34);
+            info.put("device", "device");
+            info.put("model", "model");
+            info.put("brand", "brand");
+            info.put("appId", args[0].toString());
+            // 引擎需要把 JSONObject 序列化后再解析为脚本对象
+            return info.toString();
+        };
+        MpkNativeBridge.TypedMethod typedStruct = frame -> frame.returnStruct()
+            .beginMap(7)
+            .put("os", "Android")
+            .put("version", "14")
+            .put("apiLevel", 34)
+            .put("device", "device")
+            .put("model", "model")
+            .put("brand", "brand")
+            .put("appId", frame.getString(0));
+
+        // 不支持类型化调用的引擎注册的方法
+        MpkJavaScriptRuntime.NativeMethod adaptedScalar = MpkNativeBridge.adapt(
+            MpkNativeBridge.Signature.of(MpkNativeBridge.ArgType.INT,
+                MpkNativeBridge.ArgType.STRING, MpkNativeBridge.ArgType.DOUBLE), typedScalar);
+        MpkJavaScriptRuntime.NativeMethod adaptedStruct = MpkNativeBridge.adapt(
+            MpkNativeBridge.Signature.of(MpkNativeBridge.ArgType.STRUCT, MpkNativeBridge.ArgType.STRING), typedStruct);
+
+        int warmUp = Math.max(1, iterations / WARM_UP_DIVISOR);
+        runLegacyScalar(legacyScalar, warmUp);
+        runLegacyScalar(adaptedScalar, warmUp);
+        runTypedScalar(typedScalar, warmUp);
+        runLegacyStruct(legacyStruct, warmUp);
+        runLegacyStruct(adaptedStruct, warmUp);
+        runTypedStruct(typedStruct, warmUp);
+
+        Result result = new Result(
+            callsPerSecond(iterations, runLegacyScalar(legacyScalar, iterations)),
+            callsPerSecond(iterations, runLegacyScalar(adaptedScalar, iterations)),
+            callsPerSecond(iterations, runTypedScalar(typedScalar, iterations)),
+            callsPerSecond(iterations, runLegacyStruct(legacyStruct, iterations)),
+            callsPerSecond(iterations, runLegacyStruct(adaptedStruct, iterations)),
+            callsPerSecond(iterations, runTypedStruct(typedStruct, iterations)));
+
+        Log.i(TAG, "原生桥接基准测试 (" + iterations + " 次): " + result);
+        return result;
+    }
+
+    /**
+     * 以默认迭代次数运行基准测试
+     * @return 测试结果
+     */
+    public static Result run() throws Exception {
+        return run(DEFAULT_ITERATIONS);
+    }
+
+    private static long runLegacyScalar(MpkJavaScriptRuntime.NativeMethod method, int iterations) throws Exception {
+        long start = System.nanoTime();
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            // 旧桥接中引擎为每次调用创建参数数组并装箱数字
+            Object result = method.invoke("callback", i & 1023);
+            total += (Integer) result;
+        }
+        sink = total;
+        return System.nanoTime() - start;
+    }
+
+    private static long runTypedScalar(MpkNativeBridge.TypedMethod method, int iterations) throws Exception {
+        MpkNativeBridge.CallFrame frame = new MpkNativeBridge.CallFrame();
+        long start = System.nanoTime();
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            frame.reset(2);
+            frame.setString(0, "callback");
+            frame.setDouble(1, i & 1023);
+            method.invoke(frame);
+            total += frame.getReturnInt();
+        }
+        sink = total;
+        return System.nanoTime() - start;
+    }
+
+    private static long runLegacyStruct(MpkJavaScriptRuntime.NativeMethod method, int iterations) throws Exception {
+        long start = System.nanoTime();
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            // 装箱返回的对象同样需要引擎序列化后再解析为脚本对象
+            total += method.invoke("com.example.app").toString().length();
+        }
+        sink = total;
+        return System.nanoTime() - start;
+    }
+
+    private static long runTypedStruct(MpkNativeBridge.TypedMethod method, int iterations) throws Exception {
+        MpkNativeBridge.CallFrame frame = new MpkNativeBridge.CallFrame();
+        long start = System.nanoTime();
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            frame.reset(1);
+            frame.setString(0, "com.example.app");
+            method.invoke(frame);
+            ByteBuffer data = frame.getReturnBuffer();
+            total += data.remaining();
+        }
+        sink = total;
+        return System.nanoTime() - start;
+    }
+
+    private static double callsPerSecond(int iterations, long nanos) {
+        return iterations * 1_000_000_000.0 / Math.max(1, nanos);
+    }
+
+    private MpkNativeBridgeBenchmark() {
+    }
+}
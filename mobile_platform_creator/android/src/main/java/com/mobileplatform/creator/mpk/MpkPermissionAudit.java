@@ -0,0 +1,342 @@
+package com.mobileplatform.creator.mpk;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import com.mobileplatform.creator.data.AppDatabase;
+import com.mobileplatform.creator.data.PermissionAuditDao;
+import com.mobileplatform.creator.model.PermissionAuditEvent;
+import com.mobileplatform.creator.model.PermissionCheckStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * MPK 权限检查审计
+ * 每次权限检查在应用的计数表中原子累加，不加锁；拒绝的检查总是写入事件环，授予的检查按采样写入，
+ * 事件环固定容量，写满后覆盖最早的事件。后台线程定期把计数增量和新事件批量写入数据库，
+ * 写入失败时保留到下一次。计数表本身不会丢失，事件在两次写入之间超过容量时只保留最新的
+ */
+public class MpkPermissionAudit {
+    private static final String TAG = "MpkPermissionAudit";
+
+    // 默认授予检查的采样间隔，每个应用每个权限每隔这么多次授予记录一条事件
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+    // 事件环容量
+    public static final int EVENT_CAPACITY = 4096;
+
+    // 写入数据库的间隔（毫秒）
+    private static final long FLUSH_INTERVAL_MS = 30_000;
+
+    // 数据库中审计事件的保留时间（毫秒）
+    private static final long EVENT_RETENTION_MS = TimeUnit.DAYS.toMillis(7);
+
+    // 权限类型数量
+    private static final MpkPermissionManager.PermissionType[] TYPES = MpkPermissionManager.PermissionType.values();
+
+    /**
+     * 权限检查事件
+     */
+    public static final class CheckEvent {
+        public final String appId;
+        public final MpkPermissionManager.PermissionType type;
+        public final boolean granted;
+        public final int weight;
+        public final long timestamp;
+
+        CheckEvent(String appId, MpkPermissionManager.PermissionType type, boolean granted, int weight, long timestamp) {
+            this.appId = appId;
+            this.type = type;
+            this.granted = granted;
+            this.weight = weight;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "CheckEvent{" + appId + ", " + type.getName() + ", granted=" + granted + ", weight=" + weight + "}";
+        }
+    }
+
+    /**
+     * 应用的计数表，每个权限类型占两格：授予次数和拒绝次数
+     */
+    private static final class Counters {
+        final AtomicLongArray counts = new AtomicLongArray(TYPES.length * 2);
+
+        // 已写入数据库的计数，只在写入线程中访问
+        final long[] flushed = new long[TYPES.length * 2];
+    }
+
+    private final Context context;
+
+    // 应用计数表
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    // 事件环
+    private final MpkHistoryBuffer<CheckEvent> events = new MpkHistoryBuffer<>(EVENT_CAPACITY);
+
+    // 下一条要写入数据库的事件序号，只在写入线程中访问
+    private long flushedSequence;
+
+    // 采样间隔减一，采样间隔为 2 的幂
+    private volatile int sampleMask = DEFAULT_SAMPLE_INTERVAL - 1;
+
+    // 定期写入的线程
+    private final ScheduledExecutorService flusher;
+
+    // 数据库访问对象，第一次写入时创建
+    private PermissionAuditDao dao;
+    private AppDatabase database;
+
+    /**
+     * 创建审计并开始定期写入
+     * @param context 上下文，为 null 时只在内存中统计
+     */
+    public MpkPermissionAudit(Context context) {
+        this.context = context;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MpkPermissionAudit");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 设置授予检查的采样间隔，向上取整为 2 的幂
+     * @param interval 采样间隔，为 1 时记录每一次授予
+     */
+    public void setSampleInterval(int interval) {
+        int rounded = Integer.highestOneBit(Math.max(1, interval));
+        if (rounded < interval) {
+            rounded <<= 1;
+        }
+        sampleMask = rounded - 1;
+    }
+
+    /**
+     * 记录一次权限检查，可以在任意线程中调用
+     * 只有需要写入事件环时才分配对象
+     * @param appId 应用 ID
+     * @param type 权限类型
+     * @param granted 是否授予
+     */
+    public void record(String appId, MpkPermissionManager.PermissionType type, boolean granted) {
+        Counters appCounters = counters.get(appId);
+        if (appCounters == null) {
+            appCounters = counters.computeIfAbsent(appId, k -> new Counters());
+        }
+
+        long count = appCounters.counts.incrementAndGet(type.ordinal() * 2 + (granted ? 0 : 1));
+        if (!granted) {
+            events.add(new CheckEvent(appId, type, false, 1, System.currentTimeMillis()));
+            return;
+        }
+
+        int mask = sampleMask;
+        if (((count - 1) & mask) == 0) {
+            events.add(new CheckEvent(appId, type, true, mask + 1, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * 获取进程启动以来的检查次数
+     * @param appId 应用 ID
+     * @param type 权限类型
+     * @param granted 统计授予还是拒绝
+     * @return 检查次数
+     */
+    public long getCheckCount(String appId, MpkPermissionManager.PermissionType type, boolean granted) {
+        Counters appCounters = counters.get(appId);
+        return appCounters != null ? appCounters.counts.get(type.ordinal() * 2 + (granted ? 0 : 1)) : 0L;
+    }
+
+    /**
+     * 获取进程启动以来应用被拒绝的检查次数
+     * @param appId 应用 ID
+     * @return 拒绝次数
+     */
+    public long getDeniedCount(String appId) {
+        Counters appCounters = counters.get(appId);
+        if (appCounters == null) {
+            return 0L;
+        }
+        long total = 0L;
+        for (int i = 1; i < TYPES.length * 2; i += 2) {
+            total += appCounters.counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * 获取事件环中的事件
+     * @return 事件列表，按记录顺序排列
+     */
+    public List<CheckEvent> getRecentEvents() {
+        return events.toList();
+    }
+
+    /**
+     * 获取拒绝次数最多的应用，先写入未写入的数据再查询数据库，不能在主线程中调用
+     * 没有数据库时按进程启动以来的计数统计
+     * @param limit 数量上限
+     * @return 按拒绝次数降序排列
+     */
+    @WorkerThread
+    public List<PermissionAuditDao.AppDeniedCount> getTopDeniedApps(int limit) {
+        flush();
+
+        PermissionAuditDao current = getDao();
+        if (current != null) {
+            try {
+                return current.getTopDeniedApps(limit);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "查询权限审计失败", e);
+            }
+        }
+
+        List<PermissionAuditDao.AppDeniedCount> result = new ArrayList<>();
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            PermissionAuditDao.AppDeniedCount count = new PermissionAuditDao.AppDeniedCount();
+            count.appId = entry.getKey();
+            for (int i = 0; i < TYPES.length * 2; i += 2) {
+                count.grantedCount += entry.getValue().counts.get(i);
+                count.deniedCount += entry.getValue().counts.get(i + 1);
+            }
+            if (count.deniedCount > 0) {
+                result.add(count);
+            }
+        }
+        Collections.sort(result, (a, b) -> Long.compare(b.deniedCount, a.deniedCount));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 把计数增量和新事件批量写入数据库，不能在主线程中调用
+     * @return 写入的事件数量
+     */
+    @WorkerThread
+    public synchronized int flush() {
+        PermissionAuditDao current = getDao();
+        if (current == null) {
+            return 0;
+        }
+
+        // 收集新事件
+        List<PermissionAuditEvent> batch = new ArrayList<>();
+        MpkHistoryBuffer<CheckEvent>.Cursor cursor = events.cursor(flushedSequence);
+        CheckEvent event;
+        while ((event = cursor.next()) != null) {
+            batch.add(new PermissionAuditEvent(event.appId, event.type.getName(), event.granted,
+                event.weight, event.timestamp));
+        }
+
+        // 收集计数增量，写入成功后才更新已写入的计数
+        List<PermissionCheckStats> deltas = new ArrayList<>();
+        List<long[]> snapshots = new ArrayList<>();
+        List<Counters> changed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            Counters appCounters = entry.getValue();
+            long[] snapshot = new long[TYPES.length * 2];
+            boolean dirty = false;
+            for (int i = 0; i < TYPES.length; i++) {
+                snapshot[i * 2] = appCounters.counts.get(i * 2);
+                snapshot[i * 2 + 1] = appCounters.counts.get(i * 2 + 1);
+                long granted = snapshot[i * 2] - appCounters.flushed[i * 2];
+                long denied = snapshot[i * 2 + 1] - appCounters.flushed[i * 2 + 1];
+                if (granted != 0 || denied != 0) {
+                    deltas.add(new PermissionCheckStats(entry.getKey(), TYPES[i].getName(), granted, denied, now));
+                    dirty = true;
+                }
+            }
+            if (dirty) {
+                snapshots.add(snapshot);
+                changed.add(appCounters);
+            }
+        }
+
+        if (batch.isEmpty() && deltas.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            database.runInTransaction(() -> {
+                if (!batch.isEmpty()) {
+                    current.insertEvents(batch);
+                }
+                if (!deltas.isEmpty()) {
+                    List<PermissionCheckStats> rows = new ArrayList<>(deltas.size());
+                    for (PermissionCheckStats delta : deltas) {
+                        rows.add(new PermissionCheckStats(delta.getAppId(), delta.getPermission(), 0, 0, now));
+                    }
+                    current.insertStats(rows);
+                    for (PermissionCheckStats delta : deltas) {
+                        current.addCounts(delta.getAppId(), delta.getPermission(),
+                            delta.getGrantedCount(), delta.getDeniedCount(), now);
+                    }
+                }
+                current.deleteEventsBefore(now - EVENT_RETENTION_MS);
+            });
+        } catch (RuntimeException e) {
+            Log.e(TAG, "写入权限审计失败，下次重试", e);
+            return 0;
+        }
+
+        flushedSequence = cursor.getPosition();
+        for (int i = 0; i < changed.size(); i++) {
+            System.arraycopy(snapshots.get(i), 0, changed.get(i).flushed, 0, TYPES.length * 2);
+        }
+
+        Log.d(TAG, "权限审计已写入: 事件 " + batch.size() + " 条, 计数 " + deltas.size() + " 项");
+        return batch.size();
+    }
+
+    /**
+     * 移除应用的内存计数，数据库中的记录保留
+     * @param appId 应用 ID
+     */
+    public void removeApp(String appId) {
+        // 先写入未写入的计数，避免丢失
+        flusher.execute(() -> {
+            flushQuietly();
+            counters.remove(appId);
+        });
+    }
+
+    /**
+     * 停止定期写入，在写入线程中完成最后一次写入
+     */
+    public void shutdown() {
+        flusher.execute(this::flushQuietly);
+        flusher.shutdown();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "写入权限审计失败", e);
+        }
+    }
+
+    private synchronized PermissionAuditDao getDao() {
+        if (dao == null && context != null) {
+            database = AppDatabase.getDatabase(context);
+            dao = database != null ? database.permissionAuditDao() : null;
+        }
+        return dao;
+    }
+}
@@ -17,13 +17,18 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 /**
  * MPK 权限管理
@@ -34,6 +39,7 @@ public class MpkPermissionManager {
     
     /**
      * 权限类型
+     * 序号用作位集下标并持久化到数据库，新的权限类型只能添加在末尾
      */
     public enum PermissionType {
         // 系统权限
@@ -58,12 +64,31 @@ public class MpkPermissionManager {
         APP_MANAGEMENT("app_management", "com.mobileplatform.permission.APP_MANAGEMENT"),
         INTER_APP_COMMUNICATION("inter_app_communication", "com.mobileplatform.permission.INTER_APP_COMMUNICATION");
         
+        // 名称和值到权限类型的索引
+        private static final Map<String, PermissionType> BY_NAME = new HashMap<>();
+        private static final Map<String, PermissionType> BY_VALUE = new HashMap<>();
+        
+        static {
+            // 位集使用 long，权限类型不能超过 64 个
+            if (values().length > Long.SIZE) {
+                throw new IllegalStateException("权限类型超过 " + Long.SIZE + " 个");
+            }
+            for (PermissionType type : values()) {
+                BY_NAME.put(type.name, type);
+                BY_VALUE.put(type.value, type);
+            }
+        }
+        
         private final String name;
         private final String value;
+        private final long mask;
+        private final boolean system;
         
         PermissionType(String name, String value) {
             this.name = name;
             this.value = value;
+            this.mask = 1L << ordinal();
+            this.system = value.startsWith("android.permission.");
         }
         
         public String getName() {
@@ -74,6 +99,24 @@ public class MpkPermissionManager {
             return value;
         }
         
+        /**
+         * 获取权限类型在位集中的掩码
+         * 
+         * @return 掩码
+         */
+        public long getMask() {
+            return mask;
+        }
+        
+        /**
+         * 是否为需要向系统申请的权限
+         * 
+         * @return 是否为系统权限
+         */
+        public boolean isSystem() {
+            return system;
+        }
+        
         /**
          * 根据名称获取权限类型
          * 
@@ -81,12 +124,7 @@ public class MpkPermissionManager {
          * @return 权限类型
          */
         public static PermissionType fromName(String name) {
-            for (PermissionType type : values()) {
-                if (type.getName().equals(name)) {
-                    return type;
-                }
-            }
-            return null;
+            return name != null ? BY_NAME.get(name) : null;
         }
         
         /**
@@ -96,12 +134,38 @@ public class MpkPermissionManager {
          * @return 权限类型
          */
         public static PermissionType fromValue(String value) {
-            for (PermissionType type : values()) {
-                if (type.getValue().equals(value)) {
-                    return type;
-                }
-            }
-            return null;
+            return value != null ? BY_VALUE.get(value) : null;
+        }
+    }
+    
+    /**
+     * 应用权限位集，按权限类型序号记录已声明、已授予和被撤销的权限
+     * 不可变，授予和撤销时整体替换，检查权限时只需读取一次引用
+     */
+    private static final class PermissionBits {
+        static final PermissionBits EMPTY = new PermissionBits(0L, 0L, 0L);
+        
+        // 应用声明的权限
+        final long declared;
+        
+        // 已授予的权限，总是 declared 的子集
+        final long granted;
+        
+        // 被撤销的权限，不再自动授予，直到再次授予
+        final long revoked;
+        
+        PermissionBits(long declared, long granted, long revoked) {
+            this.declared = declared;
+            this.granted = granted & declared;
+            this.revoked = revoked & declared;
+        }
+        
+        PermissionBits withGranted(long mask) {
+            return new PermissionBits(declared, granted | mask, revoked & ~mask);
+        }
+        
+        PermissionBits withRevoked(long mask) {
+            return new PermissionBits(declared, granted & ~mask, revoked | mask);
         }
     }
     
@@ -165,6 +229,72 @@ public class MpkPermissionManager {
         List<String> getDeniedPermissions();
     }
     
+    /**
+     * 批量权限请求回调
+     */
+    public interface BatchPermissionCallback {
+        /**
+         * 所有应用的请求都已完成
+         * 
+         * @param results 每个应用的权限结果
+         */
+        void onPermissionsResult(Map<String, PermissionResult> results);
+    }
+    
+    /**
+     * 权限变更监听器，在修改权限的线程中回调，不应执行耗时操作
+     */
+    public interface PermissionChangeListener {
+        /**
+         * 应用已授予的权限发生变化
+         * 
+         * @param appId 应用 ID
+         * @param granted 新授予的权限位集
+         * @param revoked 不再授予的权限位集
+         */
+        void onPermissionsChanged(String appId, long granted, long revoked);
+    }
+    
+    /**
+     * 单个应用的请求结果监听器
+     */
+    private interface ResultListener {
+        void onResult(String appId, List<String> granted, List<String> denied, boolean neverAskAgain);
+    }
+    
+    /**
+     * 等待系统权限请求结果的应用
+     */
+    private static final class PendingApp {
+        final String appId;
+        final List<String> permissions;
+        final ResultListener listener;
+        
+        PendingApp(String appId, List<String> permissions, ResultListener listener) {
+            this.appId = appId;
+            this.permissions = permissions;
+            this.listener = listener;
+        }
+    }
+    
+    /**
+     * 进行中的系统权限请求
+     * 请求的系统权限已覆盖新请求时，新请求的应用加入等待列表，不再弹出系统对话框
+     */
+    private static final class PendingRequest {
+        final int requestCode;
+        final Set<String> systemPermissions;
+        final List<PendingApp> apps = new ArrayList<>();
+        
+        PendingRequest(int requestCode, Set<String> systemPermissions) {
+            this.requestCode = requestCode;
+            this.systemPermissions = systemPermissions;
+        }
+    }
+    
+    // 所有系统权限的位集
+    private static final long SYSTEM_MASK = systemMask();
+    
     // 权限请求码范围
     private static final int REQUEST_CODE_START = 1000;
     private static final int REQUEST_CODE_END = 1999;
@@ -175,17 +305,23 @@ public class MpkPermissionManager {
     // 上下文
     private final Context context;
     
-    // 应用权限映射表
+    // 应用权限映射表，保留声明的权限名称，包括未知的权限
     private final Map<String, Set<String>> appPermissions;
     
-    // 权限回调映射表
-    private final Map<Integer, PermissionCallback> callbacks;
+    // 应用权限位集，检查权限的热路径只读取这里
+    private final Map<String, PermissionBits> permissionBits;
+    
+    // 进行中的系统权限请求，按请求码索引，只在锁内访问
+    private final Map<Integer, PendingRequest> pendingRequests;
+    
+    // 权限检查审计
+    private final MpkPermissionAudit audit;
     
-    // 权限请求映射表
-    private final Map<Integer, List<String>> requestMap;
+    // 持久化的授予和撤销状态
+    private final MpkPermissionStore store;
     
-    // 已授予的权限缓存
-    private final Map<String, Set<String>> grantedPermissionsCache;
+    // 权限变更监听器
+    private final List<PermissionChangeListener> changeListeners = new CopyOnWriteArrayList<>();
     
     /**
      * 构造函数
@@ -195,9 +331,61 @@ public class MpkPermissionManager {
     public MpkPermissionManager(Context context) {
         this.context = context;
         this.appPermissions = new ConcurrentHashMap<>();
-        this.callbacks = new HashMap<>();
-        this.requestMap = new HashMap<>();
-        this.grantedPermissionsCache = new ConcurrentHashMap<>();
+        this.permissionBits = new ConcurrentHashMap<>();
+        this.pendingRequests = new HashMap<>();
+        this.audit = new MpkPermissionAudit(context);
+        this.store = new MpkPermissionStore(context);
+        
+        // 启动加载完成前注册的应用还没有应用持久化的撤销状态，加载完成后补上
+        this.store.whenLoaded(this::applyStoredRevocations);
+    }
+    
+    /**
+     * 获取权限检查审计
+     * 
+     * @return 权限检查审计
+     */
+    public MpkPermissionAudit getAudit() {
+        return audit;
+    }
+    
+    /**
+     * 添加权限变更监听器
+     * 
+     * @param listener 监听器
+     */
+    public void addPermissionChangeListener(PermissionChangeListener listener) {
+        if (listener != null) {
+            changeListeners.add(listener);
+        }
+    }
+    
+    /**
+     * 移除权限变更监听器
+     * 
+     * @param listener 监听器
+     */
+    public void removePermissionChangeListener(PermissionChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+    
+    /**
+     * 删除应用持久化的授予和撤销状态，用于卸载应用
+     * 
+     * @param appId 应用 ID
+     */
+    public void clearPersistedPermissions(String appId) {
+        if (appId != null) {
+            store.clear(appId);
+        }
+    }
+    
+    /**
+     * 关闭权限管理器，写入未写入的审计数据和权限状态
+     */
+    public void shutdown() {
+        audit.shutdown();
+        store.shutdown();
     }
     
     /**
@@ -218,13 +406,49 @@ public class MpkPermissionManager {
             return true;
         }
         
-        Set<String> permissionSet = new HashSet<>(permissions);
+        Set<String> permissionSet = ConcurrentHashMap.newKeySet();
+        permissionSet.addAll(permissions);
         appPermissions.put(appId, permissionSet);
+        permissionBits.put(appId, compile(appId, permissionSet, querySystemGrants(toMask(permissionSet))));
         
         Log.i(TAG, "应用权限已注册: " + appId + ", " + permissions);
         return true;
     }
     
+    /**
+     * 批量注册应用权限，系统权限的授予状态对所有应用只查询一次
+     * 
+     * @param permissionsByApp 每个应用声明的权限
+     * @return 注册的应用数量
+     */
+    public int registerAppPermissions(Map<String, List<String>> permissionsByApp) {
+        long declared = 0L;
+        for (List<String> permissions : permissionsByApp.values()) {
+            if (permissions != null) {
+                declared |= toMask(permissions);
+            }
+        }
+        long systemGranted = querySystemGrants(declared);
+        
+        int count = 0;
+        for (Map.Entry<String, List<String>> entry : permissionsByApp.entrySet()) {
+            String appId = entry.getKey();
+            List<String> permissions = entry.getValue();
+            if (appId == null || appId.isEmpty() || permissions == null || permissions.isEmpty()) {
+                continue;
+            }
+            
+            Set<String> permissionSet = ConcurrentHashMap.newKeySet();
+            permissionSet.addAll(permissions);
+            appPermissions.put(appId, permissionSet);
+            permissionBits.put(appId, compile(appId, permissionSet, systemGranted));
+            count++;
+        }
+        
+        Log.i(TAG, "批量注册应用权限: " + count + " 个应用");
+        return count;
+    }
+    
     /**
      * 注销应用权限
      * 
@@ -243,12 +467,33 @@ public class MpkPermissionManager {
         }
         
         appPermissions.remove(appId);
-        grantedPermissionsCache.remove(appId);
+        permissionBits.remove(appId);
+        audit.removeApp(appId);
         
         Log.i(TAG, "应用权限已注销: " + appId);
         return true;
     }
     
+    /**
+     * 批量注销应用权限
+     * 
+     * @param appIds 应用 ID
+     * @return 注销的应用数量
+     */
+    public int unregisterAppPermissions(Collection<String> appIds) {
+        int count = 0;
+        for (String appId : appIds) {
+            if (appId != null && appPermissions.remove(appId) != null) {
+                permissionBits.remove(appId);
+                audit.removeApp(appId);
+                count++;
+            }
+        }
+        
+        Log.i(TAG, "批量注销应用权限: " + count + " 个应用");
+        return count;
+    }
+    
     /**
      * 应用是否注册了权限
      * 
@@ -288,10 +533,19 @@ public class MpkPermissionManager {
             return false;
         }
         
-        Set<String> permissions = appPermissions.computeIfAbsent(appId, k -> new HashSet<>());
+        Set<String> permissions = appPermissions.computeIfAbsent(appId, k -> ConcurrentHashMap.newKeySet());
         boolean result = permissions.add(permission);
         
         if (result) {
+            PermissionType type = PermissionType.fromName(permission);
+            if (type != null) {
+                // 持久化的撤销状态仍然有效
+                long mask = type.getMask();
+                long revoked = store.get(appId).revoked & mask;
+                long granted = revoked == 0L && isInitiallyGranted(type) ? mask : 0L;
+                permissionBits.putIfAbsent(appId, PermissionBits.EMPTY);
+                update(appId, old -> new PermissionBits(old.declared | mask, old.granted | granted, old.revoked | revoked));
+            }
             Log.i(TAG, "应用权限已添加: " + appId + ", " + permission);
         }
         
@@ -326,10 +580,11 @@ public class MpkPermissionManager {
         if (result) {
             Log.i(TAG, "应用权限已移除: " + appId + ", " + permission);
             
-            // 从已授予的权限缓存中移除
-            Set<String> grantedPermissions = grantedPermissionsCache.get(appId);
-            if (grantedPermissions != null) {
-                grantedPermissions.remove(permission);
+            // 从位集中移除
+            PermissionType type = PermissionType.fromName(permission);
+            if (type != null) {
+                long mask = type.getMask();
+                update(appId, old -> new PermissionBits(old.declared & ~mask, old.granted, old.revoked));
             }
         }
         
@@ -369,70 +624,335 @@ public class MpkPermissionManager {
     
     /**
      * 检查应用权限是否已授予
+     * 未声明或未知的权限返回 false，不记录日志
      * 
      * @param appId 应用 ID
      * @param permission 权限
      * @return 是否已授予权限
      */
     public boolean checkPermission(String appId, String permission) {
-        if (appId == null || appId.isEmpty()) {
-            Log.e(TAG, "应用 ID 不能为空");
+        PermissionType type = PermissionType.fromName(permission);
+        return type != null && checkPermissionType(appId, type);
+    }
+    
+    /**
+     * 检查应用权限类型是否已授予，可以在任意线程中调用
+     * 已授予时只读取一次位集，不加锁也不分配对象，结果计入审计
+     * 
+     * @param appId 应用 ID
+     * @param type 权限类型
+     * @return 是否已授予权限
+     */
+    public boolean checkPermissionType(String appId, PermissionType type) {
+        if (appId == null || type == null) {
             return false;
         }
         
-        if (permission == null || permission.isEmpty()) {
-            Log.e(TAG, "权限不能为空");
+        boolean granted = evaluatePermission(appId, type);
+        audit.record(appId, type, granted);
+        return granted;
+    }
+    
+    /**
+     * 按位集判断权限是否已授予
+     * 
+     * @param appId 应用 ID
+     * @param type 权限类型
+     * @return 是否已授予权限
+     */
+    private boolean evaluatePermission(String appId, PermissionType type) {
+        PermissionBits bits = permissionBits.get(appId);
+        if (bits == null) {
+            return false;
+        }
+        
+        long mask = type.getMask();
+        if ((bits.granted & mask) != 0) {
+            return true;
+        }
+        if ((bits.declared & mask) == 0 || (bits.revoked & mask) != 0 || !type.isSystem()) {
             return false;
         }
         
-        // 检查应用是否注册了该权限
-        if (!hasPermission(appId, permission)) {
-            Log.w(TAG, "应用未注册权限: " + appId + ", " + permission);
+        // 已声明但未授予的系统权限，用户可能已在系统设置中授予
+        return refreshSystemPermission(appId, type);
+    }
+    
+    /**
+     * 授予应用已声明的权限，授予状态持久化，重启后仍然有效
+     * 系统权限还需要系统已授予，否则只取消撤销状态，系统授予后自动生效
+     * 
+     * @param appId 应用 ID
+     * @param permission 权限
+     * @return 权限当前是否已授予
+     */
+    public boolean grantPermission(String appId, String permission) {
+        PermissionType type = PermissionType.fromName(permission);
+        if (appId == null || type == null) {
+            Log.w(TAG, "无法授予权限: " + appId + ", " + permission);
             return false;
         }
         
-        // 检查缓存
-        Set<String> grantedPermissions = grantedPermissionsCache.get(appId);
-        if (grantedPermissions != null && grantedPermissions.contains(permission)) {
-            return true;
+        long mask = type.getMask();
+        PermissionBits current = permissionBits.get(appId);
+        if (current == null || (current.declared & mask) == 0) {
+            Log.w(TAG, "应用未声明权限，无法授予: " + appId + ", " + permission);
+            return false;
         }
         
-        // 获取权限类型
+        boolean granted = isInitiallyGranted(type);
+        PermissionBits bits = update(appId, old -> granted
+            ? old.withGranted(mask)
+            : new PermissionBits(old.declared, old.granted, old.revoked & ~mask));
+        if (bits != null && (bits.declared & mask) != 0) {
+            store.save(appId, mask, true);
+        }
+        
+        boolean result = bits != null && (bits.granted & mask) != 0;
+        Log.i(TAG, "授予权限: " + appId + ", " + permission + ", 结果: " + result);
+        return result;
+    }
+    
+    /**
+     * 撤销应用的权限，之后的检查立即返回 false，直到再次授予
+     * 撤销状态持久化，重启后仍然有效，监听器立即收到通知
+     * 
+     * @param appId 应用 ID
+     * @param permission 权限
+     * @return 应用是否声明了该权限
+     */
+    public boolean revokePermission(String appId, String permission) {
         PermissionType type = PermissionType.fromName(permission);
-        if (type == null) {
-            Log.w(TAG, "未知权限类型: " + permission);
+        if (appId == null || type == null) {
+            Log.w(TAG, "无法撤销权限: " + appId + ", " + permission);
             return false;
         }
         
-        // 检查权限是否已授予
-        boolean granted = false;
-        if (type.getValue().startsWith("android.permission.")) {
-            // 系统权限
-            granted = ContextCompat.checkSelfPermission(context, type.getValue()) == PackageManager.PERMISSION_GRANTED;
-        } else {
-            // 平台自定义权限
-            // TODO: 实现平台自定义权限检查
-            granted = true;
+        long mask = type.getMask();
+        PermissionBits bits = update(appId, old -> old.withRevoked(mask));
+        
+        boolean result = bits != null && (bits.declared & mask) != 0;
+        if (result) {
+            store.save(appId, mask, false);
+        }
+        Log.i(TAG, "撤销权限: " + appId + ", " + permission + ", 结果: " + result);
+        return result;
+    }
+    
+    /**
+     * 为多个应用批量授予权限，只影响应用已声明的权限
+     * 系统权限的授予状态只查询一次，系统未授予的只取消撤销状态
+     * 
+     * @param appIds 应用 ID
+     * @param permissions 权限
+     * @return 声明了其中至少一个权限的应用数量
+     */
+    public int grantPermissions(Collection<String> appIds, Collection<String> permissions) {
+        long mask = toMask(permissions);
+        if (mask == 0L) {
+            return 0;
+        }
+        long grantable = (mask & ~SYSTEM_MASK) | querySystemGrants(mask);
+        
+        int count = 0;
+        for (String appId : appIds) {
+            PermissionBits bits = appId == null ? null : update(appId,
+                old -> new PermissionBits(old.declared, old.granted | grantable, old.revoked & ~mask));
+            if (bits != null && (bits.declared & mask) != 0) {
+                // 只持久化应用声明的权限
+                store.save(appId, bits.declared & mask, true);
+                count++;
+            }
+        }
+        
+        Log.i(TAG, "批量授予权限: " + permissions + ", " + count + " 个应用");
+        return count;
+    }
+    
+    /**
+     * 为多个应用批量撤销权限
+     * 
+     * @param appIds 应用 ID
+     * @param permissions 权限
+     * @return 声明了其中至少一个权限的应用数量
+     */
+    public int revokePermissions(Collection<String> appIds, Collection<String> permissions) {
+        long mask = toMask(permissions);
+        if (mask == 0L) {
+            return 0;
         }
         
-        // 更新缓存
-        if (granted) {
-            grantedPermissions = grantedPermissionsCache.computeIfAbsent(appId, k -> new HashSet<>());
-            grantedPermissions.add(permission);
+        int count = 0;
+        for (String appId : appIds) {
+            PermissionBits bits = appId == null ? null : update(appId, old -> old.withRevoked(mask));
+            if (bits != null && (bits.declared & mask) != 0) {
+                store.save(appId, bits.declared & mask, false);
+                count++;
+            }
         }
         
-        return granted;
+        Log.i(TAG, "批量撤销权限: " + permissions + ", " + count + " 个应用");
+        return count;
     }
     
     /**
-     * 检查应用权限类型是否已授予
+     * 获取应用已授予权限的位集
      * 
      * @param appId 应用 ID
+     * @return 按权限类型掩码组合的位集
+     */
+    public long getGrantedMask(String appId) {
+        PermissionBits bits = permissionBits.get(appId);
+        return bits != null ? bits.granted : 0L;
+    }
+    
+    /**
+     * 更新应用的权限位集，已授予的权限变化时通知监听器
+     * 
+     * @param appId 应用 ID
+     * @param operator 根据当前位集计算新位集
+     * @return 新位集，应用未注册权限时返回 null
+     */
+    private PermissionBits update(String appId, UnaryOperator<PermissionBits> operator) {
+        while (true) {
+            PermissionBits old = permissionBits.get(appId);
+            if (old == null) {
+                return null;
+            }
+            PermissionBits updated = operator.apply(old);
+            if (updated == old || permissionBits.replace(appId, old, updated)) {
+                notifyChanged(appId, updated.granted & ~old.granted, old.granted & ~updated.granted);
+                return updated;
+            }
+        }
+    }
+    
+    /**
+     * 通知监听器已授予的权限发生变化
+     * 
+     * @param appId 应用 ID
+     * @param granted 新授予的权限位集
+     * @param revoked 不再授予的权限位集
+     */
+    private void notifyChanged(String appId, long granted, long revoked) {
+        if (granted == 0L && revoked == 0L) {
+            return;
+        }
+        for (PermissionChangeListener listener : changeListeners) {
+            try {
+                listener.onPermissionsChanged(appId, granted, revoked);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "权限变更监听器异常: " + appId, e);
+            }
+        }
+    }
+    
+    /**
+     * 将声明的权限编译为位集，平台权限默认授予，系统权限按系统当前的授予状态
+     * 持久化的撤销状态优先；不等待启动加载，加载完成后由 {@link #applyStoredRevocations()} 补上
+     * 
+     * @param appId 应用 ID
+     * @param permissions 声明的权限
+     * @param systemGranted 系统已授予的系统权限位集
+     * @return 权限位集
+     */
+    private PermissionBits compile(String appId, Set<String> permissions, long systemGranted) {
+        long declared = toMask(permissions);
+        if (declared == 0L) {
+            return PermissionBits.EMPTY;
+        }
+        long revoked = store.get(appId).revoked;
+        long granted = declared & ((~SYSTEM_MASK) | systemGranted) & ~revoked;
+        return new PermissionBits(declared, granted, revoked);
+    }
+    
+    /**
+     * 把持久化的撤销状态应用到已注册的应用，在启动加载完成后执行
+     * 撤销导致已授予的权限变化时通知监听器
+     */
+    private void applyStoredRevocations() {
+        int count = 0;
+        for (String appId : permissionBits.keySet()) {
+            long revoked = store.get(appId).revoked;
+            if (revoked == 0L) {
+                continue;
+            }
+            PermissionBits bits = update(appId, old -> (old.revoked & revoked) == (old.declared & revoked)
+                ? old
+                : new PermissionBits(old.declared, old.granted & ~revoked, old.revoked | revoked));
+            if (bits != null) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            Log.i(TAG, "已应用持久化的撤销状态: " + count + " 个应用");
+        }
+    }
+    
+    /**
+     * 权限名称转换为位集，忽略未知的权限
+     * 
+     * @param permissions 权限名称
+     * @return 位集
+     */
+    private static long toMask(Collection<String> permissions) {
+        long mask = 0L;
+        for (String permission : permissions) {
+            PermissionType type = PermissionType.fromName(permission);
+            if (type != null) {
+                mask |= type.getMask();
+            }
+        }
+        return mask;
+    }
+    
+    /**
+     * 查询系统已授予的系统权限
+     * 
+     * @param mask 要查询的权限位集，只查询其中的系统权限
+     * @return 系统已授予的权限位集
+     */
+    private long querySystemGrants(long mask) {
+        long granted = 0L;
+        for (PermissionType type : PermissionType.values()) {
+            if ((mask & SYSTEM_MASK & type.getMask()) != 0
+                && ContextCompat.checkSelfPermission(context, type.getValue()) == PackageManager.PERMISSION_GRANTED) {
+                granted |= type.getMask();
+            }
+        }
+        return granted;
+    }
+    
+    /**
+     * 权限在未撤销时是否授予
+     * 
      * @param type 权限类型
-     * @return 是否已授予权限
+     * @return 是否授予
      */
-    public boolean checkPermissionType(String appId, PermissionType type) {
-        return checkPermission(appId, type.getName());
+    private boolean isInitiallyGranted(PermissionType type) {
+        if (!type.isSystem()) {
+            // 平台自定义权限
+            // TODO: 实现平台自定义权限检查
+            return true;
+        }
+        return ContextCompat.checkSelfPermission(context, type.getValue()) == PackageManager.PERMISSION_GRANTED;
+    }
+    
+    /**
+     * 重新检查系统权限，系统已授予时更新位集
+     * 
+     * @param appId 应用 ID
+     * @param type 系统权限类型
+     * @return 是否已授予
+     */
+    private boolean refreshSystemPermission(String appId, PermissionType type) {
+        if (ContextCompat.checkSelfPermission(context, type.getValue()) != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
+        
+        long mask = type.getMask();
+        PermissionBits bits = update(appId, old -> (old.revoked & mask) != 0 ? old : old.withGranted(mask));
+        return bits != null && (bits.granted & mask) != 0;
     }
     
     /**
@@ -469,12 +989,14 @@ public class MpkPermissionManager {
     
     /**
      * 请求应用权限
+     * 需要的系统权限已被进行中的请求覆盖时合并到该请求，不再弹出系统对话框；
+     * 只有平台权限未授予时直接回调拒绝，平台权限由 {@link #grantPermission(String, String)} 控制
      * 
      * @param activity 活动
      * @param appId 应用 ID
      * @param permissions 权限列表
      * @param callback 权限回调
-     * @return 请求码
+     * @return 请求码，不需要请求系统权限时返回 -1
      */
     public int requestPermissions(Activity activity, String appId, List<String> permissions, PermissionCallback callback) {
         if (activity == null) {
@@ -492,54 +1014,100 @@ public class MpkPermissionManager {
             return -1;
         }
         
-        // 检查应用是否注册了权限
         List<String> requestPermissions = new ArrayList<>();
-        List<String> systemPermissions = new ArrayList<>();
+        Set<String> systemPermissions = new LinkedHashSet<>();
+        collectRequest(appId, permissions, requestPermissions, systemPermissions);
         
-        for (String permission : permissions) {
-            if (!hasPermission(appId, permission)) {
-                Log.w(TAG, "应用未注册权限: " + appId + ", " + permission);
-                continue;
+        if (requestPermissions.isEmpty()) {
+            Log.i(TAG, "所有权限已授予: " + appId);
+            
+            if (callback != null) {
+                callback.onPermissionsGranted(permissions);
             }
             
-            // 检查权限是否已授予
-            if (checkPermission(appId, permission)) {
+            return -1;
+        }
+        
+        PendingApp app = new PendingApp(appId, requestPermissions, toListener(callback));
+        if (systemPermissions.isEmpty()) {
+            resolve(app, false);
+            return -1;
+        }
+        
+        return submit(activity, systemPermissions, Collections.singletonList(app));
+    }
+    
+    /**
+     * 为多个应用批量请求权限，所有应用需要的系统权限合并为一次系统请求
+     * 
+     * @param activity 活动
+     * @param permissionsByApp 每个应用请求的权限
+     * @param callback 所有应用完成后的回调
+     * @return 请求码，不需要请求系统权限时返回 -1
+     */
+    public int requestPermissions(Activity activity, Map<String, List<String>> permissionsByApp,
+                                  BatchPermissionCallback callback) {
+        if (activity == null) {
+            Log.e(TAG, "活动不能为空");
+            return -1;
+        }
+        
+        Map<String, PermissionResult> results = new LinkedHashMap<>();
+        List<String> waitingApps = new ArrayList<>();
+        List<List<String>> waitingPermissions = new ArrayList<>();
+        List<Boolean> needsSystem = new ArrayList<>();
+        Set<String> systemPermissions = new LinkedHashSet<>();
+        
+        for (Map.Entry<String, List<String>> entry : permissionsByApp.entrySet()) {
+            String appId = entry.getKey();
+            List<String> permissions = entry.getValue();
+            if (appId == null || appId.isEmpty() || permissions == null || permissions.isEmpty()) {
                 continue;
             }
             
-            requestPermissions.add(permission);
+            List<String> requestPermissions = new ArrayList<>();
+            Set<String> appSystemPermissions = new LinkedHashSet<>();
+            collectRequest(appId, permissions, requestPermissions, appSystemPermissions);
             
-            // 获取权限类型
-            PermissionType type = PermissionType.fromName(permission);
-            if (type != null && type.getValue().startsWith("android.permission.")) {
-                systemPermissions.add(type.getValue());
+            if (requestPermissions.isEmpty()) {
+                results.put(appId, createPermissionResult(new ArrayList<>(permissions), Collections.emptyList()));
+            } else {
+                waitingApps.add(appId);
+                waitingPermissions.add(requestPermissions);
+                needsSystem.add(!appSystemPermissions.isEmpty());
+                systemPermissions.addAll(appSystemPermissions);
             }
         }
         
-        if (requestPermissions.isEmpty()) {
-            Log.i(TAG, "所有权限已授予: " + appId);
-            
+        if (waitingApps.isEmpty()) {
             if (callback != null) {
-                callback.onPermissionsGranted(permissions);
+                callback.onPermissionsResult(results);
             }
-            
             return -1;
         }
         
-        // 获取请求码
-        int requestCode = getNextRequestCode();
-        
-        // 保存回调和请求权限
-        callbacks.put(requestCode, callback);
-        requestMap.put(requestCode, requestPermissions);
+        // 所有应用完成后统一回调
+        AtomicInteger remaining = new AtomicInteger(waitingApps.size());
+        ResultListener listener = (appId, granted, denied, neverAskAgain) -> {
+            synchronized (results) {
+                results.put(appId, createPermissionResult(granted, denied));
+            }
+            if (remaining.decrementAndGet() == 0 && callback != null) {
+                callback.onPermissionsResult(results);
+            }
+        };
         
-        // 请求系统权限
-        if (!systemPermissions.isEmpty()) {
-            String[] permissionArray = systemPermissions.toArray(new String[0]);
-            ActivityCompat.requestPermissions(activity, permissionArray, requestCode);
+        List<PendingApp> systemApps = new ArrayList<>();
+        List<PendingApp> platformApps = new ArrayList<>();
+        for (int i = 0; i < waitingApps.size(); i++) {
+            PendingApp app = new PendingApp(waitingApps.get(i), waitingPermissions.get(i), listener);
+            (needsSystem.get(i) ? systemApps : platformApps).add(app);
         }
         
-        Log.i(TAG, "请求权限: " + appId + ", " + requestPermissions + ", 请求码: " + requestCode);
+        int requestCode = systemApps.isEmpty() ? -1 : submit(activity, systemPermissions, systemApps);
+        for (PendingApp app : platformApps) {
+            resolve(app, false);
+        }
         return requestCode;
     }
     
@@ -562,7 +1130,7 @@ public class MpkPermissionManager {
     }
     
     /**
-     * 处理权限请求结果
+     * 处理权限请求结果，合并到该请求的所有应用一起回调
      * 
      * @param requestCode 请求码
      * @param permissions 权限
@@ -576,28 +1144,21 @@ public class MpkPermissionManager {
         }
         
         // 检查请求是否存在
-        List<String> requestPermissions = requestMap.get(requestCode);
-        if (requestPermissions == null) {
-            Log.w(TAG, "请求不存在: " + requestCode);
-            return;
+        PendingRequest request;
+        synchronized (pendingRequests) {
+            request = pendingRequests.remove(requestCode);
         }
-        
-        // 检查回调是否存在
-        PermissionCallback callback = callbacks.get(requestCode);
-        if (callback == null) {
-            Log.w(TAG, "回调不存在: " + requestCode);
+        if (request == null) {
+            Log.w(TAG, "请求不存在: " + requestCode);
             return;
         }
         
         // 处理结果
-        List<String> grantedList = new ArrayList<>();
-        List<String> deniedList = new ArrayList<>();
+        long grantedMask = 0L;
         boolean neverAskAgain = false;
         
-        // 检查是否有权限被授予
-        for (int i = 0; i < permissions.length; i++) {
+        for (int i = 0; i < permissions.length && i < grantResults.length; i++) {
             String permission = permissions[i];
-            int grantResult = grantResults[i];
             
             PermissionType type = PermissionType.fromValue(permission);
             if (type == null) {
@@ -605,37 +1166,136 @@ public class MpkPermissionManager {
                 continue;
             }
             
-            String permissionName = type.getName();
-            
-            if (grantResult == PackageManager.PERMISSION_GRANTED) {
-                grantedList.add(permissionName);
-            } else {
-                deniedList.add(permissionName);
-                
+            if (grantResults[i] == PackageManager.PERMISSION_GRANTED) {
+                grantedMask |= type.getMask();
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
                 // 检查是否永久拒绝
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    Activity activity = getActivity();
-                    if (activity != null && !ActivityCompat.shouldShowRequestPermissionRationale(activity, permission)) {
-                        neverAskAgain = true;
-                    }
+                Activity activity = getActivity();
+                if (activity != null && !ActivityCompat.shouldShowRequestPermissionRationale(activity, permission)) {
+                    neverAskAgain = true;
                 }
             }
         }
         
-        // 回调
-        if (!grantedList.isEmpty()) {
-            callback.onPermissionsGranted(grantedList);
+        // 更新所有等待应用的位集后回调，被撤销的权限保持撤销
+        long systemGranted = grantedMask;
+        for (PendingApp app : request.apps) {
+            update(app.appId, old ->
+                new PermissionBits(old.declared, old.granted | (systemGranted & ~old.revoked), old.revoked));
         }
-        
-        if (!deniedList.isEmpty()) {
-            callback.onPermissionsDenied(deniedList, neverAskAgain);
+        for (PendingApp app : request.apps) {
+            resolve(app, neverAskAgain);
         }
         
-        // 清理
-        callbacks.remove(requestCode);
-        requestMap.remove(requestCode);
+        Log.i(TAG, "处理权限结果: 请求码=" + requestCode + ", 应用=" + request.apps.size()
+            + ", 授予=" + Long.toBinaryString(grantedMask));
+    }
+    
+    /**
+     * 收集应用需要请求的权限
+     * 
+     * @param appId 应用 ID
+     * @param permissions 请求的权限
+     * @param requestPermissions 已声明但未授予的权限
+     * @param systemPermissions 需要向系统请求的权限值，被撤销的系统权限不向系统请求
+     */
+    private void collectRequest(String appId, List<String> permissions, List<String> requestPermissions,
+                                Set<String> systemPermissions) {
+        PermissionBits bits = permissionBits.get(appId);
+        for (String permission : permissions) {
+            if (!hasPermission(appId, permission)) {
+                Log.w(TAG, "应用未注册权限: " + appId + ", " + permission);
+                continue;
+            }
+            
+            // 检查权限是否已授予
+            if (checkPermission(appId, permission)) {
+                continue;
+            }
+            
+            requestPermissions.add(permission);
+            
+            PermissionType type = PermissionType.fromName(permission);
+            if (type != null && type.isSystem() && (bits == null || (bits.revoked & type.getMask()) == 0)) {
+                systemPermissions.add(type.getValue());
+            }
+        }
+    }
+    
+    /**
+     * 发起系统权限请求，已有覆盖相同权限的请求时合并
+     * 
+     * @param activity 活动
+     * @param systemPermissions 系统权限值
+     * @param apps 等待结果的应用
+     * @return 请求码
+     */
+    private int submit(Activity activity, Set<String> systemPermissions, List<PendingApp> apps) {
+        PendingRequest request = null;
+        boolean issue = false;
+        synchronized (pendingRequests) {
+            for (PendingRequest pending : pendingRequests.values()) {
+                if (pending.systemPermissions.containsAll(systemPermissions)) {
+                    request = pending;
+                    break;
+                }
+            }
+            if (request == null) {
+                request = new PendingRequest(getNextRequestCode(), systemPermissions);
+                pendingRequests.put(request.requestCode, request);
+                issue = true;
+            }
+            request.apps.addAll(apps);
+        }
         
-        Log.i(TAG, "处理权限结果: 请求码=" + requestCode + ", 授予=" + grantedList + ", 拒绝=" + deniedList);
+        if (issue) {
+            ActivityCompat.requestPermissions(activity, systemPermissions.toArray(new String[0]), request.requestCode);
+            Log.i(TAG, "请求权限: " + systemPermissions + ", 应用: " + apps.size() + ", 请求码: " + request.requestCode);
+        } else {
+            Log.i(TAG, "合并到进行中的权限请求: " + systemPermissions + ", 应用: " + apps.size()
+                + ", 请求码: " + request.requestCode);
+        }
+        return request.requestCode;
+    }
+    
+    /**
+     * 按当前位集回调应用的请求结果
+     * 
+     * @param app 等待结果的应用
+     * @param neverAskAgain 是否有系统权限被永久拒绝
+     */
+    private void resolve(PendingApp app, boolean neverAskAgain) {
+        List<String> grantedList = new ArrayList<>();
+        List<String> deniedList = new ArrayList<>();
+        for (String permission : app.permissions) {
+            PermissionType type = PermissionType.fromName(permission);
+            if (type != null && evaluatePermission(app.appId, type)) {
+                grantedList.add(permission);
+            } else {
+                deniedList.add(permission);
+            }
+        }
+        app.listener.onResult(app.appId, grantedList, deniedList, neverAskAgain);
+    }
+    
+    /**
+     * 将权限回调转换为结果监听器
+     * 
+     * @param callback 权限回调，可以为 null
+     * @return 结果监听器
+     */
+    private static ResultListener toListener(PermissionCallback callback) {
+        return (appId, granted, denied, neverAskAgain) -> {
+            if (callback == null) {
+                return;
+            }
+            if (!granted.isEmpty()) {
+                callback.onPermissionsGranted(granted);
+            }
+            if (!denied.isEmpty()) {
+                callback.onPermissionsDenied(denied, neverAskAgain);
+            }
+        };
     }
     
     /**
@@ -657,8 +1317,15 @@ public class MpkPermissionManager {
      * @return 请求码
      */
     private synchronized int getNextRequestCode() {
-        if (currentRequestCode > REQUEST_CODE_END) {
-            currentRequestCode = REQUEST_CODE_START;
+        // 跳过仍在进行中的请求码
+        for (int i = REQUEST_CODE_START; i <= REQUEST_CODE_END; i++) {
+            if (currentRequestCode > REQUEST_CODE_END) {
+                currentRequestCode = REQUEST_CODE_START;
+            }
+            int requestCode = currentRequestCode++;
+            if (!pendingRequests.containsKey(requestCode)) {
+                return requestCode;
+            }
         }
         return currentRequestCode++;
     }
@@ -791,6 +1458,21 @@ public class MpkPermissionManager {
         return Arrays.asList(PermissionType.values());
     }
     
+    /**
+     * 计算所有系统权限的位集
+     * 
+     * @return 位集
+     */
+    private static long systemMask() {
+        long mask = 0L;
+        for (PermissionType type : PermissionType.values()) {
+            if (type.isSystem()) {
+                mask |= type.getMask();
+            }
+        }
+        return mask;
+    }
+    
     /**
      * 获取所有系统权限类型
      * 
@@ -0,0 +1,351 @@
+package com.mobileplatform.creator.mpk;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import com.mobileplatform.creator.data.AppDatabase;
+import com.mobileplatform.creator.data.PermissionGrantDao;
+import com.mobileplatform.creator.model.PermissionGrant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MPK 权限状态存储
+ * 创建时在后台线程中用一次查询加载所有应用的授予和撤销状态，按权限类型序号组成位集保存在内存中；
+ * 状态变更先更新内存，再由后台线程合并为一个事务写入数据库，不阻塞调用者。
+ * 读取和变更都不等待启动加载，加载完成前的变更优先于数据库中的旧状态，
+ * 需要完整状态的调用者通过 {@link #whenLoaded(Runnable)} 在加载完成后处理
+ */
+public class MpkPermissionStore {
+    private static final String TAG = "MpkPermissionStore";
+
+    // 等待启动加载完成的最长时间（毫秒）
+    private static final long LOAD_TIMEOUT_MS = 3000;
+
+    /**
+     * 应用的持久化权限状态，不可变
+     */
+    public static final class StoredPermissions {
+        public static final StoredPermissions EMPTY = new StoredPermissions(0L, 0L);
+
+        // 显式授予的权限
+        public final long granted;
+
+        // 显式撤销的权限
+        public final long revoked;
+
+        StoredPermissions(long granted, long revoked) {
+            this.granted = granted;
+            this.revoked = revoked;
+        }
+    }
+
+    private final Context context;
+
+    // 写入线程，同时用于启动加载
+    private final ExecutorService executor;
+
+    // 启动加载
+    private final CompletableFuture<Void> loaded;
+
+    // 内存中的权限状态，只在锁内访问
+    private final Map<String, StoredPermissions> state = new HashMap<>();
+
+    // 加载完成前清除的应用，加载时跳过，只在锁内访问
+    private final Set<String> clearedBeforeLoad = new HashSet<>();
+
+    // 是否已合并启动加载的状态，只在锁内访问
+    private boolean stateLoaded;
+
+    // 待写入的变更，按顺序执行，值为 PermissionGrant 或要删除的应用 ID，只在锁内访问
+    private final List<Object> pendingWrites = new ArrayList<>();
+
+    // 是否已提交写入任务，只在锁内访问
+    private boolean writeScheduled;
+
+    private PermissionGrantDao dao;
+    private AppDatabase database;
+
+    /**
+     * 创建存储并开始加载
+     * @param context 上下文，为 null 时只保存在内存中
+     */
+    public MpkPermissionStore(Context context) {
+        this.context = context;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "MpkPermissionStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loaded = CompletableFuture.runAsync(this::load, executor);
+    }
+
+    /**
+     * 启动加载是否已完成，加载失败也算完成
+     * @return 是否已完成
+     */
+    public boolean isLoaded() {
+        return loaded.isDone();
+    }
+
+    /**
+     * 启动加载完成后执行，已完成时在当前线程中立即执行，否则在写入线程中执行
+     * @param action 操作
+     */
+    public void whenLoaded(Runnable action) {
+        loaded.whenComplete((result, error) -> action.run());
+    }
+
+    /**
+     * 等待启动加载完成，不能在主线程或写入线程中调用
+     * @return 是否已加载，超时或失败时返回 false
+     */
+    @WorkerThread
+    public boolean awaitLoaded() {
+        try {
+            loaded.get(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Log.w(TAG, "等待权限状态加载失败: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * 获取应用的持久化权限状态，不等待启动加载，加载完成前只包含本次运行中的变更
+     * @param appId 应用 ID
+     * @return 权限状态
+     */
+    public StoredPermissions get(String appId) {
+        synchronized (state) {
+            StoredPermissions stored = state.get(appId);
+            return stored != null ? stored : StoredPermissions.EMPTY;
+        }
+    }
+
+    /**
+     * 获取所有应用的持久化权限状态，不等待启动加载
+     * @return 应用 ID 到权限状态的快照
+     */
+    public Map<String, StoredPermissions> getAll() {
+        synchronized (state) {
+            return Collections.unmodifiableMap(new HashMap<>(state));
+        }
+    }
+
+    /**
+     * 保存应用的权限状态
+     * @param appId 应用 ID
+     * @param mask 权限位集
+     * @param granted 授予还是撤销
+     */
+    public void save(String appId, long mask, boolean granted) {
+        save(Collections.singletonList(appId), mask, granted);
+    }
+
+    /**
+     * 为多个应用保存相同的权限状态，合并为一次写入
+     * @param appIds 应用 ID
+     * @param mask 权限位集
+     * @param granted 授予还是撤销
+     */
+    public void save(Iterable<String> appIds, long mask, boolean granted) {
+        if (mask == 0L) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int stateValue = granted ? PermissionGrant.STATE_GRANTED : PermissionGrant.STATE_REVOKED;
+        MpkPermissionManager.PermissionType[] types = MpkPermissionManager.PermissionType.values();
+        List<Object> rows = new ArrayList<>();
+        for (String appId : appIds) {
+            synchronized (state) {
+                StoredPermissions current = state.get(appId);
+                if (current == null) {
+                    current = StoredPermissions.EMPTY;
+                }
+                state.put(appId, granted
+                    ? new StoredPermissions(current.granted | mask, current.revoked & ~mask)
+                    : new StoredPermissions(current.granted & ~mask, current.revoked | mask));
+            }
+            for (MpkPermissionManager.PermissionType type : types) {
+                if ((mask & type.getMask()) != 0) {
+                    rows.add(new PermissionGrant(appId, type.ordinal(), stateValue, now));
+                }
+            }
+        }
+        enqueue(rows);
+    }
+
+    /**
+     * 删除应用的全部持久化状态，用于卸载应用
+     * @param appId 应用 ID
+     */
+    public void clear(String appId) {
+        synchronized (state) {
+            state.remove(appId);
+            if (!stateLoaded) {
+                clearedBeforeLoad.add(appId);
+            }
+        }
+        enqueue(Collections.singletonList(appId));
+    }
+
+    /**
+     * 写完待写入的变更后停止写入线程
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void enqueue(List<Object> writes) {
+        if (context == null || writes.isEmpty()) {
+            return;
+        }
+        synchronized (pendingWrites) {
+            pendingWrites.addAll(writes);
+            if (writeScheduled) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "权限状态存储已关闭，变更未写入", e);
+        }
+    }
+
+    /**
+     * 在写入线程中把待写入的变更合并为一个事务
+     */
+    private void drain() {
+        List<Object> writes;
+        synchronized (pendingWrites) {
+            writes = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+            writeScheduled = false;
+        }
+
+        PermissionGrantDao current = getDao();
+        if (current == null || writes.isEmpty()) {
+            return;
+        }
+
+        try {
+            database.runInTransaction(() -> {
+                List<PermissionGrant> rows = new ArrayList<>();
+                for (Object write : writes) {
+                    if (write instanceof PermissionGrant) {
+                        rows.add((PermissionGrant) write);
+                        continue;
+                    }
+                    // 删除之前先写入之前的变更，保持顺序
+                    if (!rows.isEmpty()) {
+                        current.upsert(rows);
+                        rows = new ArrayList<>();
+                    }
+                    current.deleteForApp((String) write);
+                }
+                if (!rows.isEmpty()) {
+                    current.upsert(rows);
+                }
+            });
+            Log.d(TAG, "权限状态已写入: " + writes.size() + " 项");
+        } catch (RuntimeException e) {
+            Log.e(TAG, "写入权限状态失败", e);
+        }
+    }
+
+    /**
+     * 在写入线程中加载所有应用的权限状态
+     */
+    private void load() {
+        PermissionGrantDao current = getDao();
+        if (current == null) {
+            markLoaded();
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<PermissionGrant> rows;
+        try {
+            rows = current.getAll();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "加载权限状态失败", e);
+            markLoaded();
+            return;
+        }
+
+        MpkPermissionManager.PermissionType[] types = MpkPermissionManager.PermissionType.values();
+        Map<String, long[]> masks = new HashMap<>();
+        for (PermissionGrant row : rows) {
+            if (row.getPermission() < 0 || row.getPermission() >= types.length) {
+                continue;
+            }
+            long[] appMasks = masks.get(row.getAppId());
+            if (appMasks == null) {
+                appMasks = new long[2];
+                masks.put(row.getAppId(), appMasks);
+            }
+            long bit = types[row.getPermission()].getMask();
+            if (row.getState() == PermissionGrant.STATE_GRANTED) {
+                appMasks[0] |= bit;
+            } else if (row.getState() == PermissionGrant.STATE_REVOKED) {
+                appMasks[1] |= bit;
+            }
+        }
+        // 合并到内存状态，加载完成前变更过的权限以内存为准
+        synchronized (state) {
+            for (Map.Entry<String, long[]> entry : masks.entrySet()) {
+                if (clearedBeforeLoad.contains(entry.getKey())) {
+                    continue;
+                }
+                long granted = entry.getValue()[0];
+                long revoked = entry.getValue()[1];
+                StoredPermissions inMemory = state.get(entry.getKey());
+                if (inMemory != null) {
+                    long changed = inMemory.granted | inMemory.revoked;
+                    granted = (granted & ~changed) | inMemory.granted;
+                    revoked = (revoked & ~changed) | inMemory.revoked;
+                }
+                state.put(entry.getKey(), new StoredPermissions(granted, revoked));
+            }
+            clearedBeforeLoad.clear();
+            stateLoaded = true;
+        }
+
+        Log.i(TAG, "已加载权限状态: " + masks.size() + " 个应用, " + rows.size() + " 项, 耗时 "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " 毫秒");
+    }
+
+    private void markLoaded() {
+        synchronized (state) {
+            clearedBeforeLoad.clear();
+            stateLoaded = true;
+        }
+    }
+
+    private PermissionGrantDao getDao() {
+        if (dao == null && context != null) {
+            database = AppDatabase.getDatabase(context);
+            dao = database != null ? database.permissionGrantDao() : null;
+        }
+        return dao;
+    }
+}
@@ -0,0 +1,397 @@
+package com.mobileplatform.creator.mpk;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * MPK 资源使用历史
+ * 为单个应用的每种资源维护固定容量的采样环形缓冲区（基本类型数组，无装箱），
+ * 供监控界面和限流逻辑直接读取，不会触发新的测量
+ */
+public class MpkResourceHistory {
+    // 导出格式魔数 ("MPRH")
+    private static final int EXPORT_MAGIC = 0x4D505248;
+
+    // 导出格式版本
+    private static final int EXPORT_VERSION = 1;
+
+    // 默认采样容量（默认监控间隔 5 秒时约为 10 分钟）
+    public static final int DEFAULT_CAPACITY = 120;
+
+    // 应用 ID
+    private final String appId;
+
+    // 资源限制
+    private final MpkSandbox.ResourceLimits limits;
+
+    // 每种资源的采样缓冲区，按 ResourceExceededEvent.Type 序号索引
+    private final SampleRing[] rings;
+
+    /**
+     * 创建资源使用历史
+     * @param appId 应用 ID
+     * @param limits 资源限制
+     * @param capacity 每种资源保留的采样数
+     */
+    public MpkResourceHistory(String appId, MpkSandbox.ResourceLimits limits, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("采样容量必须大于 0: " + capacity);
+        }
+
+        this.appId = appId;
+        this.limits = limits;
+
+        MpkSandbox.ResourceExceededEvent.Type[] types = MpkSandbox.ResourceExceededEvent.Type.values();
+        this.rings = new SampleRing[types.length];
+        for (int i = 0; i < types.length; i++) {
+            rings[i] = new SampleRing(capacity);
+        }
+    }
+
+    /**
+     * 记录一次完整的资源采样
+     * @param timestamp 采样时间（毫秒）
+     * @param usage 当前资源使用情况
+     */
+    public void record(long timestamp, MpkSandbox.ResourceUsage usage) {
+        record(MpkSandbox.ResourceExceededEvent.Type.STORAGE, timestamp, usage.getStorageUsage());
+        record(MpkSandbox.ResourceExceededEvent.Type.PROCESS, timestamp, usage.getProcessCount());
+        record(MpkSandbox.ResourceExceededEvent.Type.MEMORY, timestamp, usage.getMemoryUsage());
+        record(MpkSandbox.ResourceExceededEvent.Type.CPU, timestamp, (long) usage.getCpuUsage());
+        record(MpkSandbox.ResourceExceededEvent.Type.NETWORK, timestamp, usage.getNetworkUsage());
+    }
+
+    /**
+     * 记录单项资源采样
+     * @param type 资源类型
+     * @param timestamp 采样时间（毫秒）
+     * @param value 采样值
+     */
+    public void record(MpkSandbox.ResourceExceededEvent.Type type, long timestamp, long value) {
+        rings[type.ordinal()].add(timestamp, value);
+    }
+
+    /**
+     * 获取应用 ID
+     * @return 应用 ID
+     */
+    public String getAppId() {
+        return appId;
+    }
+
+    /**
+     * 获取资源限制
+     * @return 资源限制
+     */
+    public MpkSandbox.ResourceLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * 获取资源限制值
+     * @param type 资源类型
+     * @return 限制值
+     */
+    public long getLimit(MpkSandbox.ResourceExceededEvent.Type type) {
+        switch (type) {
+            case STORAGE:
+                return limits.maxStorage;
+            case PROCESS:
+                return limits.maxProcesses;
+            case MEMORY:
+                return limits.maxMemory;
+            case CPU:
+                return limits.maxCpuUsage;
+            case NETWORK:
+                return limits.maxNetworkUsage;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 获取采样数量
+     * @param type 资源类型
+     * @return 当前保留的采样数
+     */
+    public int getSampleCount(MpkSandbox.ResourceExceededEvent.Type type) {
+        return rings[type.ordinal()].size();
+    }
+
+    /**
+     * 获取最近一次采样值
+     * @param type 资源类型
+     * @return 最近采样值，无采样时返回 0
+     */
+    public long getLatest(MpkSandbox.ResourceExceededEvent.Type type) {
+        return rings[type.ordinal()].latest();
+    }
+
+    /**
+     * 获取最近一次采样时间
+     * @param type 资源类型
+     * @return 最近采样时间（毫秒），无采样时返回 0
+     */
+    public long getLatestTimestamp(MpkSandbox.ResourceExceededEvent.Type type) {
+        return rings[type.ordinal()].latestTimestamp();
+    }
+
+    /**
+     * 获取最近 window 个采样中的最小值
+     * @param type 资源类型
+     * @param window 采样窗口，小于等于 0 表示全部
+     * @return 最小值，无采样时返回 0
+     */
+    public long getMin(MpkSandbox.ResourceExceededEvent.Type type, int window) {
+        return rings[type.ordinal()].min(window);
+    }
+
+    /**
+     * 获取最近 window 个采样中的最大值
+     * @param type 资源类型
+     * @param window 采样窗口，小于等于 0 表示全部
+     * @return 最大值，无采样时返回 0
+     */
+    public long getMax(MpkSandbox.ResourceExceededEvent.Type type, int window) {
+        return rings[type.ordinal()].max(window);
+    }
+
+    /**
+     * 获取最近 window 个采样的平均值
+     * @param type 资源类型
+     * @param window 采样窗口，小于等于 0 表示全部
+     * @return 平均值，无采样时返回 0
+     */
+    public double getAverage(MpkSandbox.ResourceExceededEvent.Type type, int window) {
+        return rings[type.ordinal()].average(window);
+    }
+
+    /**
+     * 获取最近 window 个采样的百分位数
+     * @param type 资源类型
+     * @param percentile 百分位（0-100）
+     * @param window 采样窗口，小于等于 0 表示全部
+     * @return 百分位值，无采样时返回 0
+     */
+    public long getPercentile(MpkSandbox.ResourceExceededEvent.Type type, int percentile, int window) {
+        return rings[type.ordinal()].percentile(percentile, window);
+    }
+
+    /**
+     * 获取最近一次采样相对限制的百分比
+     * @param type 资源类型
+     * @return 使用率百分比
+     */
+    public int getLatestPercentage(MpkSandbox.ResourceExceededEvent.Type type) {
+        long limit = getLimit(type);
+        return limit > 0 ? (int) (getLatest(type) * 100 / limit) : 0;
+    }
+
+    /**
+     * 按时间顺序复制采样到调用方提供的数组中
+     * @param type 资源类型
+     * @param timestamps 接收采样时间的数组，可为 null
+     * @param values 接收采样值的数组，可为 null
+     * @return 复制的采样数
+     */
+    public int copySamples(MpkSandbox.ResourceExceededEvent.Type type, long[] timestamps, long[] values) {
+        return rings[type.ordinal()].copyTo(timestamps, values);
+    }
+
+    /**
+     * 清空所有采样
+     */
+    public void clear() {
+        for (SampleRing ring : rings) {
+            ring.clear();
+        }
+    }
+
+    /**
+     * 以紧凑二进制格式导出采样，用于离线分析
+     * 格式：魔数、版本、应用 ID，然后每种资源依次写入类型序号、采样数，
+     * 以及变长编码的时间差值和数值差值（ZigZag）
+     * @param out 输出流
+     * @throws IOException 如果写入失败
+     */
+    public void export(OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(EXPORT_MAGIC);
+        dos.writeByte(EXPORT_VERSION);
+        dos.writeUTF(appId);
+        dos.writeByte(rings.length);
+
+        long[] timestamps = new long[rings[0].capacity()];
+        long[] values = new long[timestamps.length];
+
+        for (int i = 0; i < rings.length; i++) {
+            int count = rings[i].copyTo(timestamps, values);
+            dos.writeByte(i);
+            writeVarLong(dos, count);
+
+            long lastTimestamp = 0;
+            long lastValue = 0;
+            for (int j = 0; j < count; j++) {
+                writeVarLong(dos, zigZag(timestamps[j] - lastTimestamp));
+                writeVarLong(dos, zigZag(values[j] - lastValue));
+                lastTimestamp = timestamps[j];
+                lastValue = values[j];
+            }
+        }
+
+        dos.flush();
+    }
+
+    /**
+     * ZigZag 编码，使小的负数也能以较少字节表示
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * 写入无符号变长整数
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * 单项资源的采样环形缓冲区
+     * 写入来自监控线程，读取来自界面和运行时，使用对象锁保护，临界区只包含数组操作
+     */
+    private static class SampleRing {
+        private final long[] timestamps;
+        private final long[] values;
+        // 百分位计算使用的排序缓冲区，避免每次查询分配
+        private final long[] scratch;
+        // 下一个写入位置
+        private int head;
+        // 当前采样数
+        private int count;
+
+        SampleRing(int capacity) {
+            this.timestamps = new long[capacity];
+            this.values = new long[capacity];
+            this.scratch = new long[capacity];
+        }
+
+        int capacity() {
+            return values.length;
+        }
+
+        synchronized void add(long timestamp, long value) {
+            timestamps[head] = timestamp;
+            values[head] = value;
+            head = (head + 1) % values.length;
+            if (count < values.length) {
+                count++;
+            }
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        synchronized long latest() {
+            return count == 0 ? 0 : values[indexFromNewest(0)];
+        }
+
+        synchronized long latestTimestamp() {
+            return count == 0 ? 0 : timestamps[indexFromNewest(0)];
+        }
+
+        synchronized long min(int window) {
+            int n = windowSize(window);
+            if (n == 0) {
+                return 0;
+            }
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                min = Math.min(min, values[indexFromNewest(i)]);
+            }
+            return min;
+        }
+
+        synchronized long max(int window) {
+            int n = windowSize(window);
+            if (n == 0) {
+                return 0;
+            }
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                max = Math.max(max, values[indexFromNewest(i)]);
+            }
+            return max;
+        }
+
+        synchronized double average(int window) {
+            int n = windowSize(window);
+            if (n == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += values[indexFromNewest(i)];
+            }
+            return sum / n;
+        }
+
+        synchronized long percentile(int percentile, int window) {
+            int n = windowSize(window);
+            if (n == 0) {
+                return 0;
+            }
+            for (int i = 0; i < n; i++) {
+                scratch[i] = values[indexFromNewest(i)];
+            }
+            Arrays.sort(scratch, 0, n);
+
+            int p = Math.max(0, Math.min(100, percentile));
+            // 最近秩法
+            int rank = (int) Math.ceil(p / 100.0 * n);
+            return scratch[Math.max(0, rank - 1)];
+        }
+
+        synchronized int copyTo(long[] outTimestamps, long[] outValues) {
+            int n = count;
+            if (outTimestamps != null) {
+                n = Math.min(n, outTimestamps.length);
+            }
+            if (outValues != null) {
+                n = Math.min(n, outValues.length);
+            }
+            // 按时间从旧到新复制最近的 n 个采样
+            for (int i = 0; i < n; i++) {
+                int index = indexFromNewest(n - 1 - i);
+                if (outTimestamps != null) {
+                    outTimestamps[i] = timestamps[index];
+                }
+                if (outValues != null) {
+                    outValues[i] = values[index];
+                }
+            }
+            return n;
+        }
+
+        synchronized void clear() {
+            head = 0;
+            count = 0;
+        }
+
+        private int windowSize(int window) {
+            return window <= 0 ? count : Math.min(window, count);
+        }
+
+        private int indexFromNewest(int offset) {
+            int index = head - 1 - offset;
+            return index < 0 ? index + values.length : index;
+        }
+    }
+}
@@ -20,8 +20,6 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import java.text.DecimalFormat;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -39,9 +37,6 @@ public class MpkResourceMonitorUI extends LinearLayout {
     // 应用 ID
     private String appId;
     
-    // 资源使用状态
-    private Map<String, Object> resourceStatus;
-    
     // 资源类型颜色
     private static final int COLOR_STORAGE = Color.parseColor("#4CAF50");
     private static final int COLOR_PROCESS = Color.parseColor("#2196F3");
@@ -123,9 +118,6 @@ public class MpkResourceMonitorUI extends LinearLayout {
         
         // 初始化处理器
         mainHandler = new Handler(Looper.getMainLooper());
-        
-        // 初始化资源状态
-        resourceStatus = new HashMap<>();
     }
     
     /**
@@ -330,6 +322,7 @@ public class MpkResourceMonitorUI extends LinearLayout {
     
     /**
      * 刷新资源状态
+     * 直接读取资源使用历史中的最近采样，不触发新的测量
      */
     private void refreshResourceStatus() {
         if (runtime == null || appId == null) {
@@ -337,21 +330,23 @@ public class MpkResourceMonitorUI extends LinearLayout {
         }
         
         try {
-            Map<String, Object> status = runtime.getAppStatus(appId);
-            if (status != null && status.containsKey("resources")) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> resources = (Map<String, Object>) status.get("resources");
-                
-                resourceStatus.putAll(resources);
+            MpkResourceHistory history = runtime.getResourceHistory(appId);
+            if (history != null) {
+                MpkSandbox.ResourceLimits limits = history.getLimits();
+                long storageUsage = history.getLatest(MpkSandbox.ResourceExceededEvent.Type.STORAGE);
+                int processCount = (int) history.getLatest(MpkSandbox.ResourceExceededEvent.Type.PROCESS);
+                long memoryUsage = history.getLatest(MpkSandbox.ResourceExceededEvent.Type.MEMORY);
+                long cpuUsage = history.getLatest(MpkSandbox.ResourceExceededEvent.Type.CPU);
+                long networkUsage = history.getLatest(MpkSandbox.ResourceExceededEvent.Type.NETWORK);
+                boolean isRunning = runtime.isAppRunning(appId);
                 
                 mainHandler.post(() -> {
-                    updateStorageUI(resources);
-                    updateProcessUI(resources);
-                    updateMemoryUI(resources);
-                    updateCpuUI(resources);
-                    updateNetworkUI(resources);
+                    updateStorageUI(storageUsage, limits.maxStorage);
+                    updateProcessUI(processCount, limits.maxProcesses);
+                    updateMemoryUI(memoryUsage, limits.maxMemory);
+                    updateCpuUI(cpuUsage, limits.maxCpuUsage);
+                    updateNetworkUI(networkUsage, limits.maxNetworkUsage);
                     
-                    boolean isRunning = (boolean) status.get("isRunning");
                     appStatusText.setText("状态: " + (isRunning ? "运行中" : "已停止"));
                     appStatusText.setTextColor(isRunning ? COLOR_NORMAL : COLOR_EXCEEDED);
                 });
@@ -361,15 +356,24 @@ public class MpkResourceMonitorUI extends LinearLayout {
         }
     }
     
+    /**
+     * 计算使用率百分比
+     * @param usage 使用量
+     * @param limit 限制值
+     * @return 百分比
+     */
+    private static int percentageOf(long usage, long limit) {
+        return limit > 0 ? (int) (usage * 100 / limit) : 0;
+    }
+    
     /**
      * 更新存储空间 UI
-     * @param resources 资源状态
+     * @param storageUsage 存储使用量
+     * @param maxStorage 最大存储空间
      */
     @SuppressLint("SetTextI18n")
-    private void updateStorageUI(Map<String, Object> resources) {
-        long storageUsage = (long) resources.get("storageUsage");
-        long maxStorage = (long) resources.get("maxStorage");
-        int percentage = (int) resources.get("storagePercentage");
+    private void updateStorageUI(long storageUsage, long maxStorage) {
+        int percentage = percentageOf(storageUsage, maxStorage);
         
         storageProgressBar.setProgress(percentage);
         if (percentage >= 90) {
@@ -386,13 +390,12 @@ public class MpkResourceMonitorUI extends LinearLayout {
     
     /**
      * 更新进程 UI
-     * @param resources 资源状态
+     * @param processCount 进程数
+     * @param maxProcesses 最大进程数
      */
     @SuppressLint("SetTextI18n")
-    private void updateProcessUI(Map<String, Object> resources) {
-        int processCount = (int) resources.get("processCount");
-        int maxProcesses = (int) resources.get("maxProcesses");
-        int percentage = (int) resources.get("processPercentage");
+    private void updateProcessUI(int processCount, int maxProcesses) {
+        int percentage = percentageOf(processCount, maxProcesses);
         
         processProgressBar.setProgress(percentage);
         if (percentage >= 90) {
@@ -409,13 +412,12 @@ public class MpkResourceMonitorUI extends LinearLayout {
     
     /**
      * 更新内存 UI
-     * @param resources 资源状态
+     * @param memoryUsage 内存使用量
+     * @param maxMemory 最大内存
      */
     @SuppressLint("SetTextI18n")
-    private void updateMemoryUI(Map<String, Object> resources) {
-        long memoryUsage = (long) resources.get("memoryUsage");
-        long maxMemory = (long) resources.get("maxMemory");
-        int percentage = (int) resources.get("memoryPercentage");
+    private void updateMemoryUI(long memoryUsage, long maxMemory) {
+        int percentage = percentageOf(memoryUsage, maxMemory);
         
         memoryProgressBar.setProgress(percentage);
         if (percentage >= 90) {
@@ -432,13 +434,12 @@ public class MpkResourceMonitorUI extends LinearLayout {
     
     /**
      * 更新 CPU UI
-     * @param resources 资源状态
+     * @param cpuUsage CPU 使用率
+     * @param maxCpuUsage 最大 CPU 使用率
      */
     @SuppressLint("SetTextI18n")
-    private void updateCpuUI(Map<String, Object> resources) {
-        float cpuUsage = ((Number) resources.get("cpuUsage")).floatValue();
-        float maxCpuUsage = ((Number) resources.get("maxCpuUsage")).floatValue();
-        int percentage = (int) resources.get("cpuPercentage");
+    private void updateCpuUI(long cpuUsage, long maxCpuUsage) {
+        int percentage = percentageOf(cpuUsage, maxCpuUsage);
         
         cpuProgressBar.setProgress(percentage);
         if (percentage >= 90) {
@@ -455,13 +456,12 @@ public class MpkResourceMonitorUI extends LinearLayout {
     
     /**
      * 更新网络 UI
-     * @param resources 资源状态
+     * @param networkUsage 网络流量
+     * @param maxNetworkUsage 最大网络流量
      */
     @SuppressLint("SetTextI18n")
-    private void updateNetworkUI(Map<String, Object> resources) {
-        long networkUsage = (long) resources.get("networkUsage");
-        long maxNetworkUsage = (long) resources.get("maxNetworkUsage");
-        int percentage = (int) resources.get("networkPercentage");
+    private void updateNetworkUI(long networkUsage, long maxNetworkUsage) {
+        int percentage = percentageOf(networkUsage, maxNetworkUsage);
         
         networkProgressBar.setProgress(percentage);
         if (percentage >= 90) {
@@ -1,22 +1,33 @@
 package com.mobileplatform.creator.mpk;
 
 import android.content.Context;
+import android.os.Process;
 import android.util.Log;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import org.json.JSONObject;
 import org.json.JSONArray;
@@ -38,17 +49,11 @@ public class MpkRuntime {
     // 工作目录
     private File workDir;
     
-    // 已加载的应用
-    private Map<String, MpkFile> loadedApps;
+    // 应用注册表，维护应用的生命周期状态、MPK 文件和 JavaScript 运行时
+    private final MpkAppRegistry appRegistry;
     
-    // 应用状态
-    private Map<String, Boolean> appStates;
-    
-    // JavaScript 运行时
-    private Map<String, MpkJavaScriptRuntime> jsRuntimes;
-    
-    // 当前使用的JavaScript运行时实例
-    private MpkJavaScriptRuntime currentJsRuntime;
+    // 预初始化的 JavaScript 运行时池
+    private final MpkJSRuntimePool jsRuntimePool;
     
     // 进程管理器
     private MpkProcessManager processManager;
@@ -56,18 +61,55 @@ public class MpkRuntime {
     // 应用间通信管理器
     private MpkInterAppCommunication interAppCommunication;
     
+    // 跨进程消息总线传输，第一个外部进程应用启动时创建
+    private MpkIpcTransport ipcTransport;
+    
     // 权限管理器
     private MpkPermissionManager permissionManager;
     
     // 沙箱管理器
     private MpkSandbox sandbox;
     
-    // 资源警告计数器
-    private Map<String, Map<MpkSandbox.ResourceExceededEvent.Type, AtomicInteger>> warningCounters;
-    
     // 最大警告次数，超过这个次数会执行强制清理
     private static final int MAX_WARNING_COUNT = 3;
     
+    // 安装 I/O 线程池大小
+    private static final int IO_POOL_SIZE = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    
+    // 安装 I/O 线程池，用于并行解压和写入应用文件
+    private final ExecutorService ioExecutor;
+    
+    // 正在加载的应用，防止同一应用被并发加载
+    private final Map<String, CompletableFuture<LoadResult>> pendingLoads;
+    
+    // 应用间通信注册锁，注册过程会与文件提取并行执行
+    private final Object ipcRegistrationLock = new Object();
+    
+    // 批量加载时同时进行安装的内存预算（字节）
+    private static final long BATCH_MEMORY_BUDGET = 64L * 1024 * 1024;
+    
+    // 单个包的最小内存估算（字节）
+    private static final long MIN_PACKAGE_MEMORY = 256L * 1024;
+    
+    // 资源监控回调，所有应用共用
+    private final MpkSandbox.ResourceMonitorCallback resourceMonitorCallback = new MpkSandbox.ResourceMonitorCallback() {
+        @Override
+        public void onResourceExceeded(String appId, MpkSandbox.ResourceExceededEvent event) {
+            handleResourceExceeded(appId, event);
+        }
+    };
+    
+    // 沙箱事件监听器，所有应用共用
+    private final MpkSandbox.SandboxEventListener sandboxEventListener = new MpkSandbox.SandboxEventListener() {
+        @Override
+        public void onSandboxEvent(String appId, MpkSandbox.SandboxEvent event) {
+            handleSandboxEvent(appId, event);
+        }
+    };
+    
+    // 判断 CPU 持续超限时参考的采样数
+    private static final int CPU_SUSTAINED_WINDOW = 6;
+    
     /**
      * 创建一个新的 MPK 运行时
      * @param context 上下文
@@ -83,14 +125,107 @@ public class MpkRuntime {
             }
         }
         
-        this.loadedApps = new HashMap<>();
-        this.appStates = new HashMap<>();
-        this.jsRuntimes = new HashMap<>();
+        this.appRegistry = new MpkAppRegistry();
         this.processManager = new MpkProcessManager();
         this.interAppCommunication = new MpkInterAppCommunication();
         this.permissionManager = new MpkPermissionManager(context);
         this.sandbox = new MpkSandbox(context);
-        this.warningCounters = new HashMap<>();
+        this.ioExecutor = Executors.newFixedThreadPool(IO_POOL_SIZE);
+        this.pendingLoads = new ConcurrentHashMap<>();
+        this.jsRuntimePool = new MpkJSRuntimePool(context, "v8", new File(workDir, "launch_stats.json"));
+        this.jsRuntimePool.start();
+    }
+    
+    /**
+     * 加载阶段
+     */
+    public enum LoadStage {
+        PARSE,              // 解析 MPK 文件
+        CREATE_SANDBOX,     // 创建沙箱
+        EXTRACT_RESOURCES,  // 提取资源
+        SAVE_CODE,          // 保存代码
+        SAVE_MANIFEST,      // 保存清单
+        SAVE_SIGNATURE,     // 保存签名和证书
+        REGISTER,           // 注册应用间通信和权限
+        START_MONITOR       // 启动资源监控并完成加载
+    }
+    
+    /**
+     * 加载结果
+     * 记录应用 ID 和各阶段耗时，部分阶段并行执行，因此各阶段耗时之和可能大于总耗时
+     */
+    public static class LoadResult {
+        private final long startTime;
+        private final AtomicLongArray stageNanos;
+        private volatile String appId;
+        private volatile boolean alreadyLoaded;
+        private volatile long totalNanos;
+        
+        LoadResult() {
+            this.startTime = System.nanoTime();
+            this.stageNanos = new AtomicLongArray(LoadStage.values().length);
+        }
+        
+        void recordStage(LoadStage stage, long nanos) {
+            stageNanos.set(stage.ordinal(), nanos);
+        }
+        
+        void finish() {
+            totalNanos = System.nanoTime() - startTime;
+        }
+        
+        /**
+         * 获取应用 ID
+         * @return 应用 ID
+         */
+        public String getAppId() {
+            return appId;
+        }
+        
+        /**
+         * 应用在本次加载前是否已加载
+         * @return 是否已加载
+         */
+        public boolean isAlreadyLoaded() {
+            return alreadyLoaded;
+        }
+        
+        /**
+         * 获取阶段耗时
+         * @param stage 加载阶段
+         * @return 耗时（毫秒）
+         */
+        public long getStageTimeMillis(LoadStage stage) {
+            return TimeUnit.NANOSECONDS.toMillis(stageNanos.get(stage.ordinal()));
+        }
+        
+        /**
+         * 获取总耗时
+         * @return 耗时（毫秒）
+         */
+        public long getTotalTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos);
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("LoadResult{appId=").append(appId);
+            sb.append(", total=").append(getTotalTimeMillis()).append("ms");
+            for (LoadStage stage : LoadStage.values()) {
+                sb.append(", ").append(stage.name().toLowerCase()).append('=');
+                sb.append(getStageTimeMillis(stage)).append("ms");
+            }
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+    
+    /**
+     * 可抛出异常的安装任务
+     */
+    private interface InstallTask {
+        void run() throws Exception;
     }
     
     /**
@@ -101,118 +236,762 @@ public class MpkRuntime {
      * @throws MpkException 如果文件格式错误
      */
     public String loadApp(File mpkFile) throws IOException, MpkException {
-        // 解析 MPK 文件
-        MpkFile mpk = MpkFile.fromFile(mpkFile);
-        
+        try {
+            return loadAppAsync(mpkFile).get().getAppId();
+        } catch (ExecutionException e) {
+            Throwable cause = unwrapCompletionException(e);
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof MpkException) {
+                throw (MpkException) cause;
+            } else {
+                throw new IOException("加载应用失败: " + mpkFile, cause);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("加载应用被中断: " + mpkFile, e);
+        }
+    }
+    
+    /**
+     * 异步加载 MPK 文件
+     * 解析和创建沙箱之后，资源条目在 I/O 线程池中并行提取，代码、清单、签名的写入以及
+     * 应用间通信和权限的注册与提取同时进行，全部完成后才启动资源监控并将应用标记为已加载
+     * @param mpkFile MPK 文件
+     * @return 加载结果
+     */
+    public CompletableFuture<LoadResult> loadAppAsync(File mpkFile) {
+        LoadResult result = new LoadResult();
+        
+        return CompletableFuture
+            .supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return MpkFile.fromFile(mpkFile);
+                } catch (IOException | MpkException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    result.recordStage(LoadStage.PARSE, System.nanoTime() - start);
+                }
+            }, ioExecutor)
+            .thenCompose(mpk -> installParsedApp(mpk, result));
+    }
+    
+    /**
+     * 安装已解析的 MPK 文件
+     * @param mpk MPK 文件
+     * @param result 加载结果
+     * @return 加载结果
+     */
+    private CompletableFuture<LoadResult> installParsedApp(MpkFile mpk, LoadResult result) {
         // 获取应用 ID
         String appId = mpk.getId();
+        result.appId = appId;
         
         // 检查是否已加载
-        if (loadedApps.containsKey(appId)) {
+        if (appRegistry.isLoaded(appId)) {
             Log.w(TAG, "应用已加载: " + appId);
-            return appId;
+            mpk.close();
+            result.alreadyLoaded = true;
+            result.finish();
+            return CompletableFuture.completedFuture(result);
+        }
+        
+        // 检查是否正在加载
+        CompletableFuture<LoadResult> pending = new CompletableFuture<>();
+        CompletableFuture<LoadResult> existing = pendingLoads.putIfAbsent(appId, pending);
+        if (existing != null) {
+            Log.w(TAG, "应用正在加载: " + appId);
+            mpk.close();
+            return existing;
+        }
+        
+        // 在注册表中占用应用 ID
+        if (!beginLoad(appId, pending)) {
+            mpk.close();
+            if (appRegistry.isLoaded(appId)) {
+                result.alreadyLoaded = true;
+                result.finish();
+                return CompletableFuture.completedFuture(result);
+            }
+            return failedFuture(new MpkException("应用正在卸载: " + appId));
         }
         
+        stageApp(appId, mpk, result, true)
+            .thenRunAsync(() -> {
+                long start = System.nanoTime();
+                commitLoadedApp(appId, mpk);
+                result.recordStage(LoadStage.START_MONITOR, System.nanoTime() - start);
+            }, ioExecutor)
+            .whenComplete((ignored, error) -> finishLoad(appId, mpk, result, pending, error));
+        
+        return pending;
+    }
+    
+    /**
+     * 创建沙箱并写入应用文件
+     * 资源条目并行提取，代码、清单、签名的写入以及权限注册与提取同时进行
+     * @param appId 应用 ID
+     * @param mpk MPK 文件
+     * @param result 加载结果
+     * @param registerIpc 是否同时注册应用间通信和权限，批量加载时由调用方统一注册
+     * @return 阶段完成的 Future，同步抛出的异常（包括线程池已关闭）也通过它返回，不会直接抛出
+     */
+    private CompletableFuture<Void> stageApp(String appId, MpkFile mpk, LoadResult result, boolean registerIpc) {
+        // 获取沙箱配置
+        MpkSandbox.ResourceLimits limits = null;
+        
+        // 使用默认配置
+        limits = MpkSandbox.ResourceLimits.getDefault();
+        Log.i(TAG, "应用默认沙箱配置: " + appId);
+        
+        // 创建沙箱环境
+        MpkSandbox.SandboxEnvironment env;
+        long start = System.nanoTime();
         try {
-            // 获取沙箱配置
-            MpkSandbox.ResourceLimits limits = null;
-            
-            // 使用默认配置
-            limits = MpkSandbox.ResourceLimits.getDefault();
-            Log.i(TAG, "应用默认沙箱配置: " + appId);
-            
-            // 创建沙箱环境
-            MpkSandbox.SandboxEnvironment env = sandbox.createSandbox(appId, limits);
+            env = sandbox.createSandbox(appId, limits);
+        } catch (IOException | RuntimeException e) {
+            return failedFuture(e);
+        } finally {
+            result.recordStage(LoadStage.CREATE_SANDBOX, System.nanoTime() - start);
+        }
+        
+        // 并行写入应用文件，同时注册应用间通信和权限
+        List<CompletableFuture<Void>> stages = new ArrayList<>();
+        try {
+            stages.add(extractResourcesAsync(mpk, env, result));
+            stages.add(runInstallStage(result, LoadStage.SAVE_CODE, () -> {
+                saveCode(mpk, env.dataDir);
+                // 代码更新后旧版本的编译缓存不再使用
+                MpkScriptCache.invalidateIfUpdated(env.cacheDir, mpk.getVersionCode());
+            }));
+            stages.add(runInstallStage(result, LoadStage.SAVE_MANIFEST, () -> saveManifest(mpk, env.dataDir)));
+            stages.add(runInstallStage(result, LoadStage.SAVE_SIGNATURE, () -> saveSignature(mpk, env.dataDir)));
+            stages.add(runInstallStage(result, LoadStage.REGISTER,
+                () -> registerAppEndpoints(appId, mpk, registerIpc)));
+        } catch (RuntimeException e) {
+            // 等已提交的阶段结束后再报告失败，避免回滚时仍有阶段在写入沙箱
+            return CompletableFuture.allOf(stages.toArray(new CompletableFuture[0]))
+                .handle((ignored, error) -> null)
+                .thenCompose(ignored -> failedFuture(e));
+        }
+        
+        return CompletableFuture.allOf(stages.toArray(new CompletableFuture[0]));
+    }
+    
+    /**
+     * 结束加载，失败时回滚
+     * @param appId 应用 ID
+     * @param mpk MPK 文件
+     * @param result 加载结果
+     * @param pending 等待加载结果的 Future
+     * @param error 加载异常，成功时为 null
+     */
+    private void finishLoad(String appId, MpkFile mpk, LoadResult result,
+                            CompletableFuture<LoadResult> pending, Throwable error) {
+        result.finish();
+        
+        if (error == null) {
+            pendingLoads.remove(appId);
+            Log.i(TAG, "应用加载成功: " + appId + " " + result);
+            pending.complete(result);
+            return;
+        }
+        
+        // 如果加载失败，清理资源
+        // 先移出注册表再释放加载占用，避免新的加载看到残留的 LOADING 条目
+        Throwable cause = unwrapCompletionException(error);
+        Log.e(TAG, "加载应用失败: " + appId, cause);
+        rollbackLoad(appId);
+        pendingLoads.remove(appId);
+        mpk.close();
+        pending.completeExceptionally(cause);
+    }
+    
+    /**
+     * 在注册表中创建处于 LOADING 状态的应用条目
+     * @param appId 应用 ID
+     * @param pending 已占用的加载 Future
+     * @return 是否创建成功，失败时释放加载占用
+     */
+    private boolean beginLoad(String appId, CompletableFuture<LoadResult> pending) {
+        if (appRegistry.beginLoad(appId)) {
+            return true;
+        }
+        
+        // 应用已加载或正在卸载
+        pendingLoads.remove(appId, pending);
+        return false;
+    }
+    
+    /**
+     * 在 I/O 线程池中执行安装阶段并记录耗时
+     * @param result 加载结果
+     * @param stage 加载阶段
+     * @param task 安装任务
+     * @return 阶段完成的 Future
+     */
+    private CompletableFuture<Void> runInstallStage(LoadResult result, LoadStage stage, InstallTask task) {
+        return CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                result.recordStage(stage, System.nanoTime() - start);
+            }
+        }, ioExecutor);
+    }
+    
+    /**
+     * 注册应用间通信和应用权限
+     * @param appId 应用 ID
+     * @param mpk MPK 文件
+     * @param registerIpc 是否注册应用间通信和权限，批量加载时由调用方统一注册
+     */
+    private void registerAppEndpoints(String appId, MpkFile mpk, boolean registerIpc) {
+        if (!registerIpc) {
+            return;
+        }
+        
+        // 注册应用间通信
+        synchronized (ipcRegistrationLock) {
+            interAppCommunication.registerApp(appId);
+        }
+        
+        // 注册应用权限
+        List<String> permissions = mpk.getPermissions();
+        if (permissions != null && !permissions.isEmpty()) {
+            registerAppPermissions(appId, permissions);
+        }
+    }
+    
+    /**
+     * 启动资源监控并将应用加入已加载列表
+     * @param appId 应用 ID
+     * @param mpk MPK 文件
+     */
+    private void commitLoadedApp(String appId, MpkFile mpk) {
+        // 启动资源监控
+        sandbox.startResourceMonitor(appId, resourceMonitorCallback);
+        
+        registerLoadedApp(appId, mpk);
+    }
+    
+    /**
+     * 注册沙箱事件监听器，并将应用状态转换为 LOADED
+     * @param appId 应用 ID
+     * @param mpk MPK 文件
+     */
+    private void registerLoadedApp(String appId, MpkFile mpk) {
+        // 注册沙箱事件监听器
+        sandbox.addEventListener(appId, sandboxEventListener);
+        
+        // 完成加载，初始状态为未运行
+        if (!appRegistry.completeLoad(appId, mpk)) {
+            throw new IllegalStateException("应用状态异常，无法完成加载: " + appId);
+        }
+        
+        // 常用的 JavaScript 应用提前绑定运行时
+        warmUpJavaScriptRuntime(appId, mpk);
+    }
+    
+    /**
+     * 回滚加载失败的应用
+     * @param appId 应用 ID
+     */
+    private void rollbackLoad(String appId) {
+        try {
+            synchronized (ipcRegistrationLock) {
+                interAppCommunication.unregisterApp(appId);
+            }
+            permissionManager.unregisterAppPermissions(appId);
+            sandbox.deleteSandbox(appId);
+        } catch (Exception ignored) {
+            // 忽略清理时的异常
+        } finally {
+            appRegistry.remove(appId);
+        }
+    }
+    
+    /**
+     * 解开 Future 包装的异常
+     * @param error 异常
+     * @return 原始异常
+     */
+    private static Throwable unwrapCompletionException(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+    
+    /**
+     * 批量加载回调
+     * 回调在安装工作线程中执行
+     */
+    public interface BatchLoadCallback {
+        /**
+         * 包加载成功（包括此前已加载的应用）
+         * @param file MPK 文件
+         * @param result 加载结果
+         */
+        void onPackageLoaded(File file, LoadResult result);
+        
+        /**
+         * 包加载失败，不影响批次中的其他包
+         * @param file MPK 文件
+         * @param error 失败原因
+         */
+        void onPackageFailed(File file, Throwable error);
+        
+        /**
+         * 包因应用 ID 与批次中其他包重复而被跳过
+         * @param file MPK 文件
+         * @param appId 应用 ID
+         */
+        void onPackageSkipped(File file, String appId);
+        
+        /**
+         * 进度更新
+         * @param completed 已处理的包数量
+         * @param total 包总数
+         */
+        void onProgress(int completed, int total);
+    }
+    
+    /**
+     * 批量加载结果
+     */
+    public static class BatchLoadResult {
+        private final Map<File, LoadResult> loaded = new ConcurrentHashMap<>();
+        private final Map<File, Throwable> failed = new ConcurrentHashMap<>();
+        private final Map<File, String> skipped = new ConcurrentHashMap<>();
+        
+        /**
+         * 获取加载成功的包
+         * @return MPK 文件到加载结果的映射
+         */
+        public Map<File, LoadResult> getLoaded() {
+            return Collections.unmodifiableMap(loaded);
+        }
+        
+        /**
+         * 获取加载失败的包
+         * @return MPK 文件到失败原因的映射
+         */
+        public Map<File, Throwable> getFailed() {
+            return Collections.unmodifiableMap(failed);
+        }
+        
+        /**
+         * 获取因应用 ID 重复而跳过的包
+         * @return MPK 文件到应用 ID 的映射
+         */
+        public Map<File, String> getSkipped() {
+            return Collections.unmodifiableMap(skipped);
+        }
+        
+        @Override
+        public String toString() {
+            return "BatchLoadResult{loaded=" + loaded.size() + ", failed=" + failed.size()
+                + ", skipped=" + skipped.size() + '}';
+        }
+    }
+    
+    /**
+     * 批量加载 MPK 文件
+     * @param mpkFiles MPK 文件集合
+     * @return 批量加载结果
+     */
+    public CompletableFuture<BatchLoadResult> loadApps(Collection<File> mpkFiles) {
+        return loadApps(mpkFiles, null);
+    }
+    
+    /**
+     * 批量加载 MPK 文件
+     * 所有包先在 I/O 线程池中以有限的并发解析，同一应用 ID 只保留版本号最高的包；随后在内存预算内
+     * 并行安装，单个包失败不会中止批次；全部安装完成后统一注册应用间通信和资源监控
+     * @param mpkFiles MPK 文件集合
+     * @param callback 批量加载回调，可为 null
+     * @return 批量加载结果
+     */
+    public CompletableFuture<BatchLoadResult> loadApps(Collection<File> mpkFiles, BatchLoadCallback callback) {
+        return new BatchLoader(new ArrayList<>(mpkFiles), callback).start();
+    }
+    
+    /**
+     * 批量加载器
+     */
+    private class BatchLoader {
+        private final List<File> files;
+        private final BatchLoadCallback callback;
+        private final BatchLoadResult batchResult = new BatchLoadResult();
+        private final AtomicInteger completed = new AtomicInteger(0);
+        
+        // 等待安装的包
+        private final ArrayDeque<BatchPackage> queue = new ArrayDeque<>();
+        
+        // 剩余内存预算，由 this 保护
+        private long availableBudget = BATCH_MEMORY_BUDGET;
+        
+        // 正在安装的包数量，由 this 保护
+        private int installing;
+        
+        BatchLoader(List<File> files, BatchLoadCallback callback) {
+            this.files = files;
+            this.callback = callback;
+        }
+        
+        CompletableFuture<BatchLoadResult> start() {
+            // 最多 IO_POOL_SIZE 个解析任务，每个任务依次解析下一个包，同时解析的包数量有上限
+            BatchPackage[] parsed = new BatchPackage[files.size()];
+            AtomicInteger nextFile = new AtomicInteger();
+            int workers = Math.min(IO_POOL_SIZE, files.size());
+            List<CompletableFuture<Void>> parsing = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                parsing.add(CompletableFuture.runAsync(() -> {
+                    int index;
+                    while ((index = nextFile.getAndIncrement()) < parsed.length) {
+                        parsed[index] = parse(files.get(index));
+                    }
+                }, ioExecutor));
+            }
             
-            // 提取资源到沙箱目录
-            extractResources(mpk, env.dataDir);
+            return CompletableFuture.allOf(parsing.toArray(new CompletableFuture[0]))
+                .thenCompose(ignored -> {
+                    List<BatchPackage> packages = new ArrayList<>();
+                    for (BatchPackage pkg : parsed) {
+                        if (pkg != null) {
+                            packages.add(pkg);
+                        }
+                    }
+                    return install(deduplicate(packages));
+                })
+                .thenApply(ignored -> {
+                    Log.i(TAG, "批量加载完成: " + batchResult);
+                    return batchResult;
+                });
+        }
+        
+        /**
+         * 在当前解析任务中解析单个包，失败时记录并返回 null
+         */
+        private BatchPackage parse(File file) {
+            LoadResult result = new LoadResult();
+            long start = System.nanoTime();
+            try {
+                return new BatchPackage(file, MpkFile.fromFile(file), result);
+            } catch (Exception e) {
+                reportFailed(file, e);
+                return null;
+            } finally {
+                result.recordStage(LoadStage.PARSE, System.nanoTime() - start);
+            }
+        }
+        
+        /**
+         * 按应用 ID 去重，保留版本号最高的包
+         */
+        private List<BatchPackage> deduplicate(List<BatchPackage> packages) {
+            Map<String, BatchPackage> byId = new HashMap<>();
+            for (BatchPackage pkg : packages) {
+                BatchPackage current = byId.get(pkg.appId);
+                if (current == null) {
+                    byId.put(pkg.appId, pkg);
+                } else if (pkg.mpk.getVersionCode() > current.mpk.getVersionCode()) {
+                    byId.put(pkg.appId, pkg);
+                    skip(current);
+                } else {
+                    skip(pkg);
+                }
+            }
             
-            // 保存代码到沙箱目录
-            saveCode(mpk, env.dataDir);
+            List<BatchPackage> unique = new ArrayList<>();
+            for (BatchPackage pkg : packages) {
+                if (byId.get(pkg.appId) == pkg) {
+                    unique.add(pkg);
+                }
+            }
+            return unique;
+        }
+        
+        /**
+         * 在内存预算内安装所有包，完成后统一注册
+         */
+        private CompletableFuture<Void> install(List<BatchPackage> packages) {
+            List<CompletableFuture<Void>> staged = new ArrayList<>();
             
-            // 保存清单文件到沙箱目录
-            saveManifest(mpk, env.dataDir);
+            for (BatchPackage pkg : packages) {
+                pkg.result.appId = pkg.appId;
+                
+                // 已加载的应用直接视为成功
+                if (appRegistry.isLoaded(pkg.appId)) {
+                    Log.w(TAG, "应用已加载: " + pkg.appId);
+                    pkg.mpk.close();
+                    pkg.result.alreadyLoaded = true;
+                    pkg.result.finish();
+                    reportLoaded(pkg.file, pkg.result);
+                    continue;
+                }
+                
+                // 其他调用方正在加载的应用，等待其结果
+                CompletableFuture<LoadResult> existing = pendingLoads.putIfAbsent(pkg.appId, pkg.pending);
+                if (existing != null) {
+                    Log.w(TAG, "应用正在加载: " + pkg.appId);
+                    pkg.mpk.close();
+                    staged.add(existing.handle((result, error) -> {
+                        if (error != null) {
+                            reportFailed(pkg.file, unwrapCompletionException(error));
+                        } else {
+                            reportLoaded(pkg.file, result);
+                        }
+                        return null;
+                    }));
+                    continue;
+                }
+                
+                // 在注册表中占用应用 ID
+                if (!beginLoad(pkg.appId, pkg.pending)) {
+                    pkg.mpk.close();
+                    if (appRegistry.isLoaded(pkg.appId)) {
+                        pkg.result.alreadyLoaded = true;
+                        pkg.result.finish();
+                        reportLoaded(pkg.file, pkg.result);
+                    } else {
+                        reportFailed(pkg.file, new MpkException("应用正在卸载: " + pkg.appId));
+                    }
+                    continue;
+                }
+                
+                pkg.cost = estimateMemory(pkg.mpk);
+                staged.add(pkg.staged.handle((ignored, error) -> {
+                    if (error != null) {
+                        finishLoad(pkg.appId, pkg.mpk, pkg.result, pkg.pending, error);
+                        reportFailed(pkg.file, unwrapCompletionException(error));
+                    } else {
+                        // 应用文件已写入沙箱，之后只使用清单信息，立即释放 ZIP 文件
+                        pkg.mpk.close();
+                        pkg.stagedOk = true;
+                    }
+                    return null;
+                }));
+                
+                synchronized (this) {
+                    queue.add(pkg);
+                }
+            }
             
-            // 保存签名和证书到沙箱目录
-            saveSignature(mpk, env.dataDir);
+            admit();
             
-            // 启动资源监控
-            sandbox.startResourceMonitor(appId, new MpkSandbox.ResourceMonitorCallback() {
-                @Override
-                public void onResourceExceeded(String appId, MpkSandbox.ResourceExceededEvent event) {
-                    handleResourceExceeded(appId, event);
+            return CompletableFuture.allOf(staged.toArray(new CompletableFuture[0]))
+                .thenRunAsync(() -> commitAll(packages), ioExecutor);
+        }
+        
+        /**
+         * 在内存预算允许时启动等待中的包；预算不足时至少保证一个包在安装
+         */
+        private void admit() {
+            List<BatchPackage> toStart = new ArrayList<>();
+            synchronized (this) {
+                while (!queue.isEmpty()) {
+                    BatchPackage pkg = queue.peek();
+                    if (installing > 0 && pkg.cost > availableBudget) {
+                        break;
+                    }
+                    queue.poll();
+                    availableBudget -= pkg.cost;
+                    installing++;
+                    toStart.add(pkg);
                 }
-            });
+            }
             
-            // 注册沙箱事件监听器
-            sandbox.addEventListener(appId, new MpkSandbox.SandboxEventListener() {
-                @Override
-                public void onSandboxEvent(String appId, MpkSandbox.SandboxEvent event) {
-                    handleSandboxEvent(appId, event);
+            for (BatchPackage pkg : toStart) {
+                CompletableFuture
+                    .supplyAsync(() -> stageApp(pkg.appId, pkg.mpk, pkg.result, false), ioExecutor)
+                    .thenCompose(future -> future)
+                    .whenComplete((ignored, error) -> {
+                        synchronized (this) {
+                            availableBudget += pkg.cost;
+                            installing--;
+                        }
+                        admit();
+                        
+                        if (error != null) {
+                            pkg.staged.completeExceptionally(error);
+                        } else {
+                            pkg.staged.complete(null);
+                        }
+                    });
+            }
+        }
+        
+        /**
+         * 统一注册应用间通信和资源监控，并将应用加入已加载列表
+         */
+        private void commitAll(List<BatchPackage> packages) {
+            List<BatchPackage> ready = new ArrayList<>();
+            List<String> appIds = new ArrayList<>();
+            for (BatchPackage pkg : packages) {
+                if (pkg.stagedOk) {
+                    ready.add(pkg);
+                    appIds.add(pkg.appId);
                 }
-            });
-            
-            // 初始化资源警告计数器
-            Map<MpkSandbox.ResourceExceededEvent.Type, AtomicInteger> counters = new HashMap<>();
-            for (MpkSandbox.ResourceExceededEvent.Type type : MpkSandbox.ResourceExceededEvent.Type.values()) {
-                counters.put(type, new AtomicInteger(0));
             }
-            warningCounters.put(appId, counters);
-            
-            // 添加到已加载应用列表
-            loadedApps.put(appId, mpk);
-            appStates.put(appId, false); // 初始状态为未运行
-            
-            // 注册应用间通信
-            interAppCommunication.registerApp(appId);
             
-            // 注册应用权限
-            List<String> permissions = mpk.getPermissions();
-            if (permissions != null && !permissions.isEmpty()) {
-                registerAppPermissions(appId, permissions);
+            if (ready.isEmpty()) {
+                return;
             }
             
-            Log.i(TAG, "应用加载成功: " + appId);
-            return appId;
-        } catch (Exception e) {
-            // 如果加载失败，清理资源
+            long start = System.nanoTime();
+            
             try {
-                sandbox.deleteSandbox(appId);
-            } catch (Exception ignored) {
-                // 忽略清理时的异常
+                // 注册应用间通信
+                synchronized (ipcRegistrationLock) {
+                    interAppCommunication.registerApps(appIds);
+                }
+                
+                // 注册应用权限，系统权限状态只查询一次
+                Map<String, List<String>> permissionsByApp = new HashMap<>();
+                for (BatchPackage pkg : ready) {
+                    permissionsByApp.put(pkg.appId, pkg.mpk.getPermissions());
+                }
+                permissionManager.registerAppPermissions(permissionsByApp);
+                
+                // 启动资源监控
+                sandbox.startResourceMonitors(appIds, resourceMonitorCallback);
+            } catch (Exception e) {
+                // 统一注册失败时所有包都加载失败，回滚并结束等待中的 Future，避免调用方一直等待
+                Log.e(TAG, "批量注册应用失败: " + appIds, e);
+                for (BatchPackage pkg : ready) {
+                    finishLoad(pkg.appId, pkg.mpk, pkg.result, pkg.pending, e);
+                    reportFailed(pkg.file, e);
+                }
+                return;
             }
             
-            // 重新抛出异常
-            if (e instanceof IOException) {
-                throw (IOException) e;
-            } else if (e instanceof MpkException) {
-                throw (MpkException) e;
-            } else {
-                throw new IOException("加载应用失败: " + appId, e);
+            long elapsed = System.nanoTime() - start;
+            for (BatchPackage pkg : ready) {
+                try {
+                    registerLoadedApp(pkg.appId, pkg.mpk);
+                } catch (Exception e) {
+                    finishLoad(pkg.appId, pkg.mpk, pkg.result, pkg.pending, e);
+                    reportFailed(pkg.file, e);
+                    continue;
+                }
+                
+                pkg.result.recordStage(LoadStage.START_MONITOR, elapsed);
+                finishLoad(pkg.appId, pkg.mpk, pkg.result, pkg.pending, null);
+                reportLoaded(pkg.file, pkg.result);
+            }
+        }
+        
+        /**
+         * 估算安装过程中需要缓存在内存中的数据量
+         * 代码、签名和证书会整体读入内存，按两倍计算读取时的缓冲；
+         * 资源包复制和解压时经过页缓存，按资源包大小计算
+         */
+        private long estimateMemory(MpkFile mpk) {
+            long size = Math.max(0, mpk.getFileSize(mpk.getEntryPoint()))
+                + Math.max(0, mpk.getFileSize("signature.sig"))
+                + Math.max(0, mpk.getFileSize("certificate.cer"));
+            long resources = Math.max(0, mpk.getFileSize("assets/resources.zip"));
+            return Math.min(BATCH_MEMORY_BUDGET, Math.max(MIN_PACKAGE_MEMORY, size * 2 + resources));
+        }
+        
+        private void skip(BatchPackage pkg) {
+            Log.w(TAG, "跳过重复的应用包: " + pkg.appId + " (" + pkg.file + ")");
+            pkg.mpk.close();
+            batchResult.skipped.put(pkg.file, pkg.appId);
+            if (callback != null) {
+                callback.onPackageSkipped(pkg.file, pkg.appId);
+            }
+            reportProgress();
+        }
+        
+        private void reportLoaded(File file, LoadResult result) {
+            batchResult.loaded.put(file, result);
+            if (callback != null) {
+                callback.onPackageLoaded(file, result);
+            }
+            reportProgress();
+        }
+        
+        private void reportFailed(File file, Throwable error) {
+            Log.e(TAG, "批量加载失败: " + file, error);
+            batchResult.failed.put(file, error);
+            if (callback != null) {
+                callback.onPackageFailed(file, error);
+            }
+            reportProgress();
+        }
+        
+        private void reportProgress() {
+            int count = completed.incrementAndGet();
+            if (callback != null) {
+                callback.onProgress(count, files.size());
             }
         }
     }
     
+    /**
+     * 批量加载中的单个包
+     */
+    private static class BatchPackage {
+        final File file;
+        final MpkFile mpk;
+        final String appId;
+        final LoadResult result;
+        // 对其他调用方公开的加载结果
+        final CompletableFuture<LoadResult> pending = new CompletableFuture<>();
+        // 文件写入完成
+        final CompletableFuture<Void> staged = new CompletableFuture<>();
+        // 内存估算
+        long cost;
+        // 文件写入是否成功
+        volatile boolean stagedOk;
+        
+        BatchPackage(File file, MpkFile mpk, LoadResult result) {
+            this.file = file;
+            this.mpk = mpk;
+            this.appId = mpk.getId();
+            this.result = result;
+        }
+    }
+    
     /**
      * 启动应用
+     * 状态从 LOADED 经 STARTING 转换为 RUNNING，同一应用同时只有一个调用方能执行启动
      * @param appId 应用 ID
      * @return 是否成功启动
      */
     public boolean startApp(String appId) {
         // 检查应用是否已加载
-        if (!loadedApps.containsKey(appId)) {
+        MpkAppRegistry.AppRecord record = appRegistry.get(appId);
+        if (record == null || !record.isLoaded()) {
             Log.e(TAG, "应用未加载: " + appId);
             return false;
         }
         
-        // 检查应用是否已运行
-        if (appStates.get(appId)) {
-            Log.w(TAG, "应用已在运行: " + appId);
-            return true;
+        // 转换为启动中状态
+        if (!appRegistry.transition(appId, MpkAppRegistry.AppState.LOADED, MpkAppRegistry.AppState.STARTING)) {
+            MpkAppRegistry.AppState state = appRegistry.getState(appId);
+            if (state == MpkAppRegistry.AppState.RUNNING) {
+                Log.w(TAG, "应用已在运行: " + appId);
+                return true;
+            }
+            Log.w(TAG, "应用当前状态为 " + state + "，无法启动: " + appId);
+            return false;
         }
         
         // 获取应用
-        MpkFile mpk = loadedApps.get(appId);
+        MpkFile mpk = record.getMpk();
+        
+        // 重置资源警告计数器
+        appRegistry.resetWarningCounters(appId);
         
         // 根据代码类型执行不同的启动逻辑
         try {
@@ -229,49 +1008,53 @@ public class MpkRuntime {
                     break;
                 default:
                     Log.e(TAG, "不支持的代码类型: " + codeType);
+                    appRegistry.transition(appId, MpkAppRegistry.AppState.STARTING, MpkAppRegistry.AppState.LOADED);
                     return false;
             }
             
-            // 更新应用状态
-            appStates.put(appId, true);
-            
-            // 重置资源警告计数器
-            if (warningCounters.containsKey(appId)) {
-                for (AtomicInteger counter : warningCounters.get(appId).values()) {
-                    counter.set(0);
-                }
+            // 更新应用状态，进程在启动过程中退出时状态已被回调改回 LOADED
+            if (!appRegistry.transition(appId, MpkAppRegistry.AppState.STARTING, MpkAppRegistry.AppState.RUNNING)) {
+                Log.w(TAG, "应用在启动过程中已退出: " + appId);
+                return false;
             }
             
             Log.i(TAG, "应用启动成功: " + appId);
             return true;
         } catch (Exception e) {
             Log.e(TAG, "启动应用失败: " + appId, e);
+            appRegistry.transition(appId, MpkAppRegistry.AppState.STARTING, MpkAppRegistry.AppState.LOADED);
             return false;
         }
     }
     
     /**
      * 停止应用
+     * 状态从 RUNNING 经 STOPPING 转换为 LOADED，停止失败时恢复为 RUNNING
      * @param appId 应用 ID
      * @return 是否成功停止
      */
     public boolean stopApp(String appId) {
         // 检查应用是否已加载
-        if (!loadedApps.containsKey(appId)) {
+        MpkAppRegistry.AppRecord record = appRegistry.get(appId);
+        if (record == null || !record.isLoaded()) {
             Log.e(TAG, "应用未加载: " + appId);
             return false;
         }
         
-        // 检查应用是否在运行
-        if (!appStates.get(appId)) {
-            Log.w(TAG, "应用未在运行: " + appId);
-            return true;
+        // 转换为停止中状态
+        if (!appRegistry.transition(appId, MpkAppRegistry.AppState.RUNNING, MpkAppRegistry.AppState.STOPPING)) {
+            MpkAppRegistry.AppState state = appRegistry.getState(appId);
+            if (state == MpkAppRegistry.AppState.LOADED) {
+                Log.w(TAG, "应用未在运行: " + appId);
+                return true;
+            }
+            Log.w(TAG, "应用当前状态为 " + state + "，无法停止: " + appId);
+            return false;
         }
         
         // 根据代码类型执行不同的停止逻辑
         try {
-            MpkFile mpk = loadedApps.get(appId);
-            String codeType = mpk.getCodeType();
+            String codeType = record.getMpk().getCodeType();
             switch (codeType) {
                 case "binary":
                     stopBinaryApp(appId);
@@ -284,15 +1067,17 @@ public class MpkRuntime {
                     break;
                 default:
                     Log.e(TAG, "不支持的代码类型: " + codeType);
+                    appRegistry.transition(appId, MpkAppRegistry.AppState.STOPPING, MpkAppRegistry.AppState.RUNNING);
                     return false;
             }
             
             // 更新应用状态
-            appStates.put(appId, false);
+            appRegistry.transition(appId, MpkAppRegistry.AppState.STOPPING, MpkAppRegistry.AppState.LOADED);
             Log.i(TAG, "应用停止成功: " + appId);
             return true;
         } catch (Exception e) {
             Log.e(TAG, "停止应用失败: " + appId, e);
+            appRegistry.transition(appId, MpkAppRegistry.AppState.STOPPING, MpkAppRegistry.AppState.RUNNING);
             return false;
         }
     }
@@ -304,97 +1089,219 @@ public class MpkRuntime {
      */
     public boolean uninstallApp(String appId) {
         // 检查应用是否已加载
-        if (!loadedApps.containsKey(appId)) {
+        if (!appRegistry.isLoaded(appId)) {
             Log.e(TAG, "应用未加载: " + appId);
             return false;
         }
         
         // 如果应用正在运行，先停止
-        if (appStates.get(appId)) {
+        if (appRegistry.isRunning(appId)) {
             stopApp(appId);
         }
         
+        // 转换为卸载中状态，阻止并发的启动和重复卸载
+        if (!appRegistry.transition(appId, MpkAppRegistry.AppState.LOADED, MpkAppRegistry.AppState.UNLOADING)) {
+            Log.e(TAG, "应用当前状态为 " + appRegistry.getState(appId) + "，无法卸载: " + appId);
+            return false;
+        }
+        
         // 停止资源监控
         sandbox.stopResourceMonitor(appId);
         
+        // 丢弃预绑定到该沙箱的运行时
+        jsRuntimePool.discardReserved(appId);
+        
         // 删除沙箱环境
         sandbox.deleteSandbox(appId);
         
-        // 移除警告计数器
-        warningCounters.remove(appId);
-        
-        // 从已加载应用列表中移除
-        loadedApps.remove(appId);
-        appStates.remove(appId);
-        jsRuntimes.remove(appId);
-        
         // 注销应用间通信
-        interAppCommunication.unregisterApp(appId);
+        synchronized (ipcRegistrationLock) {
+            interAppCommunication.unregisterApp(appId);
+        }
         
-        // 注销应用权限
+        // 注销应用权限，删除持久化的授予和撤销状态
         unregisterAppPermissions(appId);
+        permissionManager.clearPersistedPermissions(appId);
+        
+        // 从注册表中移除，此后可以重新加载
+        appRegistry.remove(appId);
         
         Log.i(TAG, "应用卸载成功: " + appId);
         return true;
     }
     
     /**
-     * 提取资源到沙箱目录
+     * 并行提取资源到沙箱目录
+     * 资源包先复制到沙箱临时目录，再按条目在 I/O 线程池中并行解压
      * @param mpk MPK文件
-     * @param appDir 应用目录
-     * @throws IOException 如果提取失败
+     * @param env 沙箱环境
+     * @param result 加载结果
+     * @return 提取完成的 Future
      */
-    private void extractResources(MpkFile mpk, File appDir) throws IOException {
-        // 创建资源目录
-        File resourcesDir = new File(appDir, "resources");
-        if (!resourcesDir.exists()) {
-            if (!resourcesDir.mkdirs()) {
-                throw new IOException("创建资源目录失败: " + resourcesDir.getAbsolutePath());
-            }
-        }
-        
-        // 提取资源文件
-        byte[] resourcesData = mpk.readFileBytes("assets/resources.zip");
-        if (resourcesData != null && resourcesData.length > 0) {
-            // 解压资源文件
-            try {
-                ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(resourcesData));
-                ZipEntry entry;
-                byte[] buffer = new byte[1024];
+    private CompletableFuture<Void> extractResourcesAsync(MpkFile mpk, MpkSandbox.SandboxEnvironment env,
+                                                          LoadResult result) {
+        long start = System.nanoTime();
+        File resourcesDir = new File(env.dataDir, "resources");
+        File archiveFile = new File(env.tempDir, "resources.zip");
+        
+        return CompletableFuture
+            .supplyAsync(() -> {
+                try {
+                    return openResourceArchive(mpk, resourcesDir, archiveFile);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, ioExecutor)
+            .thenCompose(archive -> {
+                if (archive == null) {
+                    return CompletableFuture.<Void>completedFuture(null);
+                }
                 
-                while ((entry = zis.getNextEntry()) != null) {
-                    String name = entry.getName();
-                    File file = new File(resourcesDir, name);
-                    
-                    // 创建目录
-                    if (entry.isDirectory()) {
-                        if (!file.exists() && !file.mkdirs()) {
-                            throw new IOException("创建目录失败: " + file.getAbsolutePath());
-                        }
-                        continue;
-                    }
-                    
-                    // 创建父目录
-                    File parent = file.getParentFile();
-                    if (!parent.exists() && !parent.mkdirs()) {
-                        throw new IOException("创建目录失败: " + parent.getAbsolutePath());
-                    }
-                    
-                    // 提取文件
-                    try (FileOutputStream fos = new FileOutputStream(file)) {
-                        int len;
-                        while ((len = zis.read(buffer)) > 0) {
-                            fos.write(buffer, 0, len);
+                List<CompletableFuture<Void>> entries = new ArrayList<>();
+                try {
+                    Enumeration<? extends ZipEntry> zipEntries = archive.entries();
+                    while (zipEntries.hasMoreElements()) {
+                        ZipEntry entry = zipEntries.nextElement();
+                        File file = resolveResourceFile(resourcesDir, entry.getName());
+                        
+                        // 创建目录
+                        if (entry.isDirectory()) {
+                            ensureDirectory(file);
+                            continue;
                         }
+                        
+                        entries.add(CompletableFuture.runAsync(() -> {
+                            try {
+                                extractResourceEntry(archive, entry, file);
+                            } catch (IOException e) {
+                                throw new CompletionException(e);
+                            }
+                        }, ioExecutor));
                     }
+                } catch (IOException e) {
+                    entries.add(failedFuture(e));
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "解压资源文件失败", e);
-                throw new IOException("解压资源文件失败", e);
+                
+                return CompletableFuture.allOf(entries.toArray(new CompletableFuture[0]))
+                    .whenComplete((ignored, error) -> closeResourceArchive(archive, archiveFile));
+            })
+            .whenComplete((ignored, error) -> {
+                result.recordStage(LoadStage.EXTRACT_RESOURCES, System.nanoTime() - start);
+                if (error != null) {
+                    Log.e(TAG, "解压资源文件失败", unwrapCompletionException(error));
+                }
+            });
+    }
+    
+    /**
+     * 打开资源包
+     * @param mpk MPK文件
+     * @param resourcesDir 资源目录
+     * @param archiveFile 资源包临时文件
+     * @return 资源包，如果 MPK 中没有资源则返回 null
+     * @throws IOException 如果复制或打开失败
+     */
+    private ZipFile openResourceArchive(MpkFile mpk, File resourcesDir, File archiveFile) throws IOException {
+        // 创建资源目录
+        ensureDirectory(resourcesDir);
+        
+        // 复制资源包到临时文件，以便按条目随机读取
+        try (InputStream in = mpk.getFileInputStream("assets/resources.zip")) {
+            if (in == null) {
+                return null;
+            }
+            
+            try (FileOutputStream fos = new FileOutputStream(archiveFile)) {
+                byte[] buffer = new byte[16384];
+                int len;
+                while ((len = in.read(buffer)) > 0) {
+                    fos.write(buffer, 0, len);
+                }
+            }
+        }
+        
+        if (archiveFile.length() == 0) {
+            archiveFile.delete();
+            return null;
+        }
+        
+        return new ZipFile(archiveFile);
+    }
+    
+    /**
+     * 解压单个资源条目
+     * @param archive 资源包
+     * @param entry 资源条目
+     * @param file 目标文件
+     * @throws IOException 如果解压失败
+     */
+    private void extractResourceEntry(ZipFile archive, ZipEntry entry, File file) throws IOException {
+        // 创建父目录
+        ensureDirectory(file.getParentFile());
+        
+        // 提取文件
+        try (InputStream in = archive.getInputStream(entry);
+             FileOutputStream fos = new FileOutputStream(file)) {
+            byte[] buffer = new byte[16384];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                fos.write(buffer, 0, len);
             }
         }
     }
     
+    /**
+     * 关闭并删除资源包临时文件
+     * @param archive 资源包
+     * @param archiveFile 资源包临时文件
+     */
+    private void closeResourceArchive(ZipFile archive, File archiveFile) {
+        try {
+            archive.close();
+        } catch (IOException e) {
+            Log.w(TAG, "关闭资源包失败: " + archiveFile.getAbsolutePath(), e);
+        }
+        archiveFile.delete();
+    }
+    
+    /**
+     * 解析资源条目路径，拒绝指向资源目录之外的条目
+     * @param resourcesDir 资源目录
+     * @param name 条目名称
+     * @return 目标文件
+     * @throws IOException 如果条目路径非法
+     */
+    private File resolveResourceFile(File resourcesDir, String name) throws IOException {
+        File file = new File(resourcesDir, name);
+        String basePath = resourcesDir.getCanonicalPath() + File.separator;
+        if (!file.getCanonicalPath().startsWith(basePath)) {
+            throw new IOException("资源条目路径非法: " + name);
+        }
+        return file;
+    }
+    
+    /**
+     * 确保目录存在，多个线程可能同时创建同一目录
+     * @param dir 目录
+     * @throws IOException 如果创建失败
+     */
+    private static void ensureDirectory(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("创建目录失败: " + dir.getAbsolutePath());
+        }
+    }
+    
+    /**
+     * 创建以异常结束的 Future
+     * @param error 异常
+     * @return Future
+     */
+    private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+    
     /**
      * 保存代码到沙箱目录
      * @param mpk MPK文件
@@ -499,6 +1406,9 @@ public class MpkRuntime {
         // 设置工作目录
         process.setWorkingDir(env.dataDir);
         
+        // 传入接入消息总线的套接字和令牌，进程退出后撤销
+        String busToken = attachBusEnvironment(appId, process);
+        
         // 启动进程
         if (!processManager.startProcess(process, new MpkProcessManager.ProcessCallback() {
             @Override
@@ -509,23 +1419,96 @@ public class MpkRuntime {
             @Override
             public void onProcessStopped(MpkProcessManager.MpkProcess process, int exitCode) {
                 Log.i(TAG, "二进制应用进程已停止: " + appId + " (pid=" + process.getPid() + ", exitCode=" + exitCode + ")");
+                revokeBusToken(busToken);
                 // 更新应用状态
-                appStates.put(appId, false);
+                markProcessExited(appId);
             }
             
             @Override
             public void onProcessFailed(MpkProcessManager.MpkProcess process, Exception error) {
                 Log.e(TAG, "二进制应用进程启动失败: " + appId, error);
+                revokeBusToken(busToken);
                 // 更新应用状态
-                appStates.put(appId, false);
+                markProcessExited(appId);
             }
         })) {
+            revokeBusToken(busToken);
             throw new IOException("启动二进制应用进程失败");
         }
         
         Log.i(TAG, "二进制应用启动: " + appId);
     }
     
+    /**
+     * 为外部进程应用签发消息总线令牌并设置环境变量，传输未启动时先启动
+     * 传输启动失败时应用仍可运行，只是不能接入消息总线
+     * @param appId 应用 ID
+     * @param process 尚未启动的进程
+     * @return 签发的令牌，传输启动失败时返回 null
+     */
+    private String attachBusEnvironment(String appId, MpkProcessManager.MpkProcess process) {
+        MpkIpcTransport transport;
+        synchronized (ipcRegistrationLock) {
+            if (ipcTransport == null) {
+                ipcTransport = new MpkIpcTransport(interAppCommunication, "mpk.bus." + Process.myPid());
+            }
+            transport = ipcTransport;
+        }
+        
+        try {
+            transport.start();
+        } catch (IOException e) {
+            Log.e(TAG, "启动跨进程消息总线失败: " + appId, e);
+            return null;
+        }
+        
+        Map<String, String> env = transport.getEnvironment(appId);
+        for (Map.Entry<String, String> entry : env.entrySet()) {
+            process.setEnvironmentVar(entry.getKey(), entry.getValue());
+        }
+        return env.get(MpkIpcProtocol.ENV_TOKEN);
+    }
+    
+    /**
+     * 撤销外部进程应用的消息总线令牌并断开其连接
+     * @param appId 应用 ID
+     */
+    private void revokeBusAccess(String appId) {
+        MpkIpcTransport transport;
+        synchronized (ipcRegistrationLock) {
+            transport = ipcTransport;
+        }
+        if (transport != null) {
+            transport.revoke(appId);
+        }
+    }
+    
+    /**
+     * 撤销外部进程的消息总线令牌并断开以该令牌建立的连接
+     * 只撤销该进程的令牌，应用重启后新进程的令牌不受影响
+     * @param token 令牌，可以为 null
+     */
+    private void revokeBusToken(String token) {
+        MpkIpcTransport transport;
+        synchronized (ipcRegistrationLock) {
+            transport = ipcTransport;
+        }
+        if (transport != null) {
+            transport.revokeToken(token);
+        }
+    }
+    
+    /**
+     * 进程退出后将应用状态改回 LOADED
+     * 正在停止的应用由 stopApp 负责转换状态
+     * @param appId 应用 ID
+     */
+    private void markProcessExited(String appId) {
+        if (!appRegistry.transition(appId, MpkAppRegistry.AppState.RUNNING, MpkAppRegistry.AppState.LOADED)) {
+            appRegistry.transition(appId, MpkAppRegistry.AppState.STARTING, MpkAppRegistry.AppState.LOADED);
+        }
+    }
+    
     /**
      * 停止二进制应用
      * @param appId 应用 ID
@@ -536,6 +1519,7 @@ public class MpkRuntime {
         if (!processManager.stopAppProcesses(appId)) {
             throw new IOException("停止二进制应用进程失败");
         }
+        revokeBusAccess(appId);
         
         Log.i(TAG, "二进制应用停止: " + appId);
     }
@@ -553,33 +1537,95 @@ public class MpkRuntime {
             throw new IOException("沙箱环境不存在: " + appId);
         }
         
+        // 不同应用的启动可以并行执行，运行时只保存在局部变量和注册表中
+        MpkJavaScriptRuntime runtime = null;
+        boolean registered = false;
         try {
-            // 创建 JavaScript 运行时
-            currentJsRuntime = new MpkJavaScriptRuntime(context, appId, env, "v8");
-            jsRuntimes.put(appId, currentJsRuntime);
+            // 从运行时池获取已初始化的运行时并绑定到应用沙箱
+            runtime = jsRuntimePool.acquire(appId, env);
+            runtime.attachAppServices(permissionManager, sandbox.getResourceUsage(appId));
+            runtime.attachMessageBus(interAppCommunication);
+            runtime.setResourceLimitListener(this::handleRuntimeLimitExceeded);
+            appRegistry.setJsRuntime(appId, runtime);
+            registered = true;
             
-            // 初始化 JavaScript 运行时
-            if (!currentJsRuntime.initialize()) {
-                throw new IOException("初始化 JavaScript 运行时失败");
-            }
+            // 应用间消息在运行时的事件循环线程中投递
+            interAppCommunication.setDeliveryExecutor(appId, runtime.getLoopExecutor());
             
             // 加载入口脚本
             File codeFile = new File(env.dataDir, mpk.getEntryPoint());
             String scriptPath = codeFile.getAbsolutePath();
             
             // 执行脚本
-            if (!executeScript(currentJsRuntime, scriptPath)) {
+            if (!executeScript(runtime, scriptPath)) {
                 throw new IOException("执行 JavaScript 脚本失败");
             }
             
             Log.i(TAG, "JavaScript 应用启动: " + appId);
         } catch (Exception e) {
             Log.e(TAG, "启动 JavaScript 应用失败: " + appId, e);
-            stopJavaScriptRuntime(appId);
+            if (registered) {
+                stopJavaScriptRuntime(appId);
+            } else if (runtime != null) {
+                // 已从运行时池取出但尚未登记到注册表，直接归还
+                jsRuntimePool.release(runtime);
+            }
             throw new IOException("启动 JavaScript 应用失败", e);
         }
     }
     
+    /**
+     * 处理 JavaScript 运行时报告的资源超限，在主线程中调用
+     * 超限事件经沙箱分发，运行时已停止执行脚本时直接停止应用
+     * @param appId 应用 ID
+     * @param event 资源超限事件
+     * @param terminated 运行时是否已停止执行脚本
+     */
+    private void handleRuntimeLimitExceeded(String appId, MpkSandbox.ResourceExceededEvent event, boolean terminated) {
+        sandbox.reportResourceExceeded(appId, event);
+        
+        if (terminated) {
+            Log.e(TAG, "JavaScript 运行时资源超限，停止应用: " + appId + " - " + event);
+            stopApp(appId);
+        }
+    }
+    
+    /**
+     * 为常用的 JavaScript 应用在后台提前绑定运行时
+     * @param appId 应用 ID
+     * @param mpk MPK 文件
+     */
+    private void warmUpJavaScriptRuntime(String appId, MpkFile mpk) {
+        if (mpk == null || !"javascript".equals(mpk.getCodeType())) {
+            return;
+        }
+        
+        MpkSandbox.SandboxEnvironment env = sandbox.getSandbox(appId);
+        if (env != null) {
+            jsRuntimePool.warmUp(appId, env);
+        }
+    }
+    
+    /**
+     * 为最常启动的已加载应用提前绑定 JavaScript 运行时
+     */
+    public void warmUpFrequentApps() {
+        for (String appId : jsRuntimePool.getTopLaunchedApps(jsRuntimePool.getPredictiveSlots())) {
+            MpkAppRegistry.AppRecord record = appRegistry.get(appId);
+            if (record != null && record.getState() == MpkAppRegistry.AppState.LOADED) {
+                warmUpJavaScriptRuntime(appId, record.getMpk());
+            }
+        }
+    }
+    
+    /**
+     * 获取 JavaScript 运行时池
+     * @return 运行时池，可用于调整容量和预热数量
+     */
+    public MpkJSRuntimePool getJsRuntimePool() {
+        return jsRuntimePool;
+    }
+    
     /**
      * 执行JavaScript脚本
      * @param runtime JavaScript运行时
@@ -595,9 +1641,9 @@ public class MpkRuntime {
                 return false;
             }
             
-            // 实际执行方法应该由MpkJavaScriptRuntime提供
-            // 此处为临时实现
+            // 由运行时读取并执行，有应用快照时直接恢复，命中编译缓存时跳过解析和编译
             Log.i(TAG, "执行脚本: " + scriptPath);
+            runtime.executeEntryFile(scriptFile);
             return true;
         } catch (Exception e) {
             Log.e(TAG, "执行脚本失败: " + scriptPath, e);
@@ -611,13 +1657,21 @@ public class MpkRuntime {
      * @throws IOException 如果停止失败
      */
     private void stopJavaScriptRuntime(String appId) throws IOException {
-        if (jsRuntimes.containsKey(appId)) {
-            MpkJavaScriptRuntime runtime = jsRuntimes.get(appId);
-            
+        MpkJavaScriptRuntime runtime = getJsRuntime(appId);
+        if (runtime != null) {
             try {
-                // 关闭 JavaScript 运行时
-                runtime.shutdown();
-                jsRuntimes.remove(appId);
+                // 应用间消息改回共用的投递线程，运行时归还后不再投递到它的事件循环
+                interAppCommunication.setDeliveryExecutor(appId, null);
+                
+                // 归还 JavaScript 运行时，无法复用时由运行时池关闭
+                appRegistry.setJsRuntime(appId, null);
+                jsRuntimePool.release(runtime);
+                
+                // 常用应用重新预绑定，加快下次启动
+                MpkAppRegistry.AppRecord record = appRegistry.get(appId);
+                if (record != null) {
+                    warmUpJavaScriptRuntime(appId, record.getMpk());
+                }
                 
                 Log.i(TAG, "JavaScript 应用停止: " + appId);
             } catch (Exception e) {
@@ -653,6 +1707,9 @@ public class MpkRuntime {
         // 设置工作目录
         process.setWorkingDir(env.dataDir);
         
+        // 传入接入消息总线的套接字和令牌，进程退出后撤销
+        String busToken = attachBusEnvironment(appId, process);
+        
         // 启动进程
         if (!processManager.startProcess(process, new MpkProcessManager.ProcessCallback() {
             @Override
@@ -663,17 +1720,20 @@ public class MpkRuntime {
             @Override
             public void onProcessStopped(MpkProcessManager.MpkProcess process, int exitCode) {
                 Log.i(TAG, "Python应用进程已停止: " + appId + " (pid=" + process.getPid() + ", exitCode=" + exitCode + ")");
+                revokeBusToken(busToken);
                 // 更新应用状态
-                appStates.put(appId, false);
+                markProcessExited(appId);
             }
             
             @Override
             public void onProcessFailed(MpkProcessManager.MpkProcess process, Exception error) {
                 Log.e(TAG, "Python应用进程启动失败: " + appId, error);
+                revokeBusToken(busToken);
                 // 更新应用状态
-                appStates.put(appId, false);
+                markProcessExited(appId);
             }
         })) {
+            revokeBusToken(busToken);
             throw new IOException("启动Python应用进程失败");
         }
         
@@ -690,6 +1750,7 @@ public class MpkRuntime {
         if (!processManager.stopAppProcesses(appId)) {
             throw new IOException("停止Python应用进程失败");
         }
+        revokeBusAccess(appId);
         
         Log.i(TAG, "Python应用停止: " + appId);
     }
@@ -699,7 +1760,7 @@ public class MpkRuntime {
      * @return 应用 ID 列表
      */
     public String[] getLoadedApps() {
-        return loadedApps.keySet().toArray(new String[0]);
+        return appRegistry.getLoadedAppIds().toArray(new String[0]);
     }
     
     /**
@@ -708,21 +1769,33 @@ public class MpkRuntime {
      * @return 应用状态
      */
     public Map<String, Object> getAppStatus(String appId) {
-        Map<String, Object> status = new HashMap<>();
-        
         // 检查应用是否已加载
-        if (!loadedApps.containsKey(appId)) {
+        MpkAppRegistry.AppRecord record = appRegistry.get(appId);
+        if (record == null || !record.isLoaded()) {
             Log.e(TAG, "应用未加载: " + appId);
+            Map<String, Object> status = new HashMap<>();
             status.put("error", "应用未加载");
             return status;
         }
         
+        return buildAppStatus(record);
+    }
+    
+    /**
+     * 根据应用记录生成应用状态
+     * @param record 应用记录
+     * @return 应用状态
+     */
+    private Map<String, Object> buildAppStatus(MpkAppRegistry.AppRecord record) {
+        Map<String, Object> status = new HashMap<>();
+        String appId = record.getAppId();
+        
         // 获取应用状态
-        boolean isRunning = appStates.getOrDefault(appId, false);
-        status.put("isRunning", isRunning);
+        status.put("isRunning", record.isRunning());
+        status.put("state", record.getState().name());
         
         // 获取应用元数据
-        MpkFile mpk = loadedApps.get(appId);
+        MpkFile mpk = record.getMpk();
         status.put("id", mpk.getId());
         status.put("name", mpk.getName());
         status.put("version", mpk.getVersion());
@@ -737,53 +1810,60 @@ public class MpkRuntime {
         processStatus.put("memory", 0L);
         processStatus.put("cpu", 0.0f);
         
-        MpkSandbox.SandboxEnvironment env = sandbox.getSandbox(appId);
-        if (env != null) {
-            // 获取存储使用情况 - 使用计算目录大小的方法
-            long storageUsage = calculateDirectorySize(env.dataDir);
-            long maxStorage = env.limits.maxStorage;
-            int storagePercentage = (int) (storageUsage * 100 / maxStorage);
+        // 资源数据取自监控器记录的最近采样，不在此处重新测量
+        MpkResourceHistory history = sandbox.getResourceHistory(appId);
+        if (history != null) {
+            // 获取存储使用情况
+            long storageUsage = history.getLatest(MpkSandbox.ResourceExceededEvent.Type.STORAGE);
+            long maxStorage = history.getLimits().maxStorage;
+            int storagePercentage = history.getLatestPercentage(MpkSandbox.ResourceExceededEvent.Type.STORAGE);
             
             resources.put("storageUsage", storageUsage);
             resources.put("maxStorage", maxStorage);
             resources.put("storagePercentage", storagePercentage);
             
             // 获取进程使用情况
-            int processCount = 1; // 至少有一个主进程
-            int maxProcesses = env.limits.maxProcesses;
-            int processPercentage = processCount * 100 / maxProcesses;
+            int processCount = (int) history.getLatest(MpkSandbox.ResourceExceededEvent.Type.PROCESS);
+            int maxProcesses = history.getLimits().maxProcesses;
+            int processPercentage = history.getLatestPercentage(MpkSandbox.ResourceExceededEvent.Type.PROCESS);
             
             resources.put("processCount", processCount);
             resources.put("maxProcesses", maxProcesses);
             resources.put("processPercentage", processPercentage);
             
             // 获取内存使用情况
-            long memoryUsage = 0;
-            if (jsRuntimes.containsKey(appId)) {
-                // 如果是 JavaScript 应用，从 JavaScript 运行时获取内存使用情况
-                MpkJavaScriptRuntime jsRuntime = jsRuntimes.get(appId);
-                // memoryUsage = jsRuntime.getMemoryUsage(); // 假设 JavaScript 运行时有 getMemoryUsage 方法
+            long memoryUsage = history.getLatest(MpkSandbox.ResourceExceededEvent.Type.MEMORY);
+            if (record.getJsRuntime() != null) {
+                // 如果是 JavaScript 应用，使用运行时最近统计的堆内存，比监控采样更新
+                MpkJavaScriptRuntime jsRuntime = record.getJsRuntime();
+                memoryUsage = Math.max(memoryUsage, jsRuntime.getMemoryUsage());
             }
-            long maxMemory = env.limits.maxMemory;
+            long maxMemory = history.getLimits().maxMemory;
             int memoryPercentage = maxMemory > 0 ? (int) (memoryUsage * 100 / maxMemory) : 0;
             
             resources.put("memoryUsage", memoryUsage);
             resources.put("maxMemory", maxMemory);
             resources.put("memoryPercentage", memoryPercentage);
             
+            // 获取定时器使用情况
+            if (record.getJsRuntime() != null) {
+                resources.put("timerCount", record.getJsRuntime().getTimerCount());
+                resources.put("maxTimers", record.getJsRuntime().getMaxTimers());
+            }
+            
             // 获取 CPU 使用情况
-            float cpuUsage = 0.0f;
-            float maxCpuUsage = env.limits.maxCpuUsage;
-            int cpuPercentage = (int) (cpuUsage * 100 / maxCpuUsage);
+            float cpuUsage = history.getLatest(MpkSandbox.ResourceExceededEvent.Type.CPU);
+            float maxCpuUsage = history.getLimits().maxCpuUsage;
+            int cpuPercentage = history.getLatestPercentage(MpkSandbox.ResourceExceededEvent.Type.CPU);
             
             resources.put("cpuUsage", cpuUsage);
             resources.put("maxCpuUsage", maxCpuUsage);
             resources.put("cpuPercentage", cpuPercentage);
             
             // 获取网络使用情况
-            long networkUsage = 0;
-            long maxNetworkUsage = env.limits.maxNetworkUsage;
-            int networkPercentage = maxNetworkUsage > 0 ? (int) (networkUsage * 100 / maxNetworkUsage) : 0;
+            long networkUsage = history.getLatest(MpkSandbox.ResourceExceededEvent.Type.NETWORK);
+            long maxNetworkUsage = history.getLimits().maxNetworkUsage;
+            int networkPercentage = history.getLatestPercentage(MpkSandbox.ResourceExceededEvent.Type.NETWORK);
             
             resources.put("networkUsage", networkUsage);
             resources.put("maxNetworkUsage", maxNetworkUsage);
@@ -796,40 +1876,30 @@ public class MpkRuntime {
     }
     
     /**
-     * 计算目录大小
-     * @param dir 目录
-     * @return 大小（字节）
+     * 获取应用资源使用历史
+     * @param appId 应用 ID
+     * @return 资源使用历史，应用未加载时返回 null
      */
-    private long calculateDirectorySize(File dir) {
-        if (dir == null || !dir.exists() || !dir.isDirectory()) {
-            return 0;
-        }
-        
-        long size = 0;
-        
-        File[] files = dir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isFile()) {
-                    size += file.length();
-                } else if (file.isDirectory()) {
-                    size += calculateDirectorySize(file);
-                }
-            }
+    public MpkResourceHistory getResourceHistory(String appId) {
+        if (!appRegistry.isLoaded(appId)) {
+            return null;
         }
         
-        return size;
+        return sandbox.getResourceHistory(appId);
     }
     
     /**
      * 获取所有应用状态
+     * 基于注册表快照生成，不会阻塞并发的启动和停止操作
      * @return 所有应用状态信息
      */
     public Map<String, Map<String, Object>> getAllAppStatus() {
         Map<String, Map<String, Object>> statusMap = new HashMap<>();
         
-        for (String appId : loadedApps.keySet()) {
-            statusMap.put(appId, getAppStatus(appId));
+        for (MpkAppRegistry.AppRecord record : appRegistry.snapshot()) {
+            if (record.isLoaded()) {
+                statusMap.put(record.getAppId(), buildAppStatus(record));
+            }
         }
         
         return statusMap;
@@ -912,8 +1982,7 @@ public class MpkRuntime {
      * @param permission 权限
      */
     public void grantPermission(String appId, String permission) {
-        // 授予权限的实现依赖于具体的MpkPermissionManager实现
-        Log.i(TAG, "授予权限: " + appId + ", 权限: " + permission);
+        permissionManager.grantPermission(appId, permission);
     }
     
     /**
@@ -922,8 +1991,27 @@ public class MpkRuntime {
      * @param permission 权限
      */
     public void denyPermission(String appId, String permission) {
-        // 拒绝权限的实现依赖于具体的MpkPermissionManager实现
-        Log.i(TAG, "拒绝权限: " + appId + ", 权限: " + permission);
+        permissionManager.revokePermission(appId, permission);
+    }
+    
+    /**
+     * 为多个应用批量授予权限
+     * @param appIds 应用ID
+     * @param permissions 权限
+     * @return 声明了其中至少一个权限的应用数量
+     */
+    public int grantPermissions(Collection<String> appIds, List<String> permissions) {
+        return permissionManager.grantPermissions(appIds, permissions);
+    }
+    
+    /**
+     * 为多个应用批量拒绝权限
+     * @param appIds 应用ID
+     * @param permissions 权限
+     * @return 声明了其中至少一个权限的应用数量
+     */
+    public int denyPermissions(Collection<String> appIds, List<String> permissions) {
+        return permissionManager.revokePermissions(appIds, permissions);
     }
     
     /**
@@ -1009,7 +2097,7 @@ public class MpkRuntime {
             appId, resourceType, percentage, currentValue, limitValue));
         
         // 增加警告计数
-        Map<MpkSandbox.ResourceExceededEvent.Type, AtomicInteger> counters = warningCounters.get(appId);
+        Map<MpkSandbox.ResourceExceededEvent.Type, AtomicInteger> counters = appRegistry.getWarningCounters(appId);
         if (counters != null) {
             AtomicInteger counter = counters.get(resourceType);
             if (counter != null) {
@@ -1048,7 +2136,7 @@ public class MpkRuntime {
                 sandbox.clearCache(appId);
                 
                 // 通知 JavaScript 运行时执行内存回收
-                MpkJavaScriptRuntime jsRuntime = jsRuntimes.get(appId);
+                MpkJavaScriptRuntime jsRuntime = getJsRuntime(appId);
                 if (jsRuntime != null) {
                     jsRuntime.triggerGC();
                     Log.i(TAG, "已触发内存回收: " + appId);
@@ -1081,7 +2169,7 @@ public class MpkRuntime {
         Log.w(TAG, "应用资源超限: " + appId + " - " + event.toString());
         
         // 重置警告计数器
-        Map<MpkSandbox.ResourceExceededEvent.Type, AtomicInteger> counters = warningCounters.get(appId);
+        Map<MpkSandbox.ResourceExceededEvent.Type, AtomicInteger> counters = appRegistry.getWarningCounters(appId);
         if (counters != null) {
             AtomicInteger counter = counters.get(event.getType());
             if (counter != null) {
@@ -1115,7 +2203,7 @@ public class MpkRuntime {
                     sandbox.clearCache(appId);
                     
                     // 通知 JavaScript 运行时执行内存回收
-                    MpkJavaScriptRuntime jsRuntime = jsRuntimes.get(appId);
+                    MpkJavaScriptRuntime jsRuntime = getJsRuntime(appId);
                     if (jsRuntime != null) {
                         jsRuntime.triggerGC();
                     }
@@ -1124,7 +2212,14 @@ public class MpkRuntime {
                 
             case CPU:
                 // CPU使用超限：如果持续超限，可能需要限制应用
-                if (event.getPercentage() > 200) { // 超过限制的100%
+                // 以最近采样的平均值判断是否持续超限，避免单次峰值导致误杀
+                MpkResourceHistory history = sandbox.getResourceHistory(appId);
+                double averageCpu = history != null
+                    ? history.getAverage(MpkSandbox.ResourceExceededEvent.Type.CPU, CPU_SUSTAINED_WINDOW)
+                    : event.getCurrentValue();
+                // 运行时报告的执行时间预算事件以毫秒为单位，持续超限以沙箱的 CPU 使用率限制判断
+                long cpuLimit = history != null ? history.getLimits().maxCpuUsage : event.getLimitValue();
+                if (cpuLimit > 0 && averageCpu * 100 / cpuLimit > 200) { // 超过限制的100%
                     Log.e(TAG, "CPU使用严重超限，强制停止应用: " + appId);
                     stopApp(appId);
                 }
@@ -1150,7 +2245,27 @@ public class MpkRuntime {
      * @return MPK 文件对象
      */
     public MpkFile getLoadedApp(String appId) {
-        return loadedApps.get(appId);
+        MpkAppRegistry.AppRecord record = appRegistry.get(appId);
+        return record != null && record.isLoaded() ? record.getMpk() : null;
+    }
+    
+    /**
+     * 获取应用的 JavaScript 运行时
+     * @param appId 应用 ID
+     * @return JavaScript 运行时，未启动时返回 null
+     */
+    private MpkJavaScriptRuntime getJsRuntime(String appId) {
+        MpkAppRegistry.AppRecord record = appRegistry.get(appId);
+        return record != null ? record.getJsRuntime() : null;
+    }
+    
+    /**
+     * 获取应用生命周期状态
+     * @param appId 应用 ID
+     * @return 应用状态，应用不存在时返回 null
+     */
+    public MpkAppRegistry.AppState getAppState(String appId) {
+        return appRegistry.getState(appId);
     }
     
     /**
@@ -1159,8 +2274,7 @@ public class MpkRuntime {
      * @return 是否在运行
      */
     public boolean isAppRunning(String appId) {
-        Boolean state = appStates.get(appId);
-        return state != null && state;
+        return appRegistry.isRunning(appId);
     }
     
     /**
@@ -1169,7 +2283,7 @@ public class MpkRuntime {
      * @return 是否成功清理
      */
     public boolean clearCache(String appId) {
-        if (!loadedApps.containsKey(appId)) {
+        if (!appRegistry.isLoaded(appId)) {
             Log.e(TAG, "应用未加载: " + appId);
             return false;
         }
@@ -1183,7 +2297,7 @@ public class MpkRuntime {
      * @return 是否成功清理
      */
     public boolean clearTemp(String appId) {
-        if (!loadedApps.containsKey(appId)) {
+        if (!appRegistry.isLoaded(appId)) {
             Log.e(TAG, "应用未加载: " + appId);
             return false;
         }
@@ -1198,7 +2312,7 @@ public class MpkRuntime {
      * @return 资源监控UI
      */
     public MpkResourceMonitorUI createResourceMonitorUI(Context context, String appId) {
-        if (!loadedApps.containsKey(appId)) {
+        if (!appRegistry.isLoaded(appId)) {
             Log.e(TAG, "应用未加载: " + appId);
             return null;
         }
@@ -1216,21 +2330,35 @@ public class MpkRuntime {
      */
     public void shutdown() {
         // 停止所有运行中的应用
-        for (String appId : appStates.keySet()) {
-            if (appStates.get(appId)) {
-                stopApp(appId);
+        for (MpkAppRegistry.AppRecord record : appRegistry.snapshot()) {
+            if (record.isRunning()) {
+                stopApp(record.getAppId());
             }
         }
         
         // 清理所有资源
-        loadedApps.clear();
-        appStates.clear();
-        jsRuntimes.clear();
-        warningCounters.clear();
+        appRegistry.clear();
+        
+        // 关闭 JavaScript 运行时池
+        jsRuntimePool.shutdown();
+        
+        // 关闭安装线程池
+        ioExecutor.shutdown();
         
         // 关闭沙箱管理器
         sandbox.shutdown();
         
+        // 写入未写入的权限审计
+        permissionManager.shutdown();
+        
+        // 关闭跨进程消息总线
+        synchronized (ipcRegistrationLock) {
+            if (ipcTransport != null) {
+                ipcTransport.stop();
+                ipcTransport = null;
+            }
+        }
+        
         Log.i(TAG, "MPK 运行时已关闭");
     }
     
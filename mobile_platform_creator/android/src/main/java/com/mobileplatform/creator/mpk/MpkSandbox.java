@@ -10,13 +10,17 @@ import android.util.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -42,6 +46,9 @@ public class MpkSandbox {
     // 资源使用情况映射表
     private final Map<String, ResourceUsage> resourceUsages;
     
+    // 资源使用历史映射表
+    private final Map<String, MpkResourceHistory> resourceHistories;
+    
     // 调度器
     private final ScheduledExecutorService scheduler;
     
@@ -61,6 +68,7 @@ public class MpkSandbox {
     private static final long DEFAULT_MAX_CPU_USAGE = 50; // 50%
     private static final long DEFAULT_MAX_NETWORK_USAGE = 10 * 1024 * 1024; // 10MB
     private static final long DEFAULT_MONITOR_INTERVAL = 5000; // 5秒
+    private static final int DEFAULT_MAX_TIMERS = 10000;
     
     // 资源监控回调接口
     public interface ResourceMonitorCallback {
@@ -179,15 +187,25 @@ public class MpkSandbox {
         public final long maxNetworkUsage;
         // 监控间隔（毫秒）
         public final long monitorInterval;
+        // 最大 JavaScript 定时器数量
+        public final int maxTimers;
         
         public ResourceLimits(long maxStorage, int maxProcesses, long maxMemory, 
                               long maxCpuUsage, long maxNetworkUsage, long monitorInterval) {
+            this(maxStorage, maxProcesses, maxMemory, maxCpuUsage, maxNetworkUsage, monitorInterval,
+                DEFAULT_MAX_TIMERS);
+        }
+        
+        public ResourceLimits(long maxStorage, int maxProcesses, long maxMemory, 
+                              long maxCpuUsage, long maxNetworkUsage, long monitorInterval,
+                              int maxTimers) {
             this.maxStorage = maxStorage;
             this.maxProcesses = maxProcesses;
             this.maxMemory = maxMemory;
             this.maxCpuUsage = maxCpuUsage;
             this.maxNetworkUsage = maxNetworkUsage;
             this.monitorInterval = monitorInterval;
+            this.maxTimers = maxTimers;
         }
         
         public static ResourceLimits getDefault() {
@@ -217,6 +235,7 @@ public class MpkSandbox {
             long maxCpuUsage = json.optLong("max_cpu_usage", DEFAULT_MAX_CPU_USAGE);
             long maxNetworkUsage = json.optLong("max_network_usage", DEFAULT_MAX_NETWORK_USAGE);
             long monitorInterval = json.optLong("monitor_interval", DEFAULT_MONITOR_INTERVAL);
+            int maxTimers = json.optInt("max_timers", DEFAULT_MAX_TIMERS);
             
             return new ResourceLimits(
                 maxStorage, 
@@ -224,7 +243,8 @@ public class MpkSandbox {
                 maxMemory,
                 maxCpuUsage,
                 maxNetworkUsage,
-                monitorInterval
+                monitorInterval,
+                maxTimers
             );
         }
     }
@@ -239,10 +259,20 @@ public class MpkSandbox {
         private int processCount;
         // 内存使用情况
         private long memoryUsage;
+        // JavaScript 堆内存使用情况，由运行时在事件循环中更新
+        private volatile long jsHeapUsage;
+        // JavaScript 累计执行的 CPU 时间（纳秒），由运行时在每轮事件循环结束时累加
+        private final AtomicLong jsCpuTime = new AtomicLong();
         // CPU使用率
         private float cpuUsage;
         // 当日网络流量
-        private long networkUsage;
+        private final AtomicLong networkUsage = new AtomicLong();
+        // 按请求统计的接收字节数
+        private final AtomicLong appRxBytes = new AtomicLong();
+        // 按请求统计的发送字节数
+        private final AtomicLong appTxBytes = new AtomicLong();
+        // 是否有按请求统计的流量
+        private volatile boolean trafficAttributed;
         // 上次重置时间
         private long lastResetTime;
         // 上次监控时间
@@ -259,7 +289,6 @@ public class MpkSandbox {
             this.processCount = 0;
             this.memoryUsage = 0;
             this.cpuUsage = 0;
-            this.networkUsage = 0;
             this.lastResetTime = System.currentTimeMillis();
             this.lastMonitorTime = this.lastResetTime;
             this.lastRxBytes = TrafficStats.getTotalRxBytes();
@@ -291,6 +320,22 @@ public class MpkSandbox {
             this.memoryUsage = memoryUsage;
         }
         
+        public long getJsHeapUsage() {
+            return jsHeapUsage;
+        }
+        
+        public void setJsHeapUsage(long jsHeapUsage) {
+            this.jsHeapUsage = jsHeapUsage;
+        }
+        
+        public long getJsCpuTime() {
+            return jsCpuTime.get();
+        }
+        
+        public void addJsCpuTime(long nanos) {
+            jsCpuTime.addAndGet(nanos);
+        }
+        
         public float getCpuUsage() {
             return cpuUsage;
         }
@@ -300,11 +345,11 @@ public class MpkSandbox {
         }
         
         public long getNetworkUsage() {
-            return networkUsage;
+            return networkUsage.get();
         }
         
         public void setNetworkUsage(long networkUsage) {
-            this.networkUsage = networkUsage;
+            this.networkUsage.set(networkUsage);
         }
         
         public long getLastResetTime() {
@@ -316,7 +361,7 @@ public class MpkSandbox {
             long currentTime = System.currentTimeMillis();
             long dayInMillis = 24 * 60 * 60 * 1000;
             if (currentTime - lastResetTime > dayInMillis) {
-                this.networkUsage = 0;
+                this.networkUsage.set(0);
                 this.lastResetTime = currentTime;
             }
         }
@@ -333,14 +378,36 @@ public class MpkSandbox {
             long rxDelta = currentRxBytes - lastRxBytes;
             long txDelta = currentTxBytes - lastTxBytes;
             
-            // 更新网络使用情况
-            this.networkUsage += (rxDelta + txDelta);
+            // 更新网络使用情况，应用已有按请求统计的流量时不再叠加全局流量估算
+            if (!trafficAttributed) {
+                this.networkUsage.addAndGet(rxDelta + txDelta);
+            }
             
             // 更新上次值
             this.lastRxBytes = currentRxBytes;
             this.lastTxBytes = currentTxBytes;
         }
         
+        /**
+         * 记录应用发起的请求产生的流量，可在任意线程调用
+         * @param rxBytes 接收字节数
+         * @param txBytes 发送字节数
+         */
+        public void recordNetworkTraffic(long rxBytes, long txBytes) {
+            trafficAttributed = true;
+            appRxBytes.addAndGet(rxBytes);
+            appTxBytes.addAndGet(txBytes);
+            networkUsage.addAndGet(rxBytes + txBytes);
+        }
+        
+        public long getAppRxBytes() {
+            return appRxBytes.get();
+        }
+        
+        public long getAppTxBytes() {
+            return appTxBytes.get();
+        }
+        
         public Map<Integer, Long> getProcessPids() {
             return processPids;
         }
@@ -365,18 +432,27 @@ public class MpkSandbox {
         private final String appId;
         private final ResourceLimits limits;
         private final ResourceUsage usage;
+        private final MpkResourceHistory history;
         private final ResourceMonitorCallback callback;
-        private boolean running;
+        private volatile boolean running;
+        // 调度任务，批量启动的监控器由所属的 MonitorGroup 调度，此字段为 null
+        private ScheduledFuture<?> future;
         
         // 记录上次发送的资源警告事件时间戳，防止过于频繁发送
         private final Map<ResourceExceededEvent.Type, Long> lastWarningTime = new HashMap<>();
         // 警告冷却时间（毫秒）
         private static final long WARNING_COOLDOWN = 60000; // 1分钟
         
-        public ResourceMonitor(String appId, ResourceLimits limits, ResourceUsage usage, ResourceMonitorCallback callback) {
+        // 上次采样时的 JavaScript CPU 时间和墙钟时间（纳秒），用于计算 CPU 使用率
+        private long lastJsCpuTime;
+        private long lastCpuSampleTime;
+        
+        public ResourceMonitor(String appId, ResourceLimits limits, ResourceUsage usage,
+                               MpkResourceHistory history, ResourceMonitorCallback callback) {
             this.appId = appId;
             this.limits = limits;
             this.usage = usage;
+            this.history = history;
             this.callback = callback;
             this.running = true;
         }
@@ -391,6 +467,9 @@ public class MpkSandbox {
                 // 更新资源使用情况
                 updateResourceUsage();
                 
+                // 记录资源采样
+                history.record(System.currentTimeMillis(), usage);
+                
                 // 检查资源限制
                 checkResourceLimits();
                 
@@ -410,6 +489,7 @@ public class MpkSandbox {
             
             // 更新进程数量
             ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            long processMemory = 0;
             if (am != null) {
                 // 获取所有运行进程
                 for (ActivityManager.RunningAppProcessInfo process : am.getRunningAppProcesses()) {
@@ -448,9 +528,12 @@ public class MpkSandbox {
                         Log.e(TAG, "获取内存使用失败: " + pid, e);
                     }
                 }
-                usage.setMemoryUsage(totalMemory);
+                processMemory = totalMemory;
             }
             
+            // JavaScript 应用运行在宿主进程中，内存使用取自运行时统计的堆内存
+            usage.setMemoryUsage(processMemory + usage.getJsHeapUsage());
+            
             // 更新CPU使用情况
             updateCpuUsage();
             
@@ -469,11 +552,20 @@ public class MpkSandbox {
                 // 简化实现：假设每个进程平均使用10%CPU
                 // 实际情况下应该通过读取/proc文件系统获取真实CPU使用率
                 totalCpuUsage = processCount * 10.0f;
-                
-                // 限制最大值为100%
-                if (totalCpuUsage > 100) {
-                    totalCpuUsage = 100;
-                }
+            }
+            
+            // JavaScript 应用运行在宿主进程中，按运行时统计的 CPU 时间计算使用率
+            long now = System.nanoTime();
+            long jsCpuTime = usage.getJsCpuTime();
+            if (lastCpuSampleTime != 0 && now > lastCpuSampleTime) {
+                totalCpuUsage += (jsCpuTime - lastJsCpuTime) * 100.0f / (now - lastCpuSampleTime);
+            }
+            lastJsCpuTime = jsCpuTime;
+            lastCpuSampleTime = now;
+            
+            // 限制最大值为100%
+            if (totalCpuUsage > 100) {
+                totalCpuUsage = 100;
             }
             
             usage.setCpuUsage(totalCpuUsage);
@@ -550,8 +642,44 @@ public class MpkSandbox {
             }
         }
         
+        public boolean isRunning() {
+            return running;
+        }
+        
         public void stop() {
             this.running = false;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+    
+    /**
+     * 监控器组
+     * 批量启动的监控器按监控间隔分组，每组只占用一个调度任务，依次执行组内的监控器
+     */
+    private static class MonitorGroup implements Runnable {
+        private final List<ResourceMonitor> monitors;
+        private ScheduledFuture<?> future;
+        
+        MonitorGroup(List<ResourceMonitor> monitors) {
+            this.monitors = monitors;
+        }
+        
+        @Override
+        public void run() {
+            boolean anyRunning = false;
+            for (ResourceMonitor monitor : monitors) {
+                if (monitor.isRunning()) {
+                    anyRunning = true;
+                    monitor.run();
+                }
+            }
+            
+            // 组内监控器全部停止后取消调度
+            if (!anyRunning && future != null) {
+                future.cancel(false);
+            }
         }
     }
     
@@ -641,6 +769,7 @@ public class MpkSandbox {
         this.sandboxes = new ConcurrentHashMap<>();
         this.resourceMonitors = new ConcurrentHashMap<>();
         this.resourceUsages = new ConcurrentHashMap<>();
+        this.resourceHistories = new ConcurrentHashMap<>();
         this.eventListeners = new ConcurrentHashMap<>();
         this.scheduler = Executors.newScheduledThreadPool(1);
         this.mainHandler = new Handler(Looper.getMainLooper());
@@ -680,6 +809,9 @@ public class MpkSandbox {
             ResourceUsage usage = new ResourceUsage();
             resourceUsages.put(appId, usage);
             
+            // 创建资源使用历史
+            resourceHistories.put(appId, new MpkResourceHistory(appId, limits, MpkResourceHistory.DEFAULT_CAPACITY));
+            
             // 触发沙箱创建事件
             SandboxEvent event = new SandboxEvent(SandboxEventType.SANDBOX_CREATED);
             event.putData("limits", limits);
@@ -720,6 +852,7 @@ public class MpkSandbox {
             
             // 移除资源使用情况
             resourceUsages.remove(appId);
+            resourceHistories.remove(appId);
             
             // 移除事件监听器
             eventListeners.remove(appId);
@@ -785,6 +918,16 @@ public class MpkSandbox {
         return resourceUsages.get(appId);
     }
     
+    /**
+     * 获取应用资源使用历史
+     * 只读取监控器已记录的采样，不会触发新的测量
+     * @param appId 应用 ID
+     * @return 资源使用历史，沙箱不存在时返回 null
+     */
+    public MpkResourceHistory getResourceHistory(String appId) {
+        return resourceHistories.get(appId);
+    }
+    
     /**
      * 启动资源监控
      * @param appId 应用 ID
@@ -812,17 +955,85 @@ public class MpkSandbox {
             resourceUsages.put(appId, usage);
         }
         
+        // 获取资源使用历史
+        MpkResourceHistory history = resourceHistories.get(appId);
+        if (history == null) {
+            history = new MpkResourceHistory(appId, env.limits, MpkResourceHistory.DEFAULT_CAPACITY);
+            resourceHistories.put(appId, history);
+        }
+        
         // 创建监控器
-        ResourceMonitor monitor = new ResourceMonitor(appId, env.limits, usage, callback);
+        ResourceMonitor monitor = new ResourceMonitor(appId, env.limits, usage, history, callback);
         resourceMonitors.put(appId, monitor);
         
         // 启动监控
-        scheduler.scheduleAtFixedRate(monitor, 0, env.limits.monitorInterval, TimeUnit.MILLISECONDS);
+        monitor.future = scheduler.scheduleAtFixedRate(monitor, 0, env.limits.monitorInterval, TimeUnit.MILLISECONDS);
         
         Log.i(TAG, "启动资源监控成功: " + appId);
         return true;
     }
     
+    /**
+     * 批量启动资源监控
+     * 监控间隔相同的应用共用一个调度任务
+     * @param appIds 应用 ID 集合
+     * @param callback 资源监控回调
+     * @return 成功启动的监控器数量
+     */
+    public int startResourceMonitors(Collection<String> appIds, ResourceMonitorCallback callback) {
+        Map<Long, List<ResourceMonitor>> groups = new HashMap<>();
+        
+        for (String appId : appIds) {
+            // 跳过已存在的监控器
+            if (resourceMonitors.containsKey(appId)) {
+                Log.w(TAG, "资源监控器已存在: " + appId);
+                continue;
+            }
+            
+            // 检查是否存在沙箱
+            SandboxEnvironment env = sandboxes.get(appId);
+            if (env == null) {
+                Log.e(TAG, "沙箱不存在: " + appId);
+                continue;
+            }
+            
+            // 获取资源使用情况
+            ResourceUsage usage = resourceUsages.get(appId);
+            if (usage == null) {
+                usage = new ResourceUsage();
+                resourceUsages.put(appId, usage);
+            }
+            
+            // 获取资源使用历史
+            MpkResourceHistory history = resourceHistories.get(appId);
+            if (history == null) {
+                history = new MpkResourceHistory(appId, env.limits, MpkResourceHistory.DEFAULT_CAPACITY);
+                resourceHistories.put(appId, history);
+            }
+            
+            ResourceMonitor monitor = new ResourceMonitor(appId, env.limits, usage, history, callback);
+            resourceMonitors.put(appId, monitor);
+            
+            List<ResourceMonitor> group = groups.get(env.limits.monitorInterval);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(env.limits.monitorInterval, group);
+            }
+            group.add(monitor);
+        }
+        
+        // 每个监控间隔调度一个任务
+        int started = 0;
+        for (Map.Entry<Long, List<ResourceMonitor>> entry : groups.entrySet()) {
+            MonitorGroup group = new MonitorGroup(entry.getValue());
+            group.future = scheduler.scheduleAtFixedRate(group, 0, entry.getKey(), TimeUnit.MILLISECONDS);
+            started += entry.getValue().size();
+        }
+        
+        Log.i(TAG, "批量启动资源监控: " + started + "/" + appIds.size());
+        return started;
+    }
+    
     /**
      * 停止资源监控
      * @param appId 应用 ID
@@ -843,6 +1054,28 @@ public class MpkSandbox {
         return true;
     }
     
+    /**
+     * 报告在沙箱外检测到的资源超限，例如 JavaScript 运行时的执行时间预算
+     * 与监控器检测到的超限一样触发沙箱事件和资源监控回调
+     * @param appId 应用 ID
+     * @param event 资源超限事件
+     */
+    public void reportResourceExceeded(String appId, ResourceExceededEvent event) {
+        ResourceMonitor monitor = resourceMonitors.get(appId);
+        if (monitor != null) {
+            monitor.notifyResourceExceeded(event);
+            return;
+        }
+        
+        // 未启动监控时只触发沙箱事件
+        SandboxEvent sandboxEvent = new SandboxEvent(SandboxEventType.RESOURCE_EXCEEDED);
+        sandboxEvent.putData("type", event.getType());
+        sandboxEvent.putData("currentValue", event.getCurrentValue());
+        sandboxEvent.putData("limitValue", event.getLimitValue());
+        sandboxEvent.putData("percentage", event.getPercentage());
+        fireSandboxEvent(appId, sandboxEvent);
+    }
+    
     /**
      * 清理缓存
      * @param appId 应用 ID
@@ -0,0 +1,247 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * MPK 脚本编译缓存
+ * 将引擎编译得到的字节码和堆快照保存在沙箱缓存目录中，以脚本内容哈希和引擎版本为键，
+ * 再次启动时跳过解析和编译，或直接恢复启动后的脚本上下文
+ */
+public class MpkScriptCache {
+    private static final String TAG = "MpkScriptCache";
+
+    // 缓存目录名
+    public static final String DIR_NAME = "jscache";
+
+    // 缓存文件扩展名
+    private static final String FILE_SUFFIX = ".jsc";
+
+    // 应用版本标记文件
+    private static final String STAMP_FILE = "version";
+
+    // 缓存文件魔数 ("MPKC")
+    private static final int FILE_MAGIC = 0x4D504B43;
+
+    // 缓存文件格式版本
+    private static final int FILE_VERSION = 1;
+
+    // 十六进制字符
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // 缓存目录
+    private final File cacheDir;
+
+    // 引擎版本
+    private final String engineVersion;
+
+    /**
+     * 创建脚本编译缓存
+     * @param sandboxCacheDir 沙箱缓存目录
+     * @param engineVersion 引擎版本，引擎升级后旧缓存自动失效
+     */
+    public MpkScriptCache(File sandboxCacheDir, String engineVersion) {
+        this.cacheDir = new File(sandboxCacheDir, DIR_NAME);
+        this.engineVersion = engineVersion;
+    }
+
+    /**
+     * 计算缓存键
+     * @param source 脚本内容
+     * @return 缓存键
+     */
+    public String keyFor(byte[] source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(engineVersion.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source);
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * 计算堆快照的缓存键，与同一脚本的字节码缓存键不同
+     * @param source 脚本内容
+     * @return 缓存键
+     */
+    public String snapshotKeyFor(byte[] source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update("snapshot".getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(engineVersion.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source);
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * 读取缓存的字节码
+     * 缓存文件损坏时删除并返回 null
+     * @param key 缓存键
+     * @return 字节码，未命中时返回 null
+     */
+    public byte[] load(String key) {
+        File file = new File(cacheDir, key + FILE_SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("缓存文件格式不匹配");
+            }
+
+            int length = in.readInt();
+            long checksum = in.readLong();
+            if (length < 0 || length > file.length()) {
+                throw new IOException("缓存文件长度无效: " + length);
+            }
+
+            byte[] data = new byte[length];
+            in.readFully(data);
+            if (crc32(data) != checksum) {
+                throw new IOException("缓存文件校验失败");
+            }
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "丢弃无效的编译缓存: " + file.getName() + " - " + e.getMessage());
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * 保存字节码
+     * 先写入临时文件再重命名，避免读取到写了一半的缓存
+     * @param key 缓存键
+     * @param data 字节码
+     * @return 是否保存成功
+     */
+    public boolean store(String key, byte[] data) {
+        if (!cacheDir.exists() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+            Log.w(TAG, "创建编译缓存目录失败: " + cacheDir.getAbsolutePath());
+            return false;
+        }
+
+        File file = new File(cacheDir, key + FILE_SUFFIX);
+        File tempFile = new File(cacheDir, key + FILE_SUFFIX + ".tmp");
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length + 20);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(data.length);
+            out.writeLong(crc32(data));
+            out.write(data);
+            out.flush();
+
+            try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                buffer.writeTo(fos);
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("重命名缓存文件失败");
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "保存编译缓存失败: " + file.getName(), e);
+            tempFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * 删除缓存项
+     * @param key 缓存键
+     */
+    public void remove(String key) {
+        File file = new File(cacheDir, key + FILE_SUFFIX);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "删除编译缓存失败: " + file.getName());
+        }
+    }
+
+    /**
+     * 清空沙箱的编译缓存和快照
+     * @param sandboxCacheDir 沙箱缓存目录
+     * @return 删除的文件数量
+     */
+    public static int clear(File sandboxCacheDir) {
+        File[] files = new File(sandboxCacheDir, DIR_NAME).listFiles();
+        int removed = 0;
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(FILE_SUFFIX) && file.delete()) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 应用版本变化时清空编译缓存
+     * 缓存键已包含脚本内容哈希，清空只是为了回收旧版本留下的文件
+     * @param sandboxCacheDir 沙箱缓存目录
+     * @param versionCode 应用版本号
+     */
+    public static void invalidateIfUpdated(File sandboxCacheDir, int versionCode) {
+        File dir = new File(sandboxCacheDir, DIR_NAME);
+        File stamp = new File(dir, STAMP_FILE);
+        String expected = String.valueOf(versionCode);
+
+        try {
+            if (stamp.exists()) {
+                String current = new String(Files.readAllBytes(stamp.toPath()), StandardCharsets.UTF_8).trim();
+                if (expected.equals(current)) {
+                    return;
+                }
+            }
+
+            int removed = clear(sandboxCacheDir);
+            if (removed > 0) {
+                Log.i(TAG, "应用版本变化，已清除编译缓存: " + removed + " 个文件");
+            }
+
+            if (!dir.exists() && !dir.mkdirs()) {
+                return;
+            }
+            Files.write(stamp.toPath(), expected.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "更新编译缓存版本标记失败: " + dir.getAbsolutePath(), e);
+        }
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,219 @@
+package com.mobileplatform.creator.mpk;
+
+import android.os.Build;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MPK 共享消息负载
+ * 应用间传递大块或二进制数据时代替 JSONObject，接收者读取只读视图，不序列化也不复制；
+ * 负载按引用计数管理生命周期：创建者持有一个引用，消息总线在每次投递前增加引用、回调结束后释放，
+ * 接收者需要在回调之外继续使用时调用 {@link #retain()}，用完后调用 {@link #release()}。
+ * 基于共享内存的负载可以传给其他进程的应用，引用计数归零时解除映射并关闭共享内存
+ */
+public final class MpkSharedPayload {
+    private static final String TAG = "MpkSharedPayload";
+
+    // 只读视图
+    private final ByteBuffer buffer;
+
+    // 共享内存，进程内负载为 null
+    private final SharedMemory sharedMemory;
+
+    // 共享内存映射，释放时解除
+    private final ByteBuffer mapping;
+
+    // 引用计数
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    private MpkSharedPayload(ByteBuffer buffer, SharedMemory sharedMemory, ByteBuffer mapping) {
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.sharedMemory = sharedMemory;
+        this.mapping = mapping;
+    }
+
+    /**
+     * 包装缓冲区，不复制
+     * 包装后调用者不应再修改缓冲区的内容
+     * @param data 数据，使用 position 到 limit 之间的内容
+     * @return 负载，引用计数为 1
+     */
+    public static MpkSharedPayload wrap(ByteBuffer data) {
+        return new MpkSharedPayload(data.slice(), null, null);
+    }
+
+    /**
+     * 包装字节数组，不复制
+     * @param data 数据
+     * @return 负载，引用计数为 1
+     */
+    public static MpkSharedPayload wrap(byte[] data) {
+        return new MpkSharedPayload(ByteBuffer.wrap(data), null, null);
+    }
+
+    /**
+     * 复制数据到新的直接缓冲区，用于不归调用者所有的内存，例如 JavaScript 的 ArrayBuffer
+     * @param data 数据，使用 position 到 limit 之间的内容，不改变其 position
+     * @return 负载，引用计数为 1
+     */
+    public static MpkSharedPayload copyOf(ByteBuffer data) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(data.remaining());
+        copy.put(data.duplicate());
+        copy.flip();
+        return new MpkSharedPayload(copy, null, null);
+    }
+
+    /**
+     * 复制数据到共享内存，可以传给其他进程的应用
+     * Android 8.1 以下不支持共享内存，退化为进程内的直接缓冲区
+     * @param name 共享内存名称，用于调试
+     * @param data 数据，使用 position 到 limit 之间的内容，不改变其 position
+     * @return 负载，引用计数为 1
+     * @throws ErrnoException 如果创建共享内存失败
+     */
+    public static MpkSharedPayload createShared(String name, ByteBuffer data) throws ErrnoException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1) {
+            return copyOf(data);
+        }
+
+        SharedMemory memory = SharedMemory.create(name, Math.max(1, data.remaining()));
+        try {
+            ByteBuffer writable = memory.mapReadWrite();
+            writable.put(data.duplicate());
+            SharedMemory.unmap(writable);
+
+            // 写入后禁止再次以可写方式映射，接收者只能读取
+            memory.setProtect(OsConstants.PROT_READ);
+            return fromSharedMemory(memory, data.remaining());
+        } catch (ErrnoException | RuntimeException e) {
+            memory.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 映射其他进程传来的共享内存，负载释放时关闭共享内存
+     * @param memory 共享内存
+     * @param length 数据长度
+     * @return 负载，引用计数为 1
+     * @throws ErrnoException 如果映射失败
+     */
+    public static MpkSharedPayload fromSharedMemory(SharedMemory memory, int length) throws ErrnoException {
+        ByteBuffer mapping = memory.mapReadOnly();
+        ByteBuffer view = mapping.duplicate();
+        view.limit(Math.min(length, view.capacity()));
+        return new MpkSharedPayload(view, memory, mapping);
+    }
+
+    /**
+     * 增加引用
+     * @return 当前负载
+     * @throws IllegalStateException 如果负载已释放
+     */
+    public MpkSharedPayload retain() {
+        if (!tryRetain()) {
+            throw new IllegalStateException("负载已释放");
+        }
+        return this;
+    }
+
+    /**
+     * 尝试增加引用
+     * @return 是否成功，负载已释放时返回 false
+     */
+    public boolean tryRetain() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放引用，引用计数归零时释放共享内存
+     * @return 是否已完全释放
+     */
+    public boolean release() {
+        int count = refCount.decrementAndGet();
+        if (count > 0) {
+            return false;
+        }
+        if (count < 0) {
+            refCount.incrementAndGet();
+            Log.w(TAG, "负载被重复释放");
+            return false;
+        }
+
+        if (sharedMemory != null) {
+            SharedMemory.unmap(mapping);
+            sharedMemory.close();
+        }
+        return true;
+    }
+
+    /**
+     * 获取只读视图，每次返回独立的 position 和 limit，不复制数据
+     * @return 只读缓冲区
+     * @throws IllegalStateException 如果负载已释放
+     */
+    public ByteBuffer asBuffer() {
+        if (refCount.get() <= 0) {
+            throw new IllegalStateException("负载已释放");
+        }
+        return buffer.duplicate();
+    }
+
+    /**
+     * 获取数据长度
+     * @return 字节数
+     */
+    public int size() {
+        return buffer.remaining();
+    }
+
+    /**
+     * 获取引用计数
+     * @return 引用计数
+     */
+    public int getRefCount() {
+        return refCount.get();
+    }
+
+    /**
+     * 是否已释放
+     * @return 是否已释放
+     */
+    public boolean isReleased() {
+        return refCount.get() <= 0;
+    }
+
+    /**
+     * 是否基于共享内存，可以传给其他进程
+     * @return 是否基于共享内存
+     */
+    public boolean isShared() {
+        return sharedMemory != null;
+    }
+
+    /**
+     * 获取共享内存，用于跨进程传递
+     * @return 共享内存，进程内负载返回 null
+     */
+    public SharedMemory getSharedMemory() {
+        return sharedMemory;
+    }
+
+    @Override
+    public String toString() {
+        return "MpkSharedPayload{size=" + size() + ", shared=" + isShared() + ", refs=" + refCount.get() + "}";
+    }
+}
@@ -0,0 +1,132 @@
+package com.mobileplatform.creator.mpk;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * MPK JavaScript 启动基准测试
+ * 比较冷启动（无编译缓存和快照）、命中字节码缓存和从快照恢复三种方式下，
+ * 创建运行时、初始化引擎并启动入口脚本的平均耗时；
+ * 测试会清空应用沙箱中的编译缓存，不应在应用运行时执行
+ */
+public class MpkStartupBenchmark {
+    private static final String TAG = "MpkStartupBenchmark";
+
+    // 默认每种方式的启动次数
+    public static final int DEFAULT_ITERATIONS = 10;
+
+    /**
+     * 启动方式
+     */
+    public enum Mode {
+        COLD,       // 无编译缓存和快照
+        BYTECODE,   // 命中字节码缓存，不使用快照
+        SNAPSHOT    // 从快照恢复
+    }
+
+    /**
+     * 基准测试结果，单位为毫秒
+     */
+    public static class Result {
+        public final double coldMs;
+        public final double bytecodeMs;
+        public final double snapshotMs;
+
+        Result(double coldMs, double bytecodeMs, double snapshotMs) {
+            this.coldMs = coldMs;
+            this.bytecodeMs = bytecodeMs;
+            this.snapshotMs = snapshotMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "冷启动: %.2fms, 字节码缓存: %.2fms, 快照: %.2fms",
+                coldMs, bytecodeMs, snapshotMs);
+        }
+    }
+
+    /**
+     * 运行基准测试
+     * @param context 上下文
+     * @param appId 应用 ID
+     * @param env 应用沙箱环境
+     * @param engineType JavaScript 引擎类型
+     * @param entry 入口脚本
+     * @param iterations 每种方式的启动次数
+     * @return 测试结果
+     */
+    public static Result run(Context context, String appId, MpkSandbox.SandboxEnvironment env,
+                             String engineType, File entry, int iterations) throws Exception {
+        Result result = new Result(
+            measure(context, appId, env, engineType, entry, Mode.COLD, iterations),
+            measure(context, appId, env, engineType, entry, Mode.BYTECODE, iterations),
+            measure(context, appId, env, engineType, entry, Mode.SNAPSHOT, iterations));
+
+        Log.i(TAG, "启动基准测试 (" + appId + ", " + engineType + ", " + iterations + " 次): " + result);
+        return result;
+    }
+
+    /**
+     * 以默认启动次数运行基准测试
+     * @param context 上下文
+     * @param appId 应用 ID
+     * @param env 应用沙箱环境
+     * @param engineType JavaScript 引擎类型
+     * @param entry 入口脚本
+     * @return 测试结果
+     */
+    public static Result run(Context context, String appId, MpkSandbox.SandboxEnvironment env,
+                             String engineType, File entry) throws Exception {
+        return run(context, appId, env, engineType, entry, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * 测量一种启动方式的平均耗时
+     * @return 平均耗时（毫秒）
+     */
+    private static double measure(Context context, String appId, MpkSandbox.SandboxEnvironment env,
+                                  String engineType, File entry, Mode mode, int iterations) throws Exception {
+        if (mode == Mode.COLD) {
+            MpkScriptCache.clear(env.cacheDir);
+        } else {
+            // 预热一次，生成字节码缓存和快照
+            launch(context, appId, env, engineType, entry, mode);
+        }
+
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            if (mode == Mode.COLD) {
+                MpkScriptCache.clear(env.cacheDir);
+            }
+            total += launch(context, appId, env, engineType, entry, mode);
+        }
+        return total / 1_000_000.0 / Math.max(1, iterations);
+    }
+
+    /**
+     * 创建运行时并启动入口脚本
+     * @return 耗时（纳秒），不包括关闭运行时
+     */
+    private static long launch(Context context, String appId, MpkSandbox.SandboxEnvironment env,
+                               String engineType, File entry, Mode mode) throws Exception {
+        MpkJavaScriptRuntime runtime = new MpkJavaScriptRuntime(context, appId, env, engineType);
+        runtime.setSnapshotsEnabled(mode == Mode.SNAPSHOT);
+
+        long start = System.nanoTime();
+        try {
+            if (!runtime.initialize()) {
+                throw new IllegalStateException("初始化 JavaScript 运行时失败: " + engineType);
+            }
+            runtime.executeEntryFile(entry);
+            return System.nanoTime() - start;
+        } finally {
+            runtime.shutdown();
+        }
+    }
+
+    private MpkStartupBenchmark() {
+    }
+}
@@ -0,0 +1,609 @@
+package com.mobileplatform.creator.mpk;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MPK 定时器时间轮
+ * 所有 JavaScript 运行时共用一个哈希时间轮，添加和取消定时器都是 O(1)；
+ * 每个刻度到期的定时器按事件循环分组，每组只投递一个宏任务
+ */
+public class MpkTimerWheel {
+    private static final String TAG = "MpkTimerWheel";
+
+    // 刻度时长（毫秒）
+    public static final long TICK_MS = 10;
+
+    // 刻度时长（纳秒）
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MS);
+
+    // 槽位数量，必须是 2 的幂
+    private static final int WHEEL_SIZE = 512;
+
+    // 槽位掩码
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    // 定时器状态
+    private static final int STATE_PENDING = 0;   // 在时间轮中等待
+    private static final int STATE_EXPIRED = 1;   // 已到期，等待事件循环执行
+    private static final int STATE_CANCELLED = 2; // 已取消
+
+    // 单例实例
+    private static MpkTimerWheel _instance;
+
+    // 锁，保护槽位、ID 映射和分组链表
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 有新定时器时唤醒空闲的时间轮线程
+    private final Condition wakeUp = lock.newCondition();
+
+    // 槽位链表头
+    private final Timeout[] wheel = new Timeout[WHEEL_SIZE];
+
+    // 定时器 ID 映射
+    private final TimeoutMap timeouts = new TimeoutMap();
+
+    // 时间轮起始时间
+    private final long startNanos = System.nanoTime();
+
+    // 本刻度有定时器到期的分组，只在时间轮线程中访问
+    private final List<TimerGroup> expiredGroups = new ArrayList<>();
+
+    // 已处理到的刻度
+    private long processedTick;
+
+    // 下一个定时器 ID
+    private int nextTimerId = 1;
+
+    // 定时器序号，到期时间相同时按加入顺序执行
+    private long nextSequence;
+
+    // 时间轮线程
+    private Thread thread;
+
+    /**
+     * 获取共享的时间轮
+     * @return 时间轮实例
+     */
+    public static synchronized MpkTimerWheel getInstance() {
+        if (_instance == null) {
+            _instance = new MpkTimerWheel();
+        }
+        return _instance;
+    }
+
+    private MpkTimerWheel() {
+    }
+
+    /**
+     * 为事件循环创建定时器分组
+     * @param loop 执行回调的事件循环
+     * @param maxTimers 分组内定时器数量上限
+     * @return 定时器分组
+     */
+    public TimerGroup newGroup(MpkJSEventLoop loop, int maxTimers) {
+        return new TimerGroup(this, loop, maxTimers);
+    }
+
+    /**
+     * 获取当前所有分组的定时器总数
+     * @return 定时器数量
+     */
+    public int getTimerCount() {
+        lock.lock();
+        try {
+            return timeouts.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前刻度
+     */
+    private long currentTick() {
+        return (System.nanoTime() - startNanos) / TICK_NANOS;
+    }
+
+    /**
+     * 添加定时器
+     * @return 定时器 ID，超过分组上限时返回 0
+     */
+    private int schedule(TimerGroup group, Runnable callback, long delayMs, long intervalMs) {
+        lock.lock();
+        try {
+            if (group.closed) {
+                return 0;
+            }
+            if (group.count >= group.maxTimers) {
+                Log.w(TAG, "定时器数量超过限制: " + group.count + "/" + group.maxTimers);
+                return 0;
+            }
+
+            // 跳过 0 和仍在使用的 ID
+            int id;
+            do {
+                id = nextTimerId++;
+                if (nextTimerId <= 0) {
+                    nextTimerId = 1;
+                }
+            } while (id <= 0 || timeouts.get(id) != null);
+
+            // 时间轮空闲期间的刻度无需处理
+            if (timeouts.size() == 0) {
+                processedTick = currentTick();
+            }
+
+            Timeout timeout = new Timeout(id, group, callback, toTicks(intervalMs));
+            timeouts.put(id, timeout);
+            group.link(timeout);
+            insert(timeout, toTicks(delayMs));
+
+            ensureStarted();
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取消定时器
+     * @return 是否取消成功
+     */
+    private boolean cancel(TimerGroup group, int id) {
+        lock.lock();
+        try {
+            Timeout timeout = timeouts.get(id);
+            if (timeout == null || timeout.group != group) {
+                return false;
+            }
+            remove(timeout);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取消分组内的所有定时器
+     */
+    private void cancelAll(TimerGroup group) {
+        lock.lock();
+        try {
+            while (group.head != null) {
+                remove(group.head);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 从时间轮、ID 映射和分组中移除定时器，调用方需持有锁
+     */
+    private void remove(Timeout timeout) {
+        if (timeout.state == STATE_PENDING) {
+            unlinkSlot(timeout);
+        }
+        timeout.state = STATE_CANCELLED;
+        timeouts.remove(timeout.id);
+        timeout.group.unlink(timeout);
+    }
+
+    /**
+     * 将定时器放入槽位，调用方需持有锁
+     */
+    private void insert(Timeout timeout, long delayTicks) {
+        timeout.deadline = currentTick() + Math.max(1, delayTicks);
+        timeout.sequence = nextSequence++;
+        timeout.state = STATE_PENDING;
+
+        int slot = (int) (timeout.deadline & WHEEL_MASK);
+        timeout.slotPrev = null;
+        timeout.slotNext = wheel[slot];
+        if (wheel[slot] != null) {
+            wheel[slot].slotPrev = timeout;
+        }
+        wheel[slot] = timeout;
+    }
+
+    /**
+     * 从槽位中移除定时器，调用方需持有锁
+     */
+    private void unlinkSlot(Timeout timeout) {
+        int slot = (int) (timeout.deadline & WHEEL_MASK);
+        if (timeout.slotPrev != null) {
+            timeout.slotPrev.slotNext = timeout.slotNext;
+        } else if (wheel[slot] == timeout) {
+            wheel[slot] = timeout.slotNext;
+        }
+        if (timeout.slotNext != null) {
+            timeout.slotNext.slotPrev = timeout.slotPrev;
+        }
+        timeout.slotPrev = null;
+        timeout.slotNext = null;
+    }
+
+    /**
+     * 毫秒转换为刻度数，向上取整
+     */
+    private static long toTicks(long ms) {
+        return ms <= 0 ? 0 : (ms + TICK_MS - 1) / TICK_MS;
+    }
+
+    /**
+     * 启动时间轮线程，调用方需持有锁
+     */
+    private void ensureStarted() {
+        if (thread == null) {
+            thread = new Thread(this::run, "MpkTimerWheel");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            wakeUp.signal();
+        }
+    }
+
+    /**
+     * 时间轮线程主体
+     */
+    private void run() {
+        while (true) {
+            long nextTick;
+            lock.lock();
+            try {
+                // 没有定时器时休眠
+                while (timeouts.size() == 0) {
+                    wakeUp.awaitUninterruptibly();
+                }
+
+                long targetTick = currentTick();
+                long from = processedTick + 1;
+                // 线程被长时间延迟时每个槽位最多扫描一次
+                if (targetTick - from >= WHEEL_SIZE) {
+                    from = targetTick - WHEEL_SIZE + 1;
+                }
+                for (long tick = from; tick <= targetTick; tick++) {
+                    expireSlot((int) (tick & WHEEL_MASK), targetTick);
+                }
+                processedTick = Math.max(processedTick, targetTick);
+                nextTick = processedTick + 1;
+            } finally {
+                lock.unlock();
+            }
+
+            // 在锁外投递，每个分组一个宏任务
+            for (int i = 0; i < expiredGroups.size(); i++) {
+                expiredGroups.get(i).dispatch();
+            }
+            expiredGroups.clear();
+
+            // 等待下一个刻度
+            long nextTickNanos = startNanos + nextTick * TICK_NANOS;
+            long sleepNanos = nextTickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    // 时间轮线程不响应中断，继续运行
+                }
+            }
+        }
+    }
+
+    /**
+     * 处理槽位中到期的定时器，调用方需持有锁
+     */
+    private void expireSlot(int slot, long targetTick) {
+        Timeout timeout = wheel[slot];
+        while (timeout != null) {
+            Timeout next = timeout.slotNext;
+            if (timeout.deadline <= targetTick) {
+                unlinkSlot(timeout);
+                timeout.state = STATE_EXPIRED;
+
+                TimerGroup group = timeout.group;
+                if (group.expired == null) {
+                    group.expired = new ArrayList<>();
+                    expiredGroups.add(group);
+                }
+                group.expired.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * 在事件循环中执行到期的定时器
+     */
+    private void runExpired(List<Timeout> expired) {
+        for (int i = 0; i < expired.size(); i++) {
+            Timeout timeout = expired.get(i);
+
+            lock.lock();
+            try {
+                if (timeout.state != STATE_EXPIRED) {
+                    // 到期后被取消
+                    continue;
+                }
+                if (timeout.interval == 0) {
+                    timeouts.remove(timeout.id);
+                    timeout.group.unlink(timeout);
+                    timeout.state = STATE_CANCELLED;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            timeout.group.loop.runTimerCallback(timeout.callback);
+
+            if (timeout.interval > 0) {
+                lock.lock();
+                try {
+                    // 回调中可能已经取消
+                    if (timeout.state == STATE_EXPIRED) {
+                        insert(timeout, timeout.interval);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 定时器分组
+     * 对应一个事件循环，记录其定时器数量并限制上限
+     */
+    public static final class TimerGroup {
+        private final MpkTimerWheel wheel;
+        private final MpkJSEventLoop loop;
+        // 以下字段受时间轮锁保护
+        private Timeout head;
+        private int count;
+        private boolean closed;
+        // 本刻度到期的定时器，只在时间轮线程中访问
+        private List<Timeout> expired;
+        private volatile int maxTimers;
+
+        TimerGroup(MpkTimerWheel wheel, MpkJSEventLoop loop, int maxTimers) {
+            this.wheel = wheel;
+            this.loop = loop;
+            this.maxTimers = maxTimers;
+        }
+
+        /**
+         * 添加定时器
+         * @param callback 回调，在事件循环中执行
+         * @param delayMs 延迟时间（毫秒）
+         * @param intervalMs 周期（毫秒），0 表示一次性定时器
+         * @return 定时器 ID，超过上限或分组已关闭时返回 0
+         */
+        public int schedule(Runnable callback, long delayMs, long intervalMs) {
+            return wheel.schedule(this, callback, delayMs, intervalMs);
+        }
+
+        /**
+         * 取消定时器
+         * @param id 定时器 ID
+         * @return 是否取消成功
+         */
+        public boolean cancel(int id) {
+            return wheel.cancel(this, id);
+        }
+
+        /**
+         * 取消所有定时器
+         */
+        public void cancelAll() {
+            wheel.cancelAll(this);
+        }
+
+        /**
+         * 取消所有定时器并拒绝新的定时器
+         */
+        public void close() {
+            wheel.lock.lock();
+            try {
+                closed = true;
+            } finally {
+                wheel.lock.unlock();
+            }
+            cancelAll();
+        }
+
+        /**
+         * 获取未取消的定时器数量
+         * @return 定时器数量
+         */
+        public int size() {
+            wheel.lock.lock();
+            try {
+                return count;
+            } finally {
+                wheel.lock.unlock();
+            }
+        }
+
+        public int getMaxTimers() {
+            return maxTimers;
+        }
+
+        public void setMaxTimers(int maxTimers) {
+            this.maxTimers = maxTimers;
+        }
+
+        /**
+         * 将到期的定时器作为一个宏任务投递到事件循环
+         */
+        private void dispatch() {
+            List<Timeout> batch = expired;
+            expired = null;
+            if (batch == null) {
+                return;
+            }
+
+            // 槽位链表按头插法组织，按到期时间和加入顺序恢复执行顺序
+            if (batch.size() > 1) {
+                batch.sort(TIMEOUT_ORDER);
+            }
+
+            if (!loop.post(() -> wheel.runExpired(batch))) {
+                // 事件循环已停止
+                cancelAll();
+            }
+        }
+
+        private void link(Timeout timeout) {
+            timeout.groupPrev = null;
+            timeout.groupNext = head;
+            if (head != null) {
+                head.groupPrev = timeout;
+            }
+            head = timeout;
+            count++;
+        }
+
+        private void unlink(Timeout timeout) {
+            if (timeout.groupPrev != null) {
+                timeout.groupPrev.groupNext = timeout.groupNext;
+            } else if (head == timeout) {
+                head = timeout.groupNext;
+            } else {
+                return;
+            }
+            if (timeout.groupNext != null) {
+                timeout.groupNext.groupPrev = timeout.groupPrev;
+            }
+            timeout.groupPrev = null;
+            timeout.groupNext = null;
+            count--;
+        }
+    }
+
+    // 定时器执行顺序
+    private static final Comparator<Timeout> TIMEOUT_ORDER = (a, b) -> {
+        if (a.deadline != b.deadline) {
+            return a.deadline < b.deadline ? -1 : 1;
+        }
+        return Long.compare(a.sequence, b.sequence);
+    };
+
+    /**
+     * 定时器
+     * 同时位于槽位链表和分组链表中
+     */
+    private static final class Timeout {
+        final int id;
+        final TimerGroup group;
+        final Runnable callback;
+        // 周期（刻度），0 表示一次性定时器
+        final long interval;
+        long deadline;
+        long sequence;
+        int state;
+        Timeout slotPrev;
+        Timeout slotNext;
+        Timeout groupPrev;
+        Timeout groupNext;
+
+        Timeout(int id, TimerGroup group, Runnable callback, long interval) {
+            this.id = id;
+            this.group = group;
+            this.callback = callback;
+            this.interval = interval;
+        }
+    }
+
+    /**
+     * 以 int 为键的开放寻址哈希表，避免装箱
+     */
+    private static final class TimeoutMap {
+        private int[] keys = new int[64];
+        private Timeout[] values = new Timeout[64];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        Timeout get(int key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        void put(int key, Timeout value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        void remove(int key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (values[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) {
+                return;
+            }
+
+            values[i] = null;
+            size--;
+
+            // 回移后续元素，保持线性探测链连续
+            int j = (i + 1) & mask;
+            while (values[j] != null) {
+                int home = mix(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+                j = (j + 1) & mask;
+            }
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            Timeout[] oldValues = values;
+            keys = new int[capacity];
+            values = new Timeout[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.mobileplatform.creator.mpk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MPK 主题树
+ * 主题按 "/" 分级，订阅过滤器支持单级通配符 "+"（如 sensor/+/temperature）
+ * 和多级通配符 "#"（只能位于最后一级，如 app/#，同时匹配 app 本身）；
+ * 以 "$" 开头的主题不被首级通配符匹配。
+ * 订阅变更加锁，匹配不加锁；每个主题的匹配结果缓存为订阅者数组，订阅变更时整体失效，
+ * 因此重复发布到同一主题只需一次哈希查找
+ */
+public class MpkTopicTrie {
+
+    // 主题分级分隔符
+    public static final char SEPARATOR = '/';
+
+    // 单级通配符
+    public static final String SINGLE_LEVEL = "+";
+
+    // 多级通配符
+    public static final String MULTI_LEVEL = "#";
+
+    // 匹配结果缓存的主题数量上限，超过后清空
+    private static final int MATCH_CACHE_LIMIT = 1024;
+
+    // 没有订阅者
+    private static final String[] NO_SUBSCRIBERS = new String[0];
+
+    /**
+     * 主题树节点
+     */
+    private static final class Node {
+        final Map<String, Node> children = new ConcurrentHashMap<>();
+        final Set<String> subscribers = ConcurrentHashMap.newKeySet();
+
+        boolean isEmpty() {
+            return children.isEmpty() && subscribers.isEmpty();
+        }
+    }
+
+    // 根节点
+    private final Node root = new Node();
+
+    // 每个订阅者的过滤器，用于注销时移除全部订阅，只在锁内访问
+    private final Map<String, Set<String>> filtersBySubscriber = new HashMap<>();
+
+    // 匹配结果缓存，订阅变更时替换为新的空缓存
+    private volatile Map<String, String[]> matchCache = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅
+     * @param filter 订阅过滤器
+     * @param subscriber 订阅者
+     * @return 是否新增订阅，过滤器无效或已订阅时返回 false
+     */
+    public synchronized boolean subscribe(String filter, String subscriber) {
+        if (!isValidFilter(filter)) {
+            return false;
+        }
+
+        Node node = root;
+        for (String level : split(filter)) {
+            node = node.children.computeIfAbsent(level, key -> new Node());
+        }
+
+        if (!node.subscribers.add(subscriber)) {
+            return false;
+        }
+        filtersBySubscriber.computeIfAbsent(subscriber, key -> new LinkedHashSet<>()).add(filter);
+        invalidate();
+        return true;
+    }
+
+    /**
+     * 取消订阅
+     * @param filter 订阅过滤器
+     * @param subscriber 订阅者
+     * @return 是否取消了已有的订阅
+     */
+    public synchronized boolean unsubscribe(String filter, String subscriber) {
+        if (filter == null) {
+            return false;
+        }
+
+        if (!remove(root, split(filter), 0, subscriber)) {
+            return false;
+        }
+
+        Set<String> filters = filtersBySubscriber.get(subscriber);
+        if (filters != null) {
+            filters.remove(filter);
+            if (filters.isEmpty()) {
+                filtersBySubscriber.remove(subscriber);
+            }
+        }
+        invalidate();
+        return true;
+    }
+
+    /**
+     * 移除订阅者的全部订阅
+     * @param subscriber 订阅者
+     * @return 移除的订阅数量
+     */
+    public synchronized int removeSubscriber(String subscriber) {
+        Set<String> filters = filtersBySubscriber.remove(subscriber);
+        if (filters == null) {
+            return 0;
+        }
+
+        for (String filter : filters) {
+            remove(root, split(filter), 0, subscriber);
+        }
+        invalidate();
+        return filters.size();
+    }
+
+    /**
+     * 获取订阅了指定过滤器的订阅者，过滤器按字面比较，不展开通配符
+     * @param filter 订阅过滤器
+     * @return 订阅者
+     */
+    public Set<String> getSubscribers(String filter) {
+        Node node = root;
+        for (String level : split(filter)) {
+            node = node.children.get(level);
+            if (node == null) {
+                return Collections.emptySet();
+            }
+        }
+        return Collections.unmodifiableSet(node.subscribers);
+    }
+
+    /**
+     * 获取订阅者的全部过滤器
+     * @param subscriber 订阅者
+     * @return 过滤器快照
+     */
+    public synchronized Set<String> getFilters(String subscriber) {
+        Set<String> filters = filtersBySubscriber.get(subscriber);
+        return filters != null ? new LinkedHashSet<>(filters) : Collections.emptySet();
+    }
+
+    /**
+     * 匹配主题，可以在任意线程中调用
+     * 返回的数组被缓存共享，调用者不能修改
+     * @param topic 主题，不能包含通配符
+     * @return 去重后的订阅者
+     */
+    public String[] match(String topic) {
+        Map<String, String[]> cache = matchCache;
+        String[] subscribers = cache.get(topic);
+        if (subscribers != null) {
+            return subscribers;
+        }
+
+        Set<String> result = new LinkedHashSet<>();
+        String[] levels = split(topic);
+        collect(root, levels, 0, !topic.isEmpty() && topic.charAt(0) == '$', result);
+        subscribers = result.isEmpty() ? NO_SUBSCRIBERS : result.toArray(new String[0]);
+
+        // 订阅变更后缓存已被替换，写入旧缓存的结果不会再被读取
+        if (cache.size() >= MATCH_CACHE_LIMIT) {
+            cache.clear();
+        }
+        cache.put(topic, subscribers);
+        return subscribers;
+    }
+
+    /**
+     * 清空全部订阅
+     */
+    public synchronized void clear() {
+        root.children.clear();
+        root.subscribers.clear();
+        filtersBySubscriber.clear();
+        invalidate();
+    }
+
+    /**
+     * 过滤器是否有效："+" 和 "#" 必须独占一级，"#" 只能位于最后一级
+     * @param filter 订阅过滤器
+     * @return 是否有效
+     */
+    public static boolean isValidFilter(String filter) {
+        if (filter == null || filter.isEmpty()) {
+            return false;
+        }
+
+        String[] levels = split(filter);
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (MULTI_LEVEL.equals(level)) {
+                if (i != levels.length - 1) {
+                    return false;
+                }
+            } else if (!SINGLE_LEVEL.equals(level)
+                && (level.indexOf('+') >= 0 || level.indexOf('#') >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 主题是否有效：非空且不包含通配符
+     * @param topic 主题
+     * @return 是否有效
+     */
+    public static boolean isValidTopic(String topic) {
+        return topic != null && !topic.isEmpty() && topic.indexOf('+') < 0 && topic.indexOf('#') < 0;
+    }
+
+    /**
+     * 收集匹配主题的订阅者
+     * @param node 当前节点
+     * @param levels 主题分级
+     * @param index 当前分级
+     * @param system 是否为 "$" 开头的主题，首级不匹配通配符
+     * @param result 匹配结果
+     */
+    private static void collect(Node node, String[] levels, int index, boolean system, Set<String> result) {
+        boolean wildcards = !(system && index == 0);
+
+        // "#" 匹配当前级及之后的所有分级
+        if (wildcards) {
+            Node multi = node.children.get(MULTI_LEVEL);
+            if (multi != null) {
+                result.addAll(multi.subscribers);
+            }
+        }
+
+        if (index == levels.length) {
+            result.addAll(node.subscribers);
+            return;
+        }
+
+        Node exact = node.children.get(levels[index]);
+        if (exact != null) {
+            collect(exact, levels, index + 1, system, result);
+        }
+
+        if (wildcards) {
+            Node single = node.children.get(SINGLE_LEVEL);
+            if (single != null) {
+                collect(single, levels, index + 1, system, result);
+            }
+        }
+    }
+
+    /**
+     * 移除订阅并清理空节点
+     * @return 是否移除了订阅
+     */
+    private static boolean remove(Node node, String[] levels, int index, String subscriber) {
+        if (index == levels.length) {
+            return node.subscribers.remove(subscriber);
+        }
+
+        Node child = node.children.get(levels[index]);
+        if (child == null || !remove(child, levels, index + 1, subscriber)) {
+            return false;
+        }
+        if (child.isEmpty()) {
+            node.children.remove(levels[index]);
+        }
+        return true;
+    }
+
+    /**
+     * 使匹配结果缓存失效
+     */
+    private void invalidate() {
+        matchCache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 按 "/" 分级，保留空级
+     */
+    private static String[] split(String topic) {
+        List<String> levels = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = topic.indexOf(SEPARATOR, start)) >= 0) {
+            levels.add(topic.substring(start, end));
+            start = end + 1;
+        }
+        levels.add(topic.substring(start));
+        return levels.toArray(new String[0]);
+    }
+}